@@ -6,6 +6,8 @@ public class ProductAggregate {
     private final int productId;
     private final String name;
     private final int weight;
+    //  with the versions of the summaries the version vector of the aggregate, the ETag of the composite is derived from it
+    private final int version;
     private final List<RecommendationSummary> recommendations;
     private final List<ReviewSummary> reviews;
     private final ServiceAddresses serviceAddresses;
@@ -14,6 +16,7 @@ public class ProductAggregate {
         productId = 0;
         name = null;
         weight = 0;
+        version = 0;
         recommendations = null;
         reviews = null;
         serviceAddresses = null;
@@ -23,6 +26,7 @@ public class ProductAggregate {
             int productId,
             String name,
             int weight,
+            int version,
             List<RecommendationSummary> recommendations,
             List<ReviewSummary> reviews,
             ServiceAddresses serviceAddresses) {
@@ -30,6 +34,7 @@ public class ProductAggregate {
         this.productId = productId;
         this.name = name;
         this.weight = weight;
+        this.version = version;
         this.recommendations = recommendations;
         this.reviews = reviews;
         this.serviceAddresses = serviceAddresses;
@@ -47,6 +52,10 @@ public class ProductAggregate {
         return weight;
     }
 
+    public int getVersion() {
+        return version;
+    }
+
     public List<RecommendationSummary> getRecommendations() {
         return recommendations;
     }
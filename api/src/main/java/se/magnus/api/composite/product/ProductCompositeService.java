@@ -4,9 +4,14 @@ import io.swagger.annotations.Api;
 import io.swagger.annotations.ApiOperation;
 import io.swagger.annotations.ApiResponse;
 import io.swagger.annotations.ApiResponses;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.util.List;
+
 @Api("REST API for composite product information.")
 public interface ProductCompositeService {
 
@@ -32,15 +37,41 @@ public interface ProductCompositeService {
     Mono<Void> createCompositeProduct(@RequestBody ProductAggregate body);
 
     /**
-     * Sample usage: curl $HOST:$PORT/product-composite/1
+     * Sample usage:
+     *
+     * curl -X PUT $HOST:$PORT/product-composite \
+     *   -H "Content-Type: application/json" --data \
+     *   '{"productId":123,"name":"product 123","weight":123}'
+     *
+     * @param body
+     */
+    @ApiOperation(
+            value = "${api.product-composite.upsert-composite-product.description}",
+            notes = "${api.product-composite.upsert-composite-product.notes}")
+    @ApiResponses(value = {
+            @ApiResponse(code = 400, message = "Bad Request, invalid format of the request. See response message for more information."),
+            @ApiResponse(code = 422, message = "Unprocessable entity, input parameters caused the processing to fail. See response message for more information.")
+    })
+    @PutMapping(
+            value    = "/product-composite",
+            consumes = "application/json")
+    Mono<Void> upsertCompositeProduct(@RequestBody ProductAggregate body);
+
+    /**
+     * Sample usage: curl $HOST:$PORT/product-composite/1?limit=5
+     *
+     * curl -H 'If-None-Match: "<etag>"' $HOST:$PORT/product-composite/1
      *
      * @param productId
-     * @return the composite product info, if found, else null
+     * @param limit max number of recommendations and reviews to include, 0 for all
+     * @param ifNoneMatch the ETag of the version the client holds
+     * @return the composite product info with its ETag, if found, else null. 304 without a body if the ETag matches ifNoneMatch
      */
     @ApiOperation(
             value = "${api.product-composite.get-composite-product.description}",
             notes = "${api.product-composite.get-composite-product.notes}")
     @ApiResponses(value = {
+            @ApiResponse(code = 304, message = "Not modified, the client holds the current version."),
             @ApiResponse(code = 400, message = "Bad Request, invalid format of the request. See response message for more information."),
             @ApiResponse(code = 404, message = "Not found, the specified id does not exist."),
             @ApiResponse(code = 422, message = "Unprocessable entity, input parameters caused the processing to fail. See response message for more information.")
@@ -48,12 +79,51 @@ public interface ProductCompositeService {
     @GetMapping(
             value    = "/product-composite/{productId}",
             produces = "application/json")
-    Mono<ProductAggregate> getCompositeProduct(
+    Mono<ResponseEntity<ProductAggregate>> getCompositeProduct(
             @PathVariable int productId,
+            @RequestParam(value = "limit", required = false, defaultValue = "0") int limit,
             @RequestParam(value = "delay", required = false, defaultValue = "0") int delay,
-            @RequestParam(value = "faultPercent", required = false, defaultValue = "0") int faultPercent
+            @RequestParam(value = "faultPercent", required = false, defaultValue = "0") int faultPercent,
+            @RequestHeader(value = "If-None-Match", required = false) String ifNoneMatch
     );
 
+    /**
+     * Sample usage: curl -H "Accept: text/event-stream" $HOST:$PORT/product-composite/1
+     *
+     * @param productId
+     * @return a "product" event followed by "recommendation" and "review" events, as they arrive from the core services
+     */
+    @ApiOperation(
+            value = "${api.product-composite.stream-composite-product.description}",
+            notes = "${api.product-composite.stream-composite-product.notes}")
+    @ApiResponses(value = {
+            @ApiResponse(code = 400, message = "Bad Request, invalid format of the request. See response message for more information."),
+            @ApiResponse(code = 404, message = "Not found, the specified id does not exist."),
+            @ApiResponse(code = 422, message = "Unprocessable entity, input parameters caused the processing to fail. See response message for more information.")
+    })
+    @GetMapping(
+            value    = "/product-composite/{productId}",
+            produces = "text/event-stream")
+    Flux<ServerSentEvent<Object>> streamCompositeProduct(@PathVariable int productId);
+
+    /**
+     * Sample usage: curl $HOST:$PORT/product-composite?ids=1,2,3
+     *
+     * @param ids
+     * @return the composite product info of the products found, in the requested order
+     */
+    @ApiOperation(
+            value = "${api.product-composite.get-composite-products.description}",
+            notes = "${api.product-composite.get-composite-products.notes}")
+    @ApiResponses(value = {
+            @ApiResponse(code = 400, message = "Bad Request, invalid format of the request. See response message for more information."),
+            @ApiResponse(code = 422, message = "Unprocessable entity, input parameters caused the processing to fail. See response message for more information.")
+    })
+    @GetMapping(
+            value    = "/product-composite",
+            produces = "application/json")
+    Flux<ProductAggregate> getCompositeProducts(@RequestParam(value = "ids", required = true) List<Integer> ids);
+
     /**
      * Sample usage:
      *
@@ -6,19 +6,22 @@ public class RecommendationSummary {
     private final String author;
     private final int rate;
     private final String content;
+    private final int version;
 
     public RecommendationSummary() {
         this.recommendationId = 0;
         this.author = null;
         this.rate = 0;
         this.content = null;
+        this.version = 0;
     }
 
-    public RecommendationSummary(int recommendationId, String author, int rate, String content) {
+    public RecommendationSummary(int recommendationId, String author, int rate, String content, int version) {
         this.recommendationId = recommendationId;
         this.author = author;
         this.rate = rate;
         this.content = content;
+        this.version = version;
     }
 
     public int getRecommendationId() {
@@ -35,4 +38,9 @@ public class RecommendationSummary {
 
     public String getContent() {
         return content;
-    }}
+    }
+
+    public int getVersion() {
+        return version;
+    }
+}
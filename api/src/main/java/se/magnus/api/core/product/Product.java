@@ -5,6 +5,8 @@ public class Product {
     private String name;
     private int weight;
     private String serviceAddress;
+    //  assigned by the service that stores the entity, ignored on writes
+    private int version;
 
     public Product() {
         productId = 0;
@@ -36,6 +38,10 @@ public class Product {
         return serviceAddress;
     }
 
+    public int getVersion() {
+        return version;
+    }
+
     public void setProductId(int productId) {
         this.productId = productId;
     }
@@ -51,4 +57,8 @@ public class Product {
     public void setServiceAddress(String serviceAddress) {
         this.serviceAddress = serviceAddress;
     }
+
+    public void setVersion(int version) {
+        this.version = version;
+    }
 }
@@ -1,8 +1,11 @@
 package se.magnus.api.core.product;
 
 import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.util.List;
+
 public interface ProductService {
 
     /**
@@ -21,6 +24,54 @@ public interface ProductService {
             produces = "application/json")
     Product createProduct(@RequestBody Product body);
 
+    /**
+     * Sample usage:
+     *
+     * curl -X POST $HOST:$PORT/product/bulk \
+     *   -H "Content-Type: application/json" --data \
+     *   '[{"productId":123,"name":"product 123","weight":123}]'
+     *
+     * @param body
+     * @return
+     */
+    @PostMapping(
+            value    = "/product/bulk",
+            consumes = "application/json",
+            produces = "application/json")
+    List<Product> createProducts(@RequestBody List<Product> body);
+
+    /**
+     * Sample usage:
+     *
+     * curl -X PUT $HOST:$PORT/product \
+     *   -H "Content-Type: application/json" --data \
+     *   '{"productId":123,"name":"product 123","weight":123}'
+     *
+     * @param body
+     * @return
+     */
+    @PutMapping(
+            value    = "/product",
+            consumes = "application/json",
+            produces = "application/json")
+    Product upsertProduct(@RequestBody Product body);
+
+    /**
+     * Sample usage:
+     *
+     * curl -X PUT $HOST:$PORT/product/bulk \
+     *   -H "Content-Type: application/json" --data \
+     *   '[{"productId":123,"name":"product 123","weight":123}]'
+     *
+     * @param body
+     * @return
+     */
+    @PutMapping(
+            value    = "/product/bulk",
+            consumes = "application/json",
+            produces = "application/json")
+    List<Product> upsertProducts(@RequestBody List<Product> body);
+
     /**
      * Sample usage: curl $HOST:$PORT/product/1
      *
@@ -29,13 +80,24 @@ public interface ProductService {
      */
     @GetMapping(
             value    = "/product/{productId}",
-            produces = "application/json")
+            produces = {"application/json", "application/x-jackson-smile"})
     Mono<Product> getProduct(
             @PathVariable int productId,
             @RequestParam(value = "delay", required = false, defaultValue = "0") int delay,
             @RequestParam(value = "faultPercent", required = false, defaultValue = "0") int faultPercent
     );
 
+    /**
+     * Sample usage: curl $HOST:$PORT/product?productIds=1,2,3
+     *
+     * @param productIds
+     * @return the products found, products that do not exist are left out
+     */
+    @GetMapping(
+            value    = "/product",
+            produces = {"application/json", "application/x-jackson-smile"})
+    Flux<Product> getProducts(@RequestParam(value = "productIds", required = true) List<Integer> productIds);
+
     /**
      * Sample usage:
      *
@@ -7,6 +7,8 @@ public class Recommendation {
     private int rate;
     private String content;
     private String serviceAddress;
+    //  assigned by the service that stores the entity, ignored on writes
+    private int version;
 
     public Recommendation() {
         productId = 0;
@@ -50,6 +52,10 @@ public class Recommendation {
         return serviceAddress;
     }
 
+    public int getVersion() {
+        return version;
+    }
+
     public void setProductId(int productId) {
         this.productId = productId;
     }
@@ -73,4 +79,8 @@ public class Recommendation {
     public void setServiceAddress(String serviceAddress) {
         this.serviceAddress = serviceAddress;
     }
+
+    public void setVersion(int version) {
+        this.version = version;
+    }
 }
@@ -2,6 +2,7 @@ package se.magnus.api.core.recommendation;
 
 import org.springframework.web.bind.annotation.*;
 import reactor.core.publisher.Flux;
+import se.magnus.api.composite.product.RecommendationSummary;
 
 import java.util.List;
 
@@ -23,18 +24,104 @@ public interface RecommendationService {
             produces = "application/json")
     Recommendation createRecommendation(@RequestBody Recommendation body);
 
+    /**
+     * Sample usage:
+     *
+     * curl -X POST $HOST:$PORT/recommendation/bulk \
+     *   -H "Content-Type: application/json" --data \
+     *   '[{"productId":123,"recommendationId":456,"author":"me","rate":5,"content":"yada, yada, yada"}]'
+     *
+     * @param body
+     * @return
+     */
+    @PostMapping(
+            value    = "/recommendation/bulk",
+            consumes = "application/json",
+            produces = "application/json")
+    List<Recommendation> createRecommendations(@RequestBody List<Recommendation> body);
+
+    /**
+     * Sample usage:
+     *
+     * curl -X PUT $HOST:$PORT/recommendation \
+     *   -H "Content-Type: application/json" --data \
+     *   '{"productId":123,"recommendationId":456,"author":"me","rate":5,"content":"yada, yada, yada"}'
+     *
+     * @param body
+     * @return
+     */
+    @PutMapping(
+            value    = "/recommendation",
+            consumes = "application/json",
+            produces = "application/json")
+    Recommendation upsertRecommendation(@RequestBody Recommendation body);
+
+    /**
+     * Sample usage:
+     *
+     * curl -X PUT $HOST:$PORT/recommendation/bulk \
+     *   -H "Content-Type: application/json" --data \
+     *   '[{"productId":123,"recommendationId":456,"author":"me","rate":5,"content":"yada, yada, yada"}]'
+     *
+     * @param body
+     * @return
+     */
+    @PutMapping(
+            value    = "/recommendation/bulk",
+            consumes = "application/json",
+            produces = "application/json")
+    List<Recommendation> upsertRecommendations(@RequestBody List<Recommendation> body);
+
     /**
      * Sample usage:
      *
      * curl $HOST:$PORT/recommendation?productId=1
+     * curl "$HOST:$PORT/recommendation?productId=1&afterId=10&limit=5"
      *
      * @param productId
+     * @param afterId recommendationId of the last element of the previous page, if any
+     * @param limit max number of recommendations to return, 0 for all
+     * @return recommendations ordered by recommendationId
+     */
+    @GetMapping(
+            value    = "/recommendation",
+            produces = {"application/json", "application/x-jackson-smile"})
+    Flux<Recommendation> getRecommendations(
+            @RequestParam(value = "productId", required = true) int productId,
+            @RequestParam(value = "afterId", required = false) Integer afterId,
+            @RequestParam(value = "limit", required = false, defaultValue = "0") int limit
+    );
+
+    /**
+     * Sample usage: curl "$HOST:$PORT/recommendation/summary?productId=1&limit=5"
+     *
+     * @param productId
+     * @param afterId recommendationId of the last element of the previous page, if any
+     * @param limit max number of recommendations to return, 0 for all
+     * @return the fields of the recommendations shown by the composite, ordered by recommendationId
+     */
+    @GetMapping(
+            value    = "/recommendation/summary",
+            produces = {"application/json", "application/x-jackson-smile"})
+    Flux<RecommendationSummary> getRecommendationSummaries(
+            @RequestParam(value = "productId", required = true) int productId,
+            @RequestParam(value = "afterId", required = false) Integer afterId,
+            @RequestParam(value = "limit", required = false, defaultValue = "0") int limit
+    );
+
+    /**
+     * Sample usage:
+     *
+     * curl $HOST:$PORT/recommendation?productIds=1,2,3
+     *
+     * @param productIds
      * @return
      */
     @GetMapping(
             value    = "/recommendation",
-            produces = "application/json")
-    Flux<Recommendation> getRecommendations(@RequestParam(value = "productId", required = true) int productId);
+            params   = "productIds",
+            produces = {"application/json", "application/x-jackson-smile"})
+    Flux<Recommendation> getRecommendationsByProductIds(@RequestParam(value = "productIds", required = true) List<Integer> productIds);
 
     /**
      * Sample usage:
@@ -2,6 +2,7 @@ package se.magnus.api.core.review;
 
 import org.springframework.web.bind.annotation.*;
 import reactor.core.publisher.Flux;
+import se.magnus.api.composite.product.ReviewSummary;
 
 import java.util.List;
 
@@ -24,15 +25,98 @@ public interface ReviewService {
     Review createReview(@RequestBody Review body);
 
     /**
-     * Sample usage: curl $HOST:$PORT/review?productId=1
+     * Sample usage:
+     *
+     * curl -X POST $HOST:$PORT/review/bulk \
+     *   -H "Content-Type: application/json" --data \
+     *   '[{"productId":123,"reviewId":456,"author":"me","subject":"yada, yada, yada","content":"yada, yada, yada"}]'
+     *
+     * @param body
+     * @return
+     */
+    @PostMapping(
+            value    = "/review/bulk",
+            consumes = "application/json",
+            produces = "application/json")
+    List<Review> createReviews(@RequestBody List<Review> body);
+
+    /**
+     * Sample usage:
+     *
+     * curl -X PUT $HOST:$PORT/review \
+     *   -H "Content-Type: application/json" --data \
+     *   '{"productId":123,"reviewId":456,"author":"me","subject":"yada, yada, yada","content":"yada, yada, yada"}'
+     *
+     * @param body
+     * @return
+     */
+    @PutMapping(
+            value    = "/review",
+            consumes = "application/json",
+            produces = "application/json")
+    Review upsertReview(@RequestBody Review body);
+
+    /**
+     * Sample usage:
+     *
+     * curl -X PUT $HOST:$PORT/review/bulk \
+     *   -H "Content-Type: application/json" --data \
+     *   '[{"productId":123,"reviewId":456,"author":"me","subject":"yada, yada, yada","content":"yada, yada, yada"}]'
+     *
+     * @param body
+     * @return
+     */
+    @PutMapping(
+            value    = "/review/bulk",
+            consumes = "application/json",
+            produces = "application/json")
+    List<Review> upsertReviews(@RequestBody List<Review> body);
+
+    /**
+     * Sample usage: curl "$HOST:$PORT/review?productId=1&afterId=10&limit=5"
+     *
+     * @param productId
+     * @param afterId reviewId of the last element of the previous page, if any
+     * @param limit max number of reviews to return, 0 for all
+     * @return reviews ordered by reviewId
+     */
+    @GetMapping(
+            value    = "/review",
+            produces = {"application/json", "application/x-jackson-smile"})
+    Flux<Review> getReviews(
+            @RequestParam(value = "productId", required = true) int productId,
+            @RequestParam(value = "afterId", required = false) Integer afterId,
+            @RequestParam(value = "limit", required = false, defaultValue = "0") int limit
+    );
+
+    /**
+     * Sample usage: curl "$HOST:$PORT/review/summary?productId=1&limit=5"
      *
      * @param productId
+     * @param afterId reviewId of the last element of the previous page, if any
+     * @param limit max number of reviews to return, 0 for all
+     * @return the fields of the reviews shown by the composite, ordered by reviewId
+     */
+    @GetMapping(
+            value    = "/review/summary",
+            produces = {"application/json", "application/x-jackson-smile"})
+    Flux<ReviewSummary> getReviewSummaries(
+            @RequestParam(value = "productId", required = true) int productId,
+            @RequestParam(value = "afterId", required = false) Integer afterId,
+            @RequestParam(value = "limit", required = false, defaultValue = "0") int limit
+    );
+
+    /**
+     * Sample usage: curl $HOST:$PORT/review?productIds=1,2,3
+     *
+     * @param productIds
      * @return
      */
     @GetMapping(
             value    = "/review",
-            produces = "application/json")
-    Flux<Review> getReviews(@RequestParam(value = "productId", required = true) int productId);
+            params   = "productIds",
+            produces = {"application/json", "application/x-jackson-smile"})
+    Flux<Review> getReviewsByProductIds(@RequestParam(value = "productIds", required = true) List<Integer> productIds);
 
     /**
      * Sample usage:
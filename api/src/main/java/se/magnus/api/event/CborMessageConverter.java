@@ -0,0 +1,14 @@
+package se.magnus.api.event;
+
+import org.springframework.messaging.converter.MappingJackson2MessageConverter;
+
+//  converts event payloads of bindings with contentType application/cbor, see EventCodec
+public class CborMessageConverter extends MappingJackson2MessageConverter {
+
+    public CborMessageConverter(EventCodec codec) {
+        super(EventCodec.APPLICATION_CBOR);
+        setObjectMapper(codec.getMapper(EventCodec.APPLICATION_CBOR));
+        //  messages without a content type are left to the JSON converter
+        setStrictContentTypeMatch(true);
+    }
+}
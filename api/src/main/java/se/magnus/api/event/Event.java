@@ -1,19 +1,27 @@
 package se.magnus.api.event;
 
 import java.time.LocalDateTime;
+import java.util.UUID;
 
 import static java.time.LocalDateTime.now;
 
 public class Event<K, T> {
 
-    public enum Type {CREATE, DELETE}
+    //  UPSERT creates an item or replaces the one with the same key, i.e. it can be applied again and again
+    public enum Type {CREATE, DELETE, UPSERT}
 
+    //  message header of events carrying a list of items, e.g. all reviews of a product in one CREATE event
+    public static final String BULK_HEADER = "bulk";
+
+    //  unique per event, a redelivered or republished event keeps it. null for events of older publishers.
+    private final String eventId;
     private final Type eventType;
     private final K key;
     private final T data;
     private final LocalDateTime eventCreatedAt;
 
     public Event() {
+        this.eventId = null;
         this.eventType = null;
         this.key = null;
         this.data = null;
@@ -21,12 +29,17 @@ public class Event<K, T> {
     }
 
     public Event(Type eventType, K key, T data) {
+        this.eventId = UUID.randomUUID().toString();
         this.eventType = eventType;
         this.key = key;
         this.data = data;
         this.eventCreatedAt = now();
     }
 
+    public String getEventId() {
+        return eventId;
+    }
+
     public Type getEventType() {
         return eventType;
     }
@@ -0,0 +1,54 @@
+package se.magnus.api.event;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import org.springframework.util.MimeType;
+import org.springframework.util.MimeTypeUtils;
+
+import java.io.IOException;
+
+import static com.fasterxml.jackson.databind.DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES;
+
+//  reads and writes events in the wire format of a binding, JSON (the default) or CBOR.
+//  CBOR is binary JSON, i.e. the same data model with field names and values in a compact binary encoding,
+//  the dates are written as numeric arrays instead of ISO strings. no schema is needed, the classes of the api are the schema.
+public class EventCodec {
+
+    public static final MimeType APPLICATION_CBOR = MimeTypeUtils.parseMimeType("application/cbor");
+
+    private final ObjectMapper jsonMapper;
+    private final ObjectMapper cborMapper;
+
+    public EventCodec(ObjectMapper jsonMapper) {
+        this.jsonMapper = jsonMapper;
+        //  java.time support and lenient reads like the JSON mapper of spring boot, dates stay numeric though
+        this.cborMapper = new ObjectMapper(new CBORFactory())
+                .findAndRegisterModules()
+                .configure(FAIL_ON_UNKNOWN_PROPERTIES, false);
+    }
+
+    public ObjectMapper getMapper(MimeType contentType) {
+        return isCbor(contentType) ? cborMapper : jsonMapper;
+    }
+
+    public <T> T read(byte[] payload, Object contentType, TypeReference<T> type) throws IOException {
+        return getMapper(resolve(contentType, payload)).readValue(payload, type);
+    }
+
+    public byte[] write(Object value, MimeType contentType) throws IOException {
+        return getMapper(contentType).writeValueAsBytes(value);
+    }
+
+    public static boolean isCbor(MimeType contentType) {
+        return contentType != null && APPLICATION_CBOR.equalsTypeAndSubtype(contentType);
+    }
+
+    //  the content type header, if the binder kept it, otherwise the encoding is told by the first byte:
+    //  a JSON event starts with '{', a CBOR event with a map header (major type 5)
+    private static MimeType resolve(Object contentType, byte[] payload) {
+        if (contentType instanceof MimeType) return (MimeType) contentType;
+        if (contentType != null) return MimeTypeUtils.parseMimeType(contentType.toString());
+        return payload.length > 0 && (payload[0] & 0xE0) == 0xA0 ? APPLICATION_CBOR : MimeTypeUtils.APPLICATION_JSON;
+    }
+}
@@ -0,0 +1,23 @@
+package se.magnus.api.event;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+//  the binders pick up every MessageConverter bean, the wire format is selected per binding with its contentType
+@Configuration
+public class EventCodecConfiguration {
+
+    @Bean
+    public EventCodec eventCodec(ObjectProvider<ObjectMapper> mapper) {
+        //  test slices, e.g. @DataJpaTest, come without the ObjectMapper of spring boot
+        return new EventCodec(mapper.getIfAvailable(() -> Jackson2ObjectMapperBuilder.json().build()));
+    }
+
+    @Bean
+    public CborMessageConverter cborMessageConverter(EventCodec codec) {
+        return new CborMessageConverter(codec);
+    }
+}
@@ -0,0 +1,62 @@
+package se.magnus.microservices.benchmarks;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.util.MimeType;
+import org.springframework.util.MimeTypeUtils;
+import se.magnus.api.core.review.Review;
+import se.magnus.api.event.Event;
+import se.magnus.api.event.EventCodec;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static se.magnus.api.event.Event.Type.CREATE;
+
+//  the wire formats of the events, the size of an encoded event is reported as the bytes counter
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class EventCodecBenchmark {
+    private static final TypeReference<Event<Integer, List<Review>>> EVENT_TYPE = new TypeReference<Event<Integer, List<Review>>>() {};
+
+    @Param({"0", "10", "1000", "10000"})
+    private int size;
+
+    @Param({"application/json", "application/cbor"})
+    private String contentType;
+
+    private final EventCodec codec = new EventCodec(Jackson2ObjectMapperBuilder.json().build());
+
+    private MimeType mimeType;
+    private Event<Integer, List<Review>> event;
+    private byte[] encoded;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class EncodedSize {
+        public long bytes;
+    }
+
+    @Setup
+    public void setup() throws IOException {
+        mimeType = MimeTypeUtils.parseMimeType(contentType);
+        event = new Event<>(CREATE, Fixtures.PRODUCT_ID, Fixtures.reviews(size));
+        encoded = codec.write(event, mimeType);
+    }
+
+    @Benchmark
+    public byte[] encode(EncodedSize encodedSize) throws IOException {
+        byte[] bytes = codec.write(event, mimeType);
+        encodedSize.bytes = bytes.length;
+        return bytes;
+    }
+
+    @Benchmark
+    public Event<Integer, List<Review>> decode(EncodedSize encodedSize) throws IOException {
+        encodedSize.bytes = encoded.length;
+        return codec.read(encoded, mimeType, EVENT_TYPE);
+    }
+}
@@ -0,0 +1,55 @@
+package se.magnus.microservices.benchmarks;
+
+import se.magnus.api.composite.product.ProductAggregate;
+import se.magnus.api.composite.product.RecommendationSummary;
+import se.magnus.api.composite.product.ReviewSummary;
+import se.magnus.api.composite.product.ServiceAddresses;
+import se.magnus.api.core.product.Product;
+import se.magnus.api.core.recommendation.Recommendation;
+import se.magnus.api.core.review.Review;
+
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+//  test data of realistic shape, i.e. texts of the length a user would type
+public final class Fixtures {
+    public static final int PRODUCT_ID = 1;
+    private static final String ADDRESS = "review-5f7c9d8b6-x2x4q/172.18.0.7:8080";
+    private static final String SUBJECT = "Solid product, does what it says";
+    private static final String CONTENT = "Bought this a couple of months ago and have been using it daily since. "
+            + "Build quality is good, the battery lasts longer than advertised and support answered within a day.";
+
+    private Fixtures() { }
+
+    public static Product product(int productId) {
+        return new Product(productId, "Product " + productId, 100 + productId, ADDRESS);
+    }
+
+    public static List<Product> products(int count) {
+        return IntStream.rangeClosed(1, count).mapToObj(Fixtures::product).collect(Collectors.toList());
+    }
+
+    public static List<Recommendation> recommendations(int count) {
+        return IntStream.rangeClosed(1, count)
+                .mapToObj(id -> new Recommendation(PRODUCT_ID, id, "Author " + id, id % 5 + 1, CONTENT, ADDRESS))
+                .collect(Collectors.toList());
+    }
+
+    public static List<Review> reviews(int count) {
+        return IntStream.rangeClosed(1, count)
+                .mapToObj(id -> new Review(PRODUCT_ID, id, "Author " + id, SUBJECT, CONTENT, ADDRESS))
+                .collect(Collectors.toList());
+    }
+
+    public static ProductAggregate aggregate(int count) {
+        List<RecommendationSummary> recommendations = IntStream.rangeClosed(1, count)
+                .mapToObj(id -> new RecommendationSummary(id, "Author " + id, id % 5 + 1, CONTENT, 0))
+                .collect(Collectors.toList());
+        List<ReviewSummary> reviews = IntStream.rangeClosed(1, count)
+                .mapToObj(id -> new ReviewSummary(id, "Author " + id, SUBJECT, CONTENT, 0))
+                .collect(Collectors.toList());
+        return new ProductAggregate(PRODUCT_ID, "Product " + PRODUCT_ID, 101, 0, recommendations, reviews,
+                new ServiceAddresses(ADDRESS, ADDRESS, ADDRESS, ADDRESS));
+    }
+}
@@ -0,0 +1,78 @@
+package se.magnus.microservices.benchmarks;
+
+import org.mapstruct.factory.Mappers;
+import org.openjdk.jmh.annotations.*;
+import se.magnus.api.core.product.Product;
+import se.magnus.api.core.recommendation.Recommendation;
+import se.magnus.api.core.review.Review;
+import se.magnus.microservices.core.product.persistence.ProductEntity;
+import se.magnus.microservices.core.product.services.ProductMapper;
+import se.magnus.microservices.core.recommendation.persistence.RecommendationEntity;
+import se.magnus.microservices.core.recommendation.services.RecommendationMapper;
+import se.magnus.microservices.core.review.persistence.ReviewEntity;
+import se.magnus.microservices.core.review.services.ReviewMapper;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+//  the MapStruct mappers of the core services, over as many items as a product can have
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class MapperBenchmark {
+
+    @Param({"0", "10", "1000", "10000"})
+    private int size;
+
+    private final ProductMapper productMapper = Mappers.getMapper(ProductMapper.class);
+    private final RecommendationMapper recommendationMapper = Mappers.getMapper(RecommendationMapper.class);
+    private final ReviewMapper reviewMapper = Mappers.getMapper(ReviewMapper.class);
+
+    private List<Product> products;
+    private List<ProductEntity> productEntities;
+    private List<Recommendation> recommendations;
+    private List<RecommendationEntity> recommendationEntities;
+    private List<Review> reviews;
+    private List<ReviewEntity> reviewEntities;
+
+    @Setup
+    public void setup() {
+        products = Fixtures.products(size);
+        productEntities = productMapper.apiListToEntityList(products);
+        recommendations = Fixtures.recommendations(size);
+        recommendationEntities = recommendationMapper.apiListToEntityList(recommendations);
+        reviews = Fixtures.reviews(size);
+        reviewEntities = reviewMapper.apiListToEntityList(reviews);
+    }
+
+    @Benchmark
+    public List<Product> productEntityToApi() {
+        return productEntities.stream().map(productMapper::entityToApi).collect(Collectors.toList());
+    }
+
+    @Benchmark
+    public List<ProductEntity> productApiToEntity() {
+        return productMapper.apiListToEntityList(products);
+    }
+
+    @Benchmark
+    public List<Recommendation> recommendationEntityToApi() {
+        return recommendationMapper.entityListToApiList(recommendationEntities);
+    }
+
+    @Benchmark
+    public List<RecommendationEntity> recommendationApiToEntity() {
+        return recommendationMapper.apiListToEntityList(recommendations);
+    }
+
+    @Benchmark
+    public List<Review> reviewEntityToApi() {
+        return reviewMapper.entityListToApiList(reviewEntities);
+    }
+
+    @Benchmark
+    public List<ReviewEntity> reviewApiToEntity() {
+        return reviewMapper.apiListToEntityList(reviews);
+    }
+}
@@ -0,0 +1,66 @@
+package se.magnus.microservices.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import org.springframework.core.ResolvableType;
+import org.springframework.core.codec.Decoder;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.json.Jackson2JsonDecoder;
+import org.springframework.http.codec.json.Jackson2SmileDecoder;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import reactor.core.publisher.Flux;
+import se.magnus.api.core.review.Review;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static se.magnus.util.http.SmileCodecConfiguration.APPLICATION_SMILE;
+
+//  what ProductCompositeIntegration does with the body of a getReviews call, bodyToFlux(Review.class),
+//  the size of the body is reported as the bytes counter
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ResponseCodecBenchmark {
+    private static final ResolvableType REVIEW_TYPE = ResolvableType.forClass(Review.class);
+
+    @Param({"0", "10", "1000", "10000"})
+    private int size;
+
+    @Param({"application/json", "application/x-jackson-smile"})
+    private String contentType;
+
+    private final DefaultDataBufferFactory bufferFactory = new DefaultDataBufferFactory();
+
+    private MediaType mediaType;
+    private Decoder<Object> decoder;
+    private byte[] body;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class BodySize {
+        public long bytes;
+    }
+
+    @Setup
+    public void setup() throws IOException {
+        mediaType = MediaType.valueOf(contentType);
+        boolean smile = APPLICATION_SMILE.equalsTypeAndSubtype(mediaType);
+        decoder = smile ?
+                new Jackson2SmileDecoder(Jackson2ObjectMapperBuilder.smile().build(), APPLICATION_SMILE) :
+                new Jackson2JsonDecoder(Jackson2ObjectMapperBuilder.json().build());
+        //  the core services encode a Flux as an array
+        body = (smile ? Jackson2ObjectMapperBuilder.smile().build() : Jackson2ObjectMapperBuilder.json().build())
+                .writeValueAsBytes(Fixtures.reviews(size));
+    }
+
+    @Benchmark
+    public List<Object> decodeReviews(BodySize bodySize) {
+        bodySize.bytes = body.length;
+        Flux<DataBuffer> buffers = Flux.just(bufferFactory.wrap(body));
+        return decoder.decode(buffers, REVIEW_TYPE, mediaType, Collections.emptyMap()).collectList().block();
+    }
+}
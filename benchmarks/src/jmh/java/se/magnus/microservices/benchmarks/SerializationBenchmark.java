@@ -0,0 +1,62 @@
+package se.magnus.microservices.benchmarks;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import se.magnus.api.composite.product.ProductAggregate;
+import se.magnus.api.core.review.Review;
+import se.magnus.api.event.Event;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static se.magnus.api.event.Event.Type.CREATE;
+
+//  the JSON bodies of the composite API and the bulk events sent to the core services
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SerializationBenchmark {
+    private static final TypeReference<Event<Integer, List<Review>>> EVENT_TYPE = new TypeReference<Event<Integer, List<Review>>>() {};
+
+    @Param({"0", "10", "1000", "10000"})
+    private int size;
+
+    //  configured the way Spring Boot configures the mapper of the services
+    private final ObjectMapper mapper = Jackson2ObjectMapperBuilder.json().build();
+
+    private ProductAggregate aggregate;
+    private byte[] aggregateJson;
+    private Event<Integer, List<Review>> event;
+    private byte[] eventJson;
+
+    @Setup
+    public void setup() throws IOException {
+        aggregate = Fixtures.aggregate(size);
+        aggregateJson = mapper.writeValueAsBytes(aggregate);
+        event = new Event<>(CREATE, Fixtures.PRODUCT_ID, Fixtures.reviews(size));
+        eventJson = mapper.writeValueAsBytes(event);
+    }
+
+    @Benchmark
+    public byte[] serializeAggregate() throws IOException {
+        return mapper.writeValueAsBytes(aggregate);
+    }
+
+    @Benchmark
+    public ProductAggregate deserializeAggregate() throws IOException {
+        return mapper.readValue(aggregateJson, ProductAggregate.class);
+    }
+
+    @Benchmark
+    public byte[] serializeEvent() throws IOException {
+        return mapper.writeValueAsBytes(event);
+    }
+
+    @Benchmark
+    public Event<Integer, List<Review>> deserializeEvent() throws IOException {
+        return mapper.readValue(eventJson, EVENT_TYPE);
+    }
+}
@@ -0,0 +1,52 @@
+package se.magnus.microservices.composite.product.services;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+import se.magnus.api.composite.product.ProductAggregate;
+import se.magnus.api.core.product.Product;
+import se.magnus.api.core.recommendation.Recommendation;
+import se.magnus.api.core.review.Review;
+import se.magnus.microservices.benchmarks.Fixtures;
+import se.magnus.microservices.composite.product.readmodel.ProductAggregateReadModel;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+//  lives in the package of the service to reach its package-private aggregation methods
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ProductCompositeBenchmark {
+
+    //  number of recommendations and of reviews of the product
+    @Param({"0", "10", "1000", "10000"})
+    private int size;
+
+    private ProductCompositeServiceImpl service;
+    private Product product;
+    private List<Recommendation> recommendations;
+    private List<Review> reviews;
+    private Object untypedReviews;
+
+    @Setup
+    public void setup() {
+        //  only the pure aggregation code is measured, it touches neither the integration nor the cache
+        service = new ProductCompositeServiceImpl(null, null, null, new SimpleMeterRegistry(),
+                new StaticListableBeanFactory().getBeanProvider(ProductAggregateReadModel.class), 100);
+        product = Fixtures.product(Fixtures.PRODUCT_ID);
+        recommendations = Fixtures.recommendations(size);
+        reviews = Fixtures.reviews(size);
+        untypedReviews = reviews;
+    }
+
+    @Benchmark
+    public ProductAggregate createProductAggregate() {
+        return service.createProductAggregate(product, recommendations, reviews, "composite/172.18.0.9:8080");
+    }
+
+    @Benchmark
+    public List<Review> castObjToTypedList() {
+        return service.castObjToTypedList(Review.class, untypedReviews);
+    }
+}
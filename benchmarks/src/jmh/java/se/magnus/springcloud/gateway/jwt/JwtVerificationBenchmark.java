@@ -0,0 +1,79 @@
+package se.magnus.springcloud.gateway.jwt;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.charset.StandardCharsets;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.Signature;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static java.util.Collections.singletonMap;
+
+//  lives in the package of the resolver to reach its package-private constructor.
+//  a hit is a token found in the verified-token cache, a miss parses the token and checks its RS256 signature.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class JwtVerificationBenchmark {
+
+    private JwtTokenResolver cachingResolver;
+    private JwtTokenResolver nonCachingResolver;
+    private String authorization;
+
+    @Setup
+    public void setup() throws Exception {
+        ObjectMapper mapper = new ObjectMapper();
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(2048);
+        KeyPair keyPair = generator.generateKeyPair();
+
+        JwkSetCache keys = new JwkSetCache(mapper, "", 300, 10);
+        keys.setKeys(singletonMap("key-1", keyPair.getPublic()));
+        JwtVerifier verifier = new JwtVerifier(mapper, Clock.systemUTC(), Duration.ZERO, "", "");
+        cachingResolver = new JwtTokenResolver(keys, verifier, Clock.systemUTC(), new SimpleMeterRegistry(), 10000, Duration.ofMinutes(5));
+        //  a cache without room, every call verifies
+        nonCachingResolver = new JwtTokenResolver(keys, verifier, Clock.systemUTC(), new SimpleMeterRegistry(), 0, Duration.ofMinutes(5));
+
+        authorization = "Bearer " + sign(mapper, keyPair, Instant.now().plus(Duration.ofHours(1)));
+        cachingResolver.resolve(authorization).block();
+    }
+
+    @Benchmark
+    public VerifiedToken verifyHit() {
+        return cachingResolver.resolve(authorization).block();
+    }
+
+    @Benchmark
+    public VerifiedToken verifyMiss() {
+        return nonCachingResolver.resolve(authorization).block();
+    }
+
+    private static String sign(ObjectMapper mapper, KeyPair keyPair, Instant expiresAt) throws Exception {
+        Map<String, Object> header = new HashMap<>();
+        header.put("alg", "RS256");
+        header.put("kid", "key-1");
+        Map<String, Object> claims = new HashMap<>();
+        claims.put("sub", "subject");
+        claims.put("scope", "product:read product:write");
+        claims.put("exp", expiresAt.getEpochSecond());
+
+        String content = encode(mapper.writeValueAsBytes(header)) + "." + encode(mapper.writeValueAsBytes(claims));
+        Signature signature = Signature.getInstance("SHA256withRSA");
+        signature.initSign(keyPair.getPrivate());
+        signature.update(content.getBytes(StandardCharsets.US_ASCII));
+        return content + "." + encode(signature.sign());
+    }
+
+    private static String encode(byte[] bytes) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+    }
+}
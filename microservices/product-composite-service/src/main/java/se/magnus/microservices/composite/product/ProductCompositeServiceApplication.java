@@ -1,7 +1,9 @@
 package se.magnus.microservices.composite.product;
 
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.web.codec.CodecCustomizer;
 import org.springframework.cloud.client.loadbalancer.LoadBalanced;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.ComponentScan;
@@ -12,8 +14,9 @@ import org.springframework.web.reactive.function.client.WebClient;
 public class ProductCompositeServiceApplication {
 	@Bean
 	@LoadBalanced
-	WebClient.Builder builder() {
-		return WebClient.builder();
+	WebClient.Builder builder(ObjectProvider<CodecCustomizer> codecCustomizers) {
+		//  the codecs of the server, e.g. Smile, for the calls to the core services
+		return WebClient.builder().codecs(codecs -> codecCustomizers.orderedStream().forEach(customizer -> customizer.customize(codecs)));
 	}
 
 	public static void main(String[] args) {
@@ -37,6 +37,7 @@ public class SecurityConfig {
                 .pathMatchers("/actuator/**").permitAll()
                 .pathMatchers(GET, "/product-composite/**").permitAll()
                 .pathMatchers(POST, "/product-composite/**").permitAll()
+                .pathMatchers(PUT, "/product-composite/**").hasAuthority("SCOPE:WRITE")
                 .pathMatchers(DELETE, "/product-composite/**").hasAuthority("SCOPE:WRITE")
                 .anyExchange().authenticated()
                 .and()
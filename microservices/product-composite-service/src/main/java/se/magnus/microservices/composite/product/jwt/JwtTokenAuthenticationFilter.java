@@ -13,6 +13,8 @@ import org.springframework.web.server.WebFilterChain;
 import reactor.core.publisher.Mono;
 import reactor.util.annotation.NonNull;
 
+import static se.magnus.util.http.InternalIdentityCodec.IDENTITY_HEADER;
+
 @Component
 public class JwtTokenAuthenticationFilter implements WebFilter {
     public static final String HEADER_PREFIX = "Bearer ";
@@ -25,6 +27,16 @@ public class JwtTokenAuthenticationFilter implements WebFilter {
 
     @Override
     public @NonNull Mono<Void> filter(ServerWebExchange exchange, @NonNull WebFilterChain chain) {
+        //  the gateway already verified the token, no need to look at it again
+        String identity = exchange.getRequest().getHeaders().getFirst(IDENTITY_HEADER);
+        if (StringUtils.hasText(identity)) {
+            Authentication authentication = jwtTokenProvider.getIdentityAuthentication(identity);
+            if (authentication != null) {
+                return chain.filter(exchange)
+                        .subscriberContext(ReactiveSecurityContextHolder.withAuthentication(authentication));
+            }
+        }
+
         String token = resolveToken(exchange.getRequest());
         if (StringUtils.hasText(token)) {
             Authentication authentication = jwtTokenProvider.getAuthentication(token);
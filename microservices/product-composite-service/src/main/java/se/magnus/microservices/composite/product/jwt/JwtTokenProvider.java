@@ -1,19 +1,59 @@
 package se.magnus.microservices.composite.product.jwt;
 
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
 import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.security.core.userdetails.User;
 import org.springframework.stereotype.Component;
+import se.magnus.util.http.InternalIdentity;
+import se.magnus.util.http.InternalIdentityCodec;
 
+import java.time.Clock;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 @Component
 public class JwtTokenProvider {
     private static final String AUTHORITIES_KEY = "roles";
+    private static final String SCOPE_PREFIX = "SCOPE:";
+    private static final int MAX_SCOPE_SETS = 1000;
+
+    private final InternalIdentityCodec identities;
+    //  the callers share a handful of scope combinations, their authorities are built once
+    private final Map<Set<String>, List<GrantedAuthority>> authorities = new ConcurrentHashMap<>();
+
+    @Autowired
+    public JwtTokenProvider(@Value("${app.internal-identity.secret:}") String secret) {
+        this.identities = secret.isEmpty() ? null : new InternalIdentityCodec(secret, Clock.systemUTC());
+    }
 
     public Authentication getAuthentication(String token) {
         User principal = new User("subject", "pwd", Collections.singletonList(new SimpleGrantedAuthority(token)));
         return new UsernamePasswordAuthenticationToken(principal, token, principal.getAuthorities());
     }
+
+    //  the caller the gateway verified, see InternalIdentityCodec. null if the mode is off or the header is not valid
+    public Authentication getIdentityAuthentication(String header) {
+        if (identities == null) return null;
+        InternalIdentity identity = identities.decode(header);
+        if (identity == null) return null;
+        return new UsernamePasswordAuthenticationToken(identity.getSubject(), null, authoritiesOf(identity.getScopes()));
+    }
+
+    private List<GrantedAuthority> authoritiesOf(Set<String> scopes) {
+        List<GrantedAuthority> known = authorities.get(scopes);
+        if (known != null) return known;
+        List<GrantedAuthority> created = new ArrayList<>(scopes.size());
+        scopes.forEach(scope -> created.add(new SimpleGrantedAuthority(SCOPE_PREFIX + scope)));
+        List<GrantedAuthority> unmodifiable = Collections.unmodifiableList(created);
+        if (authorities.size() < MAX_SCOPE_SETS) authorities.putIfAbsent(scopes, unmodifiable);
+        return unmodifiable;
+    }
 }
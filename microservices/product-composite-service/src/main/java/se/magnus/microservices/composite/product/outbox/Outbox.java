@@ -0,0 +1,230 @@
+package se.magnus.microservices.composite.product.outbox;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.annotation.Profile;
+import org.springframework.context.event.EventListener;
+import org.springframework.integration.annotation.ServiceActivator;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.messaging.support.InterceptableChannel;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.stereotype.Component;
+import reactor.core.scheduler.Schedulers;
+import se.magnus.api.event.Event;
+import se.magnus.microservices.composite.product.services.ProductCompositeIntegration.MessageSources;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static se.magnus.microservices.composite.product.services.ProductCompositeIntegration.MessageSources.*;
+
+//  transactional outbox of the events sent to the core services, active with the "outbox" profile.
+//  a send to an output channel only appends the event to the local journal and returns once it is fsynced,
+//  a background relay publishes the journal in batches and moves on once the broker confirmed the batch.
+//  the append blocks on the fsync, a send from an event loop thread is rejected, ProductCompositeIntegration sends on
+//  the bounded elastic scheduler.
+@Profile("outbox")
+@Component
+public class Outbox implements ChannelInterceptor {
+    private static final Logger LOG = LoggerFactory.getLogger(Outbox.class);
+    //  a new id per send, a position is sent again when a batch isn't confirmed in time
+    public static final String SEND_ID_HEADER = "outbox-send-id";
+    public static final String CONFIRMS_CHANNEL = "outbox-confirms";
+
+    private final OutboxJournal journal;
+    private final ObjectMapper mapper;
+    private final Map<String, MessageChannel> channels = new HashMap<>();
+    private final ScheduledExecutorService relay = Executors.newSingleThreadScheduledExecutor(r -> new Thread(r, "outbox-relay"));
+    private final AtomicLong sendIds = new AtomicLong();
+    private final Set<Long> unconfirmed = ConcurrentHashMap.newKeySet();
+    private final DistributionSummary batchSize;
+
+    private final int maxBatchSize;
+    private final int intervalMs;
+    private final boolean awaitConfirms;
+    private final int confirmTimeoutMs;
+
+    //  age of the oldest event not relayed yet
+    private volatile long lagMs;
+
+    @Autowired
+    public Outbox(
+            MessageSources messageSources,
+            ObjectMapper mapper,
+            MeterRegistry registry,
+            @Value("${app.outbox.dir:outbox}") String dir,
+            @Value("${app.outbox.segmentBytes:67108864}") long segmentBytes,
+            @Value("${app.outbox.batchSize:500}") int maxBatchSize,
+            @Value("${app.outbox.intervalMs:50}") int intervalMs,
+            @Value("${app.outbox.awaitConfirms:true}") boolean awaitConfirms,
+            @Value("${app.outbox.confirmTimeoutMs:5000}") int confirmTimeoutMs
+    ) throws IOException {
+        this.journal = new OutboxJournal(Paths.get(dir), segmentBytes);
+        this.mapper = mapper;
+        this.maxBatchSize = maxBatchSize;
+        this.intervalMs = intervalMs;
+        this.awaitConfirms = awaitConfirms;
+        this.confirmTimeoutMs = confirmTimeoutMs;
+
+        channels.put(OUTPUT_PRODUCTS, messageSources.outputProducts());
+        channels.put(OUTPUT_RECOMMENDATIONS, messageSources.outputRecommendations());
+        channels.put(OUTPUT_REVIEWS, messageSources.outputReviews());
+        //  first in line, i.e. before the binder converts or partitions the message
+        channels.values().forEach(channel -> ((InterceptableChannel) channel).addInterceptor(0, this));
+
+        this.batchSize = DistributionSummary.builder("outbox.relay.batch.size")
+                .description("Number of events published per relay batch")
+                .register(registry);
+        Gauge.builder("outbox.relay.lag", this, outbox -> outbox.lagMs)
+                .description("Age of the oldest event not relayed yet")
+                .baseUnit("milliseconds")
+                .register(registry);
+        Gauge.builder("outbox.pending", journal, OutboxJournal::pending)
+                .description("Size of the events not relayed yet")
+                .baseUnit("bytes")
+                .register(registry);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void startRelay() {
+        relay.scheduleWithFixedDelay(this::relay, 0, intervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stopRelay() throws IOException, InterruptedException {
+        relay.shutdown();
+        relay.awaitTermination(confirmTimeoutMs, TimeUnit.MILLISECONDS);
+        journal.close();
+    }
+
+    //  the events sent by ProductCompositeIntegration end up here, the ones sent by the relay pass through
+    @Override
+    public Message<?> preSend(Message<?> message, MessageChannel channel) {
+        if (message.getHeaders().containsKey(SEND_ID_HEADER)) return message;
+        if (Schedulers.isInNonBlockingThread()) {
+            throw new IllegalStateException("Outbox append on non-blocking thread " + Thread.currentThread().getName());
+        }
+
+        ObjectNode record = mapper.createObjectNode();
+        record.put("destination", destinationOf(channel));
+        record.put("appendedAt", System.currentTimeMillis());
+        record.set("headers", mapper.valueToTree(headersToKeep(message.getHeaders())));
+        record.set("payload", mapper.valueToTree(message.getPayload()));
+        try {
+            journal.append(mapper.writeValueAsBytes(record));
+        } catch (IOException ex) {
+            throw new UncheckedIOException("Failed to append event to the outbox", ex);
+        }
+        //  the relay sends it later on
+        return null;
+    }
+
+    //  publisher confirms of the rabbit binder, they carry the headers of the confirmed message.
+    //  a late confirm of a batch that timed out carries an id that is not awaited anymore and is ignored.
+    @ServiceActivator(inputChannel = CONFIRMS_CHANNEL)
+    public void onConfirm(Message<?> confirm) {
+        Long sendId = confirm.getHeaders().get(SEND_ID_HEADER, Long.class);
+        if (sendId != null && unconfirmed.remove(sendId)) {
+            synchronized (unconfirmed) {
+                unconfirmed.notifyAll();
+            }
+        }
+    }
+
+    //  at least once, a batch that isn't confirmed in time is sent again by the next run
+    private void relay() {
+        try {
+            List<OutboxJournal.Entry> entries;
+            while (!(entries = journal.read(maxBatchSize)).isEmpty()) {
+                List<JsonNode> records = new ArrayList<>(entries.size());
+                for (OutboxJournal.Entry entry : entries) records.add(mapper.readTree(entry.data));
+                lagMs = System.currentTimeMillis() - records.get(0).get("appendedAt").asLong();
+
+                unconfirmed.clear();
+                for (int i = 0; i < entries.size(); i++) {
+                    long sendId = sendIds.incrementAndGet();
+                    if (awaitConfirms) unconfirmed.add(sendId);
+                    channels.get(records.get(i).get("destination").asText()).send(toMessage(records.get(i), sendId));
+                }
+                if (awaitConfirms && !awaitConfirms()) {
+                    LOG.warn("{} of {} outbox events not confirmed within {} ms, will retry", unconfirmed.size(), entries.size(), confirmTimeoutMs);
+                    return;
+                }
+                journal.commit(entries.get(entries.size() - 1).next);
+                batchSize.record(entries.size());
+                LOG.debug("Relayed {} outbox events", entries.size());
+            }
+            lagMs = 0;
+        } catch (Exception ex) {
+            LOG.warn("Outbox relay failed, will retry: {}", ex.toString());
+        }
+    }
+
+    private boolean awaitConfirms() throws InterruptedException {
+        long deadline = System.currentTimeMillis() + confirmTimeoutMs;
+        synchronized (unconfirmed) {
+            while (!unconfirmed.isEmpty()) {
+                long timeout = deadline - System.currentTimeMillis();
+                if (timeout <= 0) return false;
+                unconfirmed.wait(timeout);
+            }
+        }
+        return true;
+    }
+
+    private Message<?> toMessage(JsonNode record, long sendId) throws IOException {
+        Event<?, ?> event = mapper.treeToValue(record.get("payload"), Event.class);
+        MessageBuilder<?> builder = MessageBuilder.withPayload(event).setHeader(SEND_ID_HEADER, sendId);
+        Iterator<Map.Entry<String, JsonNode>> headers = record.get("headers").fields();
+        while (headers.hasNext()) {
+            Map.Entry<String, JsonNode> header = headers.next();
+            builder.setHeader(header.getKey(), mapper.treeToValue(header.getValue(), Object.class));
+        }
+        return builder.build();
+    }
+
+    //  the application headers, e.g. the bulk header, the ones of the framework are set again when the event is relayed
+    private static Map<String, Object> headersToKeep(MessageHeaders headers) {
+        Map<String, Object> kept = new HashMap<>();
+        headers.forEach((name, value) -> {
+            if (!MessageHeaders.ID.equals(name) && !MessageHeaders.TIMESTAMP.equals(name)
+                    && (value instanceof String || value instanceof Number || value instanceof Boolean)) {
+                kept.put(name, value);
+            }
+        });
+        return kept;
+    }
+
+    private String destinationOf(MessageChannel channel) {
+        return channels.entrySet().stream()
+                .filter(e -> e.getValue() == channel)
+                .map(Map.Entry::getKey)
+                .findFirst()
+                .orElseThrow(() -> new IllegalStateException("Unknown outbox channel: " + channel));
+    }
+}
@@ -0,0 +1,237 @@
+package se.magnus.microservices.composite.product.outbox;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32;
+
+import static java.nio.file.StandardOpenOption.*;
+
+//  append-only log of records framed as [length][crc32][data], plus the position up to which the records are relayed.
+//  appends are group committed, i.e. concurrent appenders share one fsync.
+//  the log is split into segment files of about segmentBytes, named by the position of their first record. positions grow
+//  across segments and are never reused, a segment is deleted once every record in it is relayed. i.e. the journal holds
+//  the records not relayed yet plus at most one segment, however far behind the relay is.
+class OutboxJournal implements Closeable {
+    private static final Logger LOG = LoggerFactory.getLogger(OutboxJournal.class);
+    private static final int HEADER_SIZE = 8;
+    private static final Pattern SEGMENT_NAME = Pattern.compile("outbox-(\\d{20})\\.log");
+    //  the single log file of earlier versions, its positions are the ones of a segment starting at 0
+    private static final String LEGACY_LOG = "outbox.log";
+
+    private final Path dir;
+    private final long segmentBytes;
+    //  by the position of their first record, the last one is appended to
+    private final ConcurrentSkipListMap<Long, FileChannel> segments = new ConcurrentSkipListMap<>();
+    private final FileChannel offset;
+    private final Object writeLock = new Object();
+    private final Object flushLock = new Object();
+
+    //  the segment appended to and the end of the written records, guarded by writeLock
+    private volatile FileChannel log;
+    private volatile long end;
+    //  end of the fsynced records, guarded by flushLock
+    private volatile long flushed;
+    private volatile long committed;
+
+    static class Entry {
+        final long position;
+        final long next;
+        final byte[] data;
+
+        Entry(long position, long next, byte[] data) {
+            this.position = position;
+            this.next = next;
+            this.data = data;
+        }
+    }
+
+    OutboxJournal(Path dir, long segmentBytes) throws IOException {
+        this.dir = dir;
+        this.segmentBytes = segmentBytes;
+        Files.createDirectories(dir);
+        offset = FileChannel.open(dir.resolve("outbox.offset"), CREATE, READ, WRITE);
+        if (Files.exists(dir.resolve(LEGACY_LOG))) Files.move(dir.resolve(LEGACY_LOG), segmentPath(0));
+
+        committed = readOffset();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir)) {
+            for (Path file : files) {
+                Matcher matcher = SEGMENT_NAME.matcher(file.getFileName().toString());
+                if (matcher.matches()) segments.put(Long.parseLong(matcher.group(1)), FileChannel.open(file, READ, WRITE));
+            }
+        }
+        deleteRelayedSegments();
+        if (segments.isEmpty()) segments.put(committed, FileChannel.open(segmentPath(committed), CREATE_NEW, READ, WRITE));
+
+        Map.Entry<Long, FileChannel> last = segments.lastEntry();
+        log = last.getValue();
+        //  the segments before the last one were fsynced when the next one was started, a torn record can only be in the last
+        end = flushed = recover(last.getKey(), Math.max(committed, last.getKey()));
+        if (committed > end) committed = end;
+        LOG.info("Opened outbox journal in {}, {} segments, {} bytes to relay", dir, segments.size(), end - committed);
+    }
+
+    //  returns once the record is on disk
+    long append(byte[] data) throws IOException {
+        long next;
+        synchronized (writeLock) {
+            if (end - segments.lastKey() >= segmentBytes) roll();
+            long base = segments.lastKey();
+            ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + data.length);
+            buffer.putInt(data.length).putInt(crc(data)).put(data).flip();
+            long position = end - base;
+            while (buffer.hasRemaining()) position += log.write(buffer, position);
+            next = end = base + position;
+        }
+        synchronized (flushLock) {
+            //  an appender that got here first may have flushed this record as well
+            if (flushed < next) {
+                FileChannel current;
+                long target;
+                synchronized (writeLock) {
+                    current = log;
+                    target = end;
+                }
+                current.force(false);
+                flushed = Math.max(flushed, target);
+            }
+        }
+        return next;
+    }
+
+    //  up to max fsynced records, starting at the committed position
+    List<Entry> read(int max) throws IOException {
+        List<Entry> entries = new ArrayList<>();
+        long position = committed;
+        long limit = flushed;
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        while (entries.size() < max && position < limit) {
+            header.clear();
+            readFully(header, position);
+            byte[] data = new byte[header.getInt(0)];
+            readFully(ByteBuffer.wrap(data), position + HEADER_SIZE);
+            long next = position + HEADER_SIZE + data.length;
+            entries.add(new Entry(position, next, data));
+            position = next;
+        }
+        return entries;
+    }
+
+    void commit(long position) throws IOException {
+        synchronized (writeLock) {
+            writeOffset(position);
+            committed = position;
+            deleteRelayedSegments();
+        }
+    }
+
+    //  bytes appended but not relayed yet
+    long pending() {
+        return end - committed;
+    }
+
+    int segments() {
+        return segments.size();
+    }
+
+    @Override
+    public void close() throws IOException {
+        for (FileChannel segment : segments.values()) segment.close();
+        offset.close();
+    }
+
+    //  the records of the full segment are fsynced before the first one goes to the next segment, guarded by writeLock
+    private void roll() throws IOException {
+        log.force(false);
+        FileChannel next = FileChannel.open(segmentPath(end), CREATE_NEW, READ, WRITE);
+        segments.put(end, next);
+        log = next;
+        LOG.debug("Started outbox segment at position {}", end);
+    }
+
+    //  every segment but the last one whose successor starts at or before the committed position
+    private void deleteRelayedSegments() throws IOException {
+        Map.Entry<Long, FileChannel> first;
+        while ((first = segments.firstEntry()) != null) {
+            Long successor = segments.higherKey(first.getKey());
+            if (successor == null || successor > committed) return;
+            first.getValue().close();
+            Files.deleteIfExists(segmentPath(first.getKey()));
+            segments.remove(first.getKey());
+        }
+    }
+
+    private Path segmentPath(long base) {
+        return dir.resolve(String.format("outbox-%020d.log", base));
+    }
+
+    //  skips the valid records from the given position on and cuts off a torn record at the end of the segment, if any
+    private long recover(long base, long from) throws IOException {
+        long size = log.size();
+        long position = from - base;
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        while (position + HEADER_SIZE <= size) {
+            header.clear();
+            readFully(log, header, position);
+            int length = header.getInt(0);
+            if (length < 0 || position + HEADER_SIZE + length > size) break;
+            byte[] data = new byte[length];
+            readFully(log, ByteBuffer.wrap(data), position + HEADER_SIZE);
+            if (crc(data) != header.getInt(4)) break;
+            position += HEADER_SIZE + length;
+        }
+        if (position < size) {
+            LOG.warn("Truncating torn outbox record at position {}, {} bytes dropped", base + position, size - position);
+            log.truncate(position);
+            log.force(true);
+        }
+        return base + position;
+    }
+
+    private long readOffset() throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(Long.BYTES);
+        if (offset.size() < Long.BYTES) return 0;
+        readFully(offset, buffer, 0);
+        return buffer.getLong(0);
+    }
+
+    private void writeOffset(long position) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(Long.BYTES);
+        buffer.putLong(position).flip();
+        while (buffer.hasRemaining()) offset.write(buffer, buffer.position());
+        offset.force(false);
+    }
+
+    //  records don't span segments, the one holding the position holds the whole record
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+        Map.Entry<Long, FileChannel> segment = segments.floorEntry(position);
+        if (segment == null) throw new IOException("No outbox segment holds position " + position);
+        readFully(segment.getValue(), buffer, position - segment.getKey());
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position + buffer.position());
+            if (read < 0) throw new IOException("Unexpected end of outbox journal at position " + position);
+        }
+    }
+
+    private static int crc(byte[] data) {
+        CRC32 crc = new CRC32();
+        crc.update(data, 0, data.length);
+        return (int) crc.getValue();
+    }
+}
@@ -0,0 +1,194 @@
+package se.magnus.microservices.composite.product.readmodel;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+import se.magnus.api.composite.product.ProductAggregate;
+import se.magnus.api.composite.product.RecommendationSummary;
+import se.magnus.api.composite.product.ReviewSummary;
+import se.magnus.api.composite.product.ServiceAddresses;
+import se.magnus.api.core.product.Product;
+import se.magnus.api.core.recommendation.Recommendation;
+import se.magnus.api.core.review.Review;
+import se.magnus.api.event.Event;
+import se.magnus.util.http.ServiceUtil;
+import se.magnus.util.messaging.RecentEventIds;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+import static se.magnus.api.event.Event.Type.DELETE;
+import static se.magnus.api.event.Event.Type.UPSERT;
+
+//  read model of ProductCompositeServiceImpl, active with the "read-model" profile.
+//  keeps one assembled ProductAggregate per productId, built from the events on the products, recommendations and
+//  reviews topics, so a read is a single lookup instead of a call to every core service.
+//  the model lives in memory only, it is rebuilt on startup by replaying the topics from the beginning, see ReadModelProcessor.
+//  the versions mirror the ones the core services assign, 0 on creation and one more on every update.
+//  like the core services a CREATE of an item that exists already is ignored, only an UPSERT replaces it.
+//  a redelivered event is skipped by its event id, as long as the id is still among the recent ones, like the core services do.
+@Profile("read-model")
+@Component
+public class ProductAggregateReadModel {
+    private static final Logger LOG = LoggerFactory.getLogger(ProductAggregateReadModel.class);
+
+    public static final String PRODUCTS = "products";
+    public static final String RECOMMENDATIONS = "recommendations";
+    public static final String REVIEWS = "reviews";
+
+    private final Map<Integer, Entry> entries = new ConcurrentHashMap<>();
+    private final Map<String, Progress> progress = new ConcurrentHashMap<>();
+    private final RecentEventIds applied;
+    private final ServiceUtil serviceUtil;
+    private final long maxLagMs;
+    private final long idleMs;
+
+    //  the events of one product, only touched within entries.compute(), readers only see the assembled aggregate
+    private static class Entry {
+        private Product product;
+        private int productVersion;
+        private final TreeMap<Integer, RecommendationSummary> recommendations = new TreeMap<>();
+        private final TreeMap<Integer, ReviewSummary> reviews = new TreeMap<>();
+        private volatile ProductAggregate aggregate;
+
+        private boolean isEmpty() {
+            return product == null && recommendations.isEmpty() && reviews.isEmpty();
+        }
+    }
+
+    //  how far behind the topic the model is, judged by the age of the last applied event.
+    //  nothing is known about a topic until an event was applied or the end of the topic was reached.
+    private static class Progress {
+        private final Timer lag;
+        private volatile boolean started;
+        private volatile long lastLagMs;
+        private volatile long lastAppliedAt = System.currentTimeMillis();
+
+        private Progress(Timer lag) {
+            this.lag = lag;
+        }
+    }
+
+    @Autowired
+    public ProductAggregateReadModel(
+            ServiceUtil serviceUtil,
+            MeterRegistry registry,
+            @Value("${app.read-model.maxLagMs:5000}") long maxLagMs,
+            @Value("${app.read-model.idleMs:2000}") long idleMs,
+            @Value("${app.read-model.dedupCacheSize:10000}") int dedupCacheSize
+    ) {
+        this.serviceUtil = serviceUtil;
+        this.maxLagMs = maxLagMs;
+        this.idleMs = idleMs;
+        this.applied = new RecentEventIds(dedupCacheSize);
+        for (String topic : new String[] {PRODUCTS, RECOMMENDATIONS, REVIEWS}) {
+            Timer lag = Timer.builder("read-model.lag")
+                    .description("Time from the creation of an event until it is applied to the read model")
+                    .tags("topic", topic)
+                    .register(registry);
+            Progress p = new Progress(lag);
+            progress.put(topic, p);
+            registry.gauge("read-model.lag.last", Tags.of("topic", topic), p, it -> it.lastLagMs);
+        }
+        registry.gaugeMapSize("read-model.products", Tags.empty(), entries);
+        registry.gauge("read-model.caught-up", this, model -> model.isCaughtUp() ? 1 : 0);
+    }
+
+    //  null if the product is unknown or the model is still replaying, i.e. the caller has to ask the core services
+    public ProductAggregate get(int productId) {
+        if (!isCaughtUp()) return null;
+        Entry entry = entries.get(productId);
+        return entry == null ? null : entry.aggregate;
+    }
+
+    //  every topic was started and either delivered an event that is recent enough or has been quiet for a while,
+    //  i.e. the backlog is consumed
+    public boolean isCaughtUp() {
+        long now = System.currentTimeMillis();
+        return progress.values().stream().allMatch(p -> p.started && (p.lastLagMs <= maxLagMs || now - p.lastAppliedAt >= idleMs));
+    }
+
+    //  the consumer of the topic found nothing more to read, the only way a topic without events is started
+    public void reachedEndOf(String topic) {
+        Progress p = progress.get(topic);
+        if (p != null) p.started = true;
+    }
+
+    public void applyProduct(Event<Integer, Product> event) {
+        update(PRODUCTS, event, entry -> {
+            if (event.getEventType() == DELETE) entry.product = null;
+            else if (entry.product == null) {
+                entry.productVersion = 0;
+                entry.product = event.getData();
+            } else if (event.getEventType() == UPSERT) {
+                entry.productVersion++;
+                entry.product = event.getData();
+            }
+        });
+    }
+
+    //  the items of a single or a bulk event, a DELETE event removes all items of the product
+    public void applyRecommendations(Event<Integer, ?> event, List<Recommendation> recommendations) {
+        update(RECOMMENDATIONS, event, entry -> {
+            if (event.getEventType() == DELETE) entry.recommendations.clear();
+            else recommendations.forEach(r -> entry.recommendations.compute(r.getRecommendationId(), (id, previous) ->
+                    previous != null && event.getEventType() != UPSERT ? previous
+                            : new RecommendationSummary(id, r.getAuthor(), r.getRate(), r.getContent(), previous == null ? 0 : previous.getVersion() + 1)));
+        });
+    }
+
+    public void applyReviews(Event<Integer, ?> event, List<Review> reviews) {
+        update(REVIEWS, event, entry -> {
+            if (event.getEventType() == DELETE) entry.reviews.clear();
+            else reviews.forEach(r -> entry.reviews.compute(r.getReviewId(), (id, previous) ->
+                    previous != null && event.getEventType() != UPSERT ? previous
+                            : new ReviewSummary(id, r.getAuthor(), r.getSubject(), r.getContent(), previous == null ? 0 : previous.getVersion() + 1)));
+        });
+    }
+
+    //  the aggregate is assembled once per event, reads hand it out as it is
+    private void update(String topic, Event<Integer, ?> event, Consumer<Entry> change) {
+        String eventId = event.getEventId();
+        if (eventId != null && applied.contains(eventId)) {
+            LOG.debug("Skipped duplicate event: {}", eventId);
+            return;
+        }
+        entries.compute(event.getKey(), (productId, entry) -> {
+            if (entry == null) entry = new Entry();
+            change.accept(entry);
+            if (entry.isEmpty()) return null;
+            entry.aggregate = entry.product == null ? null : assemble(entry);
+            return entry;
+        });
+        if (eventId != null) applied.add(eventId);
+        track(topic, event.getEventCreatedAt());
+    }
+
+    private ProductAggregate assemble(Entry entry) {
+        Product product = entry.product;
+        ServiceAddresses serviceAddresses = new ServiceAddresses(serviceUtil.getServiceAddress(), "", "", "");
+        return new ProductAggregate(product.getProductId(), product.getName(), product.getWeight(), entry.productVersion,
+                new ArrayList<>(entry.recommendations.values()), new ArrayList<>(entry.reviews.values()), serviceAddresses);
+    }
+
+    private void track(String topic, LocalDateTime createdAt) {
+        Progress p = progress.get(topic);
+        long lagMs = createdAt == null ? 0 : Math.max(0, Duration.between(createdAt, LocalDateTime.now()).toMillis());
+        p.lag.record(Duration.ofMillis(lagMs));
+        p.lastLagMs = lagMs;
+        p.lastAppliedAt = System.currentTimeMillis();
+        p.started = true;
+    }
+}
@@ -0,0 +1,95 @@
+package se.magnus.microservices.composite.product.readmodel;
+
+import org.apache.kafka.common.TopicPartition;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cloud.stream.annotation.EnableBinding;
+import org.springframework.cloud.stream.annotation.Input;
+import org.springframework.cloud.stream.annotation.StreamListener;
+import org.springframework.context.annotation.Profile;
+import org.springframework.context.event.EventListener;
+import org.springframework.kafka.event.ListenerContainerIdleEvent;
+import org.springframework.messaging.SubscribableChannel;
+import se.magnus.api.core.product.Product;
+import se.magnus.api.core.recommendation.Recommendation;
+import se.magnus.api.core.review.Review;
+import se.magnus.api.event.Event;
+
+import java.util.List;
+
+import static java.util.Collections.emptyList;
+import static java.util.Collections.singletonList;
+import static se.magnus.api.event.Event.BULK_HEADER;
+import static se.magnus.api.event.Event.Type.DELETE;
+
+//  feeds the read model with the events the composite publishes to the core services.
+//  the bindings have no consumer group and start at the earliest offset, i.e. every instance replays the topics on startup.
+//  this needs the kafka binder and topics that retain every event, a rabbit queue only holds the events that are not consumed yet.
+@Profile("read-model")
+@EnableBinding(ReadModelProcessor.ReadModelChannels.class)
+public class ReadModelProcessor {
+    private static final Logger LOG = LoggerFactory.getLogger(ReadModelProcessor.class);
+
+    private static final String SINGLE = "headers['" + BULK_HEADER + "'] == null";
+    private static final String BULK = "headers['" + BULK_HEADER + "'] != null";
+
+    private final ProductAggregateReadModel readModel;
+
+    public interface ReadModelChannels {
+        String INPUT_PRODUCTS = "input-read-model-products";
+        String INPUT_RECOMMENDATIONS = "input-read-model-recommendations";
+        String INPUT_REVIEWS = "input-read-model-reviews";
+
+        @Input(INPUT_PRODUCTS)
+        SubscribableChannel inputProducts();
+
+        @Input(INPUT_RECOMMENDATIONS)
+        SubscribableChannel inputRecommendations();
+
+        @Input(INPUT_REVIEWS)
+        SubscribableChannel inputReviews();
+    }
+
+    @Autowired
+    public ReadModelProcessor(ProductAggregateReadModel readModel) {
+        this.readModel = readModel;
+    }
+
+    //  the kafka binder reports a consumer that found nothing to read for idleEventInterval, i.e. it reached the end of its topic
+    @EventListener
+    public void onIdle(ListenerContainerIdleEvent event) {
+        if (event.getTopicPartitions() == null) return;
+        event.getTopicPartitions().stream().map(TopicPartition::topic).distinct().forEach(readModel::reachedEndOf);
+    }
+
+    @StreamListener(ReadModelChannels.INPUT_PRODUCTS)
+    public void processProduct(Event<Integer, Product> event) {
+        LOG.debug("Apply {} product event for productId: {}", event.getEventType(), event.getKey());
+        readModel.applyProduct(event);
+    }
+
+    @StreamListener(target = ReadModelChannels.INPUT_RECOMMENDATIONS, condition = SINGLE)
+    public void processRecommendation(Event<Integer, Recommendation> event) {
+        LOG.debug("Apply {} recommendation event for productId: {}", event.getEventType(), event.getKey());
+        readModel.applyRecommendations(event, event.getEventType() == DELETE ? emptyList() : singletonList(event.getData()));
+    }
+
+    @StreamListener(target = ReadModelChannels.INPUT_RECOMMENDATIONS, condition = BULK)
+    public void processRecommendations(Event<Integer, List<Recommendation>> event) {
+        LOG.debug("Apply {} event with {} recommendations for productId: {}", event.getEventType(), event.getData().size(), event.getKey());
+        readModel.applyRecommendations(event, event.getData());
+    }
+
+    @StreamListener(target = ReadModelChannels.INPUT_REVIEWS, condition = SINGLE)
+    public void processReview(Event<Integer, Review> event) {
+        LOG.debug("Apply {} review event for productId: {}", event.getEventType(), event.getKey());
+        readModel.applyReviews(event, event.getEventType() == DELETE ? emptyList() : singletonList(event.getData()));
+    }
+
+    @StreamListener(target = ReadModelChannels.INPUT_REVIEWS, condition = BULK)
+    public void processReviews(Event<Integer, List<Review>> event) {
+        LOG.debug("Apply {} event with {} reviews for productId: {}", event.getEventType(), event.getData().size(), event.getKey());
+        readModel.applyReviews(event, event.getData());
+    }
+}
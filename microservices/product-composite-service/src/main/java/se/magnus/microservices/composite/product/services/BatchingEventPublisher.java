@@ -0,0 +1,145 @@
+package se.magnus.microservices.composite.product.services;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.integration.annotation.ServiceActivator;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessagingException;
+import org.springframework.messaging.support.ErrorMessage;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.FluxSink;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoProcessor;
+import reactor.core.publisher.UnicastProcessor;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+import reactor.util.concurrent.Queues;
+
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+//  publishing mode of ProductCompositeIntegration, active with the "batched-publishing" profile.
+//  events are buffered per output binding and sent back to back once batchSize events are waiting or lingerMs passed.
+//  the Mono of an event completes when the broker confirmed it, rabbit publisher confirms and kafka acks both arrive
+//  on the confirms channel, failed sends on the error channel.
+@Profile("batched-publishing")
+@Component
+public class BatchingEventPublisher {
+    private static final Logger LOG = LoggerFactory.getLogger(BatchingEventPublisher.class);
+    public static final String CORRELATION_HEADER = "publisher-correlation-id";
+    public static final String CONFIRMS_CHANNEL = "publisher-confirms";
+
+    private final Map<MessageChannel, FluxSink<PendingEvent>> buffers = new ConcurrentHashMap<>();
+    private final Map<Long, MonoProcessor<Void>> unconfirmed = new ConcurrentHashMap<>();
+    private final AtomicLong correlationIds = new AtomicLong();
+    private final Scheduler scheduler = Schedulers.newSingle("event-publisher");
+    private final DistributionSummary batchSize;
+
+    private final int maxBatchSize;
+    private final Duration linger;
+    private final boolean awaitConfirms;
+    private final Duration confirmTimeout;
+
+    private static class PendingEvent {
+        private final long correlationId;
+        private final Message<?> message;
+        private final MonoProcessor<Void> confirmed;
+
+        private PendingEvent(long correlationId, Message<?> message, MonoProcessor<Void> confirmed) {
+            this.correlationId = correlationId;
+            this.message = message;
+            this.confirmed = confirmed;
+        }
+    }
+
+    @Autowired
+    public BatchingEventPublisher(
+            MeterRegistry registry,
+            @Value("${app.publisher.batchSize:500}") int maxBatchSize,
+            @Value("${app.publisher.lingerMs:10}") int lingerMs,
+            @Value("${app.publisher.awaitConfirms:true}") boolean awaitConfirms,
+            @Value("${app.publisher.confirmTimeoutMs:5000}") int confirmTimeoutMs
+    ) {
+        this.maxBatchSize = maxBatchSize;
+        this.linger = Duration.ofMillis(lingerMs);
+        this.awaitConfirms = awaitConfirms;
+        this.confirmTimeout = Duration.ofMillis(confirmTimeoutMs);
+        this.batchSize = DistributionSummary.builder("publisher.batch.size")
+                .description("Number of events sent per flush")
+                .register(registry);
+        registry.gaugeMapSize("publisher.unconfirmed", Tags.empty(), unconfirmed);
+    }
+
+    @PreDestroy
+    public void stop() {
+        scheduler.dispose();
+    }
+
+    public Mono<Void> publish(MessageChannel channel, Message<?> message) {
+        return Mono.defer(() -> {
+            long correlationId = correlationIds.incrementAndGet();
+            MonoProcessor<Void> confirmed = MonoProcessor.create();
+            Message<?> correlated = MessageBuilder.fromMessage(message).setHeader(CORRELATION_HEADER, correlationId).build();
+            buffers.computeIfAbsent(channel, this::createBuffer).next(new PendingEvent(correlationId, correlated, confirmed));
+            return confirmed
+                    .timeout(confirmTimeout)
+                    .doFinally(signal -> unconfirmed.remove(correlationId));
+        });
+    }
+
+    @ServiceActivator(inputChannel = CONFIRMS_CHANNEL)
+    public void onConfirm(Message<?> confirm) {
+        MonoProcessor<Void> confirmed = removeUnconfirmed(confirm);
+        if (confirmed != null) confirmed.onComplete();
+    }
+
+    //  nacks of the rabbit binder and failed sends of the kafka binder, other errors are none of our business
+    @ServiceActivator(inputChannel = "errorChannel")
+    public void onError(ErrorMessage error) {
+        if (!(error.getPayload() instanceof MessagingException)) return;
+        MessagingException ex = (MessagingException) error.getPayload();
+        if (ex.getFailedMessage() == null) return;
+        MonoProcessor<Void> confirmed = removeUnconfirmed(ex.getFailedMessage());
+        if (confirmed != null) confirmed.onError(ex);
+    }
+
+    private FluxSink<PendingEvent> createBuffer(MessageChannel channel) {
+        UnicastProcessor<PendingEvent> buffer = UnicastProcessor.create(Queues.<PendingEvent>unboundedMultiproducer().get());
+        buffer.bufferTimeout(maxBatchSize, linger)
+                .publishOn(scheduler)
+                .subscribe(events -> flush(channel, events));
+        return buffer.sink();
+    }
+
+    private void flush(MessageChannel channel, List<PendingEvent> events) {
+        LOG.debug("Flushing {} events", events.size());
+        batchSize.record(events.size());
+        for (PendingEvent event : events) {
+            if (awaitConfirms) unconfirmed.put(event.correlationId, event.confirmed);
+            try {
+                channel.send(event.message);
+                if (!awaitConfirms) event.confirmed.onComplete();
+            } catch (RuntimeException ex) {
+                unconfirmed.remove(event.correlationId);
+                event.confirmed.onError(ex);
+            }
+        }
+    }
+
+    private MonoProcessor<Void> removeUnconfirmed(Message<?> message) {
+        Long correlationId = message.getHeaders().get(CORRELATION_HEADER, Long.class);
+        return correlationId == null ? null : unconfirmed.remove(correlationId);
+    }
+}
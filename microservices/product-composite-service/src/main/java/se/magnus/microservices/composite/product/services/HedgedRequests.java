@@ -0,0 +1,161 @@
+package se.magnus.microservices.composite.product.services;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.distribution.ValueAtPercentile;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+//  cuts the tail latency of the reads of ProductCompositeIntegration, opt-in with app.hedging.enabled.
+//  a call that has not answered after the hedge delay is sent a second time and the first answer wins, the other call is cancelled.
+//  the @LoadBalanced client hands the second call to the next instance of the backend, i.e. one slow replica is sidestepped.
+//  the delay is the observed p95 latency of the first calls to the backend, unless delayMs is set. hedges are paid from a budget
+//  per backend that every call to it refills by maxPercent / 100, so they add at most maxPercent to the load of the backend,
+//  bursts are capped at maxBurst hedges.
+//  only for idempotent requests.
+@Component
+public class HedgedRequests {
+    private static final Logger LOG = LoggerFactory.getLogger(HedgedRequests.class);
+    private static final long TOKEN = 1000;
+
+    private final Map<String, Backend> backends = new ConcurrentHashMap<>();
+    private final MeterRegistry registry;
+
+    private final boolean enabled;
+    private final long delayMs;
+    private final long minDelayMs;
+    private final long refill;
+    private final long maxBudget;
+
+    private class Backend {
+        private final AtomicLong budget = new AtomicLong();
+        private final Timer latency;
+        private final Counter fired;
+        private final Counter won;
+        private final Counter throttled;
+
+        private Backend(String name) {
+            this.latency = Timer.builder("hedging.latency")
+                    .description("Latency of the first calls, the hedge delay is its p95")
+                    .tags("backend", name)
+                    .publishPercentiles(0.95)
+                    .register(registry);
+            this.fired = registry.counter("hedging.requests", "backend", name, "outcome", "fired");
+            this.won = registry.counter("hedging.requests", "backend", name, "outcome", "won");
+            this.throttled = registry.counter("hedging.requests", "backend", name, "outcome", "throttled");
+        }
+
+        private Duration delay() {
+            if (delayMs > 0) return Duration.ofMillis(delayMs);
+            long p95 = 0;
+            for (ValueAtPercentile percentile : latency.takeSnapshot().percentileValues()) {
+                p95 = (long) percentile.value(MILLISECONDS);
+            }
+            return Duration.ofMillis(Math.max(minDelayMs, p95));
+        }
+    }
+
+    @Autowired
+    public HedgedRequests(
+            MeterRegistry registry,
+            @Value("${app.hedging.enabled:false}") boolean enabled,
+            @Value("${app.hedging.delayMs:0}") long delayMs,
+            @Value("${app.hedging.minDelayMs:20}") long minDelayMs,
+            @Value("${app.hedging.maxPercent:10}") int maxPercent,
+            @Value("${app.hedging.maxBurst:10}") int maxBurst
+    ) {
+        this.registry = registry;
+        this.enabled = enabled;
+        this.delayMs = delayMs;
+        this.minDelayMs = minDelayMs;
+        this.refill = TOKEN * maxPercent / 100;
+        this.maxBudget = TOKEN * maxBurst;
+    }
+
+    public <T> Mono<T> hedge(String backend, Supplier<Mono<T>> call) {
+        if (!enabled) return call.get();
+        return Mono.defer(() -> {
+            Backend b = backends.computeIfAbsent(backend, Backend::new);
+            Runnable recordLatency = latencyRecorder(b);
+            refill(b);
+            Mono<T> first = call.get()
+                    .doOnSuccess(v -> recordLatency.run())
+                    .doOnCancel(recordLatency);
+            Mono<T> hedged = Mono.delay(b.delay()).flatMap(tick -> fire(b) ? onFirstSignal(call.get(), b.won) : Mono.never());
+            return Mono.first(first, hedged);
+        });
+    }
+
+    public <T> Flux<T> hedgeFlux(String backend, Supplier<Flux<T>> call) {
+        if (!enabled) return call.get();
+        return Flux.defer(() -> {
+            Backend b = backends.computeIfAbsent(backend, Backend::new);
+            Runnable recordLatency = latencyRecorder(b);
+            refill(b);
+            Flux<T> first = call.get()
+                    .doOnComplete(recordLatency)
+                    .doOnCancel(recordLatency);
+            Flux<T> hedged = Mono.delay(b.delay()).flatMapMany(tick -> fire(b) ? onFirstSignal(call.get(), b.won) : Flux.never());
+            return Flux.first(first, hedged);
+        });
+    }
+
+    //  only the first call counts, the latency of a hedge that won would hide how slow the backend is.
+    //  a first call that lost the race is recorded with the time it took until it was cancelled, it would have taken longer.
+    private static Runnable latencyRecorder(Backend b) {
+        long start = System.nanoTime();
+        AtomicBoolean recorded = new AtomicBoolean();
+        return () -> {
+            if (recorded.compareAndSet(false, true)) b.latency.record(System.nanoTime() - start, NANOSECONDS);
+        };
+    }
+
+    private void refill(Backend b) {
+        b.budget.accumulateAndGet(refill, (current, added) -> Math.min(maxBudget, current + added));
+    }
+
+    private boolean fire(Backend b) {
+        long current;
+        do {
+            current = b.budget.get();
+            if (current < TOKEN) {
+                b.throttled.increment();
+                return false;
+            }
+        } while (!b.budget.compareAndSet(current, current - TOKEN));
+        LOG.debug("Hedging a call that is slower than {} ms", b.delay().toMillis());
+        b.fired.increment();
+        return true;
+    }
+
+    //  the first signal of the hedge decides the race. its errors never do, i.e. the answer of the first call is awaited instead
+    private static <T> Mono<T> onFirstSignal(Mono<T> hedge, Counter won) {
+        AtomicBoolean first = new AtomicBoolean(true);
+        return hedge.onErrorResume(ex -> Mono.never()).doOnEach(signal -> {
+            if (first.compareAndSet(true, false)) won.increment();
+        });
+    }
+
+    private static <T> Flux<T> onFirstSignal(Flux<T> hedge, Counter won) {
+        AtomicBoolean first = new AtomicBoolean(true);
+        return hedge.onErrorResume(ex -> Flux.never()).doOnEach(signal -> {
+            if (first.compareAndSet(true, false)) won.increment();
+        });
+    }
+}
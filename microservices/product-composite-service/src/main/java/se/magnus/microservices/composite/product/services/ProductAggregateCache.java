@@ -0,0 +1,132 @@
+package se.magnus.microservices.composite.product.services;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cloud.stream.annotation.EnableBinding;
+import org.springframework.cloud.stream.annotation.Input;
+import org.springframework.cloud.stream.annotation.Output;
+import org.springframework.cloud.stream.annotation.StreamListener;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.SubscribableChannel;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.stereotype.Component;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+import se.magnus.api.composite.product.ProductAggregate;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+//  in-process cache of assembled product aggregates, bounded by size and time to live.
+//  size is counted in summaries (product + recommendations + reviews), so large aggregates weigh more.
+//  an entry is evicted once the event of a write is published, i.e. before the core services applied it. a load that was
+//  under way at the eviction isn't cached, and the entry is evicted again after evictAgainMs, in case a load started after
+//  the eviction still read the state from before the write.
+@EnableBinding(ProductAggregateCache.InvalidationChannels.class)
+@Component
+public class ProductAggregateCache {
+    private static final Logger LOG = LoggerFactory.getLogger(ProductAggregateCache.class);
+    private static final String CACHE_NAME = "productAggregates";
+    private static final int GENERATION_STRIPES = 1024;
+
+    private final Cache<Integer, ProductAggregate> cache;
+    private final InvalidationChannels channels;
+    //  evictions per stripe of productIds, a load puts its aggregate only if the stripe of its product wasn't evicted meanwhile
+    private final AtomicLongArray generations = new AtomicLongArray(GENERATION_STRIPES);
+    private final Scheduler scheduler;
+    private final long evictAgainMs;
+
+    public interface InvalidationChannels {
+        String OUTPUT_INVALIDATIONS = "output-cache-invalidations";
+        String INPUT_INVALIDATIONS = "input-cache-invalidations";
+
+        @Output(OUTPUT_INVALIDATIONS)
+        MessageChannel outputInvalidations();
+        //  bound without a consumer group, i.e. every composite instance receives every invalidation
+        @Input(INPUT_INVALIDATIONS)
+        SubscribableChannel inputInvalidations();
+    }
+
+    @Autowired
+    public ProductAggregateCache(
+            InvalidationChannels channels,
+            MeterRegistry registry,
+            @Value("${app.product-composite.cache.maxSize:10000}") long maxSize,
+            @Value("${app.product-composite.cache.ttlSec:30}") int ttlSec,
+            @Value("${app.product-composite.cache.evictAgainMs:2000}") long evictAgainMs
+    ) {
+        this(channels, registry, maxSize, ttlSec, evictAgainMs, Schedulers.parallel());
+    }
+
+    ProductAggregateCache(InvalidationChannels channels, MeterRegistry registry, long maxSize, int ttlSec, long evictAgainMs, Scheduler scheduler) {
+        this.channels = channels;
+        this.evictAgainMs = evictAgainMs;
+        this.scheduler = scheduler;
+        this.cache = Caffeine.newBuilder()
+                .maximumWeight(maxSize)
+                .weigher((Integer productId, ProductAggregate aggregate) -> weigh(aggregate))
+                .expireAfterWrite(Duration.ofSeconds(ttlSec))
+                .recordStats()
+                .build();
+        //  exposes cache.gets (hit/miss), cache.puts, cache.evictions and cache.size on /actuator/metrics
+        CaffeineCacheMetrics.monitor(registry, cache, CACHE_NAME);
+    }
+
+    public ProductAggregate get(int productId) {
+        return cache.getIfPresent(productId);
+    }
+
+    //  to be read before the core services are asked for the aggregate, see put()
+    public long generation(int productId) {
+        return generations.get(stripe(productId));
+    }
+
+    //  an eviction between the check and the put takes the entry out again
+    public void put(ProductAggregate aggregate, long generation) {
+        int productId = aggregate.getProductId();
+        if (generation(productId) != generation) return;
+        cache.put(productId, aggregate);
+        if (generation(productId) != generation) cache.asMap().remove(productId, aggregate);
+    }
+
+    //  drops the entry held by this instance only, now and once more when the write is likely applied
+    public void evict(int productId) {
+        drop(productId);
+        scheduler.schedule(() -> drop(productId), evictAgainMs, TimeUnit.MILLISECONDS);
+    }
+
+    //  drops the entry held by this instance and tells every other composite instance to do the same
+    public void invalidate(int productId) {
+        evict(productId);
+        channels.outputInvalidations().send(MessageBuilder.withPayload(productId).build());
+    }
+
+    @StreamListener(InvalidationChannels.INPUT_INVALIDATIONS)
+    public void onInvalidation(Integer productId) {
+        LOG.debug("Received cache invalidation for productId: {}", productId);
+        evict(productId);
+    }
+
+    private void drop(int productId) {
+        generations.incrementAndGet(stripe(productId));
+        cache.invalidate(productId);
+    }
+
+    private static int stripe(int productId) {
+        return Math.floorMod(productId, GENERATION_STRIPES);
+    }
+
+    private static int weigh(ProductAggregate aggregate) {
+        int weight = 1;
+        if (aggregate.getRecommendations() != null) weight += aggregate.getRecommendations().size();
+        if (aggregate.getReviews() != null) weight += aggregate.getReviews().size();
+        return weight;
+    }
+}
@@ -1,22 +1,31 @@
 package se.magnus.microservices.composite.product.services;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
 import io.github.resilience4j.circuitbreaker.annotation.CircuitBreaker;
 import io.github.resilience4j.retry.annotation.Retry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.cloud.stream.annotation.EnableBinding;
 import org.springframework.cloud.stream.annotation.Output;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.messaging.Message;
 import org.springframework.messaging.MessageChannel;
 import org.springframework.messaging.support.MessageBuilder;
 import org.springframework.stereotype.Component;
 import org.springframework.web.reactive.function.client.WebClient;
 import org.springframework.web.reactive.function.client.WebClientResponseException;
 import org.springframework.web.util.UriComponentsBuilder;
+import reactor.core.Exceptions;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+import se.magnus.api.composite.product.RecommendationSummary;
+import se.magnus.api.composite.product.ReviewSummary;
 import se.magnus.api.core.product.Product;
 import se.magnus.api.core.product.ProductService;
 import se.magnus.api.core.recommendation.Recommendation;
@@ -27,21 +36,35 @@ import se.magnus.api.event.Event;
 import se.magnus.util.exceptions.InvalidInputException;
 import se.magnus.util.exceptions.NotFoundException;
 import se.magnus.util.http.HttpErrorInfo;
+import se.magnus.util.http.SmileCodecConfiguration;
 
 import java.io.IOException;
 import java.net.URI;
 import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Supplier;
 
+import static com.fasterxml.jackson.databind.DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES;
+import static java.util.Collections.emptyList;
+
+import static org.springframework.http.MediaType.APPLICATION_JSON;
 import static reactor.core.publisher.Flux.empty;
+import static se.magnus.api.event.Event.BULK_HEADER;
 import static se.magnus.api.event.Event.Type.CREATE;
 import static se.magnus.api.event.Event.Type.DELETE;
+import static se.magnus.api.event.Event.Type.UPSERT;
 
 @EnableBinding(ProductCompositeIntegration.MessageSources.class)
 @Component
 public class ProductCompositeIntegration implements ProductService, RecommendationService, ReviewService {
     private static final Logger LOG = LoggerFactory.getLogger(ProductCompositeIntegration.class);
+    //  marks the empty list that stands in for a failed call, an aggregate built from it is incomplete
+    public static final String FALLBACK_HEADER = "X-Fallback";
     private final WebClient.Builder builder;
     private final ObjectMapper mapper;
+    private final ObjectMapper smileMapper = new ObjectMapper(new SmileFactory()).findAndRegisterModules().configure(FAIL_ON_UNKNOWN_PROPERTIES, false);
     private WebClient webClient;
 
     //  spring.application.name (eureka virtual hostname)
@@ -50,7 +73,11 @@ public class ProductCompositeIntegration implements ProductService, Recommendati
     private final String reviewServiceUrl = "http://review";
 
     private final MessageSources messageSources;
+    private final ProductAggregateCache cache;
+    private final BatchingEventPublisher publisher;
+    private final HedgedRequests hedging;
     private final int productServiceTimeoutSec;
+    private final MediaType[] accept;
 
     public interface MessageSources {
         String OUTPUT_PRODUCTS = "output-products";
@@ -70,12 +97,21 @@ public class ProductCompositeIntegration implements ProductService, Recommendati
             WebClient.Builder builder,
             ObjectMapper mapper,
             MessageSources messageSources,
-            @Value("${app.product-service.timeoutSec:2}") int productServiceTimeoutSec
+            ProductAggregateCache cache,
+            ObjectProvider<BatchingEventPublisher> publisher,
+            HedgedRequests hedging,
+            @Value("${app.product-service.timeoutSec:2}") int productServiceTimeoutSec,
+            @Value("${app.product-composite.smile:false}") boolean smile
     ) {
         this.builder = builder;
         this.mapper = mapper;
         this.messageSources = messageSources;
+        this.cache = cache;
+        this.publisher = publisher.getIfAvailable();
+        this.hedging = hedging;
         this.productServiceTimeoutSec = productServiceTimeoutSec;
+        //  the core services answer in Smile if asked to, it is smaller and cheaper to decode than JSON
+        this.accept = smile ? new MediaType[] { SmileCodecConfiguration.APPLICATION_SMILE, APPLICATION_JSON } : new MediaType[] { APPLICATION_JSON };
     }
 
     @Retry(name = "product")
@@ -85,64 +121,281 @@ public class ProductCompositeIntegration implements ProductService, Recommendati
         URI url = UriComponentsBuilder.fromUriString(productServiceUrl + "/product/{productId}?delay={delay}&faultPercent={faultPercent}").build(productId, delay, faultPercent);
         LOG.debug("Will call the getProduct API on URL: {}", url);
 
+        Supplier<Mono<Product>> call = () -> getWebClient().get().uri(url).accept(accept).retrieve().bodyToMono(Product.class);
+        //  a simulated delay or fault is meant to reach the caller, a hedge would hide it and it would skew the p95 of the backend
+        Mono<Product> product = delay == 0 && faultPercent == 0 ? hedging.hedge("product", call) : call.get();
+        return product
+                .log().onErrorMap(WebClientResponseException.class, this::handleException)
+                .timeout(Duration.ofSeconds(productServiceTimeoutSec));
+    }
+
+    @Override
+    public Flux<Product> getProducts(List<Integer> productIds) {
+        URI url = UriComponentsBuilder.fromUriString(productServiceUrl + "/product").queryParam("productIds", productIds.toArray()).build().toUri();
+        LOG.debug("Will call the getProducts API on URL: {}", url);
+
         return getWebClient().get()
-                .uri(url).retrieve().bodyToMono(Product.class)
+                .uri(url).accept(accept).retrieve().bodyToFlux(Product.class)
                 .log().onErrorMap(WebClientResponseException.class, this::handleException)
                 .timeout(Duration.ofSeconds(productServiceTimeoutSec));
     }
 
     @Override
     public Product createProduct(Product body) {
-        messageSources.outputProducts().send(MessageBuilder.withPayload(new Event<>(CREATE, body.getProductId(), body)).build());
+        await(createProductAsync(body));
+        return body;
+    }
+
+    public Mono<Void> createProductAsync(Product body) {
+        return publish(messageSources.outputProducts(), new Event<>(CREATE, body.getProductId(), body));
+    }
+
+    //  products are keyed, i.e. partitioned, one by one, the consumers batch them up again
+    @Override
+    public List<Product> createProducts(List<Product> body) {
+        await(Flux.fromIterable(body).flatMap(this::createProductAsync).then());
+        return body;
+    }
+
+    @Override
+    public Product upsertProduct(Product body) {
+        await(upsertProductAsync(body));
+        return body;
+    }
+
+    public Mono<Void> upsertProductAsync(Product body) {
+        return publish(messageSources.outputProducts(), new Event<>(UPSERT, body.getProductId(), body));
+    }
+
+    @Override
+    public List<Product> upsertProducts(List<Product> body) {
+        await(Flux.fromIterable(body).flatMap(this::upsertProductAsync).then());
         return body;
     }
 
     @Override
     public void deleteProduct(int productId) {
-        messageSources.outputProducts().send(MessageBuilder.withPayload(new Event<>(DELETE, productId, null)).build());
+        await(deleteProductAsync(productId));
+    }
+
+    public Mono<Void> deleteProductAsync(int productId) {
+        return publish(messageSources.outputProducts(), new Event<>(DELETE, productId, null));
     }
 
     @Override
     public Recommendation createRecommendation(Recommendation body) {
-        messageSources.outputRecommendations().send(MessageBuilder.withPayload(new Event<>(CREATE, body.getProductId(), body)).build());
+        await(publish(messageSources.outputRecommendations(), new Event<>(CREATE, body.getProductId(), body)));
         return body;
     }
 
     @Override
-    public Flux<Recommendation> getRecommendations(int productId) {
+    public List<Recommendation> createRecommendations(List<Recommendation> body) {
+        await(createRecommendationsAsync(body));
+        return body;
+    }
 
-        String url = recommendationServiceUrl + "/recommendation?productId=" + productId;
+    public Mono<Void> createRecommendationsAsync(List<Recommendation> body) {
+        return publishBulk(messageSources.outputRecommendations(), new Event<>(CREATE, body.get(0).getProductId(), body));
+    }
 
+    @Override
+    public Recommendation upsertRecommendation(Recommendation body) {
+        await(publish(messageSources.outputRecommendations(), new Event<>(UPSERT, body.getProductId(), body)));
+        return body;
+    }
+
+    @Override
+    public List<Recommendation> upsertRecommendations(List<Recommendation> body) {
+        await(upsertRecommendationsAsync(body));
+        return body;
+    }
+
+    public Mono<Void> upsertRecommendationsAsync(List<Recommendation> body) {
+        return publishBulk(messageSources.outputRecommendations(), new Event<>(UPSERT, body.get(0).getProductId(), body));
+    }
+
+    @Override
+    public Flux<Recommendation> getRecommendations(int productId, Integer afterId, int limit) {
+        URI url = pageOf(UriComponentsBuilder.fromUriString(recommendationServiceUrl + "/recommendation").queryParam("productId", productId), afterId, limit);
         LOG.debug("Will call the getRecommendations API on URL: {}", url);
 
         // Return an empty result if something goes wrong to make it possible for the composite service to return partial responses
-        return getWebClient().get().uri(url).retrieve().bodyToFlux(Recommendation.class).log().onErrorResume(error -> empty());
+        return hedging.hedgeFlux("recommendation", () -> getWebClient().get().uri(url).accept(accept).retrieve().bodyToFlux(Recommendation.class))
+                .log().onErrorResume(error -> empty());
+    }
+
+    @Override
+    public Flux<RecommendationSummary> getRecommendationSummaries(int productId, Integer afterId, int limit) {
+        URI url = pageOf(UriComponentsBuilder.fromUriString(recommendationServiceUrl + "/recommendation/summary").queryParam("productId", productId), afterId, limit);
+        LOG.debug("Will call the getRecommendationSummaries API on URL: {}", url);
+
+        // Return an empty result if something goes wrong to make it possible for the composite service to return partial responses
+        return hedging.hedgeFlux("recommendation", () -> getWebClient().get().uri(url).accept(accept).retrieve().bodyToFlux(RecommendationSummary.class))
+                .log().onErrorResume(error -> empty());
+    }
+
+    //  the summaries carry no service address, the recommendation service sends its address as a response header instead
+    public Mono<ResponseEntity<List<RecommendationSummary>>> getRecommendationSummariesWithAddress(int productId, int limit) {
+        URI url = pageOf(UriComponentsBuilder.fromUriString(recommendationServiceUrl + "/recommendation/summary").queryParam("productId", productId), null, limit);
+        LOG.debug("Will call the getRecommendationSummaries API on URL: {}", url);
+
+        return hedging.hedge("recommendation", () -> getWebClient().get().uri(url).accept(accept).retrieve().toEntityList(RecommendationSummary.class))
+                .log().onErrorResume(this::fallbackList);
+    }
+
+    @Override
+    public Flux<Recommendation> getRecommendationsByProductIds(List<Integer> productIds) {
+        return getRecommendationListByProductIds(productIds).flatMapIterable(ResponseEntity::getBody);
+    }
+
+    public Mono<ResponseEntity<List<Recommendation>>> getRecommendationListByProductIds(List<Integer> productIds) {
+        URI url = UriComponentsBuilder.fromUriString(recommendationServiceUrl + "/recommendation").queryParam("productIds", productIds.toArray()).build().toUri();
+        LOG.debug("Will call the getRecommendationsByProductIds API on URL: {}", url);
+
+        // Return an empty result if something goes wrong to make it possible for the composite service to return partial responses
+        return getWebClient().get().uri(url).accept(accept).retrieve().toEntityList(Recommendation.class).log().onErrorResume(this::fallbackList);
     }
 
     @Override
     public void deleteRecommendations(int productId) {
-        messageSources.outputRecommendations().send(MessageBuilder.withPayload(new Event<>(DELETE, productId, null)).build());
+        await(deleteRecommendationsAsync(productId));
+    }
+
+    public Mono<Void> deleteRecommendationsAsync(int productId) {
+        return publish(messageSources.outputRecommendations(), new Event<>(DELETE, productId, null));
     }
 
     @Override
     public Review createReview(Review body) {
-        messageSources.outputReviews().send(MessageBuilder.withPayload(new Event<>(CREATE, body.getProductId(), body)).build());
+        await(publish(messageSources.outputReviews(), new Event<>(CREATE, body.getProductId(), body)));
+        return body;
+    }
+
+    @Override
+    public List<Review> createReviews(List<Review> body) {
+        await(createReviewsAsync(body));
+        return body;
+    }
+
+    public Mono<Void> createReviewsAsync(List<Review> body) {
+        return publishBulk(messageSources.outputReviews(), new Event<>(CREATE, body.get(0).getProductId(), body));
+    }
+
+    @Override
+    public Review upsertReview(Review body) {
+        await(publish(messageSources.outputReviews(), new Event<>(UPSERT, body.getProductId(), body)));
         return body;
     }
 
     @Override
-    public Flux<Review> getReviews(int productId) {
-        String url = reviewServiceUrl + "/review?productId=" + productId;
+    public List<Review> upsertReviews(List<Review> body) {
+        await(upsertReviewsAsync(body));
+        return body;
+    }
+
+    public Mono<Void> upsertReviewsAsync(List<Review> body) {
+        return publishBulk(messageSources.outputReviews(), new Event<>(UPSERT, body.get(0).getProductId(), body));
+    }
+
+    @Override
+    public Flux<Review> getReviews(int productId, Integer afterId, int limit) {
+        URI url = pageOf(UriComponentsBuilder.fromUriString(reviewServiceUrl + "/review").queryParam("productId", productId), afterId, limit);
         LOG.debug("Will call the getReviews API on URL: {}", url);
 
         // Return an empty result if something goes wrong to make it possible for the composite service to return partial responses
-        return getWebClient().get().uri(url).retrieve().bodyToFlux(Review.class).log().onErrorResume(error -> empty());
+        return hedging.hedgeFlux("review", () -> getWebClient().get().uri(url).accept(accept).retrieve().bodyToFlux(Review.class))
+                .log().onErrorResume(error -> empty());
+    }
+
+    @Override
+    public Flux<ReviewSummary> getReviewSummaries(int productId, Integer afterId, int limit) {
+        URI url = pageOf(UriComponentsBuilder.fromUriString(reviewServiceUrl + "/review/summary").queryParam("productId", productId), afterId, limit);
+        LOG.debug("Will call the getReviewSummaries API on URL: {}", url);
+
+        // Return an empty result if something goes wrong to make it possible for the composite service to return partial responses
+        return hedging.hedgeFlux("review", () -> getWebClient().get().uri(url).accept(accept).retrieve().bodyToFlux(ReviewSummary.class))
+                .log().onErrorResume(error -> empty());
+    }
+
+    public Mono<ResponseEntity<List<ReviewSummary>>> getReviewSummariesWithAddress(int productId, int limit) {
+        URI url = pageOf(UriComponentsBuilder.fromUriString(reviewServiceUrl + "/review/summary").queryParam("productId", productId), null, limit);
+        LOG.debug("Will call the getReviewSummaries API on URL: {}", url);
 
+        return hedging.hedge("review", () -> getWebClient().get().uri(url).accept(accept).retrieve().toEntityList(ReviewSummary.class))
+                .log().onErrorResume(this::fallbackList);
+    }
+
+    @Override
+    public Flux<Review> getReviewsByProductIds(List<Integer> productIds) {
+        return getReviewListByProductIds(productIds).flatMapIterable(ResponseEntity::getBody);
+    }
+
+    public Mono<ResponseEntity<List<Review>>> getReviewListByProductIds(List<Integer> productIds) {
+        URI url = UriComponentsBuilder.fromUriString(reviewServiceUrl + "/review").queryParam("productIds", productIds.toArray()).build().toUri();
+        LOG.debug("Will call the getReviewsByProductIds API on URL: {}", url);
+
+        // Return an empty result if something goes wrong to make it possible for the composite service to return partial responses
+        return getWebClient().get().uri(url).accept(accept).retrieve().toEntityList(Review.class).log().onErrorResume(this::fallbackList);
     }
 
     @Override
     public void deleteReviews(int productId) {
-        messageSources.outputReviews().send(MessageBuilder.withPayload(new Event<>(DELETE, productId, null)).build());
+        await(deleteReviewsAsync(productId));
+    }
+
+    public Mono<Void> deleteReviewsAsync(int productId) {
+        return publish(messageSources.outputReviews(), new Event<>(DELETE, productId, null));
+    }
+
+    //  every write to a product makes its cached aggregate stale
+    private Mono<Void> publish(MessageChannel channel, Event<Integer, ?> event) {
+        return send(channel, MessageBuilder.withPayload(event).build())
+                .doOnSuccess(v -> cache.evict(event.getKey()));
+    }
+
+    //  all items of one product in a single message, the consumer stores them with one bulk write
+    private Mono<Void> publishBulk(MessageChannel channel, Event<Integer, ? extends List<?>> event) {
+        return send(channel, MessageBuilder.withPayload(event).setHeader(BULK_HEADER, true).build())
+                .doOnSuccess(v -> cache.evict(event.getKey()));
+    }
+
+    //  without the batched publisher the event is handed to the binder on subscription, off the event loop since the
+    //  send may block, e.g. on the fsync of the outbox or on the broker with a synchronous producer
+    private Mono<Void> send(MessageChannel channel, Message<?> message) {
+        if (publisher != null) return publisher.publish(channel, message);
+        return Mono.<Void>fromRunnable(() -> channel.send(message)).subscribeOn(Schedulers.boundedElastic());
+    }
+
+    //  the blocking API methods throw if the event can't be published. an event loop thread can't wait for the broker,
+    //  there a failure that isn't known on return, e.g. a nack of the batched publisher, is only logged.
+    private void await(Mono<Void> published) {
+        CompletableFuture<Void> sent = published.toFuture();
+        if (!sent.isDone() && Schedulers.isInNonBlockingThread()) {
+            sent.whenComplete((v, ex) -> {
+                if (ex != null) LOG.warn("Publishing an event failed: {}", ex.toString());
+            });
+            return;
+        }
+        try {
+            sent.join();
+        } catch (CompletionException ex) {
+            throw Exceptions.propagate(ex.getCause());
+        }
+    }
+
+    private <T> Mono<ResponseEntity<List<T>>> fallbackList(Throwable error) {
+        LOG.warn("Returning an empty fallback list: {}", error.toString());
+        return Mono.just(ResponseEntity.ok().header(FALLBACK_HEADER, "true").body(emptyList()));
+    }
+
+    public static boolean isFallback(ResponseEntity<?> response) {
+        return response.getHeaders().containsKey(FALLBACK_HEADER);
+    }
+
+    private URI pageOf(UriComponentsBuilder builder, Integer afterId, int limit) {
+        if (afterId != null) builder.queryParam("afterId", afterId);
+        if (limit > 0) builder.queryParam("limit", limit);
+        return builder.build().toUri();
     }
 
     private WebClient getWebClient() {
@@ -174,8 +427,10 @@ public class ProductCompositeIntegration implements ProductService, Recommendati
     }
 
     private String getErrorMessage(WebClientResponseException ex) {
+        //  the error is encoded like the response would have been
+        ObjectMapper errorMapper = SmileCodecConfiguration.APPLICATION_SMILE.includes(ex.getHeaders().getContentType()) ? smileMapper : mapper;
         try {
-            return mapper.readValue(ex.getResponseBodyAsString(), HttpErrorInfo.class).getMessage();
+            return errorMapper.readValue(ex.getResponseBodyAsByteArray(), HttpErrorInfo.class).getMessage();
         } catch (IOException ioex) {
             return ex.getMessage();
         }
@@ -1,105 +1,255 @@
 package se.magnus.microservices.composite.product.services;
 
 import io.github.resilience4j.circuitbreaker.CallNotPermittedException;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.retry.RetryException;
 import org.springframework.security.core.context.ReactiveSecurityContextHolder;
 import org.springframework.security.core.context.SecurityContext;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ServerWebInputException;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 import se.magnus.api.composite.product.*;
 import se.magnus.api.core.product.Product;
 import se.magnus.api.core.recommendation.Recommendation;
 import se.magnus.api.core.review.Review;
+import se.magnus.microservices.composite.product.readmodel.ProductAggregateReadModel;
+import se.magnus.util.exceptions.InvalidInputException;
 import se.magnus.util.exceptions.NotFoundException;
 import se.magnus.util.http.ServiceUtil;
 
-import java.util.List;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
 import java.util.stream.Collectors;
 
+import static java.util.Collections.emptyList;
+import static se.magnus.util.http.ServiceAddressFilter.SERVICE_ADDRESS_HEADER;
+
 @RestController
 public class ProductCompositeServiceImpl implements ProductCompositeService {
 
     private static final Logger LOG = LoggerFactory.getLogger(ProductCompositeServiceImpl.class);
     private final ServiceUtil serviceUtil;
     private final ProductCompositeIntegration integration;
+    private final ProductAggregateCache cache;
+    private final SingleFlight<Integer, ResponseEntity<ProductAggregate>> singleFlight;
+    private final ProductAggregateReadModel readModel;
+    private final int maxBatchSize;
 
     @Autowired
-    public ProductCompositeServiceImpl(ServiceUtil serviceUtil, ProductCompositeIntegration integration) {
+    public ProductCompositeServiceImpl(ServiceUtil serviceUtil, ProductCompositeIntegration integration, ProductAggregateCache cache, MeterRegistry registry,
+                                       ObjectProvider<ProductAggregateReadModel> readModel,
+                                       @Value("${app.product-composite.maxBatchSize:100}") int maxBatchSize) {
         this.serviceUtil = serviceUtil;
+        this.maxBatchSize = maxBatchSize;
         this.integration = integration;
+        this.cache = cache;
+        this.singleFlight = new SingleFlight<>("productAggregates", registry);
+        this.readModel = readModel.getIfAvailable();
     }
 
     @Override
     public Mono<Void> createCompositeProduct(ProductAggregate body) {
-        return ReactiveSecurityContextHolder.getContext().doOnSuccess(sc -> internalCreateCompositeProduct(body)).then();
+        return ReactiveSecurityContextHolder.getContext().then(Mono.defer(() -> internalCreateCompositeProduct(body)));
     }
 
-    public void internalCreateCompositeProduct(ProductAggregate body) {
-        try {
-            LOG.debug("createCompositeProduct: creates a new composite entity for productId: {}", body.getProductId());
-            Product product = new Product(body.getProductId(), body.getName(), body.getWeight(), null);
-            integration.createProduct(product);
-            if (body.getRecommendations() != null) {
-                body.getRecommendations().forEach(r -> {
-                    Recommendation recommendation = new Recommendation(body.getProductId(), r.getRecommendationId(), r.getAuthor(), r.getRate(), r.getContent(), null);
-                    integration.createRecommendation(recommendation);
-                });
-            }
-            if (body.getReviews() != null) {
-                body.getReviews().forEach(r -> {
-                    Review review = new Review(body.getProductId(), r.getReviewId(), r.getAuthor(), r.getSubject(), r.getContent(), null);
-                    integration.createReview(review);
-                });
-            }
-            LOG.debug("createCompositeProduct: composite entities created for productId: {}", body.getProductId());
-        } catch (RuntimeException re) {
-            LOG.warn("createCompositeProduct failed: {}", re.toString());
-            throw re;
+    //  completes once every event is handed over, or confirmed by the broker when publishing in batches
+    public Mono<Void> internalCreateCompositeProduct(ProductAggregate body) {
+        LOG.debug("createCompositeProduct: creates a new composite entity for productId: {}", body.getProductId());
+        return writeCompositeProduct(body, false)
+                .doOnSuccess(v -> LOG.debug("createCompositeProduct: composite entities created for productId: {}", body.getProductId()))
+                .doOnError(ex -> LOG.warn("createCompositeProduct failed: {}", ex.toString()));
+    }
+
+    @Override
+    public Mono<Void> upsertCompositeProduct(ProductAggregate body) {
+        return ReactiveSecurityContextHolder.getContext().then(Mono.defer(() -> internalUpsertCompositeProduct(body)));
+    }
+
+    //  same events as a create, but applied as create-or-replace by the core services, i.e. a re-import is no error
+    public Mono<Void> internalUpsertCompositeProduct(ProductAggregate body) {
+        LOG.debug("upsertCompositeProduct: creates or replaces the composite entity for productId: {}", body.getProductId());
+        return writeCompositeProduct(body, true)
+                .doOnSuccess(v -> LOG.debug("upsertCompositeProduct: composite entities created or replaced for productId: {}", body.getProductId()))
+                .doOnError(ex -> LOG.warn("upsertCompositeProduct failed: {}", ex.toString()));
+    }
+
+    private Mono<Void> writeCompositeProduct(ProductAggregate body, boolean upsert) {
+        List<Mono<Void>> events = new ArrayList<>();
+        Product product = new Product(body.getProductId(), body.getName(), body.getWeight(), null);
+        events.add(upsert ? integration.upsertProductAsync(product) : integration.createProductAsync(product));
+        //  one event per kind of item, however many recommendations and reviews the product has
+        if (body.getRecommendations() != null && !body.getRecommendations().isEmpty()) {
+            List<Recommendation> recommendations = body.getRecommendations().stream()
+                    .map(r -> new Recommendation(body.getProductId(), r.getRecommendationId(), r.getAuthor(), r.getRate(), r.getContent(), null))
+                    .collect(Collectors.toList());
+            events.add(upsert ? integration.upsertRecommendationsAsync(recommendations) : integration.createRecommendationsAsync(recommendations));
+        }
+        if (body.getReviews() != null && !body.getReviews().isEmpty()) {
+            List<Review> reviews = body.getReviews().stream()
+                    .map(r -> new Review(body.getProductId(), r.getReviewId(), r.getAuthor(), r.getSubject(), r.getContent(), null))
+                    .collect(Collectors.toList());
+            events.add(upsert ? integration.upsertReviewsAsync(reviews) : integration.createReviewsAsync(reviews));
         }
+        return Mono.when(events).doOnSuccess(v -> cache.invalidate(body.getProductId()));
     }
 
     @Override
-    public Mono<ProductAggregate> getCompositeProduct(int productId, int delay, int faultPercent) {
-        return Mono.zip(
-                values -> createProductAggregate((Product) values[0],
-                        castObjToTypedList(Recommendation.class, values[1]),
-                        castObjToTypedList(Review.class, values[2]),
-                        serviceUtil.getServiceAddress()),
-                integration.getProduct(productId, delay, faultPercent)
-                        .onErrorReturn(CallNotPermittedException.class, getProductFallbackValue(productId))
-                        .onErrorReturn(RetryException.class, getProductFallbackValue(productId))
-                        .onErrorResume(RuntimeException.class, Mono::error),
-                integration.getRecommendations(productId).collectList(),
-                integration.getReviews(productId).collectList())
+    public Mono<ResponseEntity<ProductAggregate>> getCompositeProduct(int productId, int limit, int delay, int faultPercent, String ifNoneMatch) {
+        return getAggregate(productId, limit, delay, faultPercent).map(response -> toResponse(response, ifNoneMatch));
+    }
+
+    //  a client holding the current version gets neither the aggregate nor its serialization
+    private ResponseEntity<ProductAggregate> toResponse(ResponseEntity<ProductAggregate> response, String ifNoneMatch) {
+        if (isIncomplete(response)) return response;
+        String etag = etagOf(response.getBody());
+        if (ifNoneMatch != null && (ifNoneMatch.equals("*") || ifNoneMatch.contains(etag))) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).build();
+        }
+        return ResponseEntity.ok().eTag(etag).body(response.getBody());
+    }
+
+    private Mono<ResponseEntity<ProductAggregate>> getAggregate(int productId, int limit, int delay, int faultPercent) {
+        if (limit < 0) throw new InvalidInputException("Invalid limit: " + limit);
+        //  requests simulating delays or faults always go to the core services
+        boolean cacheable = delay == 0 && faultPercent == 0;
+        //  with the read model a read is a single lookup, products it doesn't know yet are read from the core services
+        if (cacheable && readModel != null) {
+            ProductAggregate materialized = readModel.get(productId);
+            if (materialized != null) return Mono.just(ResponseEntity.ok(limit > 0 ? createTopN(materialized, limit) : materialized));
+        }
+        if (cacheable) {
+            ProductAggregate cached = cache.get(productId);
+            if (cached != null) return Mono.just(ResponseEntity.ok(limit > 0 ? createTopN(cached, limit) : cached));
+        }
+
+        //  concurrent misses for the same product share one fan-out to the core services
+        if (cacheable && limit == 0) {
+            return singleFlight.execute(productId, () -> loadCompositeProduct(productId, limit, delay, faultPercent, true));
+        }
+        return loadCompositeProduct(productId, limit, delay, faultPercent, cacheable);
+    }
+
+    //  an aggregate with a fallback part is answered, but neither cached here nor by the clients
+    //  a write to the product while the core services are asked keeps the aggregate out of the cache, it may be the one from before
+    private Mono<ResponseEntity<ProductAggregate>> loadCompositeProduct(int productId, int limit, int delay, int faultPercent, boolean cacheable) {
+        return Mono.defer(() -> {
+            long generation = cache.generation(productId);
+            return Mono.zip(
+                    getProductWithFallback(productId, delay, faultPercent),
+                    integration.getRecommendationSummariesWithAddress(productId, limit),
+                    integration.getReviewSummariesWithAddress(productId, limit))
+                    .map(values -> {
+                        ProductAggregate aggregate = createProductAggregate(values.getT1(), values.getT2(), values.getT3(), serviceUtil.getServiceAddress());
+                        if (isFallback(aggregate) || ProductCompositeIntegration.isFallback(values.getT2()) || ProductCompositeIntegration.isFallback(values.getT3())) {
+                            return ResponseEntity.ok().cacheControl(CacheControl.noStore()).body(aggregate);
+                        }
+                        //  a limited aggregate is incomplete, it must not be served to other requests
+                        if (cacheable && limit == 0) cache.put(aggregate, generation);
+                        return ResponseEntity.ok(aggregate);
+                    });
+        })
                 .doOnError(ex -> LOG.warn("getCompositeProduct failed: {}", ex.toString()))
                 .log();
     }
 
     @Override
-    public Mono<Void> deleteCompositeProduct(int productId) {
-        return ReactiveSecurityContextHolder.getContext().doOnSuccess(sc -> internalDeleteCompositeProduct(productId)).then();
+    public Flux<ServerSentEvent<Object>> streamCompositeProduct(int productId) {
+        ProductAggregate cached = cache.get(productId);
+        if (cached != null) {
+            return Flux.concat(
+                    Flux.just(event("product", createProductHeader(cached))),
+                    Flux.fromIterable(cached.getRecommendations()).map(r -> event("recommendation", r)),
+                    Flux.fromIterable(cached.getReviews()).map(r -> event("review", r)));
+        }
+
+        String serviceAddress = serviceUtil.getServiceAddress();
+        //  the product goes first, recommendations and reviews are interleaved as they arrive.
+        //  all three are requested at once, what arrives before the product is held back until it is sent.
+        return Flux.mergeSequential(
+                getProductWithFallback(productId, 0, 0)
+                        .map(p -> event("product", new ProductAggregate(p.getProductId(), p.getName(), p.getWeight(), p.getVersion(), null, null,
+                                new ServiceAddresses(serviceAddress, p.getServiceAddress(), null, null)))),
+                Flux.merge(
+                        integration.getRecommendationSummaries(productId, null, 0).map(r -> event("recommendation", r)),
+                        integration.getReviewSummaries(productId, null, 0).map(r -> event("review", r))))
+                .doOnError(ex -> LOG.warn("streamCompositeProduct failed: {}", ex.toString()));
     }
 
-    public void internalDeleteCompositeProduct(int productId) {
-        try {
-            LOG.debug("deleteCompositeProduct: Deletes a product aggregate for productId: {}", productId);
+    @Override
+    public Flux<ProductAggregate> getCompositeProducts(List<Integer> ids) {
+        //  the ids end up in the query strings of the calls to the core services
+        if (ids.size() > maxBatchSize) throw new ServerWebInputException("Too many ids: " + ids.size() + ", at most " + maxBatchSize + " are allowed");
+        ids.forEach(productId -> {
+            if (productId < 1) throw new InvalidInputException("Invalid productId: " + productId);
+        });
+        List<Integer> productIds = ids.stream().distinct().collect(Collectors.toList());
 
-            integration.deleteProduct(productId);
-            integration.deleteRecommendations(productId);
-            integration.deleteReviews(productId);
+        // 1. Serve what we can from the cache
+        Map<Integer, ProductAggregate> aggregates = new HashMap<>();
+        List<Integer> missingIds = new ArrayList<>();
+        Map<Integer, Long> generations = new HashMap<>();
+        productIds.forEach(productId -> {
+            ProductAggregate cached = cache.get(productId);
+            if (cached != null) aggregates.put(productId, cached);
+            else {
+                missingIds.add(productId);
+                generations.put(productId, cache.generation(productId));
+            }
+        });
+        if (missingIds.isEmpty()) return Flux.fromIterable(inRequestedOrder(productIds, aggregates));
 
-            LOG.debug("deleteCompositeProduct: aggregate entities deleted for productId: {}", productId);
+        // 2. Fetch the rest with one call per core service, regardless of the number of products
+        return Mono.zip(
+                integration.getProducts(missingIds).collectList(),
+                integration.getRecommendationListByProductIds(missingIds),
+                integration.getReviewListByProductIds(missingIds))
+                .flatMapIterable(values -> {
+                    //  with a fallback list every fetched aggregate may lack its recommendations or reviews
+                    boolean complete = !ProductCompositeIntegration.isFallback(values.getT2()) && !ProductCompositeIntegration.isFallback(values.getT3());
+                    createProductAggregates(values.getT1(), values.getT2().getBody(), values.getT3().getBody(), serviceUtil.getServiceAddress())
+                            .forEach(aggregate -> {
+                                if (complete) cache.put(aggregate, generations.get(aggregate.getProductId()));
+                                aggregates.put(aggregate.getProductId(), aggregate);
+                            });
+                    return inRequestedOrder(productIds, aggregates);
+                })
+                .doOnError(ex -> LOG.warn("getCompositeProducts failed: {}", ex.toString()))
+                .log();
+    }
 
-        } catch (RuntimeException re) {
-            LOG.warn("deleteCompositeProduct failed: {}", re.toString());
-            throw re;
-        }
+    @Override
+    public Mono<Void> deleteCompositeProduct(int productId) {
+        return ReactiveSecurityContextHolder.getContext().then(Mono.defer(() -> internalDeleteCompositeProduct(productId)));
     }
 
-    private ProductAggregate createProductAggregate(Product product, List<Recommendation> recommendations, List<Review> reviews, String serviceAddress) {
+    public Mono<Void> internalDeleteCompositeProduct(int productId) {
+        LOG.debug("deleteCompositeProduct: Deletes a product aggregate for productId: {}", productId);
+
+        return Mono.when(
+                integration.deleteProductAsync(productId),
+                integration.deleteRecommendationsAsync(productId),
+                integration.deleteReviewsAsync(productId))
+                .doOnSuccess(v -> {
+                    cache.invalidate(productId);
+                    LOG.debug("deleteCompositeProduct: aggregate entities deleted for productId: {}", productId);
+                })
+                .doOnError(ex -> LOG.warn("deleteCompositeProduct failed: {}", ex.toString()));
+    }
+
+    //  package-private for the benchmarks
+    ProductAggregate createProductAggregate(Product product, List<Recommendation> recommendations, List<Review> reviews, String serviceAddress) {
 
         // 1. Setup product info
         int productId = product.getProductId();
@@ -109,13 +259,13 @@ public class ProductCompositeServiceImpl implements ProductCompositeService {
         // 2. Copy summary recommendation info, if available
         List<RecommendationSummary> recommendationSummaries = (recommendations == null) ? null :
                 recommendations.stream()
-                        .map(r -> new RecommendationSummary(r.getRecommendationId(), r.getAuthor(), r.getRate(), r.getContent()))
+                        .map(this::createRecommendationSummary)
                         .collect(Collectors.toList());
 
         // 3. Copy summary review info, if available
         List<ReviewSummary> reviewSummaries = (reviews == null)  ? null :
                 reviews.stream()
-                        .map(r -> new ReviewSummary(r.getReviewId(), r.getAuthor(), r.getSubject(), r.getContent()))
+                        .map(this::createReviewSummary)
                         .collect(Collectors.toList());
 
         // 4. Create info regarding the involved microservices addresses
@@ -124,7 +274,101 @@ public class ProductCompositeServiceImpl implements ProductCompositeService {
         String recommendationAddress = (recommendations != null && recommendations.size() > 0) ? recommendations.get(0).getServiceAddress() : "";
         ServiceAddresses serviceAddresses = new ServiceAddresses(serviceAddress, productAddress, reviewAddress, recommendationAddress);
 
-        return new ProductAggregate(productId, name, weight, recommendationSummaries, reviewSummaries, serviceAddresses);
+        return new ProductAggregate(productId, name, weight, product.getVersion(), recommendationSummaries, reviewSummaries, serviceAddresses);
+    }
+
+    //  the summaries are read as they are, only the addresses of the core services come from the response headers
+    private ProductAggregate createProductAggregate(Product product, ResponseEntity<List<RecommendationSummary>> recommendations,
+                                                    ResponseEntity<List<ReviewSummary>> reviews, String serviceAddress) {
+        ServiceAddresses serviceAddresses = new ServiceAddresses(serviceAddress, product.getServiceAddress(),
+                addressOf(reviews), addressOf(recommendations));
+        return new ProductAggregate(product.getProductId(), product.getName(), product.getWeight(), product.getVersion(),
+                recommendations.getBody(), reviews.getBody(), serviceAddresses);
+    }
+
+    private String addressOf(ResponseEntity<?> response) {
+        String address = response.getHeaders().getFirst(SERVICE_ADDRESS_HEADER);
+        return address == null ? "" : address;
+    }
+
+    private RecommendationSummary createRecommendationSummary(Recommendation r) {
+        return new RecommendationSummary(r.getRecommendationId(), r.getAuthor(), r.getRate(), r.getContent(), r.getVersion());
+    }
+
+    private ReviewSummary createReviewSummary(Review r) {
+        return new ReviewSummary(r.getReviewId(), r.getAuthor(), r.getSubject(), r.getContent(), r.getVersion());
+    }
+
+    //  the product part of an aggregate, i.e. without recommendations and reviews
+    private ProductAggregate createProductHeader(ProductAggregate aggregate) {
+        ServiceAddresses addresses = aggregate.getServiceAddresses();
+        return new ProductAggregate(aggregate.getProductId(), aggregate.getName(), aggregate.getWeight(), aggregate.getVersion(), null, null,
+                new ServiceAddresses(addresses.getCmp(), addresses.getPro(), null, null));
+    }
+
+    //  the core services return recommendations and reviews ordered by id, so the first n are the top n
+    private ProductAggregate createTopN(ProductAggregate aggregate, int n) {
+        List<RecommendationSummary> recommendations = aggregate.getRecommendations();
+        List<ReviewSummary> reviews = aggregate.getReviews();
+        return new ProductAggregate(aggregate.getProductId(), aggregate.getName(), aggregate.getWeight(), aggregate.getVersion(),
+                recommendations.subList(0, Math.min(n, recommendations.size())),
+                reviews.subList(0, Math.min(n, reviews.size())),
+                aggregate.getServiceAddresses());
+    }
+
+    //  a strong ETag from the version vector and the content, i.e. the version and fields of the product and the id, version and
+    //  fields of every summary. versions start over when a product is deleted and created again, the content tells them apart.
+    //  the service addresses are left out, they tell where the aggregate was assembled and not what it holds.
+    private static String etagOf(ProductAggregate aggregate) {
+        StringBuilder vector = new StringBuilder().append(aggregate.getProductId()).append('.').append(aggregate.getVersion());
+        field(vector, aggregate.getName()).append(',').append(aggregate.getWeight());
+        for (RecommendationSummary r : aggregate.getRecommendations()) {
+            vector.append(";r").append(r.getRecommendationId()).append('.').append(r.getVersion());
+            field(field(vector, r.getAuthor()).append(',').append(r.getRate()), r.getContent());
+        }
+        for (ReviewSummary r : aggregate.getReviews()) {
+            vector.append(";v").append(r.getReviewId()).append('.').append(r.getVersion());
+            field(field(field(vector, r.getAuthor()), r.getSubject()), r.getContent());
+        }
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(vector.toString().getBytes(StandardCharsets.UTF_8));
+            return "\"" + Base64.getUrlEncoder().withoutPadding().encodeToString(Arrays.copyOf(digest, 16)) + "\"";
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    //  length prefixed, a separator within a field doesn't shift the ones that follow
+    private static StringBuilder field(StringBuilder vector, String value) {
+        return value == null ? vector.append(",-") : vector.append(',').append(value.length()).append(':').append(value);
+    }
+
+    private ServerSentEvent<Object> event(String name, Object data) {
+        return ServerSentEvent.builder(data).event(name).build();
+    }
+
+    private List<ProductAggregate> createProductAggregates(List<Product> products, List<Recommendation> recommendations, List<Review> reviews, String serviceAddress) {
+        Map<Integer, List<Recommendation>> recommendationsByProductId = recommendations.stream().collect(Collectors.groupingBy(Recommendation::getProductId));
+        Map<Integer, List<Review>> reviewsByProductId = reviews.stream().collect(Collectors.groupingBy(Review::getProductId));
+
+        return products.stream()
+                .map(p -> createProductAggregate(p,
+                        recommendationsByProductId.getOrDefault(p.getProductId(), emptyList()),
+                        reviewsByProductId.getOrDefault(p.getProductId(), emptyList()),
+                        serviceAddress))
+                .collect(Collectors.toList());
+    }
+
+    //  products that do not exist are left out
+    private List<ProductAggregate> inRequestedOrder(List<Integer> productIds, Map<Integer, ProductAggregate> aggregates) {
+        return productIds.stream().map(aggregates::get).filter(Objects::nonNull).collect(Collectors.toList());
+    }
+
+    private Mono<Product> getProductWithFallback(int productId, int delay, int faultPercent) {
+        return integration.getProduct(productId, delay, faultPercent)
+                .onErrorReturn(CallNotPermittedException.class, getProductFallbackValue(productId))
+                .onErrorReturn(RetryException.class, getProductFallbackValue(productId))
+                .onErrorResume(RuntimeException.class, Mono::error);
     }
 
     private Product getProductFallbackValue(int productId) {
@@ -137,8 +381,17 @@ public class ProductCompositeServiceImpl implements ProductCompositeService {
         return new Product(productId, "Fallback product" + productId, productId, serviceUtil.getServiceAddress());
     }
 
+    //  fallback products are created by this service itself, see getProductFallbackValue
+    private boolean isFallback(ProductAggregate aggregate) {
+        return serviceUtil.getServiceAddress().equals(aggregate.getServiceAddresses().getPro());
+    }
+
+    private static boolean isIncomplete(ResponseEntity<?> response) {
+        return CacheControl.noStore().getHeaderValue().equals(response.getHeaders().getCacheControl());
+    }
+
     //  avoid raw type casting
-    private <T> List<T> castObjToTypedList(Class<T> clazz, Object value) throws ClassCastException {
+    <T> List<T> castObjToTypedList(Class<T> clazz, Object value) throws ClassCastException {
         List<?> values = (List<?>) value;
         return values.stream().map(clazz::cast).collect(Collectors.toList());
     }
@@ -0,0 +1,46 @@
+package se.magnus.microservices.composite.product.services;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import reactor.core.publisher.Mono;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+//  lets concurrent callers asking for the same key share one in-flight load.
+//  the first caller subscribes to the loader, the others replay its result; the key is released as soon as the load terminates.
+public class SingleFlight<K, V> {
+
+    private final ConcurrentMap<K, Mono<V>> inFlight = new ConcurrentHashMap<>();
+    private final Counter loaded;
+    private final Counter coalesced;
+
+    public SingleFlight(String name, MeterRegistry registry) {
+        this.loaded = registry.counter("singleflight.calls", "name", name, "outcome", "loaded");
+        this.coalesced = registry.counter("singleflight.calls", "name", name, "outcome", "coalesced");
+    }
+
+    public Mono<V> execute(K key, Supplier<Mono<V>> loader) {
+        return Mono.defer(() -> {
+            AtomicBoolean leader = new AtomicBoolean();
+            Mono<V> shared = inFlight.computeIfAbsent(key, k -> {
+                leader.set(true);
+                return share(k, loader.get());
+            });
+            (leader.get() ? loaded : coalesced).increment();
+            return shared;
+        });
+    }
+
+    private Mono<V> share(K key, Mono<V> source) {
+        AtomicReference<Mono<V>> self = new AtomicReference<>();
+        Mono<V> shared = source
+                .doFinally(signal -> inFlight.remove(key, self.get()))
+                .cache();
+        self.set(shared);
+        return shared;
+    }
+}
@@ -0,0 +1,224 @@
+package se.magnus.microservices.composite.product;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.cloud.stream.test.binder.MessageCollector;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessageDeliveryException;
+import org.springframework.messaging.support.ErrorMessage;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.test.StepVerifier;
+import se.magnus.api.composite.product.ProductAggregate;
+import se.magnus.api.composite.product.ReviewSummary;
+import se.magnus.api.core.product.Product;
+import se.magnus.api.core.review.Review;
+import se.magnus.api.event.Event;
+import se.magnus.microservices.composite.product.services.BatchingEventPublisher;
+import se.magnus.microservices.composite.product.services.HedgedRequests;
+import se.magnus.microservices.composite.product.services.ProductAggregateCache;
+import se.magnus.microservices.composite.product.services.ProductCompositeIntegration;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static java.util.Collections.singletonList;
+import static java.util.Collections.singletonMap;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.springframework.boot.test.context.SpringBootTest.WebEnvironment.RANDOM_PORT;
+import static org.springframework.http.HttpStatus.OK;
+import static reactor.core.publisher.Mono.just;
+import static se.magnus.api.event.Event.BULK_HEADER;
+import static se.magnus.api.event.Event.Type.CREATE;
+import static se.magnus.api.event.Event.Type.DELETE;
+import static se.magnus.microservices.composite.product.IsSameEvent.sameEventExceptCreatedAt;
+
+@RunWith(SpringRunner.class)
+@ActiveProfiles("batched-publishing")
+@SpringBootTest(
+		webEnvironment=RANDOM_PORT,
+		classes = { ProductCompositeServiceApplication.class, TestSecurityConfig.class },
+		properties = {
+			"spring.main.allow-bean-definition-overriding=true",
+			"eureka.client.enabled=false",
+			"spring.cloud.config.enabled=false",
+			"app.publisher.awaitConfirms=false"})
+public class BatchedPublishingTests {
+
+	@Autowired
+	private WebTestClient client;
+
+	@Autowired
+	private ProductCompositeIntegration.MessageSources channels;
+
+	@Autowired
+	private MessageCollector collector;
+
+	@Autowired
+	private BatchingEventPublisher publisher;
+
+	@Autowired
+	private MeterRegistry registry;
+
+	@Autowired
+	private WebClient.Builder webClientBuilder;
+
+	@Autowired
+	private ObjectMapper mapper;
+
+	@Autowired
+	private ProductAggregateCache cache;
+
+	@Autowired
+	private HedgedRequests hedging;
+
+	BlockingQueue<Message<?>> queueProducts = null;
+	BlockingQueue<Message<?>> queueRecommendations = null;
+	BlockingQueue<Message<?>> queueReviews = null;
+
+	@Before
+	public void setUp() {
+		queueProducts = getQueue(channels.outputProducts());
+		queueRecommendations = getQueue(channels.outputRecommendations());
+		queueReviews = getQueue(channels.outputReviews());
+	}
+
+	@Test
+	public void createCompositeProduct() {
+
+		ReviewSummary rev = new ReviewSummary(1, "a", "s", "c", 0);
+		ProductAggregate composite = new ProductAggregate(1, "name", 1, 0, null, singletonList(rev), null);
+
+		client.post()
+			.uri("/product-composite")
+			.body(just(composite), ProductAggregate.class)
+			.exchange()
+			.expectStatus().isEqualTo(OK);
+
+		//  the request returns once the events are sent
+		assertEquals(1, queueProducts.size());
+		Event<Integer, Product> expectedProductEvent = new Event<>(CREATE, 1, new Product(1, "name", 1, null));
+		assertThat((String) queueProducts.poll().getPayload(), sameEventExceptCreatedAt(expectedProductEvent));
+
+		assertEquals(1, queueReviews.size());
+		Message<?> reviewMessage = queueReviews.poll();
+		Event<Integer, ?> expectedReviewEvent = new Event<>(CREATE, 1, singletonList(new Review(1, rev.getReviewId(), rev.getAuthor(), rev.getSubject(), rev.getContent(), null)));
+		assertThat((String) reviewMessage.getPayload(), sameEventExceptCreatedAt(expectedReviewEvent));
+		assertEquals(true, reviewMessage.getHeaders().get(BULK_HEADER));
+
+		assertTrue(registry.get("publisher.batch.size").summary().count() >= 1);
+	}
+
+	@Test
+	public void deleteCompositeProduct() {
+
+		client.delete()
+			.uri("/product-composite/1")
+			.exchange()
+			.expectStatus().isEqualTo(OK);
+
+		Event<Integer, Product> expectedEvent = new Event<>(DELETE, 1, null);
+		assertEquals(1, queueProducts.size());
+		assertThat((String) queueProducts.poll().getPayload(), sameEventExceptCreatedAt(expectedEvent));
+		assertEquals(1, queueRecommendations.size());
+		assertEquals(1, queueReviews.size());
+	}
+
+	@Test
+	public void failedSendIsSurfaced() {
+
+		MessageChannel failing = (message, timeout) -> {
+			throw new MessageDeliveryException(message, "Broker unavailable");
+		};
+
+		StepVerifier.create(publisher.publish(failing, MessageBuilder.withPayload("event").build()))
+			.expectError(MessageDeliveryException.class)
+			.verify();
+	}
+
+	@Test
+	public void confirmedSendCompletes() {
+
+		BlockingQueue<Message<?>> sent = new LinkedBlockingQueue<>();
+		BatchingEventPublisher confirming = new BatchingEventPublisher(registry, 10, 1, true, 5000);
+
+		StepVerifier.create(confirming.publish(capturing(sent), MessageBuilder.withPayload("event").build()))
+			.then(() -> confirming.onConfirm(poll(sent)))
+			.verifyComplete();
+	}
+
+	@Test
+	public void nackedSendIsSurfaced() {
+
+		BlockingQueue<Message<?>> sent = new LinkedBlockingQueue<>();
+		BatchingEventPublisher confirming = new BatchingEventPublisher(registry, 10, 1, true, 5000);
+
+		StepVerifier.create(confirming.publish(capturing(sent), MessageBuilder.withPayload("event").build()))
+			.then(() -> confirming.onError(new ErrorMessage(new MessageDeliveryException(poll(sent), "Nacked"))))
+			.expectError(MessageDeliveryException.class)
+			.verify();
+	}
+
+	@Test
+	public void unconfirmedSendTimesOut() {
+
+		BatchingEventPublisher confirming = new BatchingEventPublisher(registry, 10, 1, true, 100);
+
+		StepVerifier.create(confirming.publish(capturing(new LinkedBlockingQueue<>()), MessageBuilder.withPayload("event").build()))
+			.expectError(TimeoutException.class)
+			.verify();
+	}
+
+	//  the blocking API methods of the integration throw instead of only logging the failure
+	@Test(expected = MessageDeliveryException.class)
+	public void failedSendOfSingleItemIsSurfaced() {
+
+		MessageChannel failing = (message, timeout) -> {
+			throw new MessageDeliveryException(message, "Broker unavailable");
+		};
+		ProductCompositeIntegration.MessageSources failingSources = new ProductCompositeIntegration.MessageSources() {
+			public MessageChannel outputProducts() { return failing; }
+			public MessageChannel outputRecommendations() { return failing; }
+			public MessageChannel outputReviews() { return failing; }
+		};
+		ProductCompositeIntegration integration = new ProductCompositeIntegration(webClientBuilder, mapper, failingSources, cache,
+			new StaticListableBeanFactory(singletonMap("publisher", publisher)).getBeanProvider(BatchingEventPublisher.class), hedging, 2, false);
+
+		integration.createProduct(new Product(1, "name", 1, null));
+	}
+
+	private static MessageChannel capturing(BlockingQueue<Message<?>> sent) {
+		return (message, timeout) -> sent.add(message);
+	}
+
+	private static Message<?> poll(BlockingQueue<Message<?>> sent) {
+		try {
+			Message<?> message = sent.poll(5, TimeUnit.SECONDS);
+			assertNotNull(message);
+			return message;
+		} catch (InterruptedException ex) {
+			throw new IllegalStateException(ex);
+		}
+	}
+
+	private BlockingQueue<Message<?>> getQueue(MessageChannel messageChannel) {
+		BlockingQueue<Message<?>> queue = collector.forChannel(messageChannel);
+		queue.clear();
+		return queue;
+	}
+}
@@ -0,0 +1,124 @@
+package se.magnus.microservices.composite.product;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Before;
+import org.junit.Test;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+import se.magnus.microservices.composite.product.services.HedgedRequests;
+
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.function.Supplier;
+
+import static java.util.Arrays.asList;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class HedgedRequestsTests {
+
+	private MeterRegistry registry;
+
+	@Before
+	public void setUp() {
+		registry = new SimpleMeterRegistry();
+	}
+
+	@Test
+	public void slowCallIsHedged() {
+
+		HedgedRequests hedging = new HedgedRequests(registry, true, 50, 0, 100, 1);
+
+		StepVerifier.create(hedging.hedge("product", calls(Mono.just("slow").delayElement(Duration.ofSeconds(5)), Mono.just("fast"))))
+				.expectNext("fast")
+				.verifyComplete();
+
+		assertEquals(1.0, count("fired"), 0.0);
+		assertEquals(1.0, count("won"), 0.0);
+	}
+
+	@Test
+	public void fastCallIsNotHedged() {
+
+		HedgedRequests hedging = new HedgedRequests(registry, true, 500, 0, 100, 1);
+
+		StepVerifier.create(hedging.hedgeFlux("review", calls(Flux.just("a", "b"), Flux.just("hedge"))))
+				.expectNext("a", "b")
+				.verifyComplete();
+
+		assertEquals(0.0, count("fired"), 0.0);
+	}
+
+	@Test
+	public void hedgesAreCappedByTheBudget() {
+
+		//  no budget at all, the slow answer is awaited
+		HedgedRequests hedging = new HedgedRequests(registry, true, 50, 0, 0, 1);
+
+		StepVerifier.create(hedging.hedge("product", calls(Mono.just("slow").delayElement(Duration.ofMillis(300)), Mono.just("fast"))))
+				.expectNext("slow")
+				.verifyComplete();
+
+		assertEquals(0.0, count("fired"), 0.0);
+		assertEquals(1.0, count("throttled"), 0.0);
+	}
+
+	@Test
+	public void failedHedgeIsIgnored() {
+
+		HedgedRequests hedging = new HedgedRequests(registry, true, 50, 0, 100, 1);
+
+		StepVerifier.create(hedging.hedge("product", calls(Mono.just("slow").delayElement(Duration.ofMillis(300)), Mono.error(new RuntimeException()))))
+				.expectNext("slow")
+				.verifyComplete();
+
+		assertEquals(1.0, count("fired"), 0.0);
+		assertEquals(0.0, count("won"), 0.0);
+	}
+
+	@Test
+	public void budgetIsPerBackend() {
+
+		//  one hedge per backend
+		HedgedRequests hedging = new HedgedRequests(registry, true, 50, 0, 100, 1);
+
+		Mono<String> product = hedging.hedge("product", calls(Mono.just("slow").delayElement(Duration.ofSeconds(5)), Mono.just("fast")));
+		Mono<String> review = hedging.hedge("review", calls(Mono.just("slow").delayElement(Duration.ofSeconds(5)), Mono.just("fast")));
+		StepVerifier.create(Mono.zip(product, review))
+				.expectNextMatches(answers -> answers.getT1().equals("fast") && answers.getT2().equals("fast"))
+				.verifyComplete();
+
+		assertEquals(2.0, registry.get("hedging.requests").tag("outcome", "fired").counters().stream().mapToDouble(Counter::count).sum(), 0.0);
+	}
+
+	@Test
+	public void onlyTheFirstCallIsTimed() {
+
+		HedgedRequests hedging = new HedgedRequests(registry, true, 200, 0, 100, 1);
+
+		StepVerifier.create(hedging.hedge("product", calls(Mono.just("slow").delayElement(Duration.ofSeconds(5)), Mono.just("fast"))))
+				.expectNext("fast")
+				.verifyComplete();
+
+		//  the first call lost the race after the hedge delay, it took at least that long. the hedge took no time at all.
+		Timer latency = registry.get("hedging.latency").timer();
+		assertEquals(1, latency.count());
+		assertTrue(latency.totalTime(MILLISECONDS) >= 200);
+	}
+
+	//  the first call gets the first publisher, the hedge the second one
+	@SafeVarargs
+	private static <T> Supplier<T> calls(T... publishers) {
+		Iterator<T> next = asList(publishers).iterator();
+		return next::next;
+	}
+
+	private double count(String outcome) {
+		return registry.get("hedging.requests").tag("outcome", outcome).counter().count();
+	}
+}
@@ -32,6 +32,7 @@ public class IsSameEvent<K, T> extends TypeSafeMatcher<String> {
         LOG.trace("Convert the following json string to a map: {}", eventAsJson);
         Map<String, Object> mapEvent = convertJsonStringToMap(eventAsJson);
         mapEvent.remove("eventCreatedAt");
+        mapEvent.remove("eventId");
 
         Map<String, Object> mapExpectedEvent = getMapWithoutCreatedAt(expectedEvent);
         LOG.trace("Got the map: {}", mapEvent);
@@ -52,6 +53,8 @@ public class IsSameEvent<K, T> extends TypeSafeMatcher<String> {
    	private Map<String, Object> getMapWithoutCreatedAt(Event<K, T> event) {
         Map<String, Object> mapEvent = convertObjectToMap(event);
         mapEvent.remove("eventCreatedAt");
+        //  generated per event, like the creation time
+        mapEvent.remove("eventId");
         return mapEvent;
     }
 
@@ -20,6 +20,7 @@ import se.magnus.api.core.review.Review;
 import se.magnus.api.event.Event;
 import se.magnus.microservices.composite.product.services.ProductCompositeIntegration;
 
+import java.util.List;
 import java.util.concurrent.BlockingQueue;
 
 import static org.hamcrest.MatcherAssert.assertThat;
@@ -30,8 +31,10 @@ import static org.springframework.boot.test.context.SpringBootTest.WebEnvironmen
 import static org.springframework.cloud.stream.test.matcher.MessageQueueMatcher.receivesPayloadThat;
 import static org.springframework.http.HttpStatus.OK;
 import static reactor.core.publisher.Mono.just;
+import static se.magnus.api.event.Event.BULK_HEADER;
 import static se.magnus.api.event.Event.Type.CREATE;
 import static se.magnus.api.event.Event.Type.DELETE;
+import static se.magnus.api.event.Event.Type.UPSERT;
 import static se.magnus.microservices.composite.product.IsSameEvent.sameEventExceptCreatedAt;
 
 @RunWith(SpringRunner.class)
@@ -63,7 +66,7 @@ public class MessagingTests {
 	@Test
 	public void createCompositeProduct1() {
 
-		ProductAggregate composite = new ProductAggregate(1, "name", 1, null, null, null);
+		ProductAggregate composite = new ProductAggregate(1, "name", 1, 0, null, null, null);
 		postAndVerifyProduct(composite, OK);
 
 		// Assert one expected new product events queued up
@@ -80,9 +83,9 @@ public class MessagingTests {
 	@Test
 	public void createCompositeProduct2() {
 
-		ProductAggregate composite = new ProductAggregate(1, "name", 1,
-			singletonList(new RecommendationSummary(1, "a", 1, "c")),
-			singletonList(new ReviewSummary(1, "a", "s", "c")), null);
+		ProductAggregate composite = new ProductAggregate(1, "name", 1, 0,
+			singletonList(new RecommendationSummary(1, "a", 1, "c", 0)),
+			singletonList(new ReviewSummary(1, "a", "s", "c", 0)), null);
 
 		postAndVerifyProduct(composite, OK);
 
@@ -92,21 +95,51 @@ public class MessagingTests {
 		Event<Integer, Product> expectedProductEvent = new Event<>(CREATE, composite.getProductId(), new Product(composite.getProductId(), composite.getName(), composite.getWeight(), null));
 		assertThat(queueProducts, receivesPayloadThat(sameEventExceptCreatedAt(expectedProductEvent)));
 
-		// Assert one create recommendation event queued up
+		// Assert one bulk create recommendation event queued up
 		assertEquals(1, queueRecommendations.size());
 
 		RecommendationSummary rec = composite.getRecommendations().get(0);
-		Event<Integer, Recommendation> expectedRecommendationEvent = new Event<>(CREATE, composite.getProductId(), new Recommendation(composite.getProductId(), rec.getRecommendationId(), rec.getAuthor(), rec.getRate(), rec.getContent(), null));
+		Event<Integer, List<Recommendation>> expectedRecommendationEvent = new Event<>(CREATE, composite.getProductId(), singletonList(new Recommendation(composite.getProductId(), rec.getRecommendationId(), rec.getAuthor(), rec.getRate(), rec.getContent(), null)));
+		assertEquals(true, queueRecommendations.peek().getHeaders().get(BULK_HEADER));
 		assertThat(queueRecommendations, receivesPayloadThat(sameEventExceptCreatedAt(expectedRecommendationEvent)));
 
-		// Assert one create review event queued up
+		// Assert one bulk create review event queued up
 		assertEquals(1, queueReviews.size());
 
 		ReviewSummary rev = composite.getReviews().get(0);
-		Event<Integer, Review> expectedReviewEvent = new Event<>(CREATE, composite.getProductId(), new Review(composite.getProductId(), rev.getReviewId(), rev.getAuthor(), rev.getSubject(), rev.getContent(), null));
+		Event<Integer, List<Review>> expectedReviewEvent = new Event<>(CREATE, composite.getProductId(), singletonList(new Review(composite.getProductId(), rev.getReviewId(), rev.getAuthor(), rev.getSubject(), rev.getContent(), null)));
+		assertEquals(true, queueReviews.peek().getHeaders().get(BULK_HEADER));
 		assertThat(queueReviews, receivesPayloadThat(sameEventExceptCreatedAt(expectedReviewEvent)));
 	}
 
+	@Test
+	public void upsertCompositeProduct() {
+
+		ProductAggregate composite = new ProductAggregate(1, "name", 1, 0,
+			singletonList(new RecommendationSummary(1, "a", 1, "c", 0)), null, null);
+
+		client.put()
+			.uri("/product-composite")
+			.body(just(composite), ProductAggregate.class)
+			.exchange()
+			.expectStatus().isEqualTo(OK);
+
+		// Assert the same events as a create, but as upserts
+		assertEquals(1, queueProducts.size());
+
+		Event<Integer, Product> expectedProductEvent = new Event<>(UPSERT, composite.getProductId(), new Product(composite.getProductId(), composite.getName(), composite.getWeight(), null));
+		assertThat(queueProducts, receivesPayloadThat(sameEventExceptCreatedAt(expectedProductEvent)));
+
+		assertEquals(1, queueRecommendations.size());
+
+		RecommendationSummary rec = composite.getRecommendations().get(0);
+		Event<Integer, List<Recommendation>> expectedRecommendationEvent = new Event<>(UPSERT, composite.getProductId(), singletonList(new Recommendation(composite.getProductId(), rec.getRecommendationId(), rec.getAuthor(), rec.getRate(), rec.getContent(), null)));
+		assertEquals(true, queueRecommendations.peek().getHeaders().get(BULK_HEADER));
+		assertThat(queueRecommendations, receivesPayloadThat(sameEventExceptCreatedAt(expectedRecommendationEvent)));
+
+		assertEquals(0, queueReviews.size());
+	}
+
 	@Test
 	public void deleteCompositeProduct() {
 
@@ -0,0 +1,104 @@
+package se.magnus.microservices.composite.product;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.cloud.stream.test.binder.MessageCollector;
+import org.springframework.messaging.Message;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import se.magnus.api.composite.product.ProductAggregate;
+import se.magnus.api.composite.product.ReviewSummary;
+import se.magnus.api.core.product.Product;
+import se.magnus.api.core.review.Review;
+import se.magnus.api.event.Event;
+import se.magnus.microservices.composite.product.services.ProductCompositeIntegration;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static java.util.Collections.singletonList;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+import static org.springframework.boot.test.context.SpringBootTest.WebEnvironment.RANDOM_PORT;
+import static org.springframework.http.HttpStatus.OK;
+import static reactor.core.publisher.Mono.just;
+import static se.magnus.api.event.Event.BULK_HEADER;
+import static se.magnus.api.event.Event.Type.CREATE;
+import static se.magnus.microservices.composite.product.IsSameEvent.sameEventExceptCreatedAt;
+import static se.magnus.microservices.composite.product.outbox.Outbox.SEND_ID_HEADER;
+
+@RunWith(SpringRunner.class)
+@ActiveProfiles("outbox")
+@SpringBootTest(
+		webEnvironment=RANDOM_PORT,
+		classes = { ProductCompositeServiceApplication.class, TestSecurityConfig.class },
+		properties = {
+			"spring.main.allow-bean-definition-overriding=true",
+			"eureka.client.enabled=false",
+			"spring.cloud.config.enabled=false",
+			"app.outbox.dir=build/outbox-${random.uuid}",
+			"app.outbox.awaitConfirms=false"})
+public class OutboxTests {
+
+	@Autowired
+	private WebTestClient client;
+
+	@Autowired
+	private ProductCompositeIntegration.MessageSources channels;
+
+	@Autowired
+	private MessageCollector collector;
+
+	@Autowired
+	private MeterRegistry registry;
+
+	BlockingQueue<Message<?>> queueProducts = null;
+	BlockingQueue<Message<?>> queueReviews = null;
+
+	@Before
+	public void setUp() {
+		queueProducts = collector.forChannel(channels.outputProducts());
+		queueReviews = collector.forChannel(channels.outputReviews());
+	}
+
+	@Test
+	public void relayCompositeProduct() throws InterruptedException {
+
+		ReviewSummary rev = new ReviewSummary(1, "a", "s", "c", 0);
+		ProductAggregate composite = new ProductAggregate(1, "name", 1, 0, null, singletonList(rev), null);
+
+		client.post()
+			.uri("/product-composite")
+			.body(just(composite), ProductAggregate.class)
+			.exchange()
+			.expectStatus().isEqualTo(OK);
+
+		//  the events are published by the relay, after the request returned
+		Message<?> productMessage = queueProducts.poll(5, TimeUnit.SECONDS);
+		assertNotNull(productMessage);
+		Event<Integer, Product> expectedProductEvent = new Event<>(CREATE, 1, new Product(1, "name", 1, null));
+		assertThat((String) productMessage.getPayload(), sameEventExceptCreatedAt(expectedProductEvent));
+
+		Message<?> reviewMessage = queueReviews.poll(5, TimeUnit.SECONDS);
+		assertNotNull(reviewMessage);
+		Event<Integer, ?> expectedReviewEvent = new Event<>(CREATE, 1, singletonList(new Review(1, rev.getReviewId(), rev.getAuthor(), rev.getSubject(), rev.getContent(), null)));
+		assertThat((String) reviewMessage.getPayload(), sameEventExceptCreatedAt(expectedReviewEvent));
+		assertEquals(true, reviewMessage.getHeaders().get(BULK_HEADER));
+		//  the confirms are matched by an id per send, not by the position in the journal
+		assertNotNull(productMessage.getHeaders().get(SEND_ID_HEADER));
+		assertNotEquals(productMessage.getHeaders().get(SEND_ID_HEADER), reviewMessage.getHeaders().get(SEND_ID_HEADER));
+
+		//  the journal is committed once the batch is sent
+		for (int i = 0; i < 50 && registry.get("outbox.pending").gauge().value() > 0; i++) Thread.sleep(100);
+		assertEquals(0.0, registry.get("outbox.pending").gauge().value(), 0.0);
+		assertTrue(registry.get("outbox.relay.batch.size").summary().count() >= 1);
+	}
+}
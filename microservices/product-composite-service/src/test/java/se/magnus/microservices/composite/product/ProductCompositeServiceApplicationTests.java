@@ -6,10 +6,18 @@ import org.junit.runner.RunWith;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.CacheControl;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.test.context.junit4.SpringRunner;
 import org.springframework.test.web.reactive.server.WebTestClient;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+import se.magnus.api.composite.product.ProductCompositeService;
+import se.magnus.api.composite.product.RecommendationSummary;
+import se.magnus.api.composite.product.ReviewSummary;
 import se.magnus.api.core.product.Product;
 import se.magnus.api.core.recommendation.Recommendation;
 import se.magnus.api.core.review.Review;
@@ -17,11 +25,26 @@ import se.magnus.microservices.composite.product.services.ProductCompositeIntegr
 import se.magnus.util.exceptions.InvalidInputException;
 import se.magnus.util.exceptions.NotFoundException;
 
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static java.util.Arrays.asList;
+import static java.util.Collections.emptyList;
 import static java.util.Collections.singletonList;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.springframework.boot.test.context.SpringBootTest.WebEnvironment.RANDOM_PORT;
+import static org.springframework.http.HttpHeaders.ETAG;
+import static org.springframework.http.HttpHeaders.IF_NONE_MATCH;
 import static org.springframework.http.HttpStatus.UNPROCESSABLE_ENTITY;
 import static org.springframework.http.MediaType.APPLICATION_JSON;
+import static org.springframework.http.MediaType.TEXT_EVENT_STREAM;
+import static se.magnus.microservices.composite.product.services.ProductCompositeIntegration.FALLBACK_HEADER;
+import static se.magnus.util.http.ServiceAddressFilter.SERVICE_ADDRESS_HEADER;
 
 @RunWith(SpringRunner.class)
 @SpringBootTest(
@@ -33,10 +56,22 @@ public class ProductCompositeServiceApplicationTests {
 	private static final int PRODUCT_ID_OK = 1;
 	private static final int PRODUCT_ID_NOT_FOUND = 2;
 	private static final int PRODUCT_ID_INVALID = 3;
+	private static final int PRODUCT_ID_CACHED = 4;
+	private static final int PRODUCT_ID_BATCH_1 = 5;
+	private static final int PRODUCT_ID_BATCH_2 = 6;
+	private static final int PRODUCT_ID_STREAMED = 7;
+	private static final int PRODUCT_ID_LIMITED = 8;
+	private static final int PRODUCT_ID_COALESCED = 9;
+	private static final int PRODUCT_ID_VERSIONED = 10;
+	private static final int PRODUCT_ID_DEGRADED = 11;
+	private static final int PRODUCT_ID_STREAMED_SLOWLY = 12;
 
 	@Autowired
 	private WebTestClient client;
 
+	@Autowired
+	private ProductCompositeService service;
+
 	@MockBean
 	private ProductCompositeIntegration compositeIntegration;
 
@@ -46,10 +81,10 @@ public class ProductCompositeServiceApplicationTests {
 		// integration.getProduct 함수가 호출됐을 경우 return 값 미리 세팅 (Mock-up)
 		when(compositeIntegration.getProduct(PRODUCT_ID_OK, delay, faultPercent)).
 				thenReturn(Mono.just(new Product(PRODUCT_ID_OK, "name", 1, "mock-address")));
-		when(compositeIntegration.getRecommendations(PRODUCT_ID_OK)).
-				thenReturn(Flux.fromIterable(singletonList(new Recommendation(PRODUCT_ID_OK, 1, "author", 1, "content", "mock address"))));
-		when(compositeIntegration.getReviews(PRODUCT_ID_OK)).
-				thenReturn(Flux.fromIterable(singletonList(new Review(PRODUCT_ID_OK, 1, "author", "subject", "content", "mock address"))));
+		when(compositeIntegration.getRecommendationSummariesWithAddress(PRODUCT_ID_OK, 0)).
+				thenReturn(withAddress(singletonList(new RecommendationSummary(1, "author", 1, "content", 0))));
+		when(compositeIntegration.getReviewSummariesWithAddress(PRODUCT_ID_OK, 0)).
+				thenReturn(withAddress(singletonList(new ReviewSummary(1, "author", "subject", "content", 0))));
 		// error causer
 		when(compositeIntegration.getProduct(PRODUCT_ID_NOT_FOUND, delay, faultPercent)).thenThrow(new NotFoundException("NOT FOUND: " + PRODUCT_ID_NOT_FOUND));
 		when(compositeIntegration.getProduct(PRODUCT_ID_INVALID, delay, faultPercent)).thenThrow(new InvalidInputException("INVALID: " + PRODUCT_ID_INVALID));
@@ -71,7 +106,234 @@ public class ProductCompositeServiceApplicationTests {
 				.expectBody()
 				.jsonPath("$.productId").isEqualTo(PRODUCT_ID_OK)
 				.jsonPath("$.recommendations.length()").isEqualTo(1)
-				.jsonPath("$.reviews.length()").isEqualTo(1);
+				.jsonPath("$.reviews.length()").isEqualTo(1)
+				.jsonPath("$.serviceAddresses.rec").isEqualTo("mock address")
+				.jsonPath("$.serviceAddresses.rev").isEqualTo("mock address");
+	}
+
+	@Test
+	public void getProductByIdFromCache() {
+
+		when(compositeIntegration.getProduct(PRODUCT_ID_CACHED, 0, 0)).
+				thenReturn(Mono.just(new Product(PRODUCT_ID_CACHED, "name", 1, "mock-address")));
+		when(compositeIntegration.getRecommendationSummariesWithAddress(PRODUCT_ID_CACHED, 0)).thenReturn(withAddress(emptyList()));
+		when(compositeIntegration.getReviewSummariesWithAddress(PRODUCT_ID_CACHED, 0)).thenReturn(withAddress(emptyList()));
+
+		for (int i = 0; i < 2; i++) {
+			client.get()
+					.uri("/product-composite/" + PRODUCT_ID_CACHED)
+					.accept(APPLICATION_JSON)
+					.exchange()
+					.expectStatus().isOk()
+					.expectBody()
+					.jsonPath("$.productId").isEqualTo(PRODUCT_ID_CACHED);
+		}
+
+		// the second request is served from the cache
+		verify(compositeIntegration, times(1)).getProduct(PRODUCT_ID_CACHED, 0, 0);
+	}
+
+	@Test
+	public void getProductByIdNotModified() {
+
+		Product product = new Product(PRODUCT_ID_VERSIONED, "name", 1, "mock-address");
+		product.setVersion(3);
+		when(compositeIntegration.getProduct(PRODUCT_ID_VERSIONED, 0, 0)).thenReturn(Mono.just(product));
+		when(compositeIntegration.getRecommendationSummariesWithAddress(PRODUCT_ID_VERSIONED, 0)).
+				thenReturn(withAddress(singletonList(new RecommendationSummary(1, "author", 1, "content", 2))));
+		when(compositeIntegration.getReviewSummariesWithAddress(PRODUCT_ID_VERSIONED, 0)).thenReturn(withAddress(emptyList()));
+
+		String etag = client.get()
+				.uri("/product-composite/" + PRODUCT_ID_VERSIONED)
+				.accept(APPLICATION_JSON)
+				.exchange()
+				.expectStatus().isOk()
+				.expectBody()
+				.jsonPath("$.version").isEqualTo(3)
+				.jsonPath("$.recommendations[0].version").isEqualTo(2)
+				.returnResult().getResponseHeaders().getETag();
+		assertNotNull(etag);
+
+		client.get()
+				.uri("/product-composite/" + PRODUCT_ID_VERSIONED)
+				.accept(APPLICATION_JSON)
+				.header(IF_NONE_MATCH, etag)
+				.exchange()
+				.expectStatus().isNotModified()
+				.expectHeader().valueEquals(ETAG, etag)
+				.expectBody().isEmpty();
+
+		client.get()
+				.uri("/product-composite/" + PRODUCT_ID_VERSIONED)
+				.accept(APPLICATION_JSON)
+				.header(IF_NONE_MATCH, "\"outdated\"")
+				.exchange()
+				.expectStatus().isOk()
+				.expectHeader().valueEquals(ETAG, etag);
+
+		//  the top 1 holds the same versions, i.e. it has the same ETag
+		client.get()
+				.uri("/product-composite/" + PRODUCT_ID_VERSIONED + "?limit=1")
+				.accept(APPLICATION_JSON)
+				.header(IF_NONE_MATCH, etag)
+				.exchange()
+				.expectStatus().isNotModified();
+	}
+
+	@Test
+	public void getProductsByIds() {
+
+		when(compositeIntegration.getProducts(asList(PRODUCT_ID_BATCH_2, PRODUCT_ID_BATCH_1, PRODUCT_ID_NOT_FOUND))).
+				thenReturn(Flux.just(new Product(PRODUCT_ID_BATCH_1, "name", 1, "mock-address"), new Product(PRODUCT_ID_BATCH_2, "name", 1, "mock-address")));
+		when(compositeIntegration.getRecommendationListByProductIds(asList(PRODUCT_ID_BATCH_2, PRODUCT_ID_BATCH_1, PRODUCT_ID_NOT_FOUND))).
+				thenReturn(withAddress(singletonList(new Recommendation(PRODUCT_ID_BATCH_1, 1, "author", 1, "content", "mock address"))));
+		when(compositeIntegration.getReviewListByProductIds(asList(PRODUCT_ID_BATCH_2, PRODUCT_ID_BATCH_1, PRODUCT_ID_NOT_FOUND))).
+				thenReturn(withAddress(asList(new Review(PRODUCT_ID_BATCH_2, 1, "author", "subject", "content", "mock address"), new Review(PRODUCT_ID_BATCH_2, 2, "author", "subject", "content", "mock address"))));
+
+		client.get()
+				.uri("/product-composite?ids=" + PRODUCT_ID_BATCH_2 + "," + PRODUCT_ID_BATCH_1 + "," + PRODUCT_ID_NOT_FOUND)
+				.accept(APPLICATION_JSON)
+				.exchange()
+				.expectStatus().isOk()
+				.expectHeader().contentType(APPLICATION_JSON)
+				.expectBody()
+				.jsonPath("$.length()").isEqualTo(2)
+				.jsonPath("$[0].productId").isEqualTo(PRODUCT_ID_BATCH_2)
+				.jsonPath("$[0].recommendations.length()").isEqualTo(0)
+				.jsonPath("$[0].reviews.length()").isEqualTo(2)
+				.jsonPath("$[1].productId").isEqualTo(PRODUCT_ID_BATCH_1)
+				.jsonPath("$[1].recommendations.length()").isEqualTo(1)
+				.jsonPath("$[1].reviews.length()").isEqualTo(0);
+	}
+
+	@Test
+	public void getProductByIdDegraded() {
+
+		when(compositeIntegration.getProduct(PRODUCT_ID_DEGRADED, 0, 0)).
+				thenReturn(Mono.just(new Product(PRODUCT_ID_DEGRADED, "name", 1, "mock-address")));
+		when(compositeIntegration.getRecommendationSummariesWithAddress(PRODUCT_ID_DEGRADED, 0)).
+				thenReturn(Mono.just(ResponseEntity.ok().header(FALLBACK_HEADER, "true").body(emptyList())));
+		when(compositeIntegration.getReviewSummariesWithAddress(PRODUCT_ID_DEGRADED, 0)).thenReturn(withAddress(emptyList()));
+
+		for (int i = 0; i < 2; i++) {
+			client.get()
+					.uri("/product-composite/" + PRODUCT_ID_DEGRADED)
+					.accept(APPLICATION_JSON)
+					.exchange()
+					.expectStatus().isOk()
+					.expectHeader().doesNotExist(ETAG)
+					.expectHeader().cacheControl(CacheControl.noStore())
+					.expectBody()
+					.jsonPath("$.recommendations.length()").isEqualTo(0);
+		}
+
+		// an aggregate with a fallback part is not cached
+		verify(compositeIntegration, times(2)).getProduct(PRODUCT_ID_DEGRADED, 0, 0);
+	}
+
+	@Test
+	public void getProductsByIdsTooMany() {
+
+		StringBuilder ids = new StringBuilder("1");
+		for (int productId = 2; productId <= 101; productId++) ids.append(',').append(productId);
+
+		client.get()
+				.uri("/product-composite?ids=" + ids)
+				.accept(APPLICATION_JSON)
+				.exchange()
+				.expectStatus().isBadRequest()
+				.expectBody()
+				.jsonPath("$.message").isEqualTo("Too many ids: 101, at most 100 are allowed");
+	}
+
+	@Test
+	public void getProductByIdCoalesced() {
+
+		when(compositeIntegration.getProduct(PRODUCT_ID_COALESCED, 0, 0)).
+				thenReturn(Mono.just(new Product(PRODUCT_ID_COALESCED, "name", 1, "mock-address")).delayElement(Duration.ofMillis(200)));
+		when(compositeIntegration.getRecommendationSummariesWithAddress(PRODUCT_ID_COALESCED, 0)).thenReturn(withAddress(emptyList()));
+		when(compositeIntegration.getReviewSummariesWithAddress(PRODUCT_ID_COALESCED, 0)).thenReturn(withAddress(emptyList()));
+
+		// both requests miss the cache while the first load is still in flight
+		StepVerifier.create(Mono.zip(
+					service.getCompositeProduct(PRODUCT_ID_COALESCED, 0, 0, 0, null).map(ResponseEntity::getBody),
+					service.getCompositeProduct(PRODUCT_ID_COALESCED, 0, 0, 0, null).map(ResponseEntity::getBody)))
+				.expectNextMatches(aggregates -> aggregates.getT1() == aggregates.getT2())
+				.verifyComplete();
+
+		verify(compositeIntegration, times(1)).getProduct(PRODUCT_ID_COALESCED, 0, 0);
+	}
+
+	@Test
+	public void getProductByIdWithLimit() {
+
+		when(compositeIntegration.getProduct(PRODUCT_ID_LIMITED, 0, 0)).
+				thenReturn(Mono.just(new Product(PRODUCT_ID_LIMITED, "name", 1, "mock-address")));
+		when(compositeIntegration.getRecommendationSummariesWithAddress(PRODUCT_ID_LIMITED, 1)).
+				thenReturn(withAddress(singletonList(new RecommendationSummary(1, "author", 1, "content", 0))));
+		when(compositeIntegration.getReviewSummariesWithAddress(PRODUCT_ID_LIMITED, 1)).
+				thenReturn(withAddress(singletonList(new ReviewSummary(1, "author", "subject", "content", 0))));
+
+		for (int i = 0; i < 2; i++) {
+			client.get()
+					.uri("/product-composite/" + PRODUCT_ID_LIMITED + "?limit=1")
+					.accept(APPLICATION_JSON)
+					.exchange()
+					.expectStatus().isOk()
+					.expectBody()
+					.jsonPath("$.recommendations.length()").isEqualTo(1)
+					.jsonPath("$.reviews.length()").isEqualTo(1);
+		}
+
+		// a limited aggregate is never cached
+		verify(compositeIntegration, times(2)).getProduct(PRODUCT_ID_LIMITED, 0, 0);
+	}
+
+	@Test
+	public void streamProductById() {
+
+		when(compositeIntegration.getProduct(PRODUCT_ID_STREAMED, 0, 0)).
+				thenReturn(Mono.just(new Product(PRODUCT_ID_STREAMED, "name", 1, "mock-address")));
+		when(compositeIntegration.getRecommendationSummaries(PRODUCT_ID_STREAMED, null, 0)).
+				thenReturn(Flux.just(new RecommendationSummary(1, "author", 1, "content", 0)));
+		when(compositeIntegration.getReviewSummaries(PRODUCT_ID_STREAMED, null, 0)).
+				thenReturn(Flux.just(new ReviewSummary(1, "author", "subject", "content", 0), new ReviewSummary(2, "author", "subject", "content", 0)));
+
+		Flux<ServerSentEvent<String>> events = client.get()
+				.uri("/product-composite/" + PRODUCT_ID_STREAMED)
+				.accept(TEXT_EVENT_STREAM)
+				.exchange()
+				.expectStatus().isOk()
+				.returnResult(new ParameterizedTypeReference<ServerSentEvent<String>>() {})
+				.getResponseBody();
+
+		StepVerifier.create(events.map(ServerSentEvent::event).collectList())
+				.expectNextMatches(names -> names.size() == 4 &&
+						names.get(0).equals("product") &&
+						names.stream().filter("recommendation"::equals).count() == 1 &&
+						names.stream().filter("review"::equals).count() == 2)
+				.verifyComplete();
+	}
+
+	@Test
+	public void streamProductByIdSubscribesEagerly() {
+
+		AtomicBoolean productSent = new AtomicBoolean();
+		AtomicBoolean requestedBeforeProduct = new AtomicBoolean();
+		when(compositeIntegration.getProduct(PRODUCT_ID_STREAMED_SLOWLY, 0, 0)).
+				thenReturn(Mono.just(new Product(PRODUCT_ID_STREAMED_SLOWLY, "name", 1, "mock-address")).delayElement(Duration.ofMillis(200)).doOnNext(p -> productSent.set(true)));
+		when(compositeIntegration.getRecommendationSummaries(PRODUCT_ID_STREAMED_SLOWLY, null, 0)).
+				thenReturn(Flux.defer(() -> {
+					requestedBeforeProduct.set(!productSent.get());
+					return Flux.just(new RecommendationSummary(1, "author", 1, "content", 0));
+				}));
+		when(compositeIntegration.getReviewSummaries(PRODUCT_ID_STREAMED_SLOWLY, null, 0)).thenReturn(Flux.empty());
+
+		// the recommendations are asked for while the product is still on its way, but sent after it
+		StepVerifier.create(service.streamCompositeProduct(PRODUCT_ID_STREAMED_SLOWLY).map(ServerSentEvent::event))
+				.expectNext("product", "recommendation")
+				.verifyComplete();
+		assertTrue(requestedBeforeProduct.get());
 	}
 
 	@Test
@@ -101,4 +363,9 @@ public class ProductCompositeServiceApplicationTests {
 				.jsonPath("$.path").isEqualTo("/product-composite/" + PRODUCT_ID_INVALID)
 				.jsonPath("$.message").isEqualTo("INVALID: " + PRODUCT_ID_INVALID);
 	}
+
+	//  the core services send their address as a header of the summary responses
+	private <T> Mono<ResponseEntity<List<T>>> withAddress(List<T> body) {
+		return Mono.just(ResponseEntity.ok().header(SERVICE_ADDRESS_HEADER, "mock address").body(body));
+	}
 }
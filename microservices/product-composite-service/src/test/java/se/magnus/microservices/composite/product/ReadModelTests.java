@@ -0,0 +1,227 @@
+package se.magnus.microservices.composite.product;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.http.ResponseEntity;
+import org.springframework.messaging.support.GenericMessage;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import reactor.core.publisher.Mono;
+import se.magnus.api.composite.product.ProductAggregate;
+import se.magnus.api.composite.product.RecommendationSummary;
+import se.magnus.api.composite.product.ReviewSummary;
+import se.magnus.api.core.product.Product;
+import se.magnus.api.core.recommendation.Recommendation;
+import se.magnus.api.core.review.Review;
+import se.magnus.api.event.Event;
+import se.magnus.microservices.composite.product.readmodel.ProductAggregateReadModel;
+import se.magnus.microservices.composite.product.readmodel.ReadModelProcessor;
+import se.magnus.microservices.composite.product.services.ProductCompositeIntegration;
+import se.magnus.util.http.ServiceUtil;
+
+import static java.util.Arrays.asList;
+import static java.util.Collections.singletonList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.when;
+import static org.springframework.boot.test.context.SpringBootTest.WebEnvironment.RANDOM_PORT;
+import static org.springframework.http.MediaType.APPLICATION_JSON;
+import static se.magnus.api.event.Event.BULK_HEADER;
+import static se.magnus.api.event.Event.Type.CREATE;
+import static se.magnus.api.event.Event.Type.DELETE;
+import static se.magnus.api.event.Event.Type.UPSERT;
+import static se.magnus.microservices.composite.product.readmodel.ProductAggregateReadModel.PRODUCTS;
+import static se.magnus.microservices.composite.product.readmodel.ProductAggregateReadModel.RECOMMENDATIONS;
+import static se.magnus.microservices.composite.product.readmodel.ProductAggregateReadModel.REVIEWS;
+
+@RunWith(SpringRunner.class)
+@ActiveProfiles("read-model")
+@SpringBootTest(
+		webEnvironment=RANDOM_PORT,
+		classes = { ProductCompositeServiceApplication.class, TestSecurityConfig.class },
+		properties = {"spring.main.allow-bean-definition-overriding=true","eureka.client.enabled=false", "spring.cloud.config.enabled=false"})
+public class ReadModelTests {
+
+	@Autowired
+	private WebTestClient client;
+
+	@Autowired
+	private ReadModelProcessor.ReadModelChannels channels;
+
+	@Autowired
+	private ProductAggregateReadModel readModel;
+
+	@Autowired
+	private MeterRegistry registry;
+
+	@Autowired
+	private ServiceUtil serviceUtil;
+
+	//  what the core services return for products the read model doesn't hold
+	@MockBean
+	private ProductCompositeIntegration integration;
+
+	//  the test binder has no kafka consumers that report the end of the topics, a topic without events would never be started
+	@Before
+	public void setUp() {
+		asList(PRODUCTS, RECOMMENDATIONS, REVIEWS).forEach(readModel::reachedEndOf);
+	}
+
+	@Test
+	public void getCompositeProductFromReadModel() {
+
+		int productId = 1;
+		channels.inputProducts().send(new GenericMessage<>(new Event<>(CREATE, productId, new Product(productId, "name", 1, null))));
+		channels.inputRecommendations().send(MessageBuilder.withPayload(new Event<>(CREATE, productId, asList(
+				new Recommendation(productId, 2, "a", 2, "c", null),
+				new Recommendation(productId, 1, "a", 1, "c", null)))).setHeader(BULK_HEADER, true).build());
+		channels.inputReviews().send(new GenericMessage<>(new Event<>(CREATE, productId, new Review(productId, 1, "a", "s", "c", null))));
+		channels.inputReviews().send(new GenericMessage<>(new Event<>(UPSERT, productId, new Review(productId, 1, "a", "s", "replaced", null))));
+
+		//  there are no core services to ask, the aggregate can only come from the read model
+		client.get()
+				.uri("/product-composite/" + productId)
+				.accept(APPLICATION_JSON)
+				.exchange()
+				.expectStatus().isOk()
+				.expectBody()
+				.jsonPath("$.name").isEqualTo("name")
+				.jsonPath("$.recommendations.length()").isEqualTo(2)
+				.jsonPath("$.recommendations[0].recommendationId").isEqualTo(1)
+				.jsonPath("$.reviews.length()").isEqualTo(1)
+				.jsonPath("$.reviews[0].content").isEqualTo("replaced")
+				//  the versions the review service assigns, created and updated once
+				.jsonPath("$.reviews[0].version").isEqualTo(1)
+				.jsonPath("$.recommendations[0].version").isEqualTo(0);
+
+		assertEquals(1.0, registry.get("read-model.caught-up").gauge().value(), 0.0);
+		assertEquals(3, registry.get("read-model.lag").timers().size());
+	}
+
+	@Test
+	public void deleteCompositeProductFromReadModel() {
+
+		int productId = 2;
+		channels.inputProducts().send(new GenericMessage<>(new Event<>(CREATE, productId, new Product(productId, "name", 1, null))));
+		channels.inputReviews().send(new GenericMessage<>(new Event<>(CREATE, productId, new Review(productId, 1, "a", "s", "c", null))));
+		assertEquals(1, readModel.get(productId).getReviews().size());
+
+		channels.inputProducts().send(new GenericMessage<>(new Event<>(DELETE, productId, null)));
+		channels.inputReviews().send(new GenericMessage<>(new Event<>(DELETE, productId, null)));
+		assertNull(readModel.get(productId));
+	}
+
+	@Test
+	public void redeliveredEventIsSkipped() {
+
+		int productId = 3;
+		Event<Integer, Product> upsert = new Event<>(UPSERT, productId, new Product(productId, "replaced", 1, null));
+		channels.inputProducts().send(new GenericMessage<>(new Event<>(CREATE, productId, new Product(productId, "name", 1, null))));
+		channels.inputProducts().send(new GenericMessage<>(upsert));
+		channels.inputProducts().send(new GenericMessage<>(upsert));
+
+		//  updated once, like in the product service that skips the redelivery as well
+		assertEquals(1, readModel.get(productId).getVersion());
+	}
+
+	@Test
+	public void duplicateCreateIsIgnored() {
+
+		int productId = 6;
+		channels.inputProducts().send(new GenericMessage<>(new Event<>(CREATE, productId, new Product(productId, "name", 1, null))));
+		channels.inputProducts().send(new GenericMessage<>(new Event<>(CREATE, productId, new Product(productId, "duplicate", 1, null))));
+		channels.inputRecommendations().send(new GenericMessage<>(new Event<>(CREATE, productId, new Recommendation(productId, 1, "a", 1, "c", null))));
+		channels.inputRecommendations().send(MessageBuilder.withPayload(new Event<>(CREATE, productId, asList(
+				new Recommendation(productId, 1, "a", 1, "duplicate", null),
+				new Recommendation(productId, 2, "a", 2, "c", null)))).setHeader(BULK_HEADER, true).build());
+		channels.inputReviews().send(new GenericMessage<>(new Event<>(CREATE, productId, new Review(productId, 1, "a", "s", "c", null))));
+		channels.inputReviews().send(new GenericMessage<>(new Event<>(CREATE, productId, new Review(productId, 1, "a", "s", "duplicate", null))));
+
+		//  the core services reject the duplicates and keep the originals, the bulk create skips the existing item only
+		ProductAggregate aggregate = readModel.get(productId);
+		assertEquals("name", aggregate.getName());
+		assertEquals(0, aggregate.getVersion());
+		assertEquals(2, aggregate.getRecommendations().size());
+		assertEquals("c", aggregate.getRecommendations().get(0).getContent());
+		assertEquals(0, aggregate.getRecommendations().get(0).getVersion());
+		assertEquals("c", aggregate.getReviews().get(0).getContent());
+		assertEquals(0, aggregate.getReviews().get(0).getVersion());
+	}
+
+	@Test
+	public void sameETagAsLoadedAggregate() {
+
+		int productId = 4;
+		channels.inputProducts().send(new GenericMessage<>(new Event<>(CREATE, productId, new Product(productId, "name", 1, null))));
+		channels.inputProducts().send(new GenericMessage<>(new Event<>(UPSERT, productId, new Product(productId, "replaced", 2, null))));
+		channels.inputRecommendations().send(new GenericMessage<>(new Event<>(CREATE, productId, new Recommendation(productId, 1, "a", 1, "c", null))));
+		channels.inputRecommendations().send(new GenericMessage<>(new Event<>(UPSERT, productId, new Recommendation(productId, 1, "a", 2, "replaced", null))));
+		channels.inputReviews().send(new GenericMessage<>(new Event<>(CREATE, productId, new Review(productId, 1, "a", "s", "c", null))));
+		String materialized = etagOf(productId);
+
+		//  the same product as the core services hold it after the create and the upsert
+		Product product = new Product(productId, "replaced", 2, "mock-address");
+		product.setVersion(1);
+		when(integration.getProduct(productId, 0, 0)).thenReturn(Mono.just(product));
+		when(integration.getRecommendationSummariesWithAddress(productId, 0)).thenReturn(Mono.just(ResponseEntity.ok(
+				singletonList(new RecommendationSummary(1, "a", 2, "replaced", 1)))));
+		when(integration.getReviewSummariesWithAddress(productId, 0)).thenReturn(Mono.just(ResponseEntity.ok(
+				singletonList(new ReviewSummary(1, "a", "s", "c", 0)))));
+		channels.inputProducts().send(new GenericMessage<>(new Event<>(DELETE, productId, null)));
+		assertNull(readModel.get(productId));
+
+		assertEquals(materialized, etagOf(productId));
+	}
+
+	@Test
+	public void recreatedProductGetsNewETag() {
+
+		int productId = 5;
+		channels.inputProducts().send(new GenericMessage<>(new Event<>(CREATE, productId, new Product(productId, "name", 1, null))));
+		String created = etagOf(productId);
+
+		//  the versions start over, the content differs
+		channels.inputProducts().send(new GenericMessage<>(new Event<>(DELETE, productId, null)));
+		channels.inputProducts().send(new GenericMessage<>(new Event<>(CREATE, productId, new Product(productId, "recreated", 1, null))));
+		assertEquals(0, readModel.get(productId).getVersion());
+		assertNotEquals(created, etagOf(productId));
+	}
+
+	@Test
+	public void notCaughtUpBeforeEveryTopicStarted() {
+
+		ProductAggregateReadModel replaying = new ProductAggregateReadModel(serviceUtil, new SimpleMeterRegistry(), 5000, 0, 100);
+		assertFalse(replaying.isCaughtUp());
+
+		int productId = 1;
+		replaying.applyProduct(new Event<>(CREATE, productId, new Product(productId, "name", 1, null)));
+		replaying.reachedEndOf(RECOMMENDATIONS);
+		//  the reviews of the product may still be on their way
+		assertFalse(replaying.isCaughtUp());
+		assertNull(replaying.get(productId));
+
+		replaying.reachedEndOf(REVIEWS);
+		assertTrue(replaying.isCaughtUp());
+		assertEquals("name", replaying.get(productId).getName());
+	}
+
+	private String etagOf(int productId) {
+		return client.get()
+				.uri("/product-composite/" + productId)
+				.accept(APPLICATION_JSON)
+				.exchange()
+				.expectStatus().isOk()
+				.expectBody().returnResult().getResponseHeaders().getETag();
+	}
+}
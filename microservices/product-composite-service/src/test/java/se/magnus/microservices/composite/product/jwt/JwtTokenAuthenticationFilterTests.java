@@ -0,0 +1,72 @@
+package se.magnus.microservices.composite.product.jwt;
+
+import org.junit.Test;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.context.ReactiveSecurityContextHolder;
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.web.server.WebFilterChain;
+import se.magnus.util.http.InternalIdentityCodec;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static java.util.Collections.singletonList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static se.magnus.util.http.InternalIdentityCodec.IDENTITY_HEADER;
+
+public class JwtTokenAuthenticationFilterTests {
+
+	private static final String SECRET = "secret";
+
+	private final JwtTokenAuthenticationFilter filter = new JwtTokenAuthenticationFilter(new JwtTokenProvider(SECRET));
+	private final AtomicReference<Authentication> authenticated = new AtomicReference<>();
+
+	//  the handler, it only keeps the caller the filter authenticated
+	private final WebFilterChain handler = exchange -> ReactiveSecurityContextHolder.getContext()
+			.map(SecurityContext::getAuthentication)
+			.doOnNext(authenticated::set)
+			.then();
+
+	@Test
+	public void acceptIdentityOfGateway() {
+
+		filter(new InternalIdentityCodec(SECRET, Clock.systemUTC()).encode("writer", singletonList("WRITE"), Instant.now().plusSeconds(30)));
+
+		assertEquals("writer", authenticated.get().getPrincipal());
+		assertEquals("SCOPE:WRITE", authenticated.get().getAuthorities().stream().map(GrantedAuthority::getAuthority).findFirst().get());
+	}
+
+	@Test
+	public void rejectForgedIdentity() {
+
+		String forged = new InternalIdentityCodec("guessed", Clock.systemUTC()).encode("writer", singletonList("WRITE"), Instant.now().plusSeconds(30));
+		String identity = new InternalIdentityCodec(SECRET, Clock.systemUTC()).encode("reader", singletonList("READ"), Instant.now().plusSeconds(30));
+
+		filter(forged);
+		assertNull(authenticated.get());
+
+		//  the scopes of a reader with the signature of its own identity
+		filter(forged.substring(0, forged.indexOf('.')) + identity.substring(identity.indexOf('.')));
+		assertNull(authenticated.get());
+
+		filter("not-an-identity");
+		assertNull(authenticated.get());
+	}
+
+	@Test
+	public void rejectExpiredIdentity() {
+
+		filter(new InternalIdentityCodec(SECRET, Clock.systemUTC()).encode("writer", singletonList("WRITE"), Instant.now().minusSeconds(1)));
+
+		assertNull(authenticated.get());
+	}
+
+	private void filter(String identity) {
+		filter.filter(MockServerWebExchange.from(MockServerHttpRequest.get("/product-composite/1").header(IDENTITY_HEADER, identity)), handler).block();
+	}
+}
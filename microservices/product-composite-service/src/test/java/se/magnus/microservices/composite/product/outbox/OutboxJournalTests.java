@@ -0,0 +1,123 @@
+package se.magnus.microservices.composite.product.outbox;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardOpenOption.APPEND;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class OutboxJournalTests {
+
+	private static final long SEGMENT_BYTES = 1024;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void resumeAfterCommittedPosition() throws IOException {
+		Path dir = folder.getRoot().toPath();
+
+		try (OutboxJournal journal = new OutboxJournal(dir, SEGMENT_BYTES)) {
+			journal.append(bytes("e1"));
+			journal.append(bytes("e2"));
+			journal.append(bytes("e3"));
+			journal.commit(journal.read(1).get(0).next);
+		}
+
+		try (OutboxJournal journal = new OutboxJournal(dir, SEGMENT_BYTES)) {
+			List<OutboxJournal.Entry> entries = journal.read(10);
+			assertEquals(2, entries.size());
+			assertEquals("e2", string(entries.get(0).data));
+			assertEquals("e3", string(entries.get(1).data));
+		}
+	}
+
+	@Test
+	public void deleteRelayedSegments() throws IOException {
+		Path dir = folder.getRoot().toPath();
+
+		try (OutboxJournal journal = new OutboxJournal(dir, SEGMENT_BYTES)) {
+			//  the relay is always one event behind, i.e. the journal is never empty
+			journal.append(bytes(String.format("e%03d-%0100d", 0, 0)));
+			for (int i = 1; i < 100; i++) {
+				journal.append(bytes(String.format("e%03d-%0100d", i, 0)));
+				journal.commit(journal.read(1).get(0).next);
+			}
+			assertEquals(1, journal.read(10).size());
+			assertTrue(journal.segments() <= 2);
+			assertEquals(journal.segments(), segmentFiles(dir));
+
+			//  positions aren't reused, the next record starts where the previous one ended
+			long next = journal.read(1).get(0).next;
+			journal.append(bytes("e100"));
+			assertEquals(next, journal.read(10).get(1).position);
+		}
+
+		try (OutboxJournal journal = new OutboxJournal(dir, SEGMENT_BYTES)) {
+			List<OutboxJournal.Entry> entries = journal.read(10);
+			assertEquals(2, entries.size());
+			assertTrue(string(entries.get(0).data).startsWith("e099-"));
+			assertEquals("e100", string(entries.get(1).data));
+		}
+	}
+
+	@Test
+	public void readAcrossSegments() throws IOException {
+		Path dir = folder.getRoot().toPath();
+
+		try (OutboxJournal journal = new OutboxJournal(dir, SEGMENT_BYTES)) {
+			for (int i = 0; i < 30; i++) journal.append(bytes(String.format("e%03d-%0100d", i, 0)));
+			assertTrue(journal.segments() > 1);
+		}
+
+		try (OutboxJournal journal = new OutboxJournal(dir, SEGMENT_BYTES)) {
+			List<OutboxJournal.Entry> entries = journal.read(100);
+			assertEquals(30, entries.size());
+			for (int i = 0; i < 30; i++) assertTrue(string(entries.get(i).data).startsWith(String.format("e%03d-", i)));
+		}
+	}
+
+	@Test
+	public void dropTornRecord() throws IOException {
+		Path dir = folder.getRoot().toPath();
+
+		try (OutboxJournal journal = new OutboxJournal(dir, SEGMENT_BYTES)) {
+			journal.append(bytes("e1"));
+		}
+		//  a crash in the middle of an append
+		try (FileChannel log = FileChannel.open(dir.resolve(String.format("outbox-%020d.log", 0)), APPEND)) {
+			log.write(ByteBuffer.wrap(new byte[] {0, 0, 0, 42, 1, 2}));
+		}
+
+		try (OutboxJournal journal = new OutboxJournal(dir, SEGMENT_BYTES)) {
+			assertEquals(1, journal.read(10).size());
+			journal.append(bytes("e2"));
+			assertEquals("e2", string(journal.read(10).get(1).data));
+		}
+	}
+
+	private long segmentFiles(Path dir) throws IOException {
+		try (Stream<Path> files = Files.list(dir)) {
+			return files.filter(file -> file.getFileName().toString().matches("outbox-\\d+\\.log")).count();
+		}
+	}
+
+	private byte[] bytes(String s) {
+		return s.getBytes(UTF_8);
+	}
+
+	private String string(byte[] data) {
+		return new String(data, UTF_8);
+	}
+}
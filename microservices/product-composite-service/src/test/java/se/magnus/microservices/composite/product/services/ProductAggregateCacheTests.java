@@ -0,0 +1,52 @@
+package se.magnus.microservices.composite.product.services;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Test;
+import reactor.test.scheduler.VirtualTimeScheduler;
+import se.magnus.api.composite.product.ProductAggregate;
+import se.magnus.microservices.composite.product.services.ProductAggregateCache.InvalidationChannels;
+
+import java.time.Duration;
+
+import static java.util.Collections.emptyList;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.mockito.Mockito.mock;
+
+public class ProductAggregateCacheTests {
+
+	private static final long EVICT_AGAIN_MS = 2000;
+
+	private final VirtualTimeScheduler scheduler = VirtualTimeScheduler.create();
+	private final ProductAggregateCache cache = new ProductAggregateCache(mock(InvalidationChannels.class), new SimpleMeterRegistry(), 100, 30, EVICT_AGAIN_MS, scheduler);
+
+	@Test
+	public void skipPutOfAggregateLoadedBeforeEviction() {
+
+		long generation = cache.generation(1);
+		//  the event of a write is published while the aggregate is loaded
+		cache.evict(1);
+		cache.put(aggregate(1), generation);
+
+		assertNull(cache.get(1));
+
+		cache.put(aggregate(1), cache.generation(1));
+		assertNotNull(cache.get(1));
+	}
+
+	@Test
+	public void evictAgainAfterWrite() {
+
+		cache.evict(1);
+		//  loaded after the eviction, but before the core services applied the write
+		cache.put(aggregate(1), cache.generation(1));
+		assertNotNull(cache.get(1));
+
+		scheduler.advanceTimeBy(Duration.ofMillis(EVICT_AGAIN_MS));
+		assertNull(cache.get(1));
+	}
+
+	private static ProductAggregate aggregate(int productId) {
+		return new ProductAggregate(productId, "name", 1, 0, emptyList(), emptyList(), null);
+	}
+}
@@ -3,6 +3,7 @@ package se.magnus.microservices.core.product;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.cloud.netflix.eureka.EnableEurekaClient;
@@ -10,25 +11,34 @@ import org.springframework.context.ConfigurableApplicationContext;
 import org.springframework.context.annotation.ComponentScan;
 import org.springframework.context.event.ContextRefreshedEvent;
 import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.Sort;
 import org.springframework.data.mapping.context.MappingContext;
 import org.springframework.data.mongodb.core.ReactiveMongoOperations;
+import org.springframework.data.mongodb.core.index.Index;
 import org.springframework.data.mongodb.core.index.IndexResolver;
 import org.springframework.data.mongodb.core.index.MongoPersistentEntityIndexResolver;
 import org.springframework.data.mongodb.core.index.ReactiveIndexOperations;
 import org.springframework.data.mongodb.core.mapping.MongoPersistentEntity;
 import org.springframework.data.mongodb.core.mapping.MongoPersistentProperty;
+import se.magnus.microservices.core.product.persistence.ProcessedEventEntity;
 import se.magnus.microservices.core.product.persistence.ProductEntity;
 
+import java.time.Duration;
+
 @EnableEurekaClient
 @SpringBootApplication
 @ComponentScan("se.magnus")
 public class ProductServiceApplication {
 	private static final Logger LOG = LoggerFactory.getLogger(ProductServiceApplication.class);
+	private static final String PROCESSED_AT_INDEX = "processedAt";
 	private final ReactiveMongoOperations mongoTemplate;
+	private final Duration processedEventRetention;
 
 	@Autowired
-	public ProductServiceApplication(ReactiveMongoOperations mongoTemplate) {
+	public ProductServiceApplication(ReactiveMongoOperations mongoTemplate, @Value("${app.messaging.dedup.retentionDays:7}") int retentionDays) {
 		this.mongoTemplate = mongoTemplate;
+		this.processedEventRetention = Duration.ofDays(retentionDays);
 	}
 
 	public static void main(String[] args) {
@@ -44,5 +54,15 @@ public class ProductServiceApplication {
 		IndexResolver resolver = new MongoPersistentEntityIndexResolver(mappingContext);
 		ReactiveIndexOperations indexOps = mongoTemplate.indexOps(ProductEntity.class);
 		resolver.resolveIndexFor(ProductEntity.class).forEach(e -> indexOps.ensureIndex(e).block());
+
+		//  the TTL index that expires the ids of processed events, an index with another retention is replaced
+		ReactiveIndexOperations processedEventIndexOps = mongoTemplate.indexOps(ProcessedEventEntity.class);
+		Index ttlIndex = new Index().named(PROCESSED_AT_INDEX).on("processedAt", Sort.Direction.ASC).expire(processedEventRetention);
+		processedEventIndexOps.ensureIndex(ttlIndex)
+				.onErrorResume(DataIntegrityViolationException.class, ex -> {
+					LOG.info("Replacing the index {}: {}", PROCESSED_AT_INDEX, ex.getMessage());
+					return processedEventIndexOps.dropIndex(PROCESSED_AT_INDEX).then(processedEventIndexOps.ensureIndex(ttlIndex));
+				})
+				.block();
 	}
 }
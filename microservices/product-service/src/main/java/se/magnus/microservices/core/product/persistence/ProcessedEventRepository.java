@@ -0,0 +1,6 @@
+package se.magnus.microservices.core.product.persistence;
+
+import org.springframework.data.repository.reactive.ReactiveCrudRepository;
+
+public interface ProcessedEventRepository extends ReactiveCrudRepository<ProcessedEventEntity, String> {
+}
@@ -1,8 +1,14 @@
 package se.magnus.microservices.core.product.persistence;
 
 import org.springframework.data.repository.reactive.ReactiveCrudRepository;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
-public interface ProductRepository extends ReactiveCrudRepository<ProductEntity, String> {
+import java.util.Collection;
+
+public interface ProductRepository extends ReactiveCrudRepository<ProductEntity, String>, ProductRepositoryCustom {
     Mono<ProductEntity> findByProductId(int productId);
+    Flux<ProductEntity> findByProductIdIn(Collection<Integer> productIds);
+    //  a single delete on the server, returns the number of deleted products
+    Mono<Long> deleteByProductId(int productId);
 }
@@ -0,0 +1,18 @@
+package se.magnus.microservices.core.product.persistence;
+
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+
+public interface ProductRepositoryCustom {
+
+    //  creates the product or replaces the one with the same productId, an existing one in a single write
+    Mono<ProductEntity> upsert(ProductEntity entity);
+
+    //  all inserts in one unordered bulk write, the ones that hit the unique index are skipped.
+    //  emits the number of inserted products
+    Mono<Integer> insertAllSkippingDuplicates(List<ProductEntity> entities);
+
+    //  all upserts in one ordered bulk write
+    Mono<Void> upsertAll(List<ProductEntity> entities);
+}
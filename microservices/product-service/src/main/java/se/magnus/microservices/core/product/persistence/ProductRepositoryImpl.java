@@ -0,0 +1,104 @@
+package se.magnus.microservices.core.product.persistence;
+
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.client.model.InsertManyOptions;
+import com.mongodb.client.model.UpdateOneModel;
+import com.mongodb.client.model.UpdateOptions;
+import com.mongodb.client.model.WriteModel;
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.ReactiveMongoOperations;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import reactor.core.publisher.Mono;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.springframework.data.mongodb.core.FindAndModifyOptions.options;
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+
+//  an update instead of a replacement, a replacement would drop the version of the document.
+//  mongodb 3.6 has no update pipelines, i.e. a single upsert can't set the version of a new document to 0 and increment the others.
+public class ProductRepositoryImpl implements ProductRepositoryCustom {
+
+    private static final int DUPLICATE_KEY = 11000;
+
+    private final ReactiveMongoOperations mongo;
+
+    @Autowired
+    public ProductRepositoryImpl(ReactiveMongoOperations mongo) {
+        this.mongo = mongo;
+    }
+
+    //  an existing product is updated and its version incremented, i.e. a re-import is a single write.
+    //  a new one is inserted with the first version, like a save. an insert that loses against a concurrent one updates it, once.
+    @Override
+    public Mono<ProductEntity> upsert(ProductEntity entity) {
+        return update(entity)
+                .switchIfEmpty(Mono.defer(() -> mongo.insert(entity)
+                        .onErrorResume(DuplicateKeyException.class, ex -> update(entity).switchIfEmpty(Mono.error(ex)))));
+    }
+
+    @Override
+    public Mono<Integer> insertAllSkippingDuplicates(List<ProductEntity> entities) {
+        if (entities.isEmpty()) return Mono.just(0);
+        List<Document> documents = entities.stream().map(this::toDocument).collect(Collectors.toList());
+        return mongo.getCollection(mongo.getCollectionName(ProductEntity.class))
+                .flatMap(collection -> Mono.from(collection.insertMany(documents, new InsertManyOptions().ordered(false))))
+                .thenReturn(documents.size())
+                .onErrorResume(MongoBulkWriteException.class, ex -> {
+                    if (ex.getWriteErrors().stream().anyMatch(error -> error.getCode() != DUPLICATE_KEY)) return Mono.error(ex);
+                    return Mono.just(documents.size() - ex.getWriteErrors().size());
+                });
+    }
+
+    //  per product an upsert that only creates a missing document, one version before the first, and an update that sets the
+    //  fields and increments the version, i.e. a new document ends up at version 0. all of them in one ordered bulk write,
+    //  a reader may see a new document at version -1 for the time in between.
+    @Override
+    public Mono<Void> upsertAll(List<ProductEntity> entities) {
+        if (entities.isEmpty()) return Mono.empty();
+        List<WriteModel<Document>> writes = new ArrayList<>(entities.size() * 2);
+        for (ProductEntity entity : entities) {
+            Document filter = byKey(entity).getQueryObject();
+            writes.add(new UpdateOneModel<>(filter, insertOf(entity).getUpdateObject(), new UpdateOptions().upsert(true)));
+            writes.add(new UpdateOneModel<>(filter, updateOf(entity).getUpdateObject()));
+        }
+        return mongo.getCollection(mongo.getCollectionName(ProductEntity.class))
+                .flatMap(collection -> Mono.from(collection.bulkWrite(writes)))
+                .then();
+    }
+
+    private Mono<ProductEntity> update(ProductEntity entity) {
+        return mongo.findAndModify(byKey(entity), updateOf(entity), options().returnNew(true), ProductEntity.class);
+    }
+
+    //  the first version, as set by a save of a new entity
+    private Document toDocument(ProductEntity entity) {
+        Document document = new Document();
+        mongo.getConverter().write(entity, document);
+        document.put("version", 0);
+        return document;
+    }
+
+    private Query byKey(ProductEntity entity) {
+        return Query.query(where("productId").is(entity.getProductId()));
+    }
+
+    private Update insertOf(ProductEntity entity) {
+        return new Update()
+                .setOnInsert("name", entity.getName())
+                .setOnInsert("weight", entity.getWeight())
+                .setOnInsert("version", -1);
+    }
+
+    private Update updateOf(ProductEntity entity) {
+        return new Update()
+                .set("name", entity.getName())
+                .set("weight", entity.getWeight())
+                .inc("version", 1);
+    }
+}
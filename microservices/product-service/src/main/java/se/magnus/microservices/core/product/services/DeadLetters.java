@@ -0,0 +1,32 @@
+package se.magnus.microservices.core.product.services;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cloud.stream.function.StreamBridge;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.stereotype.Component;
+import se.magnus.util.exceptions.EventProcessingException;
+
+//  the events a consumer took from the input binding but can't apply, neither binder retries nor the binder's dead letter
+//  queue see them. they are sent to the dead letter queue through the deadLetters output binding instead,
+//  see spring.cloud.stream.bindings.deadLetters
+@Component
+public class DeadLetters {
+    public static final String DEAD_LETTERS = "deadLetters";
+    public static final String EXCEPTION_MESSAGE_HEADER = "x-exception-message";
+
+    //  looked up on the first dead letter, the persistence tests come without the binder
+    private final ObjectProvider<StreamBridge> streamBridge;
+
+    @Autowired
+    public DeadLetters(ObjectProvider<StreamBridge> streamBridge) {
+        this.streamBridge = streamBridge;
+    }
+
+    //  the message as it was received, with the error that made it a dead letter
+    public void send(Message<?> message, Throwable error) {
+        Message<?> deadLetter = MessageBuilder.fromMessage(message).setHeader(EXCEPTION_MESSAGE_HEADER, error.toString()).build();
+        if (!streamBridge.getObject().send(DEAD_LETTERS, deadLetter)) throw new EventProcessingException("The dead letter was not sent");
+    }
+}
@@ -6,24 +6,30 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.cloud.stream.annotation.EnableBinding;
 import org.springframework.cloud.stream.annotation.StreamListener;
 import org.springframework.cloud.stream.messaging.Sink;
+import org.springframework.context.annotation.Profile;
 import se.magnus.api.core.product.Product;
 import se.magnus.api.core.product.ProductService;
 import se.magnus.api.event.Event;
 import se.magnus.util.exceptions.EventProcessingException;
 
+//  one event per message, see BatchMessageProcessor and ReactiveMessageProcessor for the batch and reactive modes
+@Profile("!batch & !reactive")
 @EnableBinding({ Sink.class })
 public class MessageProcessor {
     private static final Logger LOG = LoggerFactory.getLogger(MessageProcessor.class);
     private final ProductService productService;
+    private final ProcessedEvents processedEvents;
 
     @Autowired
-    public MessageProcessor(ProductService productService) {
+    public MessageProcessor(ProductService productService, ProcessedEvents processedEvents) {
         this.productService = productService;
+        this.processedEvents = processedEvents;
     }
 
     @StreamListener(target = Sink.INPUT)
     public void process(Event<Integer, Product> event) {
         LOG.info("Process message created at {}...", event.getEventCreatedAt());
+        if (isDuplicate(event)) return;
         switch (event.getEventType()) {
             case CREATE:
                 Product product = event.getData();
@@ -31,6 +37,12 @@ public class MessageProcessor {
                 productService.createProduct(product);
                 break;
 
+            case UPSERT:
+                Product replacement = event.getData();
+                LOG.info("Create or replace product with ID: {}", replacement.getProductId());
+                productService.upsertProduct(replacement);
+                break;
+
             case DELETE:
                 int productId = event.getKey();
                 LOG.info("Delete recommendations with ProductID: {}", productId);
@@ -38,10 +50,18 @@ public class MessageProcessor {
                 break;
 
             default:
-                String errorMessage = "Incorrect event type: " + event.getEventType() + ", expected a CREATE or DELETE event";
+                String errorMessage = "Incorrect event type: " + event.getEventType() + ", expected a CREATE, UPSERT or DELETE event";
                 LOG.warn(errorMessage);
                 throw new EventProcessingException(errorMessage);
         }
+        processedEvents.markProcessed(event).block();
         LOG.info("Message processing done!");
     }
+
+    //  redeliveries of an event that was applied already, e.g. after a timeout, are acknowledged without applying them again
+    private boolean isDuplicate(Event<Integer, ?> event) {
+        if (!processedEvents.isProcessed(event).block()) return false;
+        LOG.info("Skipped duplicate event: {}", event.getEventId());
+        return true;
+    }
 }
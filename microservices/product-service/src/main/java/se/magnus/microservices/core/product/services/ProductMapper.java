@@ -6,6 +6,8 @@ import org.mapstruct.Mappings;
 import se.magnus.api.core.product.Product;
 import se.magnus.microservices.core.product.persistence.ProductEntity;
 
+import java.util.List;
+
 @Mapper(componentModel = "spring")
 public interface ProductMapper {
 
@@ -19,4 +21,6 @@ public interface ProductMapper {
         @Mapping(target = "version", ignore = true)
     })
     ProductEntity apiToEntity(Product api);
+
+    List<ProductEntity> apiListToEntityList(List<Product> api);
 }
@@ -5,6 +5,7 @@ import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.dao.DuplicateKeyException;
 import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 import se.magnus.api.core.product.Product;
 import se.magnus.api.core.product.ProductService;
@@ -14,7 +15,9 @@ import se.magnus.util.exceptions.InvalidInputException;
 import se.magnus.util.exceptions.NotFoundException;
 import se.magnus.util.http.ServiceUtil;
 
+import java.util.List;
 import java.util.Random;
+import java.util.stream.Collectors;
 
 @RestController
 public class ProductServiceImpl implements ProductService {
@@ -32,16 +35,66 @@ public class ProductServiceImpl implements ProductService {
 
     @Override
     public Product createProduct(Product body) {
+        return createProductAsync(body).block();
+    }
+
+    //  non-blocking variant, used by the reactive event consumer
+    public Mono<Product> createProductAsync(Product body) {
         ProductEntity entity = mapper.apiToEntity(body);
-        Mono<Product> newEntity = repository.save(entity)
+        return repository.save(entity)
                 .log()
                 //  error handling modified from try-catch to chain function
                 .onErrorMap(
                         DuplicateKeyException.class,
                         ex -> new InvalidInputException("Duplicate key, Product Id: " + body.getProductId()))
                 .map(mapper::entityToApi);
+    }
+
+    @Override
+    public List<Product> createProducts(List<Product> body) {
+        //  all entities are new, so saveAll ends up in a single insertMany
+        return repository.saveAll(mapper.apiListToEntityList(body))
+                .log()
+                .onErrorMap(
+                        DuplicateKeyException.class,
+                        ex -> new InvalidInputException("Duplicate key, Product Ids: " + body.stream().map(Product::getProductId).collect(Collectors.toList())))
+                .map(mapper::entityToApi)
+                .collectList()
+                .block();
+    }
+
+    //  used by the batch consumer, a product that already exists must not fail the whole batch, see BatchMessageProcessor
+    public int createProductsSkippingDuplicates(List<Product> body) {
+        int created = repository.insertAllSkippingDuplicates(mapper.apiListToEntityList(body)).log().block();
+        if (created < body.size()) LOG.warn("createProducts: skipped {} products that already exist", body.size() - created);
+        return created;
+    }
+
+    @Override
+    public Product upsertProduct(Product body) {
+        return upsertProductAsync(body).block();
+    }
+
+    //  no duplicate key round trip, an existing product is replaced
+    public Mono<Product> upsertProductAsync(Product body) {
+        if (body.getProductId() < 1) throw new InvalidInputException("Invalid productId: " + body.getProductId());
+        return repository.upsert(mapper.apiToEntity(body))
+                .log()
+                .map(mapper::entityToApi);
+    }
 
-        return newEntity.block();
+    @Override
+    public List<Product> upsertProducts(List<Product> body) {
+        return upsertProductsAsync(body).block();
+    }
+
+    public Mono<List<Product>> upsertProductsAsync(List<Product> body) {
+        body.forEach(p -> {
+            if (p.getProductId() < 1) throw new InvalidInputException("Invalid productId: " + p.getProductId());
+        });
+        return repository.upsertAll(mapper.apiListToEntityList(body))
+                .log()
+                .thenReturn(body);
     }
 
     @Override
@@ -59,14 +112,31 @@ public class ProductServiceImpl implements ProductService {
                 });
     }
 
+    @Override
+    public Flux<Product> getProducts(List<Integer> productIds) {
+        productIds.forEach(productId -> {
+            if (productId < 1) throw new InvalidInputException("Invalid productId: " + productId);
+        });
+        return repository.findByProductIdIn(productIds)
+                .log()
+                .map(mapper::entityToApi)
+                .map(e -> {
+                    e.setServiceAddress(serviceUtil.getServiceAddress());
+                    return e;
+                });
+    }
+
     @Override
     public void deleteProduct(int productId) {
+        deleteProductAsync(productId).block();   //  make synchronous response
+    }
+
+    public Mono<Void> deleteProductAsync(int productId) {
         LOG.debug("deleteProduct: tries to delete an entity with productId: {}", productId);
-        repository.findByProductId(productId)
+        return repository.deleteByProductId(productId)
                 .log()
-                .map(repository::delete)
-                .flatMap(e -> e)
-                .block();   //  make synchronous response
+                .doOnNext(count -> LOG.debug("deleteProduct: deleted {} entities", count))
+                .then();
     }
 
     private void simulateDelay(int delay) {
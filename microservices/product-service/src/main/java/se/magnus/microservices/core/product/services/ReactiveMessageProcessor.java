@@ -0,0 +1,136 @@
+package se.magnus.microservices.core.product.services;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageHeaders;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.util.function.Tuples;
+import reactor.util.retry.Retry;
+import se.magnus.api.core.product.Product;
+import se.magnus.api.event.Event;
+import se.magnus.api.event.EventCodec;
+import se.magnus.util.exceptions.EventProcessingException;
+import se.magnus.util.exceptions.InvalidInputException;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.function.Function;
+
+//  non-blocking replacement of MessageProcessor, bound to the input binding by the "reactive" profile.
+//  events are spread over a fixed number of lanes by productId, each lane applies its events one at a time,
+//  so the events of a product keep their order and at most `concurrency` writes are in flight.
+@Profile("reactive")
+@Configuration
+public class ReactiveMessageProcessor {
+    private static final Logger LOG = LoggerFactory.getLogger(ReactiveMessageProcessor.class);
+    private static final TypeReference<Event<Integer, Product>> EVENT_TYPE = new TypeReference<Event<Integer, Product>>() {};
+
+    private final ProductServiceImpl productService;
+    private final EventCodec codec;
+    private final ProcessedEvents processedEvents;
+    private final DeadLetters deadLetters;
+    private final int concurrency;
+
+    @Autowired
+    public ReactiveMessageProcessor(
+            ProductServiceImpl productService,
+            EventCodec codec,
+            ProcessedEvents processedEvents,
+            DeadLetters deadLetters,
+            @Value("${app.messaging.concurrency:16}") int concurrency
+    ) {
+        this.productService = productService;
+        this.codec = codec;
+        this.processedEvents = processedEvents;
+        this.deadLetters = deadLetters;
+        this.concurrency = concurrency;
+    }
+
+    //  the function converter drops the generic types of the payload, so events are read from the raw message
+    @Bean
+    public Function<Flux<Message<byte[]>>, Mono<Void>> productEvents() {
+        return messages -> messages
+                .concatMap(message -> readEvent(message).map(event -> Tuples.of(message, event)))
+                .groupBy(received -> Math.floorMod(received.getT2().getKey(), concurrency))
+                .flatMap(lane -> lane.concatMap(received -> process(received.getT1(), received.getT2())), concurrency)
+                .then();
+    }
+
+    //  an error must not terminate the stream, failed events are retried like the binder does and then dead-lettered
+    private Mono<Void> process(Message<byte[]> message, Event<Integer, Product> event) {
+        return processedEvents.isProcessed(event)
+                .flatMap(processed -> {
+                    if (processed) {
+                        LOG.debug("Skipped duplicate event: {}", event.getEventId());
+                        return Mono.<Void>empty();
+                    }
+                    return Mono.defer(() -> apply(event)).then(Mono.defer(() -> processedEvents.markProcessed(event)));
+                })
+                .retryWhen(Retry.backoff(2, Duration.ofMillis(500))
+                        .maxBackoff(Duration.ofSeconds(1))
+                        .filter(ex -> !(ex instanceof InvalidInputException || ex instanceof EventProcessingException)))
+                .onErrorResume(ex -> {
+                    LOG.warn("Failed event created at {}, productId: {}, error: {}", event.getEventCreatedAt(), event.getKey(), ex.toString());
+                    return deadLetter(message, ex);
+                });
+    }
+
+    private Mono<Event<Integer, Product>> readEvent(Message<byte[]> message) {
+        byte[] payload = message.getPayload();
+        Event<Integer, Product> event;
+        try {
+            event = codec.read(payload, message.getHeaders().get(MessageHeaders.CONTENT_TYPE), EVENT_TYPE);
+        } catch (IOException ex) {
+            LOG.warn("Invalid event: {}, error: {}", new String(payload), ex.toString());
+            return deadLetter(message, ex).then(Mono.empty());
+        }
+        //  the key picks the lane, an event without one would fail the key selector and end the stream
+        if (event.getKey() == null || event.getEventType() == null) {
+            InvalidInputException ex = new InvalidInputException("Event without key or event type");
+            LOG.warn("Invalid event: {}, error: {}", new String(payload), ex.toString());
+            return deadLetter(message, ex).then(Mono.empty());
+        }
+        return Mono.just(event);
+    }
+
+    //  a dead letter that can't be sent must not end the stream either
+    private Mono<Void> deadLetter(Message<byte[]> message, Throwable error) {
+        return Mono.<Void>fromRunnable(() -> deadLetters.send(message, error)).onErrorResume(ex -> {
+            LOG.error("Lost event: {}, dead-lettering failed: {}", new String(message.getPayload()), ex.toString());
+            return Mono.empty();
+        });
+    }
+
+    private Mono<Void> apply(Event<Integer, Product> event) {
+        LOG.info("Process message created at {}...", event.getEventCreatedAt());
+        switch (event.getEventType()) {
+            case CREATE:
+                Product product = event.getData();
+                LOG.info("Create product with ID: {}", product.getProductId());
+                return productService.createProductAsync(product).then();
+
+            case UPSERT:
+                Product replacement = event.getData();
+                LOG.info("Create or replace product with ID: {}", replacement.getProductId());
+                return productService.upsertProductAsync(replacement).then();
+
+            case DELETE:
+                int productId = event.getKey();
+                LOG.info("Delete product with ProductID: {}", productId);
+                return productService.deleteProductAsync(productId);
+
+            default:
+                String errorMessage = "Incorrect event type: " + event.getEventType() + ", expected a CREATE, UPSERT or DELETE event";
+                LOG.warn(errorMessage);
+                return Mono.error(new EventProcessingException(errorMessage));
+        }
+    }
+}
@@ -12,6 +12,10 @@ import reactor.test.StepVerifier;
 import se.magnus.microservices.core.product.persistence.ProductEntity;
 import se.magnus.microservices.core.product.persistence.ProductRepository;
 
+import java.util.List;
+
+import static java.util.Arrays.asList;
+
 @RunWith(SpringRunner.class)
 @DataMongoTest(properties = { "spring.cloud.config.enabled=false" })
 public class PersistenceTests {
@@ -70,6 +74,12 @@ public class PersistenceTests {
         StepVerifier.create(repository.existsById(savedEntity.getId())).expectNext(false).verifyComplete();
     }
 
+    @Test
+    public void deleteByProductId() {
+        StepVerifier.create(repository.deleteByProductId(savedEntity.getProductId())).expectNext(1L).verifyComplete();
+        StepVerifier.create(repository.existsById(savedEntity.getId())).expectNext(false).verifyComplete();
+    }
+
     @Test
     public void getByProductId() {
 
@@ -84,6 +94,22 @@ public class PersistenceTests {
         StepVerifier.create(repository.save(entity)).expectError(DuplicateKeyException.class).verify();
     }
 
+    @Test
+    public void insertAllSkippingDuplicates() {
+        List<ProductEntity> entities = asList(new ProductEntity(2, "n", 2), new ProductEntity(savedEntity.getProductId(), "n2", 1), new ProductEntity(3, "n", 3));
+
+        //  the duplicate in the middle neither fails the write nor stops the inserts after it
+        StepVerifier.create(repository.insertAllSkippingDuplicates(entities)).expectNext(2).verifyComplete();
+
+        StepVerifier.create(repository.count()).expectNext(3L).verifyComplete();
+        StepVerifier.create(repository.findByProductId(3))
+                .expectNextMatches(foundEntity -> foundEntity.getVersion() == 0)
+                .verifyComplete();
+        StepVerifier.create(repository.findByProductId(savedEntity.getProductId()))
+                .expectNextMatches(foundEntity -> foundEntity.getName().equals("n"))
+                .verifyComplete();
+    }
+
     @Test
     public void optimisticLockError() {
 
@@ -16,9 +16,15 @@ import org.springframework.test.web.reactive.server.WebTestClient;
 import reactor.core.publisher.Mono;
 import se.magnus.api.core.product.Product;
 import se.magnus.api.event.Event;
+import se.magnus.microservices.core.product.persistence.ProcessedEventRepository;
 import se.magnus.microservices.core.product.persistence.ProductRepository;
+import se.magnus.microservices.core.product.services.ProcessedEvents;
 import se.magnus.util.exceptions.InvalidInputException;
 
+import java.util.HashSet;
+import java.util.Set;
+
+import static java.util.Arrays.asList;
 import static org.junit.Assert.*;
 import static org.junit.Assert.assertNotNull;
 import static org.springframework.boot.test.context.SpringBootTest.WebEnvironment.RANDOM_PORT;
@@ -27,6 +33,7 @@ import static org.springframework.http.MediaType.APPLICATION_JSON;
 import static reactor.core.publisher.Mono.just;
 import static se.magnus.api.event.Event.Type.CREATE;
 import static se.magnus.api.event.Event.Type.DELETE;
+import static se.magnus.api.event.Event.Type.UPSERT;
 
 @RunWith(SpringRunner.class)
 @SpringBootTest(webEnvironment=RANDOM_PORT, properties = {"spring.data.mongodb.port: 0", "eureka.client.enabled=false", "spring.cloud.config.enabled=false"})
@@ -38,6 +45,9 @@ public class ProductServiceApplicationTests {
 	@Autowired
 	private ProductRepository repository;
 
+	@Autowired
+	private ProcessedEventRepository processedEventRepository;
+
 	@Autowired
 	private Sink channels;
 
@@ -65,6 +75,24 @@ public class ProductServiceApplicationTests {
 				.jsonPath("$.productId").isEqualTo(productId);
 	}
 
+	@Test
+	public void getProductsByIds() {
+
+		sendCreateProductEvent(1);
+		sendCreateProductEvent(2);
+		sendCreateProductEvent(3);
+
+		client.get()
+			.uri("/product?productIds=1,3,4")
+			.accept(APPLICATION_JSON)
+			.exchange()
+			.expectStatus().isEqualTo(OK)
+			.expectHeader().contentType(APPLICATION_JSON)
+			.expectBody()
+			.jsonPath("$.length()").isEqualTo(2)
+			.jsonPath("$[?(@.productId == 2)]").doesNotExist();
+	}
+
 	@Test
 	public void duplicateError() {
 
@@ -85,6 +113,56 @@ public class ProductServiceApplicationTests {
 		}
 	}
 
+	@Test
+	public void redeliveredEventIsSkipped() {
+
+		Event<Integer, Product> event = new Event<>(CREATE, 1, new Product(1, "Name", 1, "SA"));
+		input.send(new GenericMessage<>(event));
+
+		//  a redelivery of the same event, not a second create that fails with a duplicate key
+		input.send(new GenericMessage<>(event));
+
+		assertEquals(1, (long) repository.count().block());
+	}
+
+	@Test
+	public void processedEventsAreFoundInTheDatabase() {
+
+		Event<Integer, Product> first = new Event<>(DELETE, 1, null);
+		Event<Integer, Product> second = new Event<>(DELETE, 2, null);
+		Event<Integer, Product> unprocessed = new Event<>(DELETE, 3, null);
+
+		//  room for one id in memory, the first one is dropped when the second is marked
+		ProcessedEvents processedEvents = new ProcessedEvents(processedEventRepository, 1);
+		processedEvents.markProcessed(asList(first, second)).block();
+		assertTrue(processedEvents.isProcessed(first).block());
+
+		//  e.g. after a restart, nothing is held in memory
+		Set<String> processed = new ProcessedEvents(processedEventRepository, 1).findProcessed(asList(first, second, unprocessed)).block();
+		assertEquals(new HashSet<>(asList(first.getEventId(), second.getEventId())), processed);
+	}
+
+	@Test
+	public void upsertProduct() {
+
+		int productId = 1;
+
+		sendCreateProductEvent(productId);
+
+		//  applied twice, e.g. a re-import, without a duplicate key error
+		Product replacement = new Product(productId, "Replaced", 2, "SA");
+		input.send(new GenericMessage<>(new Event<>(UPSERT, productId, replacement)));
+		input.send(new GenericMessage<>(new Event<>(UPSERT, productId, replacement)));
+
+		assertEquals(1, (long) repository.count().block());
+		assertEquals("Replaced", repository.findByProductId(productId).block().getName());
+		assertEquals(2, (int) repository.findByProductId(productId).block().getVersion());
+
+		//  a product created by an upsert starts at version 0 like a saved one
+		input.send(new GenericMessage<>(new Event<>(UPSERT, 2, new Product(2, "Upserted", 2, "SA"))));
+		assertEquals(0, (int) repository.findByProductId(2).block().getVersion());
+	}
+
 	@Test
 	public void deleteProduct() {
 
@@ -0,0 +1,48 @@
+package se.magnus.microservices.core.recommendation.persistence;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.util.Date;
+
+import static java.lang.String.format;
+
+//  an event applied by this service, removed by mongodb once it is older than a redelivery can be.
+//  the TTL index on processedAt is created on startup, with the retention of app.messaging.dedup.retentionDays
+@Document(collection="processed_events")
+public class ProcessedEventEntity {
+
+    @Id
+    private String eventId;
+
+    private Date processedAt;
+
+    public ProcessedEventEntity() {
+    }
+
+    public ProcessedEventEntity(String eventId, Date processedAt) {
+        this.eventId = eventId;
+        this.processedAt = processedAt;
+    }
+
+    @Override
+    public String toString() {
+        return format("ProcessedEventEntity: %s", eventId);
+    }
+
+    public String getEventId() {
+        return eventId;
+    }
+
+    public Date getProcessedAt() {
+        return processedAt;
+    }
+
+    public void setEventId(String eventId) {
+        this.eventId = eventId;
+    }
+
+    public void setProcessedAt(Date processedAt) {
+        this.processedAt = processedAt;
+    }
+}
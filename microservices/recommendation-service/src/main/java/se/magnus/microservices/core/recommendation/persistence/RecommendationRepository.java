@@ -1,8 +1,19 @@
 package se.magnus.microservices.core.recommendation.persistence;
 
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.repository.reactive.ReactiveCrudRepository;
 import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
 
-public interface RecommendationRepository extends ReactiveCrudRepository<RecommendationEntity, String> {
+import java.util.Collection;
+
+public interface RecommendationRepository extends ReactiveCrudRepository<RecommendationEntity, String>, RecommendationRepositoryCustom {
     Flux<RecommendationEntity> findByProductId(int productId);
+    //  keyset pagination, served by the prod-rec-id index (productId, recommendationId)
+    Flux<RecommendationEntity> findByProductIdAndRecommendationIdGreaterThanOrderByRecommendationIdAsc(int productId, int afterId, Pageable pageable);
+    Flux<RecommendationSummaryView> findSummariesByProductIdAndRecommendationIdGreaterThanOrderByRecommendationIdAsc(int productId, int afterId, Pageable pageable);
+    //  ordered like the reads of a single product, the composite takes the first n of a product as its top n
+    Flux<RecommendationEntity> findByProductIdInOrderByProductIdAscRecommendationIdAsc(Collection<Integer> productIds);
+    //  a single deleteMany on the server, returns the number of deleted recommendations
+    Mono<Long> deleteByProductId(int productId);
 }
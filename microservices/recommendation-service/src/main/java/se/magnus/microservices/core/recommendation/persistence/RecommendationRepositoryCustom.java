@@ -0,0 +1,18 @@
+package se.magnus.microservices.core.recommendation.persistence;
+
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+
+public interface RecommendationRepositoryCustom {
+
+    //  creates the recommendation or replaces the one with the same productId and recommendationId, an existing one in a single write
+    Mono<RecommendationEntity> upsert(RecommendationEntity entity);
+
+    //  all inserts in one unordered bulk write, the ones that hit the unique index are skipped.
+    //  emits the number of inserted recommendations
+    Mono<Integer> insertAllSkippingDuplicates(List<RecommendationEntity> entities);
+
+    //  all upserts in one ordered bulk write
+    Mono<Void> upsertAll(List<RecommendationEntity> entities);
+}
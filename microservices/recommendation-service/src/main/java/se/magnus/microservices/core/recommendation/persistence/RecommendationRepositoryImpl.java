@@ -0,0 +1,106 @@
+package se.magnus.microservices.core.recommendation.persistence;
+
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.client.model.InsertManyOptions;
+import com.mongodb.client.model.UpdateOneModel;
+import com.mongodb.client.model.UpdateOptions;
+import com.mongodb.client.model.WriteModel;
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.ReactiveMongoOperations;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import reactor.core.publisher.Mono;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.springframework.data.mongodb.core.FindAndModifyOptions.options;
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+
+//  an update instead of a replacement, a replacement would drop the version of the document.
+//  mongodb 3.6 has no update pipelines, i.e. a single upsert can't set the version of a new document to 0 and increment the others.
+public class RecommendationRepositoryImpl implements RecommendationRepositoryCustom {
+
+    private static final int DUPLICATE_KEY = 11000;
+
+    private final ReactiveMongoOperations mongo;
+
+    @Autowired
+    public RecommendationRepositoryImpl(ReactiveMongoOperations mongo) {
+        this.mongo = mongo;
+    }
+
+    //  an existing recommendation is updated and its version incremented, i.e. a re-import is a single write.
+    //  a new one is inserted with the first version, like a save. an insert that loses against a concurrent one updates it, once.
+    @Override
+    public Mono<RecommendationEntity> upsert(RecommendationEntity entity) {
+        return update(entity)
+                .switchIfEmpty(Mono.defer(() -> mongo.insert(entity)
+                        .onErrorResume(DuplicateKeyException.class, ex -> update(entity).switchIfEmpty(Mono.error(ex)))));
+    }
+
+    @Override
+    public Mono<Integer> insertAllSkippingDuplicates(List<RecommendationEntity> entities) {
+        if (entities.isEmpty()) return Mono.just(0);
+        List<Document> documents = entities.stream().map(this::toDocument).collect(Collectors.toList());
+        return mongo.getCollection(mongo.getCollectionName(RecommendationEntity.class))
+                .flatMap(collection -> Mono.from(collection.insertMany(documents, new InsertManyOptions().ordered(false))))
+                .thenReturn(documents.size())
+                .onErrorResume(MongoBulkWriteException.class, ex -> {
+                    if (ex.getWriteErrors().stream().anyMatch(error -> error.getCode() != DUPLICATE_KEY)) return Mono.error(ex);
+                    return Mono.just(documents.size() - ex.getWriteErrors().size());
+                });
+    }
+
+    //  per recommendation an upsert that only creates a missing document, one version before the first, and an update that sets the
+    //  fields and increments the version, i.e. a new document ends up at version 0. all of them in one ordered bulk write,
+    //  a reader may see a new document at version -1 for the time in between.
+    @Override
+    public Mono<Void> upsertAll(List<RecommendationEntity> entities) {
+        if (entities.isEmpty()) return Mono.empty();
+        List<WriteModel<Document>> writes = new ArrayList<>(entities.size() * 2);
+        for (RecommendationEntity entity : entities) {
+            Document filter = byKey(entity).getQueryObject();
+            writes.add(new UpdateOneModel<>(filter, insertOf(entity).getUpdateObject(), new UpdateOptions().upsert(true)));
+            writes.add(new UpdateOneModel<>(filter, updateOf(entity).getUpdateObject()));
+        }
+        return mongo.getCollection(mongo.getCollectionName(RecommendationEntity.class))
+                .flatMap(collection -> Mono.from(collection.bulkWrite(writes)))
+                .then();
+    }
+
+    private Mono<RecommendationEntity> update(RecommendationEntity entity) {
+        return mongo.findAndModify(byKey(entity), updateOf(entity), options().returnNew(true), RecommendationEntity.class);
+    }
+
+    //  the first version, as set by a save of a new entity
+    private Document toDocument(RecommendationEntity entity) {
+        Document document = new Document();
+        mongo.getConverter().write(entity, document);
+        document.put("version", 0);
+        return document;
+    }
+
+    private Query byKey(RecommendationEntity entity) {
+        return Query.query(where("productId").is(entity.getProductId()).and("recommendationId").is(entity.getRecommendationId()));
+    }
+
+    private Update insertOf(RecommendationEntity entity) {
+        return new Update()
+                .setOnInsert("author", entity.getAuthor())
+                .setOnInsert("rating", entity.getRating())
+                .setOnInsert("content", entity.getContent())
+                .setOnInsert("version", -1);
+    }
+
+    private Update updateOf(RecommendationEntity entity) {
+        return new Update()
+                .set("author", entity.getAuthor())
+                .set("rating", entity.getRating())
+                .set("content", entity.getContent())
+                .inc("version", 1);
+    }
+}
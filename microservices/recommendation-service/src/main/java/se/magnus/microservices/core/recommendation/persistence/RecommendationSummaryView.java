@@ -0,0 +1,10 @@
+package se.magnus.microservices.core.recommendation.persistence;
+
+//  closed projection of RecommendationEntity, only these fields are read from the documents
+public interface RecommendationSummaryView {
+    int getRecommendationId();
+    String getAuthor();
+    int getRating();
+    String getContent();
+    Integer getVersion();
+}
@@ -6,24 +6,36 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.cloud.stream.annotation.EnableBinding;
 import org.springframework.cloud.stream.annotation.StreamListener;
 import org.springframework.cloud.stream.messaging.Sink;
+import org.springframework.context.annotation.Profile;
 import se.magnus.api.core.recommendation.Recommendation;
 import se.magnus.api.core.recommendation.RecommendationService;
 import se.magnus.api.event.Event;
 import se.magnus.util.exceptions.EventProcessingException;
 
+import java.util.List;
+
+import static se.magnus.api.event.Event.BULK_HEADER;
+import static se.magnus.api.event.Event.Type.CREATE;
+import static se.magnus.api.event.Event.Type.UPSERT;
+
+//  one event per message, see BatchMessageProcessor and ReactiveMessageProcessor for the batch and reactive modes
+@Profile("!batch & !reactive")
 @EnableBinding({ Sink.class })
 public class MessageProcessor {
     private static final Logger LOG = LoggerFactory.getLogger(MessageProcessor.class);
     private final RecommendationService recommendationService;
+    private final ProcessedEvents processedEvents;
 
     @Autowired
-    public MessageProcessor(RecommendationService recommendationService) {
+    public MessageProcessor(RecommendationService recommendationService, ProcessedEvents processedEvents) {
         this.recommendationService = recommendationService;
+        this.processedEvents = processedEvents;
     }
 
-    @StreamListener(target = Sink.INPUT)
+    @StreamListener(target = Sink.INPUT, condition = "headers['" + BULK_HEADER + "'] == null")
     public void process(Event<Integer, Recommendation> event) {
         LOG.info("Process message created at {}...", event.getEventCreatedAt());
+        if (isDuplicate(event)) return;
         switch (event.getEventType()) {
             case CREATE:
                 Recommendation recommendation = event.getData();
@@ -31,6 +43,12 @@ public class MessageProcessor {
                 recommendationService.createRecommendation(recommendation);
                 break;
 
+            case UPSERT:
+                Recommendation replacement = event.getData();
+                LOG.info("Create or replace recommendation with ID: {}/{}", replacement.getProductId(), replacement.getRecommendationId());
+                recommendationService.upsertRecommendation(replacement);
+                break;
+
             case DELETE:
                 int productId = event.getKey();
                 LOG.info("Delete recommendations with ProductID: {}", productId);
@@ -38,11 +56,41 @@ public class MessageProcessor {
                 break;
 
             default:
-                String errorMessage = "Incorrect event type: " + event.getEventType() + ", expected a CREATE or DELETE event";
+                String errorMessage = "Incorrect event type: " + event.getEventType() + ", expected a CREATE, UPSERT or DELETE event";
                 LOG.warn(errorMessage);
                 throw new EventProcessingException(errorMessage);
         }
 
+        processedEvents.markProcessed(event).block();
         LOG.info("Message processing done!");
     }
+
+    //  all recommendations of a product in one event, stored with a single bulk write
+    @StreamListener(target = Sink.INPUT, condition = "headers['" + BULK_HEADER + "'] != null")
+    public void processBulk(Event<Integer, List<Recommendation>> event) {
+        LOG.info("Process bulk message created at {}...", event.getEventCreatedAt());
+        if (isDuplicate(event)) return;
+        List<Recommendation> recommendations = event.getData();
+        if (event.getEventType() == CREATE) {
+            LOG.info("Create {} recommendations with ProductID: {}", recommendations.size(), event.getKey());
+            recommendationService.createRecommendations(recommendations);
+        } else if (event.getEventType() == UPSERT) {
+            LOG.info("Create or replace {} recommendations with ProductID: {}", recommendations.size(), event.getKey());
+            recommendationService.upsertRecommendations(recommendations);
+        } else {
+            String errorMessage = "Incorrect event type: " + event.getEventType() + ", expected a CREATE or UPSERT event";
+            LOG.warn(errorMessage);
+            throw new EventProcessingException(errorMessage);
+        }
+
+        processedEvents.markProcessed(event).block();
+        LOG.info("Message processing done!");
+    }
+
+    //  redeliveries of an event that was applied already, e.g. after a timeout, are acknowledged without applying them again
+    private boolean isDuplicate(Event<Integer, ?> event) {
+        if (!processedEvents.isProcessed(event).block()) return false;
+        LOG.info("Skipped duplicate event: {}", event.getEventId());
+        return true;
+    }
 }
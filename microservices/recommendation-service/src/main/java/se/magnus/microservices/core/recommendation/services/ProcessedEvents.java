@@ -0,0 +1,79 @@
+package se.magnus.microservices.core.recommendation.services;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+import se.magnus.api.event.Event;
+import se.magnus.microservices.core.recommendation.persistence.ProcessedEventEntity;
+import se.magnus.microservices.core.recommendation.persistence.ProcessedEventRepository;
+import se.magnus.util.messaging.RecentEventIds;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+//  deduplication of redelivered events by their event id, recent ids are held in memory, all of them in mongodb.
+//  an event counts as processed once it is applied, so an event that failed is processed again when redelivered.
+@Component
+public class ProcessedEvents {
+
+    private final ProcessedEventRepository repository;
+    private final RecentEventIds recent;
+
+    @Autowired
+    public ProcessedEvents(ProcessedEventRepository repository, @Value("${app.messaging.dedup.cacheSize:10000}") int cacheSize) {
+        this.repository = repository;
+        this.recent = new RecentEventIds(cacheSize);
+    }
+
+    public Mono<Boolean> isProcessed(Event<?, ?> event) {
+        String eventId = event.getEventId();
+        //  events of publishers that don't set an id yet can't be told apart
+        if (eventId == null) return Mono.just(false);
+        if (recent.contains(eventId)) return Mono.just(true);
+        return repository.existsById(eventId).doOnNext(processed -> {
+            if (processed) recent.add(eventId);
+        });
+    }
+
+    public Mono<Void> markProcessed(Event<?, ?> event) {
+        String eventId = event.getEventId();
+        if (eventId == null) return Mono.empty();
+        recent.add(eventId);
+        return repository.save(new ProcessedEventEntity(eventId, new Date())).then();
+    }
+
+    //  the ids of the events that are processed already, the ones not held in memory are looked up with a single query
+    public Mono<Set<String>> findProcessed(List<? extends Event<?, ?>> events) {
+        Set<String> processed = new HashSet<>();
+        List<String> unknown = new ArrayList<>();
+        for (Event<?, ?> event : events) {
+            String eventId = event.getEventId();
+            if (eventId == null) continue;
+            if (recent.contains(eventId)) processed.add(eventId);
+            else unknown.add(eventId);
+        }
+        if (unknown.isEmpty()) return Mono.just(processed);
+        return repository.findAllById(unknown)
+                .map(ProcessedEventEntity::getEventId)
+                .doOnNext(recent::add)
+                .collect(() -> processed, Set::add);
+    }
+
+    //  with a single bulk write
+    public Mono<Void> markProcessed(List<? extends Event<?, ?>> events) {
+        Date processedAt = new Date();
+        List<ProcessedEventEntity> entities = new ArrayList<>(events.size());
+        for (Event<?, ?> event : events) {
+            String eventId = event.getEventId();
+            if (eventId == null) continue;
+            recent.add(eventId);
+            entities.add(new ProcessedEventEntity(eventId, processedAt));
+        }
+        if (entities.isEmpty()) return Mono.empty();
+        return repository.saveAll(entities).then();
+    }
+}
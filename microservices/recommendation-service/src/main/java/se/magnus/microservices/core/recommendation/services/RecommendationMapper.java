@@ -3,8 +3,10 @@ package se.magnus.microservices.core.recommendation.services;
 import org.mapstruct.Mapper;
 import org.mapstruct.Mapping;
 import org.mapstruct.Mappings;
+import se.magnus.api.composite.product.RecommendationSummary;
 import se.magnus.api.core.recommendation.Recommendation;
 import se.magnus.microservices.core.recommendation.persistence.RecommendationEntity;
+import se.magnus.microservices.core.recommendation.persistence.RecommendationSummaryView;
 
 import java.util.List;
 
@@ -24,6 +26,12 @@ public interface RecommendationMapper {
     })
     RecommendationEntity apiToEntity(Recommendation api);
 
+    //  by hand, MapStruct would pick the no-args constructor of the immutable summary
+    default RecommendationSummary viewToSummary(RecommendationSummaryView view) {
+        return new RecommendationSummary(view.getRecommendationId(), view.getAuthor(), view.getRating(), view.getContent(),
+                view.getVersion() == null ? 0 : view.getVersion());
+    }
+
     List<Recommendation> entityListToApiList(List<RecommendationEntity> entity);
     List<RecommendationEntity> apiListToEntityList(List<Recommendation> api);
 }
\ No newline at end of file
@@ -4,9 +4,12 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
 import org.springframework.web.bind.annotation.RestController;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import se.magnus.api.composite.product.RecommendationSummary;
 import se.magnus.api.core.recommendation.Recommendation;
 import se.magnus.api.core.recommendation.RecommendationService;
 import se.magnus.microservices.core.recommendation.persistence.RecommendationEntity;
@@ -14,6 +17,9 @@ import se.magnus.microservices.core.recommendation.persistence.RecommendationRep
 import se.magnus.util.exceptions.InvalidInputException;
 import se.magnus.util.http.ServiceUtil;
 
+import java.util.List;
+import java.util.stream.Collectors;
+
 @RestController
 public class RecommendationServiceImpl implements RecommendationService {
     private static final Logger LOG = LoggerFactory.getLogger(RecommendationServiceImpl.class);
@@ -30,22 +36,109 @@ public class RecommendationServiceImpl implements RecommendationService {
 
     @Override
     public Recommendation createRecommendation(Recommendation body) {
+        return createRecommendationAsync(body).block();
+    }
+
+    //  non-blocking variant, used by the reactive event consumer
+    public Mono<Recommendation> createRecommendationAsync(Recommendation body) {
         if (body.getProductId() < 1) throw new InvalidInputException("Invalid productId: " + body.getProductId());
         RecommendationEntity entity = mapper.apiToEntity(body);
-        Mono<Recommendation> newEntity = repository.save(entity)
+        return repository.save(entity)
                 .log()
                 .onErrorMap(
                         DuplicateKeyException.class,
                         ex -> new InvalidInputException("Duplicate key, Product Id: " + body.getProductId() + ", Recommendation Id:" + body.getRecommendationId()))
                 .map(mapper::entityToApi);
+    }
+
+    @Override
+    public List<Recommendation> createRecommendations(List<Recommendation> body) {
+        return createRecommendationsAsync(body).block();
+    }
+
+    public Mono<List<Recommendation>> createRecommendationsAsync(List<Recommendation> body) {
+        body.forEach(r -> {
+            if (r.getProductId() < 1) throw new InvalidInputException("Invalid productId: " + r.getProductId());
+        });
+        //  all entities are new, so saveAll ends up in a single insertMany
+        return repository.saveAll(mapper.apiListToEntityList(body))
+                .log()
+                .onErrorMap(
+                        DuplicateKeyException.class,
+                        ex -> new InvalidInputException("Duplicate key, Product Id: " + body.get(0).getProductId()))
+                .map(mapper::entityToApi)
+                .collectList();
+    }
+
+    //  used by the batch consumer, an invalid recommendation or one that already exists must not fail the whole batch, see BatchMessageProcessor
+    public int createRecommendationsSkippingDuplicates(List<Recommendation> body) {
+        List<Recommendation> valid = body.stream().filter(r -> r.getProductId() >= 1).collect(Collectors.toList());
+        if (valid.size() < body.size()) LOG.warn("createRecommendations: skipped {} recommendations with an invalid productId", body.size() - valid.size());
+        int created = repository.insertAllSkippingDuplicates(mapper.apiListToEntityList(valid)).log().block();
+        if (created < valid.size()) LOG.warn("createRecommendations: skipped {} recommendations that already exist", valid.size() - created);
+        return created;
+    }
+
+    @Override
+    public Recommendation upsertRecommendation(Recommendation body) {
+        return upsertRecommendationAsync(body).block();
+    }
+
+    //  no duplicate key round trip, an existing recommendation is replaced
+    public Mono<Recommendation> upsertRecommendationAsync(Recommendation body) {
+        if (body.getProductId() < 1) throw new InvalidInputException("Invalid productId: " + body.getProductId());
+        return repository.upsert(mapper.apiToEntity(body))
+                .log()
+                .map(mapper::entityToApi);
+    }
+
+    @Override
+    public List<Recommendation> upsertRecommendations(List<Recommendation> body) {
+        return upsertRecommendationsAsync(body).block();
+    }
 
-        return newEntity.block();
+    public Mono<List<Recommendation>> upsertRecommendationsAsync(List<Recommendation> body) {
+        body.forEach(r -> {
+            if (r.getProductId() < 1) throw new InvalidInputException("Invalid productId: " + r.getProductId());
+        });
+        return repository.upsertAll(mapper.apiListToEntityList(body))
+                .log()
+                .thenReturn(body);
+    }
+
+    @Override
+    public Flux<Recommendation> getRecommendations(int productId, Integer afterId, int limit) {
+        if (productId < 1) throw new InvalidInputException("Invalid productId: " + productId);
+        if (limit < 0) throw new InvalidInputException("Invalid limit: " + limit);
+        Pageable page = limit > 0 ? PageRequest.of(0, limit) : Pageable.unpaged();
+        return repository.findByProductIdAndRecommendationIdGreaterThanOrderByRecommendationIdAsc(
+                        productId, afterId == null ? Integer.MIN_VALUE : afterId, page)
+                .log()
+                .map(mapper::entityToApi)
+                .map(e -> {
+                    e.setServiceAddress(serviceUtil.getServiceAddress());
+                    return e;
+                });
     }
 
+    //  neither the id nor the productId are read, the summaries need no service address either
     @Override
-    public Flux<Recommendation> getRecommendations(int productId) {
+    public Flux<RecommendationSummary> getRecommendationSummaries(int productId, Integer afterId, int limit) {
         if (productId < 1) throw new InvalidInputException("Invalid productId: " + productId);
-        return repository.findByProductId(productId)
+        if (limit < 0) throw new InvalidInputException("Invalid limit: " + limit);
+        Pageable page = limit > 0 ? PageRequest.of(0, limit) : Pageable.unpaged();
+        return repository.findSummariesByProductIdAndRecommendationIdGreaterThanOrderByRecommendationIdAsc(
+                        productId, afterId == null ? Integer.MIN_VALUE : afterId, page)
+                .log()
+                .map(mapper::viewToSummary);
+    }
+
+    @Override
+    public Flux<Recommendation> getRecommendationsByProductIds(List<Integer> productIds) {
+        productIds.forEach(productId -> {
+            if (productId < 1) throw new InvalidInputException("Invalid productId: " + productId);
+        });
+        return repository.findByProductIdInOrderByProductIdAscRecommendationIdAsc(productIds)
                 .log()
                 .map(mapper::entityToApi)
                 .map(e -> {
@@ -56,8 +149,15 @@ public class RecommendationServiceImpl implements RecommendationService {
 
     @Override
     public void deleteRecommendations(int productId) {
+        deleteRecommendationsAsync(productId).block();
+    }
+
+    public Mono<Void> deleteRecommendationsAsync(int productId) {
         if (productId < 1) throw new InvalidInputException("Invalid productId: " + productId);
         LOG.debug("deleteRecommendations: tries to delete recommendations for the product with productId: {}", productId);
-        repository.deleteAll(repository.findByProductId(productId)).block();
+        return repository.deleteByProductId(productId)
+                .log()
+                .doOnNext(count -> LOG.debug("deleteRecommendations: deleted {} entities", count))
+                .then();
     }
 }
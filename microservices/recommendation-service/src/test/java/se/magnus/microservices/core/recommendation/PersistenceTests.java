@@ -16,6 +16,7 @@ import java.util.Objects;
 
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.hasSize;
+import static java.util.Arrays.asList;
 import static org.junit.Assert.*;
 
 @RunWith(SpringRunner.class)
@@ -62,6 +63,15 @@ public class PersistenceTests {
         assertFalse(Objects.requireNonNull(repository.existsById(savedEntity.getId()).block()));
     }
 
+    @Test
+    public void deleteByProductId() {
+        repository.save(new RecommendationEntity(1, 3, "a", 3, "c")).block();
+        repository.save(new RecommendationEntity(2, 1, "a", 3, "c")).block();
+
+        assertEquals(2, (long) repository.deleteByProductId(1).block());
+        assertEquals(1, (long) repository.count().block());
+    }
+
     @Test
     public void getByProductId() {
         List<RecommendationEntity> entityList = repository.findByProductId(savedEntity.getProductId()).collectList().block();
@@ -76,6 +86,22 @@ public class PersistenceTests {
         repository.save(entity).block();
     }
 
+    @Test
+    public void insertAllSkippingDuplicates() {
+        List<RecommendationEntity> entities = asList(
+                new RecommendationEntity(1, 3, "a", 3, "c"),
+                new RecommendationEntity(1, 2, "a2", 3, "c"),
+                new RecommendationEntity(1, 4, "a", 3, "c"));
+
+        //  the duplicate in the middle neither fails the write nor stops the inserts after it
+        assertEquals(2, (int) Objects.requireNonNull(repository.insertAllSkippingDuplicates(entities).block()));
+
+        List<RecommendationEntity> foundEntities = repository.findByProductId(1).collectList().block();
+        assertThat(foundEntities, hasSize(3));
+        assertTrue(foundEntities.stream().allMatch(e -> e.getRecommendationId() != 2 || e.getAuthor().equals("a")));
+        assertTrue(foundEntities.stream().allMatch(e -> e.getVersion() == 0));
+    }
+
     @Test
     public void optimisticLockError() {
 
@@ -0,0 +1,146 @@
+package se.magnus.microservices.core.recommendation;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit4.SpringRunner;
+import se.magnus.api.core.recommendation.Recommendation;
+import se.magnus.api.event.Event;
+import se.magnus.microservices.core.recommendation.persistence.RecommendationRepository;
+import se.magnus.microservices.core.recommendation.services.DeadLetters;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.springframework.boot.test.context.SpringBootTest.WebEnvironment.RANDOM_PORT;
+import static se.magnus.api.event.Event.BULK_HEADER;
+import static se.magnus.api.event.Event.Type.CREATE;
+import static se.magnus.api.event.Event.Type.DELETE;
+
+@RunWith(SpringRunner.class)
+@ActiveProfiles("reactive")
+@SpringBootTest(webEnvironment=RANDOM_PORT, properties = {
+		"spring.data.mongodb.port: 0",
+		"eureka.client.enabled=false",
+		"spring.cloud.config.enabled=false",
+		"spring.cloud.stream.function.definition=recommendationEvents",
+		"spring.cloud.stream.function.bindings.recommendationEvents-in-0=input"})
+public class ReactiveMessageProcessorTests {
+
+	@Autowired
+	private RecommendationRepository repository;
+
+	@Autowired
+	private ObjectMapper mapper;
+
+	@Autowired
+	@Qualifier("input")
+	private MessageChannel input;
+
+	@MockBean
+	private DeadLetters deadLetters;
+
+	@Before
+	public void setupDb() {
+		repository.deleteAll().block();
+	}
+
+	@Test
+	public void createAndDeleteRecommendations() throws JsonProcessingException {
+
+		sendEvent(new Event<>(CREATE, 1, recommendation(1, 1)), false);
+		sendEvent(new Event<>(CREATE, 2, Arrays.asList(recommendation(2, 1), recommendation(2, 2))), true);
+		sendEvent(new Event<>(DELETE, 1, null), false);
+		sendEvent(new Event<>(CREATE, 1, recommendation(1, 2)), false);
+
+		//  the events are applied asynchronously
+		awaitCount(2, 2);
+		awaitCount(1, 1);
+		assertEquals(2, repository.findByProductId(1).blockFirst().getRecommendationId());
+	}
+
+	@Test
+	public void skipInvalidEvents() throws JsonProcessingException {
+
+		sendEvent(new Event<>(CREATE, 1, recommendation(1, 1)), false);
+		sendEvent(new Event<>(CREATE, 1, recommendation(1, 1)), false);
+		input.send(MessageBuilder.withPayload("no-event".getBytes()).build());
+		sendEvent(new Event<>(CREATE, 1, recommendation(1, 2)), false);
+
+		//  a duplicate or unreadable event must not stop the consumer
+		awaitCount(1, 2);
+	}
+
+	@Test
+	public void deadLetterFailedEvents() throws JsonProcessingException {
+		Event<Integer, Recommendation> duplicate = new Event<>(CREATE, 1, recommendation(1, 1));
+		byte[] duplicateBytes = toBytes(duplicate);
+		sendEvent(new Event<>(CREATE, 1, recommendation(1, 1)), false);
+		sendEvent(duplicate, false);
+		input.send(MessageBuilder.withPayload("no-event".getBytes()).build());
+
+		//  the consumer has taken the messages, they reach the dead letter queue through the deadLetters binding instead of the binder
+		verify(deadLetters, timeout(5000)).send(argThat((Message<byte[]> message) ->
+				Arrays.equals(message.getPayload(), "no-event".getBytes())), any());
+		verify(deadLetters, timeout(5000)).send(argThat((Message<byte[]> message) ->
+				Arrays.equals(message.getPayload(), duplicateBytes)), argThat(error -> error.toString().contains("Duplicate key")));
+		awaitCount(1, 1);
+	}
+
+	@Test
+	public void deadLetterEventsWithoutKey() throws JsonProcessingException {
+		Event<Integer, Recommendation> keyless = new Event<>(CREATE, null, recommendation(1, 1));
+		byte[] keylessBytes = toBytes(keyless);
+		sendEvent(keyless, false);
+		sendEvent(new Event<>(CREATE, 1, recommendation(1, 2)), false);
+
+		//  the consumer keeps going after the invalid event
+		verify(deadLetters, timeout(5000)).send(argThat((Message<byte[]> message) ->
+				Arrays.equals(message.getPayload(), keylessBytes)), argThat(error -> error.toString().contains("without key")));
+		awaitCount(1, 1);
+		assertEquals(2, repository.findByProductId(1).blockFirst().getRecommendationId());
+	}
+
+	private Recommendation recommendation(int productId, int recommendationId) {
+		return new Recommendation(productId, recommendationId, "Author " + recommendationId, recommendationId, "Content " + recommendationId, "SA");
+	}
+
+	private byte[] toBytes(Event<Integer, ?> event) throws JsonProcessingException {
+		return mapper.writeValueAsBytes(event);
+	}
+
+	private void sendEvent(Event<Integer, ?> event, boolean bulk) throws JsonProcessingException {
+		MessageBuilder<byte[]> message = MessageBuilder.withPayload(toBytes(event));
+		if (bulk) message.setHeader(BULK_HEADER, true);
+		input.send(message.build());
+	}
+
+	private void awaitCount(int productId, long expected) {
+		long count = 0;
+		for (int i = 0; i < 50 && count != expected; i++) {
+			if (i > 0) sleep(100);
+			count = repository.findByProductId(productId).count().block();
+		}
+		assertEquals(expected, count);
+	}
+
+	private void sleep(long millis) {
+		try {
+			Thread.sleep(millis);
+		} catch (InterruptedException ignored) { }
+	}
+}
@@ -10,22 +10,37 @@ import org.springframework.http.HttpStatus;
 import org.springframework.integration.channel.AbstractMessageChannel;
 import org.springframework.messaging.MessagingException;
 import org.springframework.messaging.support.GenericMessage;
+import org.springframework.messaging.support.MessageBuilder;
 import org.springframework.test.context.junit4.SpringRunner;
 import org.springframework.test.web.reactive.server.WebTestClient;
 import reactor.core.publisher.Mono;
 import se.magnus.api.core.recommendation.Recommendation;
 import se.magnus.api.event.Event;
+import se.magnus.microservices.core.recommendation.persistence.ProcessedEventRepository;
+import se.magnus.microservices.core.recommendation.persistence.RecommendationEntity;
 import se.magnus.microservices.core.recommendation.persistence.RecommendationRepository;
+import se.magnus.microservices.core.recommendation.services.ProcessedEvents;
 import se.magnus.util.exceptions.InvalidInputException;
 
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static java.util.Arrays.asList;
+import static java.util.Collections.singletonList;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 import static org.springframework.boot.test.context.SpringBootTest.WebEnvironment.RANDOM_PORT;
 import static org.springframework.http.HttpStatus.*;
 import static org.springframework.http.MediaType.APPLICATION_JSON;
 import static reactor.core.publisher.Mono.just;
+import static se.magnus.api.event.Event.BULK_HEADER;
 import static se.magnus.api.event.Event.Type.CREATE;
 import static se.magnus.api.event.Event.Type.DELETE;
+import static se.magnus.api.event.Event.Type.UPSERT;
 
 @RunWith(SpringRunner.class)
 @SpringBootTest(webEnvironment=RANDOM_PORT, properties = {"spring.data.mongodb.port: 0", "eureka.client.enabled=false", "spring.cloud.config.enabled=false"})
@@ -37,6 +52,9 @@ public class RecommendationServiceApplicationTests {
 	@Autowired
 	private RecommendationRepository repository;
 
+	@Autowired
+	private ProcessedEventRepository processedEventRepository;
+
 	@Autowired
 	private Sink channels;
 
@@ -65,6 +83,48 @@ public class RecommendationServiceApplicationTests {
 			.jsonPath("$[2].recommendationId").isEqualTo(3);
 	}
 
+	@Test
+	public void getRecommendationsPage() {
+
+		int productId = 1;
+
+		sendCreateRecommendationEvent(productId, 3);
+		sendCreateRecommendationEvent(productId, 1);
+		sendCreateRecommendationEvent(productId, 2);
+
+		getAndVerifyRecommendationsByProductId("?productId=" + productId + "&limit=2", OK)
+			.jsonPath("$.length()").isEqualTo(2)
+			.jsonPath("$[0].recommendationId").isEqualTo(1)
+			.jsonPath("$[1].recommendationId").isEqualTo(2);
+
+		getAndVerifyRecommendationsByProductId("?productId=" + productId + "&afterId=2&limit=2", OK)
+			.jsonPath("$.length()").isEqualTo(1)
+			.jsonPath("$[0].recommendationId").isEqualTo(3);
+	}
+
+	@Test
+	public void getRecommendationsByProductIds() {
+
+		sendCreateRecommendationEvent(1, 1);
+		sendCreateRecommendationEvent(1, 2);
+		sendCreateRecommendationEvent(2, 1);
+		sendCreateRecommendationEvent(3, 1);
+
+		getAndVerifyRecommendationsByProductId("?productIds=1,2", OK)
+			.jsonPath("$.length()").isEqualTo(3)
+			.jsonPath("$[?(@.productId == 3)]").doesNotExist();
+	}
+
+	@Test
+	public void createRecommendationsInBulk() {
+
+		int productId = 1;
+
+		sendCreateRecommendationsEvent(productId, 100);
+
+		assertEquals(Mono.just(100L).block(), repository.findByProductId(productId).count().block());
+	}
+
 	@Test
 	public void duplicateError() {
 
@@ -88,6 +148,29 @@ public class RecommendationServiceApplicationTests {
 		assertEquals(Mono.just(1L).block(), repository.count().block());
 	}
 
+	@Test
+	public void upsertRecommendations() {
+
+		int productId = 1;
+
+		sendCreateRecommendationEvent(productId, 1);
+
+		//  applied twice, e.g. a re-import, without a duplicate key error
+		List<Recommendation> replacements = IntStream.rangeClosed(1, 2)
+			.mapToObj(id -> new Recommendation(productId, id, "Author " + id, id, "Replaced", "SA"))
+			.collect(Collectors.toList());
+		input.send(MessageBuilder.withPayload(new Event<>(UPSERT, productId, replacements)).setHeader(BULK_HEADER, true).build());
+		input.send(MessageBuilder.withPayload(new Event<>(UPSERT, productId, replacements)).setHeader(BULK_HEADER, true).build());
+
+		assertEquals(Mono.just(2L).block(), repository.findByProductId(productId).count().block());
+		assertEquals("Replaced", repository.findByProductId(productId).blockFirst().getContent());
+
+		//  created, then updated twice. the one the first upsert created starts at version 0 like a saved one.
+		List<RecommendationEntity> entities = repository.findByProductIdInOrderByProductIdAscRecommendationIdAsc(singletonList(productId)).collectList().block();
+		assertEquals(2, (int) entities.get(0).getVersion());
+		assertEquals(1, (int) entities.get(1).getVersion());
+	}
+
 	@Test
 	public void deleteRecommendations() {
 
@@ -103,6 +186,35 @@ public class RecommendationServiceApplicationTests {
 		sendDeleteRecommendationEvent(productId);
 	}
 
+	@Test
+	public void redeliveredEventIsSkipped() {
+
+		Event<Integer, Recommendation> event = new Event<>(CREATE, 1, new Recommendation(1, 1, "Author", 1, "Content", "SA"));
+		input.send(new GenericMessage<>(event));
+
+		//  a redelivery of the same event, not a second create that fails with a duplicate key
+		input.send(new GenericMessage<>(event));
+
+		assertEquals(1, (long) repository.count().block());
+	}
+
+	@Test
+	public void processedEventsAreFoundInTheDatabase() {
+
+		Event<Integer, Recommendation> first = new Event<>(DELETE, 1, null);
+		Event<Integer, Recommendation> second = new Event<>(DELETE, 2, null);
+		Event<Integer, Recommendation> unprocessed = new Event<>(DELETE, 3, null);
+
+		//  room for one id in memory, the first one is dropped when the second is marked
+		ProcessedEvents processedEvents = new ProcessedEvents(processedEventRepository, 1);
+		processedEvents.markProcessed(asList(first, second)).block();
+		assertTrue(processedEvents.isProcessed(first).block());
+
+		//  e.g. after a restart, nothing is held in memory
+		Set<String> processed = new ProcessedEvents(processedEventRepository, 1).findProcessed(asList(first, second, unprocessed)).block();
+		assertEquals(new HashSet<>(asList(first.getEventId(), second.getEventId())), processed);
+	}
+
 	@Test
 	public void getRecommendationsMissingParameter() {
 
@@ -177,6 +289,14 @@ public class RecommendationServiceApplicationTests {
 		input.send(new GenericMessage<>(event));
 	}
 
+	private void sendCreateRecommendationsEvent(int productId, int count) {
+		List<Recommendation> recommendations = IntStream.rangeClosed(1, count)
+			.mapToObj(id -> new Recommendation(productId, id, "Author " + id, id, "Content " + id, "SA"))
+			.collect(Collectors.toList());
+		Event<Integer, List<Recommendation>> event = new Event<>(CREATE, productId, recommendations);
+		input.send(MessageBuilder.withPayload(event).setHeader(BULK_HEADER, true).build());
+	}
+
 	private void sendDeleteRecommendationEvent(int productId) {
 		Event<Integer, Recommendation> event = new Event<>(DELETE, productId, null);
 		input.send(new GenericMessage<>(event));
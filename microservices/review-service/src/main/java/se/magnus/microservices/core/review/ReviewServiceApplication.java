@@ -1,22 +1,40 @@
 package se.magnus.microservices.core.review;
 
+import io.r2dbc.spi.ConnectionFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.autoconfigure.data.r2dbc.R2dbcDataAutoConfiguration;
+import org.springframework.boot.autoconfigure.data.r2dbc.R2dbcRepositoriesAutoConfiguration;
+import org.springframework.boot.autoconfigure.data.r2dbc.R2dbcTransactionManagerAutoConfiguration;
+import org.springframework.boot.autoconfigure.r2dbc.R2dbcAutoConfiguration;
 import org.springframework.cloud.netflix.eureka.EnableEurekaClient;
 import org.springframework.context.ConfigurableApplicationContext;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.ComponentScan;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Import;
+import org.springframework.context.annotation.Profile;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.r2dbc.connectionfactory.init.ConnectionFactoryInitializer;
+import org.springframework.data.r2dbc.connectionfactory.init.ResourceDatabasePopulator;
+import org.springframework.data.r2dbc.repository.config.EnableR2dbcRepositories;
 import reactor.core.scheduler.Scheduler;
 import reactor.core.scheduler.Schedulers;
+import se.magnus.microservices.core.review.persistence.ReviewRecordRepository;
 
 import java.util.concurrent.Executors;
 
 @EnableEurekaClient
-@SpringBootApplication
+@SpringBootApplication(exclude = {
+		R2dbcAutoConfiguration.class,
+		R2dbcDataAutoConfiguration.class,
+		R2dbcRepositoriesAutoConfiguration.class,
+		R2dbcTransactionManagerAutoConfiguration.class
+})
 @ComponentScan("se.magnus")
 public class ReviewServiceApplication {
 	private static final Logger LOG = LoggerFactory.getLogger(ReviewServiceApplication.class);
@@ -35,9 +53,31 @@ public class ReviewServiceApplication {
 	}
 
 	//	Limit the pool size for threads to be used by non-blocking service. (review service)
+	@Profile("!r2dbc")
 	@Bean
 	public Scheduler jdbcScheduler() {
 		LOG.info("Creates a jdbcScheduler with connectionPoolSize = " + connectionPoolSize);
 		return Schedulers.fromExecutor(Executors.newFixedThreadPool(connectionPoolSize));
 	}
+
+	//	R2DBC is only configured by the r2dbc profile, Boot skips the JPA DataSource as soon as a ConnectionFactory exists
+	@Profile("r2dbc")
+	@Configuration
+	@Import({
+			R2dbcAutoConfiguration.class,
+			R2dbcDataAutoConfiguration.class,
+			R2dbcTransactionManagerAutoConfiguration.class
+	})
+	@EnableR2dbcRepositories(basePackageClasses = ReviewRecordRepository.class)
+	static class R2dbcConfiguration {
+
+		//	R2DBC has no equivalent of hibernate's ddl-auto, the reviews table is created by a script instead
+		@Bean
+		public ConnectionFactoryInitializer r2dbcSchemaInitializer(ConnectionFactory connectionFactory) {
+			ConnectionFactoryInitializer initializer = new ConnectionFactoryInitializer();
+			initializer.setConnectionFactory(connectionFactory);
+			initializer.setDatabasePopulator(new ResourceDatabasePopulator(new ClassPathResource("schema-r2dbc.sql")));
+			return initializer;
+		}
+	}
 }
@@ -0,0 +1,40 @@
+package se.magnus.microservices.core.review.persistence;
+
+import javax.persistence.*;
+import java.util.Date;
+
+//  an event applied by this service, see ProcessedEventRepository#deleteProcessedBefore for the clean up
+@Entity
+@Table(name = "processed_events", indexes = { @Index(name = "processed_events_processed_at_idx", columnList = "processedAt") })
+public class ProcessedEventEntity {
+
+    @Id
+    private String eventId;
+
+    @Temporal(TemporalType.TIMESTAMP)
+    private Date processedAt;
+
+    public ProcessedEventEntity() {
+    }
+
+    public ProcessedEventEntity(String eventId, Date processedAt) {
+        this.eventId = eventId;
+        this.processedAt = processedAt;
+    }
+
+    public String getEventId() {
+        return eventId;
+    }
+
+    public void setEventId(String eventId) {
+        this.eventId = eventId;
+    }
+
+    public Date getProcessedAt() {
+        return processedAt;
+    }
+
+    public void setProcessedAt(Date processedAt) {
+        this.processedAt = processedAt;
+    }
+}
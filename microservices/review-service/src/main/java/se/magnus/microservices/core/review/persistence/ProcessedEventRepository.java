@@ -0,0 +1,18 @@
+package se.magnus.microservices.core.review.persistence;
+
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Date;
+
+public interface ProcessedEventRepository extends CrudRepository<ProcessedEventEntity, String> {
+
+    //  one statement, a derived delete query would load every row first
+    @Transactional
+    @Modifying
+    @Query("delete from ProcessedEventEntity e where e.processedAt < :before")
+    int deleteProcessedBefore(@Param("before") Date before);
+}
@@ -6,7 +6,8 @@ import javax.persistence.*;
 @Table(name = "reviews", indexes = { @Index(name = "reviews_unique_idx", unique = true, columnList = "productId,reviewId") })
 public class ReviewEntity {
 
-    @Id @GeneratedValue
+    //  generated by the table, like the rows inserted by the r2dbc profile, see schema-r2dbc.sql
+    @Id @GeneratedValue(strategy = GenerationType.IDENTITY)
     private int id;
 
     @Version
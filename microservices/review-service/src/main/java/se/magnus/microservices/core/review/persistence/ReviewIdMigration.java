@@ -0,0 +1,53 @@
+package se.magnus.microservices.core.review.persistence;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.persistence.EntityManagerFactory;
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+//  the ids of reviews are generated by the table since ReviewEntity uses GenerationType.IDENTITY. ddl-auto only creates
+//  missing tables and columns, a reviews table created before has an id column without AUTO_INCREMENT, and every insert
+//  would fail. adds it once on startup, after the schema update of hibernate and before any event is consumed.
+//  mysql syntax, a table created by hibernate or by schema-r2dbc.sql is left as it is.
+@Profile("!r2dbc")
+@Component
+public class ReviewIdMigration {
+    private static final Logger LOG = LoggerFactory.getLogger(ReviewIdMigration.class);
+
+    static final String ADD_AUTO_INCREMENT = "alter table reviews modify id int not null auto_increment";
+
+    private final DataSource dataSource;
+
+    //  the entity manager factory is only asked for so the migration waits for the schema update
+    @Autowired
+    public ReviewIdMigration(DataSource dataSource, EntityManagerFactory entityManagerFactory) {
+        this.dataSource = dataSource;
+    }
+
+    @PostConstruct
+    public void migrate() throws SQLException {
+        try (Connection connection = dataSource.getConnection()) {
+            DatabaseMetaData metaData = connection.getMetaData();
+            String table = metaData.storesUpperCaseIdentifiers() ? "REVIEWS" : "reviews";
+            String column = metaData.storesUpperCaseIdentifiers() ? "ID" : "id";
+            try (ResultSet columns = metaData.getColumns(connection.getCatalog(), null, table, column)) {
+                //  no reviews table, e.g. with ddl-auto none on an empty database
+                if (!columns.next() || "YES".equals(columns.getString("IS_AUTOINCREMENT"))) return;
+            }
+            LOG.info("Adding AUTO_INCREMENT to the id column of the reviews table");
+            try (Statement statement = connection.createStatement()) {
+                statement.execute(ADD_AUTO_INCREMENT);
+            }
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package se.magnus.microservices.core.review.persistence;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.r2dbc.repository.Modifying;
+import org.springframework.data.r2dbc.repository.Query;
+import org.springframework.data.r2dbc.repository.R2dbcRepository;
+import org.springframework.data.repository.query.Param;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.Collection;
+
+//  non-blocking access to the reviews table, used by the r2dbc profile
+public interface ReviewRecordRepository extends R2dbcRepository<ReviewRecord, Integer> {
+
+    Flux<ReviewRecord> findByProductId(int productId);
+
+    //  keyset pagination, served by reviews_unique_idx (product_id, review_id)
+    Flux<ReviewRecord> findByProductIdAndReviewIdGreaterThanOrderByReviewIdAsc(int productId, int afterId, Pageable pageable);
+
+    Flux<ReviewSummaryView> findSummariesByProductIdAndReviewIdGreaterThanOrderByReviewIdAsc(int productId, int afterId, Pageable pageable);
+
+    //  ordered like the reads of a single product, the composite takes the first n of a product as its top n
+    Flux<ReviewRecord> findByProductIdInOrderByProductIdAscReviewIdAsc(Collection<Integer> productIds);
+
+    @Modifying
+    @Query("delete from reviews where product_id = :productId")
+    Mono<Integer> deleteByProductId(@Param("productId") int productId);
+
+    //  creates the review or replaces the one with the same productId and reviewId, the id is generated by the table
+    @Modifying
+    @Query("insert into reviews (product_id, review_id, author, subject, content) values (:productId, :reviewId, :author, :subject, :content) " +
+           "on duplicate key update author = values(author), subject = values(subject), content = values(content), version = version + 1")
+    Mono<Integer> upsert(@Param("productId") int productId, @Param("reviewId") int reviewId,
+                         @Param("author") String author, @Param("subject") String subject, @Param("content") String content);
+}
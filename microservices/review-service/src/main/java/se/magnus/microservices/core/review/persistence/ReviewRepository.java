@@ -1,12 +1,34 @@
 package se.magnus.microservices.core.review.persistence;
 
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.util.Collection;
 import java.util.List;
 
-public interface ReviewRepository extends CrudRepository<ReviewEntity, Integer> {
+public interface ReviewRepository extends CrudRepository<ReviewEntity, Integer>, ReviewRepositoryCustom {
 
     @Transactional(readOnly = true)
     List<ReviewEntity> findByProductId(int productId);
+
+    //  keyset pagination, served by reviews_unique_idx (productId, reviewId)
+    @Transactional(readOnly = true)
+    List<ReviewEntity> findByProductIdAndReviewIdGreaterThanOrderByReviewIdAsc(int productId, int afterId, Pageable pageable);
+
+    @Transactional(readOnly = true)
+    List<ReviewSummaryView> findSummariesByProductIdAndReviewIdGreaterThanOrderByReviewIdAsc(int productId, int afterId, Pageable pageable);
+
+    //  ordered like the reads of a single product, the composite takes the first n of a product as its top n
+    @Transactional(readOnly = true)
+    List<ReviewEntity> findByProductIdInOrderByProductIdAscReviewIdAsc(Collection<Integer> productIds);
+
+    //  one statement, a derived delete query would load and delete the reviews one by one
+    @Transactional
+    @Modifying
+    @Query("delete from ReviewEntity r where r.productId = :productId")
+    int deleteByProductId(@Param("productId") int productId);
 }
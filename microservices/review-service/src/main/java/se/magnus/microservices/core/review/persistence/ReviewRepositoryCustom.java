@@ -0,0 +1,16 @@
+package se.magnus.microservices.core.review.persistence;
+
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.List;
+
+public interface ReviewRepositoryCustom {
+
+    //  creates the reviews in a single jdbc batch, hibernate doesn't batch the inserts of entities with table generated ids
+    @Transactional
+    void insertAll(List<ReviewEntity> entities);
+
+    //  creates the reviews or replaces the ones with the same productId and reviewId, one statement per review sent in a single jdbc batch
+    @Transactional
+    void upsertAll(List<ReviewEntity> entities);
+}
@@ -0,0 +1,48 @@
+package se.magnus.microservices.core.review.persistence;
+
+import org.hibernate.Session;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import java.sql.PreparedStatement;
+import java.util.List;
+
+//  mysql syntax, the tests run h2 in its mysql mode
+public class ReviewRepositoryImpl implements ReviewRepositoryCustom {
+
+    private static final String INSERT =
+            "insert into reviews (version, product_id, review_id, author, subject, content) values (0, ?, ?, ?, ?, ?)";
+    private static final String ON_DUPLICATE_KEY_UPDATE =
+            " on duplicate key update author = values(author), subject = values(subject), content = values(content), version = version + 1";
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Override
+    public void insertAll(List<ReviewEntity> entities) {
+        executeBatch(INSERT, entities);
+    }
+
+    @Override
+    public void upsertAll(List<ReviewEntity> entities) {
+        executeBatch(INSERT + ON_DUPLICATE_KEY_UPDATE, entities);
+    }
+
+    //  the ids are generated by the table, like the ones of reviews saved through JPA
+    private void executeBatch(String sql, List<ReviewEntity> entities) {
+        if (entities.isEmpty()) return;
+        entityManager.unwrap(Session.class).doWork(connection -> {
+            try (PreparedStatement statement = connection.prepareStatement(sql)) {
+                for (ReviewEntity entity : entities) {
+                    statement.setInt(1, entity.getProductId());
+                    statement.setInt(2, entity.getReviewId());
+                    statement.setString(3, entity.getAuthor());
+                    statement.setString(4, entity.getSubject());
+                    statement.setString(5, entity.getContent());
+                    statement.addBatch();
+                }
+                statement.executeBatch();
+            }
+        });
+    }
+}
@@ -0,0 +1,10 @@
+package se.magnus.microservices.core.review.persistence;
+
+//  closed projection of the reviews table, only these columns are selected. used by both the JPA and the R2DBC repository.
+public interface ReviewSummaryView {
+    int getReviewId();
+    String getAuthor();
+    String getSubject();
+    String getContent();
+    int getVersion();
+}
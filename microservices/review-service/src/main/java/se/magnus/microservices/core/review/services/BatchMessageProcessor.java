@@ -0,0 +1,196 @@
+package se.magnus.microservices.core.review.services;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cloud.stream.annotation.EnableBinding;
+import org.springframework.cloud.stream.annotation.StreamListener;
+import org.springframework.cloud.stream.messaging.Sink;
+import org.springframework.context.annotation.Profile;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.support.MessageBuilder;
+import se.magnus.api.core.review.Review;
+import se.magnus.api.core.review.ReviewService;
+import se.magnus.api.event.Event;
+import se.magnus.api.event.EventCodec;
+import se.magnus.util.exceptions.EventProcessingException;
+import se.magnus.util.exceptions.InvalidInputException;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Collections.emptyList;
+import static java.util.Collections.singletonList;
+import static se.magnus.api.event.Event.Type.DELETE;
+
+//  replaces MessageProcessor when the binding runs in batch mode, i.e. each message holds a list of raw events.
+//  consecutive events of the same type are applied together, so the order of the events of each productId is kept.
+//  the batch is committed as a whole and the binding doesn't retry it, an event that can't be read or is rejected as
+//  invalid is sent to the dead letter queue, so it doesn't hold back the others.
+@Profile("batch")
+@EnableBinding({ Sink.class })
+public class BatchMessageProcessor {
+    private static final Logger LOG = LoggerFactory.getLogger(BatchMessageProcessor.class);
+    private static final TypeReference<Event<Integer, JsonNode>> EVENT_TYPE = new TypeReference<Event<Integer, JsonNode>>() {};
+    private static final TypeReference<List<Review>> REVIEWS_TYPE = new TypeReference<List<Review>>() {};
+
+    private final ReviewService reviewService;
+    private final ObjectMapper mapper;
+    private final EventCodec codec;
+    private final ProcessedEvents processedEvents;
+    private final DeadLetters deadLetters;
+
+    //  an event of the batch with its reviews, and the record it was read from for the dead letter queue
+    private static class Received {
+        private final Object record;
+        private final Event<Integer, JsonNode> event;
+        private final List<Review> reviews;
+
+        private Received(Object record, Event<Integer, JsonNode> event, List<Review> reviews) {
+            this.record = record;
+            this.event = event;
+            this.reviews = reviews;
+        }
+    }
+
+    @Autowired
+    public BatchMessageProcessor(ReviewService reviewService, ObjectMapper mapper, EventCodec codec, ProcessedEvents processedEvents, DeadLetters deadLetters) {
+        this.reviewService = reviewService;
+        this.mapper = mapper;
+        this.codec = codec;
+        this.processedEvents = processedEvents;
+        this.deadLetters = deadLetters;
+    }
+
+    @StreamListener(target = Sink.INPUT)
+    public void process(Message<?> message) {
+        //  a binder without batch support delivers one event per message, that is just a batch of one
+        Object payload = message.getPayload();
+        List<?> records = payload instanceof List ? (List<?>) payload : singletonList(payload);
+
+        List<Received> events = new ArrayList<>(records.size());
+        //  the content type of a batch is the one of the binding, not of its records, they are told apart by the codec
+        Object contentType = payload instanceof List ? null : message.getHeaders().get(MessageHeaders.CONTENT_TYPE);
+        for (Object record : records) {
+            try {
+                events.add(read(record, contentType));
+            } catch (EventProcessingException ex) {
+                deadLetter(message, record, ex);
+            }
+        }
+        LOG.info("Process batch of {} messages...", events.size());
+        events = skipDuplicates(events);
+
+        int from = 0;
+        while (from < events.size()) {
+            Event.Type eventType = events.get(from).event.getEventType();
+            int to = from + 1;
+            while (to < events.size() && events.get(to).event.getEventType() == eventType) to++;
+            applyGroup(message, eventType, events.subList(from, to));
+            from = to;
+        }
+        LOG.info("Batch processing done!");
+    }
+
+    //  a group rejected as invalid is applied event by event, only the events rejected on their own are dead-lettered.
+    //  any other error fails the batch, it is redelivered and the events applied already are skipped.
+    private void applyGroup(Message<?> message, Event.Type eventType, List<Received> group) {
+        try {
+            apply(eventType, group);
+            for (Received received : group) processedEvents.markProcessed(received.event);
+        } catch (InvalidInputException ex) {
+            if (group.size() == 1) {
+                deadLetter(message, group.get(0).record, ex);
+                return;
+            }
+            LOG.warn("Batch of {} {} events rejected, applying them one by one: {}", group.size(), eventType, ex.toString());
+            for (Received received : group) applyGroup(message, eventType, singletonList(received));
+        }
+    }
+
+    private void apply(Event.Type eventType, List<Received> events) {
+        switch (eventType) {
+            case CREATE:
+                List<Review> reviews = new ArrayList<>();
+                for (Received received : events) reviews.addAll(received.reviews);
+                LOG.info("Create {} reviews from {} events", reviews.size(), events.size());
+                reviewService.createReviews(reviews);
+                break;
+
+            case UPSERT:
+                List<Review> replacements = new ArrayList<>();
+                for (Received received : events) replacements.addAll(received.reviews);
+                LOG.info("Create or replace {} reviews from {} events", replacements.size(), events.size());
+                reviewService.upsertReviews(replacements);
+                break;
+
+            case DELETE:
+                events.stream().map(received -> received.event.getKey()).distinct().forEach(productId -> {
+                    LOG.info("Delete reviews with ProductID: {}", productId);
+                    reviewService.deleteReviews(productId);
+                });
+                break;
+
+            default:
+                String errorMessage = "Incorrect event type: " + eventType + ", expected a CREATE, UPSERT or DELETE event";
+                LOG.warn(errorMessage);
+                throw new EventProcessingException(errorMessage);
+        }
+    }
+
+    //  bulk events carry a list of reviews, plain events a single one
+    private List<Review> readReviews(JsonNode data) {
+        if (data == null || data.isNull()) throw new EventProcessingException("Missing reviews");
+        try {
+            return data.isArray() ? mapper.convertValue(data, REVIEWS_TYPE) : singletonList(mapper.treeToValue(data, Review.class));
+        } catch (IOException | IllegalArgumentException ex) {
+            throw new EventProcessingException("Invalid review: " + data, ex);
+        }
+    }
+
+    //  a batch can hold redelivered events and even the same event twice
+    private List<Received> skipDuplicates(List<Received> events) {
+        List<Received> unprocessed = new ArrayList<>(events.size());
+        Set<String> eventIds = new HashSet<>();
+        for (Received received : events) {
+            Event<Integer, JsonNode> event = received.event;
+            boolean duplicate = event.getEventId() != null && !eventIds.add(event.getEventId());
+            if (duplicate || processedEvents.isProcessed(event)) {
+                LOG.debug("Skipped duplicate event: {}", event.getEventId());
+                continue;
+            }
+            unprocessed.add(received);
+        }
+        return unprocessed;
+    }
+
+    private Received read(Object record, Object contentType) {
+        Event<Integer, JsonNode> event;
+        try {
+            event = record instanceof byte[] ? codec.read((byte[]) record, contentType, EVENT_TYPE) : mapper.readValue(record.toString(), EVENT_TYPE);
+        } catch (IOException ex) {
+            throw new EventProcessingException("Invalid event: " + text(record), ex);
+        }
+        if (event.getKey() == null || event.getEventType() == null) throw new EventProcessingException("Event without key or event type: " + text(record));
+        return new Received(record, event, event.getEventType() == DELETE ? emptyList() : readReviews(event.getData()));
+    }
+
+    //  if the dead letter can't be sent the batch fails and is redelivered
+    private void deadLetter(Message<?> message, Object record, Exception error) {
+        LOG.warn("Dead-lettering event: {}, error: {}", text(record), error.toString());
+        //  the headers of a batch describe all of its records
+        deadLetters.send(message.getPayload() instanceof List ? MessageBuilder.withPayload(record).build() : message, error);
+    }
+
+    private static String text(Object record) {
+        return record instanceof byte[] ? new String((byte[]) record, UTF_8) : String.valueOf(record);
+    }
+}
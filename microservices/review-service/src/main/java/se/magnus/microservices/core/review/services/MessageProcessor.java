@@ -6,24 +6,36 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.cloud.stream.annotation.EnableBinding;
 import org.springframework.cloud.stream.annotation.StreamListener;
 import org.springframework.cloud.stream.messaging.Sink;
+import org.springframework.context.annotation.Profile;
 import se.magnus.api.core.review.Review;
 import se.magnus.api.core.review.ReviewService;
 import se.magnus.api.event.Event;
 import se.magnus.util.exceptions.EventProcessingException;
 
+import java.util.List;
+
+import static se.magnus.api.event.Event.BULK_HEADER;
+import static se.magnus.api.event.Event.Type.CREATE;
+import static se.magnus.api.event.Event.Type.UPSERT;
+
+//  one event per message, see BatchMessageProcessor for the batch mode
+@Profile("!batch")
 @EnableBinding({ Sink.class })
 public class MessageProcessor {
     private static final Logger LOG = LoggerFactory.getLogger(MessageProcessor.class);
     private final ReviewService reviewService;
+    private final ProcessedEvents processedEvents;
 
     @Autowired
-    public MessageProcessor(ReviewService reviewService) {
+    public MessageProcessor(ReviewService reviewService, ProcessedEvents processedEvents) {
         this.reviewService = reviewService;
+        this.processedEvents = processedEvents;
     }
 
-    @StreamListener(target = Sink.INPUT)
+    @StreamListener(target = Sink.INPUT, condition = "headers['" + BULK_HEADER + "'] == null")
     public void process(Event<Integer, Review> event) {
         LOG.info("Process message created at {}...", event.getEventCreatedAt());
+        if (isDuplicate(event)) return;
         switch (event.getEventType()) {
             case CREATE:
                 Review review = event.getData();
@@ -31,6 +43,12 @@ public class MessageProcessor {
                 reviewService.createReview(review);
                 break;
 
+            case UPSERT:
+                Review replacement = event.getData();
+                LOG.info("Create or replace review with ID: {}/{}", replacement.getProductId(), replacement.getReviewId());
+                reviewService.upsertReview(replacement);
+                break;
+
             case DELETE:
                 int productId = event.getKey();
                 LOG.info("Delete reviews with ProductID: {}", productId);
@@ -38,10 +56,40 @@ public class MessageProcessor {
                 break;
 
             default:
-                String errorMessage = "Incorrect event type: " + event.getEventType() + ", expected a CREATE or DELETE event";
+                String errorMessage = "Incorrect event type: " + event.getEventType() + ", expected a CREATE, UPSERT or DELETE event";
                 LOG.warn(errorMessage);
                 throw new EventProcessingException(errorMessage);
         }
+        processedEvents.markProcessed(event);
         LOG.info("Message processing done!");
     }
+
+    //  all reviews of a product in one event, stored with a single bulk write
+    @StreamListener(target = Sink.INPUT, condition = "headers['" + BULK_HEADER + "'] != null")
+    public void processBulk(Event<Integer, List<Review>> event) {
+        LOG.info("Process bulk message created at {}...", event.getEventCreatedAt());
+        if (isDuplicate(event)) return;
+        List<Review> reviews = event.getData();
+        if (event.getEventType() == CREATE) {
+            LOG.info("Create {} reviews with ProductID: {}", reviews.size(), event.getKey());
+            reviewService.createReviews(reviews);
+        } else if (event.getEventType() == UPSERT) {
+            LOG.info("Create or replace {} reviews with ProductID: {}", reviews.size(), event.getKey());
+            reviewService.upsertReviews(reviews);
+        } else {
+            String errorMessage = "Incorrect event type: " + event.getEventType() + ", expected a CREATE or UPSERT event";
+            LOG.warn(errorMessage);
+            throw new EventProcessingException(errorMessage);
+        }
+
+        processedEvents.markProcessed(event);
+        LOG.info("Message processing done!");
+    }
+
+    //  redeliveries of an event that was applied already, e.g. after a timeout, are acknowledged without applying them again
+    private boolean isDuplicate(Event<Integer, ?> event) {
+        if (!processedEvents.isProcessed(event)) return false;
+        LOG.info("Skipped duplicate event: {}", event.getEventId());
+        return true;
+    }
 }
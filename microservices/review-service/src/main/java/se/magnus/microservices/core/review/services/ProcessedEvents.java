@@ -0,0 +1,64 @@
+package se.magnus.microservices.core.review.services;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import se.magnus.api.event.Event;
+import se.magnus.microservices.core.review.persistence.ProcessedEventEntity;
+import se.magnus.microservices.core.review.persistence.ProcessedEventRepository;
+import se.magnus.util.messaging.RecentEventIds;
+
+import java.time.Duration;
+import java.util.Date;
+import java.util.concurrent.atomic.AtomicLong;
+
+//  deduplication of redelivered events by their event id, recent ids are held in memory, all of them in the database.
+//  an event counts as processed once it is applied, so an event that failed is processed again when redelivered.
+//  the r2dbc profile comes without JPA, there only the ids held in memory are checked.
+@Component
+public class ProcessedEvents {
+    private static final Logger LOG = LoggerFactory.getLogger(ProcessedEvents.class);
+    private static final int PURGE_INTERVAL = 1000;
+
+    private final ProcessedEventRepository repository;
+    private final RecentEventIds recent;
+    private final Duration retention;
+    private final AtomicLong marked = new AtomicLong();
+
+    @Autowired
+    public ProcessedEvents(
+            ObjectProvider<ProcessedEventRepository> repository,
+            @Value("${app.messaging.dedup.cacheSize:10000}") int cacheSize,
+            @Value("${app.messaging.dedup.retentionDays:7}") int retentionDays
+    ) {
+        this.repository = repository.getIfAvailable();
+        this.recent = new RecentEventIds(cacheSize);
+        this.retention = Duration.ofDays(retentionDays);
+    }
+
+    public boolean isProcessed(Event<?, ?> event) {
+        String eventId = event.getEventId();
+        //  events of publishers that don't set an id yet can't be told apart
+        if (eventId == null) return false;
+        if (recent.contains(eventId)) return true;
+        if (repository == null || !repository.existsById(eventId)) return false;
+        recent.add(eventId);
+        return true;
+    }
+
+    public void markProcessed(Event<?, ?> event) {
+        String eventId = event.getEventId();
+        if (eventId == null) return;
+        recent.add(eventId);
+        if (repository == null) return;
+        repository.save(new ProcessedEventEntity(eventId, new Date()));
+        //  no redelivery comes later than the retention, older ids are deleted every now and then
+        if (marked.incrementAndGet() % PURGE_INTERVAL == 0) {
+            int deleted = repository.deleteProcessedBefore(new Date(System.currentTimeMillis() - retention.toMillis()));
+            LOG.debug("Deleted {} expired processed events", deleted);
+        }
+    }
+}
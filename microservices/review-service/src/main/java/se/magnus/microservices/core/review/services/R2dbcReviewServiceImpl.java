@@ -0,0 +1,144 @@
+package se.magnus.microservices.core.review.services;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.transaction.ReactiveTransactionManager;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import se.magnus.api.composite.product.ReviewSummary;
+import se.magnus.api.core.review.Review;
+import se.magnus.api.core.review.ReviewService;
+import se.magnus.microservices.core.review.persistence.ReviewRecord;
+import se.magnus.microservices.core.review.persistence.ReviewRecordRepository;
+import se.magnus.util.exceptions.InvalidInputException;
+import se.magnus.util.http.ServiceUtil;
+
+import java.util.List;
+
+import static java.util.Collections.singletonList;
+import static java.util.logging.Level.FINE;
+
+//  same API as ReviewServiceImpl, but rows are streamed from the R2DBC driver instead of being loaded on the jdbcScheduler
+@Profile("r2dbc")
+@RestController
+public class R2dbcReviewServiceImpl implements ReviewService {
+    private static final Logger LOG = LoggerFactory.getLogger(R2dbcReviewServiceImpl.class);
+    private final ReviewRecordRepository repository;
+    private final ReviewMapper mapper;
+    private final ServiceUtil serviceUtil;
+    private final TransactionalOperator transactional;
+
+    @Autowired
+    public R2dbcReviewServiceImpl(ReviewRecordRepository repository, ReviewMapper mapper, ServiceUtil serviceUtil, ReactiveTransactionManager transactionManager) {
+        this.repository = repository;
+        this.mapper = mapper;
+        this.serviceUtil = serviceUtil;
+        this.transactional = TransactionalOperator.create(transactionManager);
+    }
+
+    @Override
+    public Review createReview(Review body) {
+        if (body.getProductId() < 1) throw new InvalidInputException("Invalid productId: " + body.getProductId());
+        ReviewRecord record = mapper.apiToRecord(body);
+        return repository.save(record)
+                .log(null, FINE)
+                .onErrorMap(
+                        DataIntegrityViolationException.class,
+                        ex -> new InvalidInputException("Duplicate key, Product Id: " + body.getProductId() + ", Review Id:" + body.getReviewId()))
+                .map(mapper::recordToApi)
+                .block();
+    }
+
+    @Override
+    public List<Review> createReviews(List<Review> body) {
+        body.forEach(r -> {
+            if (r.getProductId() < 1) throw new InvalidInputException("Invalid productId: " + r.getProductId());
+        });
+        //  all or nothing, a duplicate rolls back the reviews inserted before it
+        return repository.saveAll(Flux.fromIterable(body).map(mapper::apiToRecord))
+                .as(transactional::transactional)
+                .log(null, FINE)
+                .onErrorMap(
+                        DataIntegrityViolationException.class,
+                        ex -> new InvalidInputException("Duplicate key, Product Id: " + body.get(0).getProductId()))
+                .map(mapper::recordToApi)
+                .collectList()
+                .block();
+    }
+
+    @Override
+    public Review upsertReview(Review body) {
+        upsertReviews(singletonList(body));
+        return body;
+    }
+
+    @Override
+    public List<Review> upsertReviews(List<Review> body) {
+        body.forEach(r -> {
+            if (r.getProductId() < 1) throw new InvalidInputException("Invalid productId: " + r.getProductId());
+        });
+        return Flux.fromIterable(body)
+                .concatMap(r -> repository.upsert(r.getProductId(), r.getReviewId(), r.getAuthor(), r.getSubject(), r.getContent()))
+                .as(transactional::transactional)
+                .log(null, FINE)
+                .then(Mono.just(body))
+                .block();
+    }
+
+    @Override
+    public Flux<Review> getReviews(int productId, Integer afterId, int limit) {
+        if (productId < 1) throw new InvalidInputException("Invalid productId: " + productId);
+        if (limit < 0) throw new InvalidInputException("Invalid limit: " + limit);
+        LOG.info("Will get reviews for product with id={}, afterId={}, limit={}", productId, afterId, limit);
+
+        Pageable page = limit > 0 ? PageRequest.of(0, limit) : Pageable.unpaged();
+        return repository.findByProductIdAndReviewIdGreaterThanOrderByReviewIdAsc(productId, afterId == null ? Integer.MIN_VALUE : afterId, page)
+                .log(null, FINE)
+                .map(this::toApi);
+    }
+
+    @Override
+    public Flux<ReviewSummary> getReviewSummaries(int productId, Integer afterId, int limit) {
+        if (productId < 1) throw new InvalidInputException("Invalid productId: " + productId);
+        if (limit < 0) throw new InvalidInputException("Invalid limit: " + limit);
+        LOG.info("Will get review summaries for product with id={}, afterId={}, limit={}", productId, afterId, limit);
+
+        Pageable page = limit > 0 ? PageRequest.of(0, limit) : Pageable.unpaged();
+        return repository.findSummariesByProductIdAndReviewIdGreaterThanOrderByReviewIdAsc(productId, afterId == null ? Integer.MIN_VALUE : afterId, page)
+                .log(null, FINE)
+                .map(mapper::viewToSummary);
+    }
+
+    @Override
+    public Flux<Review> getReviewsByProductIds(List<Integer> productIds) {
+        productIds.forEach(productId -> {
+            if (productId < 1) throw new InvalidInputException("Invalid productId: " + productId);
+        });
+        LOG.info("Will get reviews for products with ids={}", productIds);
+        return repository.findByProductIdInOrderByProductIdAscReviewIdAsc(productIds)
+                .log(null, FINE)
+                .map(this::toApi);
+    }
+
+    @Override
+    public void deleteReviews(int productId) {
+        if (productId < 1) throw new InvalidInputException("Invalid productId: " + productId);
+
+        LOG.debug("deleteReviews: tries to delete reviews for the product with productId: {}", productId);
+        int count = repository.deleteByProductId(productId).block();
+        LOG.debug("deleteReviews: deleted {} entities", count);
+    }
+
+    private Review toApi(ReviewRecord record) {
+        Review review = mapper.recordToApi(record);
+        review.setServiceAddress(serviceUtil.getServiceAddress());
+        return review;
+    }
+}
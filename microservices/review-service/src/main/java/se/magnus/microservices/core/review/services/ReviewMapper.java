@@ -3,8 +3,11 @@ package se.magnus.microservices.core.review.services;
 import org.mapstruct.Mapper;
 import org.mapstruct.Mapping;
 import org.mapstruct.Mappings;
+import se.magnus.api.composite.product.ReviewSummary;
 import se.magnus.api.core.review.Review;
 import se.magnus.microservices.core.review.persistence.ReviewEntity;
+import se.magnus.microservices.core.review.persistence.ReviewRecord;
+import se.magnus.microservices.core.review.persistence.ReviewSummaryView;
 
 import java.util.List;
 
@@ -22,6 +25,22 @@ public interface ReviewMapper {
     })
     ReviewEntity apiToEntity(Review api);
 
+    @Mappings({
+        @Mapping(target = "serviceAddress", ignore = true)
+    })
+    Review recordToApi(ReviewRecord record);
+
+    @Mappings({
+        @Mapping(target = "id", ignore = true),
+        @Mapping(target = "version", ignore = true)
+    })
+    ReviewRecord apiToRecord(Review api);
+
+    //  by hand, MapStruct would pick the no-args constructor of the immutable summary
+    default ReviewSummary viewToSummary(ReviewSummaryView view) {
+        return new ReviewSummary(view.getReviewId(), view.getAuthor(), view.getSubject(), view.getContent(), view.getVersion());
+    }
+
     List<Review> entityListToApiList(List<ReviewEntity> entity);
     List<ReviewEntity> apiListToEntityList(List<Review> api);
 }
\ No newline at end of file
@@ -4,22 +4,30 @@ import org.reactivestreams.Publisher;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
 import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
 import org.springframework.web.bind.annotation.RestController;
 import reactor.core.publisher.Flux;
 import reactor.core.scheduler.Scheduler;
+import se.magnus.api.composite.product.ReviewSummary;
 import se.magnus.api.core.review.Review;
 import se.magnus.api.core.review.ReviewService;
 import se.magnus.microservices.core.review.persistence.ReviewEntity;
 import se.magnus.microservices.core.review.persistence.ReviewRepository;
+import se.magnus.microservices.core.review.persistence.ReviewSummaryView;
 import se.magnus.util.exceptions.InvalidInputException;
 import se.magnus.util.http.ServiceUtil;
 
 import java.util.List;
 import java.util.function.Supplier;
+import java.util.stream.Collectors;
 
+import static java.util.Collections.singletonList;
 import static java.util.logging.Level.FINE;
 
+@Profile("!r2dbc")
 @RestController
 public class ReviewServiceImpl implements ReviewService {
     private static final Logger LOG = LoggerFactory.getLogger(ReviewServiceImpl.class);
@@ -51,14 +59,52 @@ public class ReviewServiceImpl implements ReviewService {
     }
 
     @Override
-    public Flux<Review> getReviews(int productId) {
+    public List<Review> createReviews(List<Review> body) {
+        body.forEach(r -> {
+            if (r.getProductId() < 1) throw new InvalidInputException("Invalid productId: " + r.getProductId());
+        });
+        try {
+            //  one transaction, the inserts are sent in a single jdbc batch
+            List<ReviewEntity> newEntities = mapper.apiListToEntityList(body);
+            repository.insertAll(newEntities);
+
+            LOG.debug("createReviews: created {} review entities", newEntities.size());
+            return mapper.entityListToApiList(newEntities);
+        } catch (DataIntegrityViolationException dive) {
+            throw new InvalidInputException("Duplicate key, Product Id: " + body.get(0).getProductId());
+        }
+    }
+
+    @Override
+    public Review upsertReview(Review body) {
+        upsertReviews(singletonList(body));
+        return body;
+    }
+
+    //  no duplicate key round trip, existing reviews are replaced
+    @Override
+    public List<Review> upsertReviews(List<Review> body) {
+        body.forEach(r -> {
+            if (r.getProductId() < 1) throw new InvalidInputException("Invalid productId: " + r.getProductId());
+        });
+        repository.upsertAll(mapper.apiListToEntityList(body));
+
+        LOG.debug("upsertReviews: created or replaced {} review entities", body.size());
+        return body;
+    }
+
+    @Override
+    public Flux<Review> getReviews(int productId, Integer afterId, int limit) {
         if (productId < 1) throw new InvalidInputException("Invalid productId: " + productId);
-        LOG.info("Will get reviews for product with id={}", productId);
-        return asyncFlux(() -> Flux.fromIterable(getByProductId(productId))).log(null, FINE);
+        if (limit < 0) throw new InvalidInputException("Invalid limit: " + limit);
+        LOG.info("Will get reviews for product with id={}, afterId={}, limit={}", productId, afterId, limit);
+        return asyncFlux(() -> Flux.fromIterable(getByProductId(productId, afterId, limit))).log(null, FINE);
     }
 
-    protected List<Review> getByProductId(int productId) {
-        List<ReviewEntity> entityList = repository.findByProductId(productId);
+    protected List<Review> getByProductId(int productId, Integer afterId, int limit) {
+        Pageable page = limit > 0 ? PageRequest.of(0, limit) : Pageable.unpaged();
+        List<ReviewEntity> entityList = repository.findByProductIdAndReviewIdGreaterThanOrderByReviewIdAsc(
+                productId, afterId == null ? Integer.MIN_VALUE : afterId, page);
         List<Review> list = mapper.entityListToApiList(entityList);
         list.forEach(e -> e.setServiceAddress(serviceUtil.getServiceAddress()));
 
@@ -66,12 +112,50 @@ public class ReviewServiceImpl implements ReviewService {
         return list;
     }
 
+    //  neither the id nor the productId are selected, the summaries need no service address either
+    @Override
+    public Flux<ReviewSummary> getReviewSummaries(int productId, Integer afterId, int limit) {
+        if (productId < 1) throw new InvalidInputException("Invalid productId: " + productId);
+        if (limit < 0) throw new InvalidInputException("Invalid limit: " + limit);
+        LOG.info("Will get review summaries for product with id={}, afterId={}, limit={}", productId, afterId, limit);
+        return asyncFlux(() -> Flux.fromIterable(getSummariesByProductId(productId, afterId, limit))).log(null, FINE);
+    }
+
+    protected List<ReviewSummary> getSummariesByProductId(int productId, Integer afterId, int limit) {
+        Pageable page = limit > 0 ? PageRequest.of(0, limit) : Pageable.unpaged();
+        List<ReviewSummaryView> views = repository.findSummariesByProductIdAndReviewIdGreaterThanOrderByReviewIdAsc(
+                productId, afterId == null ? Integer.MIN_VALUE : afterId, page);
+        List<ReviewSummary> list = views.stream().map(mapper::viewToSummary).collect(Collectors.toList());
+
+        LOG.debug("getReviewSummaries: response size: {}", list.size());
+        return list;
+    }
+
+    @Override
+    public Flux<Review> getReviewsByProductIds(List<Integer> productIds) {
+        productIds.forEach(productId -> {
+            if (productId < 1) throw new InvalidInputException("Invalid productId: " + productId);
+        });
+        LOG.info("Will get reviews for products with ids={}", productIds);
+        return asyncFlux(() -> Flux.fromIterable(getByProductIds(productIds))).log(null, FINE);
+    }
+
+    protected List<Review> getByProductIds(List<Integer> productIds) {
+        List<ReviewEntity> entityList = repository.findByProductIdInOrderByProductIdAscReviewIdAsc(productIds);
+        List<Review> list = mapper.entityListToApiList(entityList);
+        list.forEach(e -> e.setServiceAddress(serviceUtil.getServiceAddress()));
+
+        LOG.debug("getReviewsByProductIds: response size: {}", list.size());
+        return list;
+    }
+
     @Override
     public void deleteReviews(int productId) {
         if (productId < 1) throw new InvalidInputException("Invalid productId: " + productId);
 
         LOG.debug("deleteReviews: tries to delete reviews for the product with productId: {}", productId);
-        repository.deleteAll(repository.findByProductId(productId));
+        int count = repository.deleteByProductId(productId);
+        LOG.debug("deleteReviews: deleted {} entities", count);
     }
 
     private <T> Flux<T> asyncFlux(Supplier<Publisher<T>> publisherSupplier) {
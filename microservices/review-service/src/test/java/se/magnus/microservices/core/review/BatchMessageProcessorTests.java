@@ -0,0 +1,169 @@
+package se.magnus.microservices.core.review;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.cloud.stream.messaging.Sink;
+import org.springframework.integration.channel.AbstractMessageChannel;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.support.GenericMessage;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit4.SpringRunner;
+import se.magnus.api.core.review.Review;
+import se.magnus.api.event.Event;
+import se.magnus.api.event.EventCodec;
+import se.magnus.microservices.core.review.persistence.ReviewRepository;
+import se.magnus.microservices.core.review.services.DeadLetters;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.springframework.boot.test.context.SpringBootTest.WebEnvironment.RANDOM_PORT;
+import static se.magnus.api.event.Event.Type.CREATE;
+import static se.magnus.api.event.Event.Type.DELETE;
+import static se.magnus.api.event.EventCodec.APPLICATION_CBOR;
+
+@RunWith(SpringRunner.class)
+@ActiveProfiles("batch")
+@SpringBootTest(webEnvironment=RANDOM_PORT, properties = {
+		"eureka.client.enabled=false",
+		"spring.cloud.config.enabled=false",
+		"spring.datasource.url=jdbc:h2:mem:review-batch-db"})
+public class BatchMessageProcessorTests {
+
+	@Autowired
+	private ReviewRepository repository;
+
+	@Autowired
+	private ObjectMapper mapper;
+
+	@Autowired
+	private EventCodec codec;
+
+	@Autowired
+	private Sink channels;
+
+	@MockBean
+	private DeadLetters deadLetters;
+
+	private AbstractMessageChannel input = null;
+
+	@Before
+	public void setupDb() {
+		input = (AbstractMessageChannel) channels.input();
+		repository.deleteAll();
+	}
+
+	@Test
+	public void createReviewsInBatch() throws JsonProcessingException {
+
+		List<byte[]> batch = new ArrayList<>();
+		batch.add(createEvent(1, 1));
+		batch.add(createEvent(1, 2));
+		batch.add(createEvent(2, 1));
+		batch.add(createBulkEvent(3, 1, 2, 3));
+		sendBatch(batch);
+
+		assertEquals(2, repository.findByProductId(1).size());
+		assertEquals(1, repository.findByProductId(2).size());
+		assertEquals(3, repository.findByProductId(3).size());
+	}
+
+	@Test
+	public void keepOrderOfEventsInBatch() throws JsonProcessingException {
+
+		List<byte[]> batch = new ArrayList<>();
+		batch.add(createEvent(1, 1));
+		batch.add(createEvent(2, 1));
+		batch.add(deleteEvent(1));
+		batch.add(createEvent(1, 2));
+		sendBatch(batch);
+
+		assertEquals(1, repository.findByProductId(1).size());
+		assertEquals(2, repository.findByProductId(1).get(0).getReviewId());
+		assertEquals(1, repository.findByProductId(2).size());
+	}
+
+	@Test
+	public void createReviewsFromCborBatch() throws IOException {
+
+		//  the records of a batch carry no content type, the codec tells the format from the payload
+		List<byte[]> batch = new ArrayList<>();
+		batch.add(codec.write(new Event<>(CREATE, 1, review(1, 1)), APPLICATION_CBOR));
+		batch.add(createEvent(1, 2));
+		sendBatch(batch);
+
+		assertEquals(2, repository.findByProductId(1).size());
+	}
+
+	@Test
+	public void skipDuplicateEvents() throws JsonProcessingException {
+
+		//  the same event twice in a batch and once more redelivered with the next one
+		byte[] event = mapper.writeValueAsBytes(new Event<>(CREATE, 1, review(1, 1)));
+		sendBatch(Arrays.asList(event, event, createEvent(1, 2)));
+		sendBatch(Arrays.asList(event, createEvent(1, 3)));
+
+		assertEquals(3, repository.findByProductId(1).size());
+	}
+
+	@Test
+	public void deadLetterPoisonEvents() throws JsonProcessingException {
+
+		//  unreadable, without a key, with an invalid review and rejected by the service, each among valid events
+		List<byte[]> batch = new ArrayList<>();
+		batch.add(createEvent(1, 1));
+		batch.add("not an event".getBytes(UTF_8));
+		batch.add(mapper.writeValueAsBytes(new Event<>(CREATE, null, review(1, 2))));
+		batch.add(mapper.writeValueAsBytes(new Event<>(CREATE, 1, "not a review")));
+		batch.add(createEvent(1, 3));
+		batch.add(createEvent(-1, 1));
+		batch.add(createEvent(2, 1));
+		sendBatch(batch);
+
+		//  the rest of the batch is applied
+		assertEquals(2, repository.findByProductId(1).size());
+		assertEquals(1, repository.findByProductId(2).size());
+		verify(deadLetters, times(4)).send(any(), any());
+		verify(deadLetters).send(argThat((Message<byte[]> message) ->
+				new String(message.getPayload(), UTF_8).equals("not an event")), any());
+		verify(deadLetters).send(argThat((Message<byte[]> message) ->
+				new String(message.getPayload(), UTF_8).contains("\"productId\":-1")), argThat(error -> error.toString().contains("Invalid productId")));
+	}
+
+	private byte[] createEvent(int productId, int reviewId) throws JsonProcessingException {
+		return mapper.writeValueAsBytes(new Event<>(CREATE, productId, review(productId, reviewId)));
+	}
+
+	private byte[] createBulkEvent(int productId, Integer... reviewIds) throws JsonProcessingException {
+		List<Review> reviews = new ArrayList<>();
+		Arrays.stream(reviewIds).forEach(reviewId -> reviews.add(review(productId, reviewId)));
+		return mapper.writeValueAsBytes(new Event<>(CREATE, productId, reviews));
+	}
+
+	private byte[] deleteEvent(int productId) throws JsonProcessingException {
+		return mapper.writeValueAsBytes(new Event<>(DELETE, productId, null));
+	}
+
+	private Review review(int productId, int reviewId) {
+		return new Review(productId, reviewId, "Author " + reviewId, "Subject " + reviewId, "Content " + reviewId, "SA");
+	}
+
+	//  what the Kafka binder hands over in batch mode, the raw records of one poll
+	private void sendBatch(List<byte[]> batch) {
+		input.send(new GenericMessage<>(batch));
+	}
+}
@@ -0,0 +1,85 @@
+package se.magnus.microservices.core.review;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.cloud.stream.messaging.Sink;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.test.context.junit4.SpringRunner;
+import se.magnus.api.core.review.Review;
+import se.magnus.api.event.Event;
+import se.magnus.api.event.EventCodec;
+import se.magnus.microservices.core.review.persistence.ReviewRepository;
+
+import java.io.IOException;
+import java.util.List;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.springframework.boot.test.context.SpringBootTest.WebEnvironment.RANDOM_PORT;
+import static org.springframework.util.MimeTypeUtils.APPLICATION_JSON;
+import static se.magnus.api.event.Event.BULK_HEADER;
+import static se.magnus.api.event.Event.Type.CREATE;
+import static se.magnus.api.event.EventCodec.APPLICATION_CBOR;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(webEnvironment=RANDOM_PORT, properties = {
+		"eureka.client.enabled=false",
+		"spring.cloud.config.enabled=false",
+		"spring.datasource.url=jdbc:h2:mem:review-cbor-db"})
+public class CborEventTests {
+
+	@Autowired
+	private ReviewRepository repository;
+
+	@Autowired
+	private EventCodec codec;
+
+	@Autowired
+	private Sink channels;
+
+	@Before
+	public void setupDb() {
+		repository.deleteAll();
+	}
+
+	@Test
+	public void createReviewFromCborEvent() throws IOException {
+
+		Event<Integer, Review> event = new Event<>(CREATE, 1, review(1, 1));
+		channels.input().send(MessageBuilder.withPayload(codec.write(event, APPLICATION_CBOR))
+			.setHeader(MessageHeaders.CONTENT_TYPE, APPLICATION_CBOR.toString())
+			.build());
+
+		assertEquals(1, repository.findByProductId(1).size());
+		assertEquals("Subject 1", repository.findByProductId(1).get(0).getSubject());
+	}
+
+	@Test
+	public void createReviewsFromCborBulkEvent() throws IOException {
+
+		Event<Integer, List<Review>> event = new Event<>(CREATE, 1, asList(review(1, 1), review(1, 2)));
+		channels.input().send(MessageBuilder.withPayload(codec.write(event, APPLICATION_CBOR))
+			.setHeader(MessageHeaders.CONTENT_TYPE, APPLICATION_CBOR.toString())
+			.setHeader(BULK_HEADER, true)
+			.build());
+
+		assertEquals(2, repository.findByProductId(1).size());
+	}
+
+	@Test
+	public void cborIsSmallerThanJson() throws IOException {
+
+		Event<Integer, Review> event = new Event<>(CREATE, 1, review(1, 1));
+
+		assertTrue(codec.write(event, APPLICATION_CBOR).length < codec.write(event, APPLICATION_JSON).length);
+	}
+
+	private Review review(int productId, int reviewId) {
+		return new Review(productId, reviewId, "Author " + reviewId, "Subject " + reviewId, "Content " + reviewId, "SA");
+	}
+}
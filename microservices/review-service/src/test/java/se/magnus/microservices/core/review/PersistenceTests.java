@@ -5,28 +5,40 @@ import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.data.mongo.DataMongoTest;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
 import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
 import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.test.context.junit4.SpringRunner;
 import org.springframework.transaction.annotation.Transactional;
 import se.magnus.microservices.core.review.persistence.ReviewEntity;
+import se.magnus.microservices.core.review.persistence.ReviewIdMigration;
 import se.magnus.microservices.core.review.persistence.ReviewRepository;
 import se.magnus.util.exceptions.NotFoundException;
 
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
 import java.util.List;
 
 import static org.junit.Assert.*;
+import static org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase.Replace.NONE;
 import static org.springframework.transaction.annotation.Propagation.NOT_SUPPORTED;
 
 @RunWith(SpringRunner.class)
-@DataJpaTest(properties = { "spring.cloud.config.enabled=false" })
+//  mysql mode for the statement of ReviewIdMigration
+@DataJpaTest(properties = { "spring.cloud.config.enabled=false", "spring.datasource.url=jdbc:h2:mem:review-db;MODE=MySQL" })
+@AutoConfigureTestDatabase(replace = NONE)
 @Transactional(propagation = NOT_SUPPORTED)
 public class PersistenceTests {
 
     @Autowired
     private ReviewRepository repository;
 
+    @Autowired
+    private DataSource dataSource;
+
     private ReviewEntity savedEntity;
 
     @Before
@@ -52,6 +64,21 @@ public class PersistenceTests {
         assertEquals(2, repository.count());
     }
 
+    @Test
+   	public void migrateIdOfExistingTable() throws SQLException {
+        //  the id column of a table created while the ids came from hibernate_sequence
+        try (Connection connection = dataSource.getConnection(); Statement statement = connection.createStatement()) {
+            statement.execute("alter table reviews alter column id int not null");
+        }
+        ReviewEntity newEntity = new ReviewEntity(1, 3, "a", "s", "c");
+        assertThrows(DataIntegrityViolationException.class, () -> repository.save(newEntity));
+
+        new ReviewIdMigration(dataSource, null).migrate();
+
+        repository.save(new ReviewEntity(1, 3, "a", "s", "c"));
+        assertEquals(2, repository.count());
+    }
+
     @Test
    	public void update() {
         savedEntity.setAuthor("a2");
@@ -68,6 +95,15 @@ public class PersistenceTests {
         assertFalse(repository.existsById(savedEntity.getId()));
     }
 
+    @Test
+   	public void deleteByProductId() {
+        repository.save(new ReviewEntity(1, 3, "a", "s", "c"));
+        repository.save(new ReviewEntity(2, 1, "a", "s", "c"));
+
+        assertEquals(2, repository.deleteByProductId(1));
+        assertEquals(1, repository.count());
+    }
+
     @Test
    	public void getByProductId() {
         List<ReviewEntity> entityList = repository.findByProductId(savedEntity.getProductId());
@@ -0,0 +1,223 @@
+package se.magnus.microservices.core.review;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.cloud.stream.messaging.Sink;
+import org.springframework.http.HttpStatus;
+import org.springframework.integration.channel.AbstractMessageChannel;
+import org.springframework.messaging.MessagingException;
+import org.springframework.messaging.support.GenericMessage;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import se.magnus.api.core.review.Review;
+import se.magnus.api.event.Event;
+import se.magnus.microservices.core.review.persistence.ReviewRecordRepository;
+import se.magnus.util.exceptions.InvalidInputException;
+
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.springframework.boot.test.context.SpringBootTest.WebEnvironment.RANDOM_PORT;
+import static org.springframework.http.HttpStatus.OK;
+import static org.springframework.http.MediaType.APPLICATION_JSON;
+import static se.magnus.api.event.Event.BULK_HEADER;
+import static se.magnus.api.event.Event.Type.CREATE;
+import static se.magnus.api.event.Event.Type.DELETE;
+import static se.magnus.api.event.Event.Type.UPSERT;
+
+@RunWith(SpringRunner.class)
+@ActiveProfiles("r2dbc")
+@SpringBootTest(webEnvironment=RANDOM_PORT, properties = {
+		"eureka.client.enabled=false",
+		"spring.cloud.config.enabled=false",
+		"spring.r2dbc.url=r2dbc:h2:mem:///review-r2dbc-db?options=MODE=MySQL",
+		"server.error.include-message=always"})
+public class R2dbcReviewServiceTests {
+
+	@Autowired
+	private WebTestClient client;
+
+	@Autowired
+	private ReviewRecordRepository repository;
+
+	@Autowired
+	private Sink channels;
+
+	private AbstractMessageChannel input = null;
+
+	@Before
+	public void setupDb() {
+		input = (AbstractMessageChannel) channels.input();
+		repository.deleteAll().block();
+	}
+
+	@Test
+	public void getReviewsByProductId() {
+
+		int productId = 1;
+
+		sendCreateReviewEvent(productId, 3);
+		sendCreateReviewEvent(productId, 1);
+		sendCreateReviewEvent(productId, 2);
+
+		assertEquals(3L, (long) repository.findByProductId(productId).count().block());
+
+		getAndVerifyReviews("?productId=" + productId, OK)
+			.jsonPath("$.length()").isEqualTo(3)
+			.jsonPath("$[2].productId").isEqualTo(productId)
+			.jsonPath("$[2].reviewId").isEqualTo(3);
+
+		getAndVerifyReviews("?productId=" + productId + "&afterId=1&limit=1", OK)
+			.jsonPath("$.length()").isEqualTo(1)
+			.jsonPath("$[0].reviewId").isEqualTo(2);
+	}
+
+	@Test
+	public void getReviewSummaries() {
+
+		int productId = 1;
+
+		sendCreateReviewEvent(productId, 2);
+		sendCreateReviewEvent(productId, 1);
+
+		getAndVerifyReviews("/summary?productId=" + productId + "&limit=1", OK)
+			.jsonPath("$.length()").isEqualTo(1)
+			.jsonPath("$[0].reviewId").isEqualTo(1)
+			.jsonPath("$[0].author").isEqualTo("Author 1");
+	}
+
+	@Test
+	public void getReviewsByProductIds() {
+
+		sendCreateReviewEvent(2, 1);
+		sendCreateReviewEvent(1, 2);
+		sendCreateReviewEvent(1, 1);
+		sendCreateReviewEvent(3, 1);
+
+		//  ordered like the reviews of a single product, by product and review id
+		getAndVerifyReviews("?productIds=2,1", OK)
+			.jsonPath("$.length()").isEqualTo(3)
+			.jsonPath("$[?(@.productId == 3)]").doesNotExist()
+			.jsonPath("$[0].productId").isEqualTo(1)
+			.jsonPath("$[0].reviewId").isEqualTo(1)
+			.jsonPath("$[1].reviewId").isEqualTo(2)
+			.jsonPath("$[2].productId").isEqualTo(2);
+	}
+
+	@Test
+	public void createReviewsInBulk() {
+
+		int productId = 1;
+
+		sendCreateReviewsEvent(productId, 100);
+
+		assertEquals(100L, (long) repository.findByProductId(productId).count().block());
+	}
+
+	@Test
+	public void createReviewsInBulkIsAtomic() {
+
+		int productId = 1;
+
+		sendCreateReviewEvent(productId, 50);
+		try {
+			sendCreateReviewsEvent(productId, 100);
+			fail("Expected a MessagingException here!");
+		} catch (MessagingException me) {
+			assertTrue(me.getCause() instanceof InvalidInputException);
+		}
+
+		// the reviews inserted before the duplicate are rolled back
+		assertEquals(1L, (long) repository.findByProductId(productId).count().block());
+	}
+
+	@Test
+	public void duplicateError() {
+
+		int productId = 1;
+		int reviewId = 1;
+
+		sendCreateReviewEvent(productId, reviewId);
+		assertEquals(1L, (long) repository.count().block());
+		try {
+			sendCreateReviewEvent(productId, reviewId);
+			fail("Expected a MessagingException here!");
+		} catch (MessagingException me) {
+			if (me.getCause() instanceof InvalidInputException)	{
+				InvalidInputException iie = (InvalidInputException) me.getCause();
+				assertEquals(String.format("Duplicate key, Product Id: %d, Review Id:%d", productId, reviewId), iie.getMessage());
+			} else {
+				fail("Expected a InvalidInputException as the root cause!");
+			}
+		}
+
+		assertEquals(1L, (long) repository.count().block());
+	}
+
+	@Test
+	public void upsertReviews() {
+
+		int productId = 1;
+
+		sendCreateReviewEvent(productId, 1);
+
+		Review replacement = new Review(productId, 1, "Author 1", "Subject 1", "Replaced", "SA");
+		input.send(new GenericMessage<>(new Event<>(UPSERT, productId, replacement)));
+		input.send(new GenericMessage<>(new Event<>(UPSERT, productId, replacement)));
+
+		assertEquals(1L, (long) repository.count().block());
+		assertEquals("Replaced", repository.findByProductId(productId).blockFirst().getContent());
+	}
+
+	@Test
+	public void deleteReviews() {
+
+		int productId = 1;
+
+		sendCreateReviewEvent(productId, 1);
+		assertEquals(1L, (long) repository.findByProductId(productId).count().block());
+
+		sendDeleteReviewEvent(productId);
+		assertEquals(0L, (long) repository.findByProductId(productId).count().block());
+
+		sendDeleteReviewEvent(productId);
+	}
+
+	private WebTestClient.BodyContentSpec getAndVerifyReviews(String query, HttpStatus expectedStatus) {
+		return client.get()
+			.uri("/review" + query)
+			.accept(APPLICATION_JSON)
+			.exchange()
+			.expectStatus().isEqualTo(expectedStatus)
+			.expectHeader().contentType(APPLICATION_JSON)
+			.expectBody();
+	}
+
+	private void sendCreateReviewEvent(int productId, int reviewId) {
+		Review review = new Review(productId, reviewId, "Author " + reviewId, "Subject " + reviewId, "Content " + reviewId, "SA");
+		Event<Integer, Review> event = new Event<>(CREATE, productId, review);
+		input.send(new GenericMessage<>(event));
+	}
+
+	private void sendCreateReviewsEvent(int productId, int count) {
+		List<Review> reviews = IntStream.rangeClosed(1, count)
+			.mapToObj(id -> new Review(productId, id, "Author " + id, "Subject " + id, "Content " + id, "SA"))
+			.collect(Collectors.toList());
+		Event<Integer, List<Review>> event = new Event<>(CREATE, productId, reviews);
+		input.send(MessageBuilder.withPayload(event).setHeader(BULK_HEADER, true).build());
+	}
+
+	private void sendDeleteReviewEvent(int productId) {
+		Event<Integer, Review> event = new Event<>(DELETE, productId, null);
+		input.send(new GenericMessage<>(event));
+	}
+}
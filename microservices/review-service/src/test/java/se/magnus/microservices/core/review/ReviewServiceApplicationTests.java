@@ -11,18 +11,23 @@ import org.springframework.test.web.reactive.server.WebTestClient;
 import se.magnus.api.core.review.Review;
 import se.magnus.microservices.core.review.persistence.ReviewRepository;
 
+import java.util.List;
+
 import static org.junit.Assert.assertEquals;
 import static org.springframework.boot.test.context.SpringBootTest.WebEnvironment.RANDOM_PORT;
 import static org.springframework.http.HttpStatus.*;
 import static org.springframework.http.MediaType.APPLICATION_JSON;
+import static java.util.Arrays.asList;
 import static reactor.core.publisher.Mono.just;
+import static se.magnus.util.http.ServiceAddressFilter.SERVICE_ADDRESS_HEADER;
+import static se.magnus.util.http.SmileCodecConfiguration.APPLICATION_SMILE;
 
 @RunWith(SpringRunner.class)
 @SpringBootTest(webEnvironment=RANDOM_PORT, properties = {
 		"logging.level.se.magnus=DEBUG",
 		"eureka.client.enabled=false",
 		"spring.cloud.config.enabled=false",
-		"spring.datasource.url=jdbc:h2:mem:review-db",
+		"spring.datasource.url=jdbc:h2:mem:review-db;MODE=MySQL",
 		"server.error.include-message=always"})
 public class ReviewServiceApplicationTests {
 
@@ -57,6 +62,92 @@ public class ReviewServiceApplicationTests {
 			.jsonPath("$[2].reviewId").isEqualTo(3);
 	}
 
+	@Test
+	public void getReviewsByProductIds() {
+
+		postAndVerifyReview(1, 2, OK);
+		postAndVerifyReview(2, 1, OK);
+		postAndVerifyReview(1, 1, OK);
+		postAndVerifyReview(3, 1, OK);
+
+		//  ordered like the reviews of a single product, by product and review id
+		getAndVerifyReviewsByProductId("?productIds=2,1", OK)
+			.jsonPath("$.length()").isEqualTo(3)
+			.jsonPath("$[?(@.productId == 3)]").doesNotExist()
+			.jsonPath("$[0].productId").isEqualTo(1)
+			.jsonPath("$[0].reviewId").isEqualTo(1)
+			.jsonPath("$[1].reviewId").isEqualTo(2)
+			.jsonPath("$[2].productId").isEqualTo(2);
+	}
+
+	@Test
+	public void getReviewsPage() {
+
+		int productId = 1;
+
+		postAndVerifyReview(productId, 3, OK);
+		postAndVerifyReview(productId, 1, OK);
+		postAndVerifyReview(productId, 2, OK);
+
+		getAndVerifyReviewsByProductId("?productId=" + productId + "&limit=2", OK)
+			.jsonPath("$.length()").isEqualTo(2)
+			.jsonPath("$[0].reviewId").isEqualTo(1)
+			.jsonPath("$[1].reviewId").isEqualTo(2);
+
+		getAndVerifyReviewsByProductId("?productId=" + productId + "&afterId=2&limit=2", OK)
+			.jsonPath("$.length()").isEqualTo(1)
+			.jsonPath("$[0].reviewId").isEqualTo(3);
+	}
+
+	@Test
+	public void getReviewsAsSmile() {
+
+		int productId = 1;
+
+		postAndVerifyReview(productId, 1, OK);
+		postAndVerifyReview(productId, 2, OK);
+
+		client.get()
+			.uri("/review?productId=" + productId)
+			.accept(APPLICATION_SMILE)
+			.exchange()
+			.expectStatus().isEqualTo(OK)
+			.expectHeader().contentType(APPLICATION_SMILE)
+			.expectBodyList(Review.class)
+			.value(reviews -> {
+				assertEquals(2, reviews.size());
+				assertEquals("Subject 2", reviews.get(1).getSubject());
+			});
+	}
+
+	@Test
+	public void createReviewsInBulk() {
+
+		int productId = 1;
+
+		client.post()
+			.uri("/review/bulk")
+			.bodyValue(asList(
+				new Review(productId, 1, "Author 1", "Subject 1", "Content 1", "SA"),
+				new Review(productId, 2, "Author 2", "Subject 2", "Content 2", "SA")))
+			.accept(APPLICATION_JSON)
+			.exchange()
+			.expectStatus().isEqualTo(OK)
+			.expectBody()
+			.jsonPath("$.length()").isEqualTo(2);
+
+		assertEquals(2, repository.findByProductId(productId).size());
+
+		client.post()
+			.uri("/review/bulk")
+			.bodyValue(asList(new Review(productId, 2, "Author 2", "Subject 2", "Content 2", "SA")))
+			.accept(APPLICATION_JSON)
+			.exchange()
+			.expectStatus().isEqualTo(UNPROCESSABLE_ENTITY)
+			.expectBody()
+			.jsonPath("$.message").isEqualTo("Duplicate key, Product Id: " + productId);
+	}
+
 	@Test
 	public void duplicateError() {
 
@@ -78,6 +169,49 @@ public class ReviewServiceApplicationTests {
 		assertEquals(1, repository.count());
 	}
 
+	@Test
+	public void getReviewSummaries() {
+
+		int productId = 1;
+
+		postAndVerifyReview(productId, 1, OK);
+		postAndVerifyReview(productId, 2, OK);
+
+		client.get()
+			.uri("/review/summary?productId=" + productId + "&afterId=1")
+			.accept(APPLICATION_JSON)
+			.exchange()
+			.expectStatus().isEqualTo(OK)
+			.expectHeader().exists(SERVICE_ADDRESS_HEADER)
+			.expectBody()
+			.jsonPath("$.length()").isEqualTo(1)
+			.jsonPath("$[0].reviewId").isEqualTo(2)
+			.jsonPath("$[0].subject").isEqualTo("Subject 2")
+			.jsonPath("$[0].productId").doesNotExist();
+	}
+
+	@Test
+	public void upsertReviews() {
+
+		int productId = 1;
+
+		postAndVerifyReview(productId, 1, OK);
+
+		Review replacement = new Review(productId, 1, "Author 1", "Subject 1", "Replaced", "SA");
+		client.put()
+			.uri("/review/bulk")
+			.body(just(asList(replacement, new Review(productId, 2, "Author 2", "Subject 2", "Content 2", "SA"))), List.class)
+			.accept(APPLICATION_JSON)
+			.exchange()
+			.expectStatus().isEqualTo(OK);
+
+		//  a re-import replaces instead of failing on the duplicate key
+		assertEquals(2, repository.findByProductId(productId).size());
+		getAndVerifyReviewsByProductId(productId, OK)
+			.jsonPath("$[0].content").isEqualTo("Replaced")
+			.jsonPath("$[1].reviewId").isEqualTo(2);
+	}
+
 	@Test
 	public void deleteReviews() {
 
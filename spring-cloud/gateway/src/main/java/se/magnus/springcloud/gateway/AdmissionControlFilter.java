@@ -0,0 +1,100 @@
+package se.magnus.springcloud.gateway;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.cloud.gateway.filter.GatewayFilter;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.filter.factory.AbstractGatewayFilterFactory;
+import org.springframework.cloud.gateway.filter.ratelimit.RateLimiter;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
+import se.magnus.springcloud.gateway.admission.ConcurrencyLimiter;
+import se.magnus.springcloud.gateway.admission.TokenBuckets;
+import se.magnus.springcloud.gateway.jwt.VerifiedToken;
+
+import java.net.InetSocketAddress;
+import java.util.concurrent.TimeUnit;
+
+import static org.springframework.cloud.gateway.support.ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR;
+import static se.magnus.springcloud.gateway.JwtAuthenticationFilter.VERIFIED_TOKEN_ATTR;
+
+//  answers 429 instead of passing a request on when its client used up its rate, see TokenBuckets,
+//  or when the backends have as many requests in flight as they can take, see ConcurrencyLimiter.
+//  clients are told apart by the subject of their token, else by their api key, else by their address,
+//  i.e. the filter goes after JwtAuthenticationFilter.
+//  the buckets are per gateway instance. a RateLimiter bean, e.g. the RedisRateLimiter of spring cloud gateway once
+//  spring-boot-starter-data-redis-reactive is added, is asked in addition for the rate of all instances.
+@Component
+public class AdmissionControlFilter extends AbstractGatewayFilterFactory<AdmissionControlFilter.Config> {
+    private static final Logger LOG = LoggerFactory.getLogger(AdmissionControlFilter.class);
+    public static final String API_KEY_HEADER = "X-Api-Key";
+
+    private final TokenBuckets buckets;
+    private final ConcurrencyLimiter concurrency;
+    private final RateLimiter<?> sharedLimiter;
+
+    public AdmissionControlFilter(TokenBuckets buckets, ConcurrencyLimiter concurrency, ObjectProvider<RateLimiter<?>> sharedLimiter) {
+        super(Config.class);
+        this.buckets = buckets;
+        this.concurrency = concurrency;
+        this.sharedLimiter = sharedLimiter.getIfUnique();
+    }
+
+    @Override
+    public GatewayFilter apply(Config config) {
+        return ((exchange, chain) -> {
+            String client = clientOf(exchange);
+            long waitNanos = buckets.tryAcquire(client);
+            if (waitNanos > 0) return tooManyRequests(exchange, waitNanos);
+            if (sharedLimiter == null) return limited(exchange, chain);
+
+            Route route = exchange.getAttribute(GATEWAY_ROUTE_ATTR);
+            return sharedLimiter.isAllowed(route == null ? "" : route.getId(), client)
+                    .map(RateLimiter.Response::isAllowed)
+                    //  a shared store that is down doesn't stop the traffic, the local buckets still apply
+                    .onErrorResume(ex -> {
+                        LOG.warn("Shared rate limiter failed, admitting the request: {}", ex.toString());
+                        return Mono.just(true);
+                    })
+                    .flatMap(allowed -> allowed ? limited(exchange, chain) : tooManyRequests(exchange, TimeUnit.SECONDS.toNanos(1)));
+        });
+    }
+
+    private Mono<Void> limited(ServerWebExchange exchange, GatewayFilterChain chain) {
+        if (!concurrency.tryAcquire()) return tooManyRequests(exchange, TimeUnit.SECONDS.toNanos(1));
+        long start = System.nanoTime();
+        return chain.filter(exchange).doFinally(signal -> {
+            HttpStatus status = exchange.getResponse().getStatusCode();
+            boolean failed = signal == SignalType.ON_ERROR || (status != null && status.is5xxServerError());
+            concurrency.release(System.nanoTime() - start, failed);
+        });
+    }
+
+    private static String clientOf(ServerWebExchange exchange) {
+        VerifiedToken token = exchange.getAttribute(VERIFIED_TOKEN_ATTR);
+        if (token != null && token.getSubject() != null) return "sub:" + token.getSubject();
+        String apiKey = exchange.getRequest().getHeaders().getFirst(API_KEY_HEADER);
+        if (apiKey != null) return "key:" + apiKey;
+        InetSocketAddress address = exchange.getRequest().getRemoteAddress();
+        return "ip:" + (address == null ? "" : address.getAddress().getHostAddress());
+    }
+
+    //  handle 429 (too many requests)
+    private Mono<Void> tooManyRequests(ServerWebExchange exchange, long waitNanos) {
+        ServerHttpResponse response = exchange.getResponse();
+        response.setStatusCode(HttpStatus.TOO_MANY_REQUESTS);
+        response.getHeaders().set("Retry-After", String.valueOf(Math.max(1, TimeUnit.NANOSECONDS.toSeconds(waitNanos + TimeUnit.SECONDS.toNanos(1) - 1))));
+        response.getHeaders().set("Content-Length", "0");
+        return response.setComplete();
+    }
+
+    public static class Config {
+
+    }
+}
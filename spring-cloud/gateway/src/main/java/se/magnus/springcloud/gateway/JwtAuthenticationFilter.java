@@ -4,47 +4,66 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.cloud.gateway.filter.GatewayFilter;
 import org.springframework.cloud.gateway.filter.factory.AbstractGatewayFilterFactory;
-import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.server.reactive.ServerHttpRequest;
 import org.springframework.http.server.reactive.ServerHttpResponse;
 import org.springframework.stereotype.Component;
 import org.springframework.web.server.ServerWebExchange;
 import reactor.core.publisher.Mono;
+import se.magnus.springcloud.gateway.jwt.InternalIdentityIssuer;
 import se.magnus.springcloud.gateway.jwt.JwtTokenResolver;
+import se.magnus.springcloud.gateway.jwt.VerifiedToken;
 
-import java.nio.charset.StandardCharsets;
-import java.util.Objects;
+import java.util.Optional;
+
+import static se.magnus.util.http.InternalIdentityCodec.IDENTITY_HEADER;
 
 @Component
 public class JwtAuthenticationFilter extends AbstractGatewayFilterFactory<JwtAuthenticationFilter.Config> {
     private static final Logger LOG = LoggerFactory.getLogger(JwtAuthenticationFilter.class);
+    //  the VerifiedToken of the request, for the filters that follow
+    public static final String VERIFIED_TOKEN_ATTR = JwtAuthenticationFilter.class.getName() + ".verifiedToken";
     private final JwtTokenResolver resolver;
+    private final InternalIdentityIssuer identities;
 
-    public JwtAuthenticationFilter(JwtTokenResolver resolver) {
+    public JwtAuthenticationFilter(JwtTokenResolver resolver, InternalIdentityIssuer identities) {
         super(Config.class);
         this.resolver = resolver;
+        this.identities = identities;
     }
 
     @Override
     public GatewayFilter apply(Config config) {
         return ((exchange, chain) -> {
-            try {
-                Object token = Objects.requireNonNull(exchange.getRequest().getHeaders().get("Authorization")).get(0);
-                if (!resolver.resolve(token.toString())) throw new NullPointerException();
-                return chain.filter(exchange).then(Mono.fromRunnable(() -> LOG.info("jwt filter succeeded.")));
-            } catch (NullPointerException | IndexOutOfBoundsException e) {
-                exchange.getResponse().setStatusCode(HttpStatus.UNAUTHORIZED);
-                exchange.getResponse().getHeaders().set("Content-Length", "0");
-                exchange.getResponse().getHeaders().add("Connection", "close");
-                return exchange.getResponse().setComplete();
-            }
+            //  signature and expiry are checked, repeated tokens are served from the cache of the resolver
+            String authorization = exchange.getRequest().getHeaders().getFirst(HttpHeaders.AUTHORIZATION);
+            return resolver.resolve(authorization)
+                    .map(token -> Optional.of(withIdentity(exchange, token)))
+                    .defaultIfEmpty(Optional.empty())
+                    .flatMap(verified -> verified.isPresent()
+                            ? chain.filter(verified.get()).then(Mono.fromRunnable(() -> LOG.info("jwt filter succeeded.")))
+                            : unauthorized(exchange));
         });
     }
 
+    //  the client can't pass an identity header of its own, only the one of its verified token is forwarded
+    private ServerWebExchange withIdentity(ServerWebExchange exchange, VerifiedToken token) {
+        exchange.getAttributes().put(VERIFIED_TOKEN_ATTR, token);
+        String identity = identities.issue(token);
+        ServerHttpRequest request = exchange.getRequest().mutate().headers(headers -> {
+            headers.remove(IDENTITY_HEADER);
+            if (identity != null) headers.set(IDENTITY_HEADER, identity);
+        }).build();
+        return exchange.mutate().request(request).build();
+    }
+
     //  handle 401 (unauthorized)
     private Mono<Void> unauthorized(ServerWebExchange exchange) {
         ServerHttpResponse response = exchange.getResponse();   //  get post filter from web exchange
         response.setStatusCode(HttpStatus.UNAUTHORIZED);
+        response.getHeaders().set("Content-Length", "0");
+        response.getHeaders().add("Connection", "close");
         return response.setComplete();
     }
 
@@ -0,0 +1,335 @@
+package se.magnus.springcloud.gateway;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.async.ByteArrayFeeder;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.reactivestreams.Publisher;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cloud.gateway.filter.GatewayFilter;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.filter.factory.AbstractGatewayFilterFactory;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.http.server.reactive.ServerHttpRequestDecorator;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.http.server.reactive.ServerHttpResponseDecorator;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.io.IOException;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+//  caches the answers to GET /product-composite/{productId}, per query, Accept and Accept-Encoding.
+//  an entry is served for ttlSec, after that it is revalidated with If-None-Match if the composite sent an ETag,
+//  a 304 keeps it for another ttlSec. entries are dropped after maxAgeSec, or when a DELETE, POST or PUT of the product passes.
+//  a GET that was under way while a product was purged doesn't store its answer, it may be the one from before the change.
+//  the bodies are copied to direct buffers, i.e. maxBytes of them don't weigh on the heap.
+//  the test parameters delay and faultPercent bypass the cache, like they bypass the cache of the composite.
+//  the cache is per gateway instance, a product changed through another one is stale for at most ttlSec.
+@Component
+public class ResponseCacheFilter extends AbstractGatewayFilterFactory<ResponseCacheFilter.Config> {
+    private static final Logger LOG = LoggerFactory.getLogger(ResponseCacheFilter.class);
+    public static final String CACHE_HEADER = "X-Cache";
+    private static final Pattern PRODUCT_PATH = Pattern.compile("/product-composite/(\\d{1,9})");
+    private static final String AGGREGATE_PATH = "/product-composite";
+    private static final JsonFactory JSON = new JsonFactory();
+    //  purges per stripe of productIds, a GET stores its answer only if the stripe of its product wasn't purged meanwhile
+    private static final int GENERATION_STRIPES = 1024;
+    private static final DataBufferFactory OFF_HEAP = new DefaultDataBufferFactory(true);
+    private static final String CACHE_NAME = "gatewayResponses";
+
+    private final Cache<Key, CachedResponse> cache;
+    private final AtomicLongArray generations = new AtomicLongArray(GENERATION_STRIPES);
+    private final Clock clock;
+    private final Duration ttl;
+    private final long maxEntryBytes;
+
+    private final Counter notModified;
+    private final Counter modified;
+
+    private static final class Key {
+        private final int productId;
+        private final String variant;
+
+        private Key(int productId, String variant) {
+            this.productId = productId;
+            this.variant = variant;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            Key key = (Key) o;
+            return productId == key.productId && variant.equals(key.variant);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(productId, variant);
+        }
+    }
+
+    private static final class CachedResponse {
+        private final DataBuffer body;
+        private final MediaType contentType;
+        private final String etag;
+        private final Instant storedAt;
+
+        private CachedResponse(DataBuffer body, MediaType contentType, String etag, Instant storedAt) {
+            this.body = body;
+            this.contentType = contentType;
+            this.etag = etag;
+            this.storedAt = storedAt;
+        }
+    }
+
+    @Autowired
+    public ResponseCacheFilter(
+            MeterRegistry registry,
+            @Value("${app.response-cache.maxBytes:67108864}") long maxBytes,
+            @Value("${app.response-cache.maxEntryBytes:1048576}") long maxEntryBytes,
+            @Value("${app.response-cache.ttlSec:10}") int ttlSec,
+            @Value("${app.response-cache.maxAgeSec:300}") int maxAgeSec
+    ) {
+        this(Clock.systemUTC(), registry, maxBytes, maxEntryBytes, Duration.ofSeconds(ttlSec), Duration.ofSeconds(maxAgeSec));
+    }
+
+    ResponseCacheFilter(Clock clock, MeterRegistry registry, long maxBytes, long maxEntryBytes, Duration ttl, Duration maxAge) {
+        super(Config.class);
+        this.clock = clock;
+        this.ttl = ttl;
+        this.maxEntryBytes = maxEntryBytes;
+        this.cache = Caffeine.newBuilder()
+                .maximumWeight(maxBytes)
+                .weigher((Key key, CachedResponse response) -> response.body.readableByteCount())
+                .expireAfterWrite(maxAge)
+                .recordStats()
+                .build();
+        //  exposes cache.gets (hit/miss), cache.puts, cache.evictions and cache.size on /actuator/metrics
+        CaffeineCacheMetrics.monitor(registry, cache, CACHE_NAME);
+        this.notModified = registry.counter("response-cache.revalidations", "outcome", "not-modified");
+        this.modified = registry.counter("response-cache.revalidations", "outcome", "modified");
+    }
+
+    @Override
+    public GatewayFilter apply(Config config) {
+        return ((exchange, chain) -> {
+            ServerHttpRequest request = exchange.getRequest();
+            String path = request.getPath().value();
+            if (path.equals(AGGREGATE_PATH) && (request.getMethod() == HttpMethod.POST || request.getMethod() == HttpMethod.PUT)) {
+                return purgeWritten(exchange, chain);
+            }
+            Matcher matcher = PRODUCT_PATH.matcher(path);
+            if (!matcher.matches()) return chain.filter(exchange);
+            int productId = Integer.parseInt(matcher.group(1));
+
+            if (request.getMethod() == HttpMethod.DELETE) {
+                return chain.filter(exchange).doOnSuccess(v -> purge(productId));
+            }
+            if (request.getMethod() != HttpMethod.GET || !isCacheable(request)) return chain.filter(exchange);
+
+            Key key = new Key(productId, variantOf(request));
+            long generation = generations.get(stripe(productId));
+            //  read before the request is mutated, the mutated request shares the headers with it
+            String ifNoneMatch = request.getHeaders().getFirst(HttpHeaders.IF_NONE_MATCH);
+            CachedResponse cached = cache.getIfPresent(key);
+            if (cached != null && clock.instant().isBefore(cached.storedAt.plus(ttl))) return serve(exchange.getResponse(), cached, ifNoneMatch);
+
+            ServerWebExchange forwarded = exchange;
+            if (cached != null && cached.etag != null) {
+                forwarded = exchange.mutate()
+                        .request(request.mutate().headers(headers -> headers.set(HttpHeaders.IF_NONE_MATCH, cached.etag)).build())
+                        .build();
+            }
+            return chain.filter(forwarded.mutate().response(new CachingResponse(exchange.getResponse(), key, generation, cached, ifNoneMatch)).build());
+        });
+    }
+
+    //  the productId is read from the body on its way to the composite, the body isn't buffered
+    private Mono<Void> purgeWritten(ServerWebExchange exchange, GatewayFilterChain chain) {
+        ProductIdReader reader = new ProductIdReader();
+        ServerHttpRequest request = new ServerHttpRequestDecorator(exchange.getRequest()) {
+            @Override
+            public Flux<DataBuffer> getBody() {
+                return super.getBody().doOnNext(reader::feed);
+            }
+        };
+        return chain.filter(exchange.mutate().request(request).build()).doOnSuccess(v -> {
+            HttpStatus status = exchange.getResponse().getStatusCode();
+            if (reader.productId != null && status != null && status.is2xxSuccessful()) purge(reader.productId);
+        });
+    }
+
+    public void purge(int productId) {
+        LOG.debug("Purging the cached responses of productId: {}", productId);
+        generations.incrementAndGet(stripe(productId));
+        cache.asMap().keySet().removeIf(key -> key.productId == productId);
+    }
+
+    private static int stripe(int productId) {
+        return Math.floorMod(productId, GENERATION_STRIPES);
+    }
+
+    //  a purge between the check and the put takes the entry out again
+    private void put(Key key, CachedResponse response, long generation) {
+        if (generations.get(stripe(key.productId)) != generation) return;
+        cache.put(key, response);
+        if (generations.get(stripe(key.productId)) != generation) cache.asMap().remove(key, response);
+    }
+
+    //  not the streamed variant
+    private static boolean isCacheable(ServerHttpRequest request) {
+        String accept = request.getHeaders().getFirst(HttpHeaders.ACCEPT);
+        if (accept != null && accept.contains(MediaType.TEXT_EVENT_STREAM_VALUE)) return false;
+        for (String param : request.getQueryParams().keySet()) {
+            if (!param.equals("limit")) return false;
+        }
+        return true;
+    }
+
+    private static String variantOf(ServerHttpRequest request) {
+        HttpHeaders headers = request.getHeaders();
+        return request.getURI().getRawQuery() + "|" + headers.getFirst(HttpHeaders.ACCEPT) + "|" + headers.getFirst(HttpHeaders.ACCEPT_ENCODING);
+    }
+
+    //  a 304 if the client holds the cached version
+    private Mono<Void> serve(ServerHttpResponse response, CachedResponse cached, String ifNoneMatch) {
+        HttpHeaders headers = response.getHeaders();
+        headers.set(CACHE_HEADER, "HIT");
+        if (cached.etag != null) {
+            headers.set(HttpHeaders.ETAG, cached.etag);
+            if (ifNoneMatch != null && (ifNoneMatch.equals("*") || ifNoneMatch.contains(cached.etag))) {
+                response.setStatusCode(HttpStatus.NOT_MODIFIED);
+                headers.remove(HttpHeaders.CONTENT_LENGTH);
+                return response.setComplete();
+            }
+        }
+        response.setStatusCode(HttpStatus.OK);
+        if (cached.contentType != null) headers.setContentType(cached.contentType);
+        headers.setContentLength(cached.body.readableByteCount());
+        //  a view of the cached buffer, the response must not release it
+        return response.writeWith(Mono.just(response.bufferFactory().wrap(cached.body.asByteBuffer())));
+    }
+
+    private boolean isStorable(HttpHeaders headers) {
+        long length = headers.getContentLength();
+        String cacheControl = headers.getCacheControl();
+        return length > 0 && length <= maxEntryBytes
+                && !headers.containsKey(HttpHeaders.SET_COOKIE)
+                && (cacheControl == null || !(cacheControl.contains("no-store") || cacheControl.contains("private")));
+    }
+
+    private void store(Key key, long generation, DataBuffer body, HttpHeaders headers) {
+        if (generations.get(stripe(key.productId)) != generation) return;
+        DataBuffer copy = OFF_HEAP.allocateBuffer(body.readableByteCount());
+        copy.write(body.asByteBuffer());
+        put(key, new CachedResponse(copy, headers.getContentType(), headers.getETag(), clock.instant()), generation);
+    }
+
+    //  the top level productId of a streamed aggregate, the nested ones of its recommendations and reviews are skipped
+    private static class ProductIdReader {
+        private JsonParser parser;
+        private int depth;
+        private boolean atProductId;
+        private boolean done;
+        private volatile Integer productId;
+
+        private void feed(DataBuffer buffer) {
+            if (done) return;
+            byte[] bytes = new byte[buffer.readableByteCount()];
+            buffer.asByteBuffer().get(bytes);
+            try {
+                if (parser == null) parser = JSON.createNonBlockingByteArrayParser();
+                ((ByteArrayFeeder) parser.getNonBlockingInputFeeder()).feedInput(bytes, 0, bytes.length);
+                JsonToken token;
+                while (!done && (token = parser.nextToken()) != null && token != JsonToken.NOT_AVAILABLE) {
+                    if (atProductId) {
+                        if (token == JsonToken.VALUE_NUMBER_INT) productId = parser.getIntValue();
+                        done = true;
+                    } else if (token.isStructStart()) {
+                        depth++;
+                    } else if (token.isStructEnd()) {
+                        depth--;
+                    } else if (token == JsonToken.FIELD_NAME && depth == 1) {
+                        atProductId = parser.getCurrentName().equals("productId");
+                    }
+                }
+            } catch (IOException ex) {
+                //  the composite will reject it
+                done = true;
+            }
+        }
+    }
+
+    //  stores the answer of the composite, or serves the cached one if the composite says it is still valid
+    private class CachingResponse extends ServerHttpResponseDecorator {
+        private final Key key;
+        private final long generation;
+        private final CachedResponse stale;
+        private final String ifNoneMatch;
+
+        private CachingResponse(ServerHttpResponse response, Key key, long generation, CachedResponse stale, String ifNoneMatch) {
+            super(response);
+            this.key = key;
+            this.generation = generation;
+            this.stale = stale;
+            this.ifNoneMatch = ifNoneMatch;
+        }
+
+        @Override
+        public Mono<Void> writeWith(Publisher<? extends DataBuffer> body) {
+            HttpStatus status = getStatusCode();
+            if (status == HttpStatus.NOT_MODIFIED && stale != null && stale.etag != null) {
+                return Flux.from(body).doOnNext(DataBufferUtils::release).then(Mono.defer(() -> {
+                    notModified.increment();
+                    CachedResponse revalidated = new CachedResponse(stale.body, stale.contentType, stale.etag, clock.instant());
+                    put(key, revalidated, generation);
+                    return serve(getDelegate(), revalidated, ifNoneMatch);
+                }));
+            }
+            if (status == HttpStatus.OK && isStorable(getHeaders())) {
+                if (stale != null) modified.increment();
+                return DataBufferUtils.join(body).flatMap(joined -> {
+                    store(key, generation, joined, getHeaders());
+                    return getDelegate().writeWith(Mono.just(joined));
+                });
+            }
+            return getDelegate().writeWith(body);
+        }
+
+        @Override
+        public Mono<Void> setComplete() {
+            if (getStatusCode() == HttpStatus.NOT_MODIFIED && stale != null && stale.etag != null) return writeWith(Flux.empty());
+            return getDelegate().setComplete();
+        }
+    }
+
+    public static class Config {
+
+    }
+}
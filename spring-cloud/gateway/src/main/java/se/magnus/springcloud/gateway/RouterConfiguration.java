@@ -8,21 +8,29 @@ import org.springframework.cloud.gateway.route.builder.RouteLocatorBuilder;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
+import static org.springframework.cloud.gateway.filter.NettyWriteResponseFilter.WRITE_RESPONSE_FILTER_ORDER;
+
 @Configuration
 public class RouterConfiguration {
     private final String eurekaServer;
     private final String configServer;
     private final GatewayFilter filter;
+    private final GatewayFilter admission;
+    private final GatewayFilter cache;
 
     @Autowired
     public RouterConfiguration(@Value("${app.eureka-server:eureka}") String eurekaServer,
                                @Value("${app.config-server:config-server}") String configServer,
-                               JwtAuthenticationFilter filter) {
+                               JwtAuthenticationFilter filter,
+                               AdmissionControlFilter admission,
+                               ResponseCacheFilter cache) {
         this.eurekaServer = eurekaServer;
         this.configServer = configServer;
         //  if you want to apply filter to every route path,
         //  custom filter class needs to implement GlobalFilter, OrderedFilter
         this.filter = filter.apply(new JwtAuthenticationFilter.Config());
+        this.admission = admission.apply(new AdmissionControlFilter.Config());
+        this.cache = cache.apply(new ResponseCacheFilter.Config());
     }
 
     @Bean
@@ -30,7 +38,14 @@ public class RouterConfiguration {
         return builder.routes()
                 .route("product-composite", r -> r
                         .path("/product-composite/**")
-                        .filters(f -> f.filter(filter, Integer.MAX_VALUE).addResponseHeader("Filtered", "YES"))
+                        //  the cache wraps the response before NettyWriteResponseFilter writes the body of the backend to it,
+                        //  cache hits cost the backends nothing and skip the admission control.
+                        //  all of them before the routing filters, whose order starts at RouteToRequestUrlFilter.ROUTE_TO_URL_FILTER_ORDER
+                        .filters(f -> f
+                                .filter(filter, WRITE_RESPONSE_FILTER_ORDER - 2)
+                                .filter(cache, WRITE_RESPONSE_FILTER_ORDER - 1)
+                                .filter(admission, 0)
+                                .addResponseHeader("Filtered", "YES"))
                         .uri("lb://product-composite"))
                 .route("eureka-api", r -> r
                         .path("/eureka/api/(?<segment>.*")
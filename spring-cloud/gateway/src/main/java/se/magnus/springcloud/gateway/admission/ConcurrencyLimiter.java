@@ -0,0 +1,95 @@
+package se.magnus.springcloud.gateway.admission;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+//  caps the requests in flight to the backends. the limit follows the latency (gradient): while the short term latency
+//  stays within tolerance times the long term one the limit grows by queueSize, once it rises above that the limit
+//  shrinks with their ratio, but by no more than half. a failed request (5xx or error) halves it without the queue.
+//  every answer moves the limit by SMOOTHING of that, i.e. requests are rejected while the backends start to queue them,
+//  not after their latency collapsed.
+@Component
+public class ConcurrencyLimiter {
+    private static final double SHORT_ALPHA = 2.0 / (10 + 1);
+    private static final double LONG_ALPHA = 2.0 / (600 + 1);
+    private static final double SMOOTHING = 0.2;
+
+    private final AtomicInteger inflight = new AtomicInteger();
+    private final int minLimit;
+    private final int maxLimit;
+    private final double tolerance;
+    private final int queueSize;
+    private volatile double limit;
+
+    //  guarded by this
+    private double shortRtt;
+    private double longRtt;
+
+    private final Counter accepted;
+    private final Counter shed;
+
+    @Autowired
+    public ConcurrencyLimiter(
+            MeterRegistry registry,
+            @Value("${app.concurrency-limit.initialLimit:100}") int initialLimit,
+            @Value("${app.concurrency-limit.minLimit:10}") int minLimit,
+            @Value("${app.concurrency-limit.maxLimit:1000}") int maxLimit,
+            @Value("${app.concurrency-limit.tolerance:1.5}") double tolerance,
+            @Value("${app.concurrency-limit.queueSize:4}") int queueSize
+    ) {
+        this.limit = initialLimit;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.tolerance = tolerance;
+        this.queueSize = queueSize;
+        this.accepted = registry.counter("concurrency-limit.requests", "outcome", "accepted");
+        this.shed = registry.counter("concurrency-limit.requests", "outcome", "shed");
+        registry.gauge("concurrency-limit.limit", this, ConcurrencyLimiter::getLimit);
+        registry.gauge("concurrency-limit.inflight", inflight);
+    }
+
+    public boolean tryAcquire() {
+        int current;
+        do {
+            current = inflight.get();
+            if (current >= (int) limit) {
+                shed.increment();
+                return false;
+            }
+        } while (!inflight.compareAndSet(current, current + 1));
+        accepted.increment();
+        return true;
+    }
+
+    //  once per acquired request, with its latency
+    public void release(long rttNanos, boolean failed) {
+        update(rttNanos, inflight.getAndDecrement(), failed);
+    }
+
+    public double getLimit() {
+        return limit;
+    }
+
+    private synchronized void update(long rtt, int inflight, boolean failed) {
+        if (longRtt == 0) {
+            shortRtt = rtt;
+            longRtt = rtt;
+        }
+        shortRtt += (rtt - shortRtt) * SHORT_ALPHA;
+        longRtt += (rtt - longRtt) * LONG_ALPHA;
+        //  a long term latency far above the current one is the load that passed, let it catch up
+        if (longRtt > 2 * shortRtt) longRtt *= 0.95;
+
+        //  with that few requests the limit is not what holds them back, it says nothing about the latency at the limit
+        if (!failed && inflight < limit / 2) return;
+
+        double next = failed ? limit * 0.5 : limit * Math.max(0.5, Math.min(1.0, tolerance * longRtt / shortRtt)) + queueSize;
+        next = limit * (1 - SMOOTHING) + next * SMOOTHING;
+        limit = Math.max(minLimit, Math.min(maxLimit, next));
+    }
+}
@@ -0,0 +1,78 @@
+package se.magnus.springcloud.gateway.admission;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+//  a token bucket per client, ratePerSec tokens refill the bucket of at most burst tokens.
+//  a bucket is a single long, the time at which it is full again (GCRA), i.e. taking a token is one compare-and-set and nothing is locked.
+//  a bucket that wasn't used for burst / ratePerSec seconds is full again and dropped, a new one is the same.
+//  at most maxKeys clients are kept, caffeine evicts the least used ones, they start over with a full bucket.
+@Component
+public class TokenBuckets {
+
+    private final Cache<String, AtomicLong> buckets;
+    private final LongSupplier nanos;
+    private final long interval;
+    private final long tolerance;
+
+    private final Counter allowed;
+    private final Counter rejected;
+
+    @Autowired
+    public TokenBuckets(
+            MeterRegistry registry,
+            @Value("${app.rate-limit.ratePerSec:50}") int ratePerSec,
+            @Value("${app.rate-limit.burst:100}") int burst,
+            @Value("${app.rate-limit.maxKeys:100000}") int maxKeys
+    ) {
+        this(System::nanoTime, registry, ratePerSec, burst, maxKeys);
+    }
+
+    TokenBuckets(LongSupplier nanos, MeterRegistry registry, int ratePerSec, int burst, int maxKeys) {
+        this.nanos = nanos;
+        this.interval = TimeUnit.SECONDS.toNanos(1) / ratePerSec;
+        this.tolerance = interval * burst;
+        this.buckets = Caffeine.newBuilder()
+                .maximumSize(maxKeys)
+                .expireAfterAccess(tolerance, TimeUnit.NANOSECONDS)
+                .ticker(nanos::getAsLong)
+                .build();
+        this.allowed = registry.counter("rate-limit.requests", "outcome", "allowed");
+        this.rejected = registry.counter("rate-limit.requests", "outcome", "rejected");
+        registry.gauge("rate-limit.keys", Tags.empty(), buckets, Cache::estimatedSize);
+    }
+
+    //  0 if the client got a token, otherwise the nanos until it gets the next one
+    public long tryAcquire(String key) {
+        long now = nanos.getAsLong();
+        AtomicLong bucket = buckets.get(key, k -> new AtomicLong(now));
+        while (true) {
+            long full = bucket.get();
+            long next = Math.max(full, now) + interval;
+            long wait = next - now - tolerance;
+            if (wait > 0) {
+                rejected.increment();
+                return wait;
+            }
+            if (bucket.compareAndSet(full, next)) {
+                allowed.increment();
+                return 0;
+            }
+        }
+    }
+
+    //  runs the evictions caffeine left to its executor
+    void cleanUp() {
+        buckets.cleanUp();
+    }
+}
@@ -0,0 +1,56 @@
+package se.magnus.springcloud.gateway.jwt;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import se.magnus.util.http.InternalIdentityCodec;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+
+//  turns a verified token into the signed identity header of the services behind the gateway, see InternalIdentityCodec.
+//  off unless app.internal-identity.secret is set. the header expires with the token, but after ttlSec at the latest,
+//  it is meant for one hop and not for replay.
+@Component
+public class InternalIdentityIssuer {
+
+    private final InternalIdentityCodec codec;
+    private final Clock clock;
+    private final Duration ttl;
+
+    @Autowired
+    public InternalIdentityIssuer(
+            @Value("${app.internal-identity.secret:}") String secret,
+            @Value("${app.internal-identity.ttlSec:30}") int ttlSec
+    ) {
+        this.clock = Clock.systemUTC();
+        this.codec = secret.isEmpty() ? null : new InternalIdentityCodec(secret, clock);
+        this.ttl = Duration.ofSeconds(ttlSec);
+    }
+
+    //  null if the mode is off
+    public String issue(VerifiedToken token) {
+        if (codec == null) return null;
+        Instant latest = clock.instant().plus(ttl);
+        Instant expiresAt = token.getExpiresAt().isBefore(latest) ? token.getExpiresAt() : latest;
+        return codec.encode(token.getSubject() == null ? "" : token.getSubject(), scopes(token), expiresAt);
+    }
+
+    //  "scope" as a space separated string (RFC 8693) or "scp" as a list
+    private static Collection<String> scopes(VerifiedToken token) {
+        Object scope = token.getClaims().get("scope");
+        if (scope instanceof String) return Arrays.asList(((String) scope).split(" "));
+        Object scp = token.getClaims().get("scp");
+        if (scp instanceof Collection) {
+            Collection<String> scopes = new ArrayList<>();
+            ((Collection<?>) scp).forEach(s -> scopes.add(s.toString()));
+            return scopes;
+        }
+        return Collections.emptyList();
+    }
+}
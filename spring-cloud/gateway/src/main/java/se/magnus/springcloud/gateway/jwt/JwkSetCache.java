@@ -0,0 +1,122 @@
+package se.magnus.springcloud.gateway.jwt;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.security.GeneralSecurityException;
+import java.security.KeyFactory;
+import java.security.PublicKey;
+import java.security.spec.RSAPublicKeySpec;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+//  the signing keys of the auth server, kept in memory and reloaded in the background, so no request waits for the jwk-set-uri.
+//  tokens with an unknown kid trigger an extra reload, at most once per minRefreshIntervalSec.
+@Component
+public class JwkSetCache {
+    private static final Logger LOG = LoggerFactory.getLogger(JwkSetCache.class);
+
+    private final String jwkSetUri;
+    private final ObjectMapper mapper;
+    private final Duration refreshInterval;
+    private final long minRefreshIntervalMs;
+    private final AtomicLong lastRefresh = new AtomicLong();
+    private volatile Map<String, PublicKey> keys = Collections.emptyMap();
+    private WebClient client;
+    private Disposable refresher;
+
+    @Autowired
+    public JwkSetCache(
+            ObjectMapper mapper,
+            @Value("${spring.security.oauth2.resourceserver.jwt.jwk-set-uri:}") String jwkSetUri,
+            @Value("${app.jwt.jwks.refreshIntervalSec:300}") int refreshIntervalSec,
+            @Value("${app.jwt.jwks.minRefreshIntervalSec:10}") int minRefreshIntervalSec
+    ) {
+        this.mapper = mapper;
+        this.jwkSetUri = jwkSetUri;
+        this.refreshInterval = Duration.ofSeconds(refreshIntervalSec);
+        this.minRefreshIntervalMs = Duration.ofSeconds(minRefreshIntervalSec).toMillis();
+    }
+
+    @PostConstruct
+    public void start() {
+        if (jwkSetUri.isEmpty()) {
+            LOG.warn("No jwk-set-uri configured, every token will be rejected");
+            return;
+        }
+        //  the auth server is no eureka client, i.e. not the @LoadBalanced builder
+        client = WebClient.create();
+        refresher = Flux.interval(Duration.ZERO, refreshInterval)
+                .concatMap(tick -> load())
+                .subscribe();
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (refresher != null) refresher.dispose();
+    }
+
+    //  a token without kid is accepted if the auth server has a single key
+    public PublicKey get(String keyId) {
+        Map<String, PublicKey> current = keys;
+        if (keyId == null) return current.size() == 1 ? current.values().iterator().next() : null;
+        return current.get(keyId);
+    }
+
+    public Mono<Void> refresh() {
+        long now = System.currentTimeMillis();
+        long last = lastRefresh.get();
+        if (client == null || now - last < minRefreshIntervalMs || !lastRefresh.compareAndSet(last, now)) return Mono.empty();
+        return load();
+    }
+
+    void setKeys(Map<String, PublicKey> keys) {
+        this.keys = keys;
+    }
+
+    private Mono<Void> load() {
+        lastRefresh.set(System.currentTimeMillis());
+        return client.get().uri(jwkSetUri).retrieve().bodyToMono(String.class)
+                .doOnNext(body -> {
+                    keys = parse(body);
+                    LOG.debug("Loaded {} signing keys from {}", keys.size(), jwkSetUri);
+                })
+                .doOnError(ex -> LOG.warn("Loading the signing keys from {} failed, keeping the {} known keys: {}", jwkSetUri, keys.size(), ex.toString()))
+                .onErrorResume(ex -> Mono.empty())
+                .then();
+    }
+
+    //  RSA keys only, see JwtVerifier
+    Map<String, PublicKey> parse(String jwkSet) {
+        try {
+            Map<String, PublicKey> parsed = new HashMap<>();
+            KeyFactory factory = KeyFactory.getInstance("RSA");
+            for (JsonNode jwk : mapper.readTree(jwkSet).path("keys")) {
+                if (!"RSA".equals(jwk.path("kty").asText())) continue;
+                BigInteger modulus = new BigInteger(1, Base64.getUrlDecoder().decode(jwk.path("n").asText()));
+                BigInteger exponent = new BigInteger(1, Base64.getUrlDecoder().decode(jwk.path("e").asText()));
+                parsed.put(jwk.path("kid").asText(""), factory.generatePublic(new RSAPublicKeySpec(modulus, exponent)));
+            }
+            return Collections.unmodifiableMap(parsed);
+        } catch (IOException | GeneralSecurityException | IllegalArgumentException ex) {
+            throw new IllegalStateException("Invalid JWK set: " + ex.getMessage(), ex);
+        }
+    }
+}
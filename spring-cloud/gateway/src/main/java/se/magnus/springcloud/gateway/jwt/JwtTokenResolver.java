@@ -1,11 +1,146 @@
 package se.magnus.springcloud.gateway.jwt;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
 
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Base64;
+
+//  verifies the bearer token of a request. verified tokens are kept by the hash of the token until they expire,
+//  but at most maxTtlSec, so a client repeating its token skips the signature check.
+//  the cache never holds more than maxSize tokens, caffeine evicts the least used ones and drops expired ones on its own.
 @Component
 public class JwtTokenResolver {
-    //  TODO    get authentications from external source
-    public boolean resolve(String token) {
-        return token != null && token.startsWith("Bearer ");
+    private static final Logger LOG = LoggerFactory.getLogger(JwtTokenResolver.class);
+    private static final String BEARER = "Bearer ";
+
+    private final Cache<String, CachedToken> verified;
+    private final JwkSetCache keys;
+    private final JwtVerifier verifier;
+    private final Clock clock;
+    private final Duration maxTtl;
+
+    private final Counter cached;
+    private final Counter verifiedNow;
+    private final Counter rejected;
+
+    private static class CachedToken {
+        private final VerifiedToken token;
+        private final Instant validUntil;
+
+        private CachedToken(VerifiedToken token, Instant validUntil) {
+            this.token = token;
+            this.validUntil = validUntil;
+        }
+    }
+
+    @Autowired
+    public JwtTokenResolver(
+            JwkSetCache keys,
+            ObjectMapper mapper,
+            MeterRegistry registry,
+            @Value("${app.jwt.clockSkewSec:30}") int clockSkewSec,
+            @Value("${app.jwt.issuer:}") String issuer,
+            @Value("${app.jwt.audience:}") String audience,
+            @Value("${app.jwt.cache.maxSize:10000}") int maxSize,
+            @Value("${app.jwt.cache.maxTtlSec:300}") int maxTtlSec
+    ) {
+        this(keys, new JwtVerifier(mapper, Clock.systemUTC(), Duration.ofSeconds(clockSkewSec), issuer, audience), Clock.systemUTC(), registry, maxSize, Duration.ofSeconds(maxTtlSec));
+    }
+
+    JwtTokenResolver(JwkSetCache keys, JwtVerifier verifier, Clock clock, MeterRegistry registry, int maxSize, Duration maxTtl) {
+        this.keys = keys;
+        this.verifier = verifier;
+        this.clock = clock;
+        this.maxTtl = maxTtl;
+        this.verified = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfter(new Expiry<String, CachedToken>() {
+                    @Override
+                    public long expireAfterCreate(String hash, CachedToken token, long currentTime) {
+                        return Math.max(0, Duration.between(clock.instant(), token.validUntil).toNanos());
+                    }
+
+                    @Override
+                    public long expireAfterUpdate(String hash, CachedToken token, long currentTime, long currentDuration) {
+                        return expireAfterCreate(hash, token, currentTime);
+                    }
+
+                    @Override
+                    public long expireAfterRead(String hash, CachedToken token, long currentTime, long currentDuration) {
+                        return currentDuration;
+                    }
+                })
+                .build();
+        this.cached = registry.counter("jwt.verifications", "outcome", "cached");
+        this.verifiedNow = registry.counter("jwt.verifications", "outcome", "verified");
+        this.rejected = registry.counter("jwt.verifications", "outcome", "rejected");
+        registry.gauge("jwt.cache.size", Tags.empty(), verified, Cache::estimatedSize);
+    }
+
+    //  the verified token of an Authorization header, empty if the header holds no valid token
+    public Mono<VerifiedToken> resolve(String authorization) {
+        if (authorization == null || !authorization.startsWith(BEARER)) {
+            rejected.increment();
+            return Mono.empty();
+        }
+        String token = authorization.substring(BEARER.length());
+        String hash = hash(token);
+
+        //  caffeine drops expired tokens by its own ticker, the clock decides for the ones it didn't drop yet
+        CachedToken hit = verified.getIfPresent(hash);
+        if (hit != null && clock.instant().isBefore(hit.validUntil)) {
+            cached.increment();
+            return Mono.just(hit.token);
+        }
+
+        return Mono.fromCallable(() -> verifier.verify(token, keys::get))
+                //  the auth server may have rotated its keys since the last reload
+                .onErrorResume(UnknownKeyException.class, ex -> keys.refresh().then(Mono.fromCallable(() -> verifier.verify(token, keys::get))))
+                .doOnNext(verifiedToken -> {
+                    verifiedNow.increment();
+                    put(hash, verifiedToken);
+                })
+                .onErrorResume(InvalidTokenException.class, ex -> {
+                    LOG.debug("Rejected token: {}", ex.getMessage());
+                    rejected.increment();
+                    return Mono.empty();
+                });
+    }
+
+    private void put(String hash, VerifiedToken token) {
+        Instant validUntil = clock.instant().plus(maxTtl);
+        verified.put(hash, new CachedToken(token, token.getExpiresAt().isBefore(validUntil) ? token.getExpiresAt() : validUntil));
+    }
+
+    //  runs the evictions caffeine left to its executor
+    void cleanUp() {
+        verified.cleanUp();
+    }
+
+    //  the cache doesn't keep the tokens themselves
+    private static String hash(String token) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(token.getBytes(StandardCharsets.US_ASCII));
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(digest);
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
     }
 }
@@ -0,0 +1,115 @@
+package se.magnus.springcloud.gateway.jwt;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.PublicKey;
+import java.security.Signature;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.Map;
+import java.util.function.Function;
+
+//  checks the RS256 signature, the lifetime (exp, nbf), the issuer and the audience of a compact JWT, the keys are looked up
+//  by the kid of the token header. an empty issuer or audience is not checked.
+//  the signature check is the expensive part, JwtTokenResolver caches the outcome per token.
+public class JwtVerifier {
+    private static final TypeReference<Map<String, Object>> CLAIMS = new TypeReference<Map<String, Object>>() {};
+
+    private final ObjectMapper mapper;
+    private final Clock clock;
+    private final Duration clockSkew;
+    private final String issuer;
+    private final String audience;
+
+    public JwtVerifier(ObjectMapper mapper, Clock clock, Duration clockSkew, String issuer, String audience) {
+        this.mapper = mapper;
+        this.clock = clock;
+        this.clockSkew = clockSkew;
+        this.issuer = issuer;
+        this.audience = audience;
+    }
+
+    public VerifiedToken verify(String token, Function<String, PublicKey> keys) {
+        int headerEnd = token.indexOf('.');
+        int payloadEnd = token.indexOf('.', headerEnd + 1);
+        if (headerEnd < 0 || payloadEnd < 0 || token.indexOf('.', payloadEnd + 1) >= 0) throw new InvalidTokenException("Malformed token");
+
+        JsonNode header = read(token.substring(0, headerEnd), JsonNode.class);
+        String algorithm = header.path("alg").asText();
+        if (!"RS256".equals(algorithm)) throw new InvalidTokenException("Unsupported algorithm: " + algorithm);
+        String keyId = header.path("kid").asText(null);
+        PublicKey key = keys.apply(keyId);
+        if (key == null) throw new UnknownKeyException(keyId);
+
+        if (!isSigned(token.substring(0, payloadEnd), decode(token.substring(payloadEnd + 1)), key)) {
+            throw new InvalidTokenException("Invalid signature");
+        }
+
+        Map<String, Object> claims = read(token.substring(headerEnd + 1, payloadEnd), CLAIMS);
+        Instant now = clock.instant();
+        Instant expiresAt = instant(claims.get("exp"));
+        if (expiresAt == null) throw new InvalidTokenException("Token without expiry");
+        if (now.isAfter(expiresAt.plus(clockSkew))) throw new InvalidTokenException("Token expired at " + expiresAt);
+        Instant notBefore = instant(claims.get("nbf"));
+        if (notBefore != null && now.plus(clockSkew).isBefore(notBefore)) throw new InvalidTokenException("Token not valid before " + notBefore);
+        if (!issuer.isEmpty() && !issuer.equals(claims.get("iss"))) throw new InvalidTokenException("Unexpected issuer: " + claims.get("iss"));
+        if (!audience.isEmpty() && !isAudience(claims.get("aud"))) throw new InvalidTokenException("Unexpected audience: " + claims.get("aud"));
+
+        return new VerifiedToken(claims, expiresAt);
+    }
+
+    //  a single audience may be a string instead of an array
+    private boolean isAudience(Object claim) {
+        return claim instanceof Collection ? ((Collection<?>) claim).contains(audience) : audience.equals(claim);
+    }
+
+    private static boolean isSigned(String content, byte[] signature, PublicKey key) {
+        try {
+            Signature verifier = Signature.getInstance("SHA256withRSA");
+            verifier.initVerify(key);
+            verifier.update(content.getBytes(StandardCharsets.US_ASCII));
+            return verifier.verify(signature);
+        } catch (GeneralSecurityException ex) {
+            throw new InvalidTokenException("Signature can't be verified", ex);
+        }
+    }
+
+    private <T> T read(String part, Class<T> type) {
+        try {
+            return mapper.readValue(decode(part), type);
+        } catch (IOException ex) {
+            throw new InvalidTokenException("Malformed token", ex);
+        }
+    }
+
+    private <T> T read(String part, TypeReference<T> type) {
+        try {
+            return mapper.readValue(decode(part), type);
+        } catch (IOException ex) {
+            throw new InvalidTokenException("Malformed token", ex);
+        }
+    }
+
+    private static byte[] decode(String part) {
+        try {
+            return Base64.getUrlDecoder().decode(part);
+        } catch (IllegalArgumentException ex) {
+            throw new InvalidTokenException("Malformed token", ex);
+        }
+    }
+
+    //  NumericDate, seconds since the epoch
+    private static Instant instant(Object claim) {
+        if (claim == null) return null;
+        if (!(claim instanceof Number)) throw new InvalidTokenException("Malformed date claim: " + claim);
+        return Instant.ofEpochSecond(((Number) claim).longValue());
+    }
+}
@@ -0,0 +1,9 @@
+package se.magnus.springcloud.gateway.jwt;
+
+//  the token is signed with a key that is not in the cached key set (yet), e.g. right after the auth server rotated its keys
+public class UnknownKeyException extends InvalidTokenException {
+
+    public UnknownKeyException(String keyId) {
+        super("Unknown signing key: " + keyId);
+    }
+}
@@ -0,0 +1,28 @@
+package se.magnus.springcloud.gateway.jwt;
+
+import java.time.Instant;
+import java.util.Map;
+
+//  the claims of a token whose signature and lifetime were checked
+public class VerifiedToken {
+    private final Map<String, Object> claims;
+    private final Instant expiresAt;
+
+    public VerifiedToken(Map<String, Object> claims, Instant expiresAt) {
+        this.claims = claims;
+        this.expiresAt = expiresAt;
+    }
+
+    public Map<String, Object> getClaims() {
+        return claims;
+    }
+
+    public String getSubject() {
+        Object subject = claims.get("sub");
+        return subject == null ? null : subject.toString();
+    }
+
+    public Instant getExpiresAt() {
+        return expiresAt;
+    }
+}
@@ -0,0 +1,96 @@
+package se.magnus.springcloud.gateway;
+
+import org.junit.Test;
+import org.springframework.cloud.gateway.filter.GatewayFilter;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import reactor.core.publisher.Mono;
+import se.magnus.springcloud.gateway.jwt.InternalIdentityIssuer;
+import se.magnus.springcloud.gateway.jwt.JwtTokenResolver;
+import se.magnus.springcloud.gateway.jwt.VerifiedToken;
+import se.magnus.util.http.InternalIdentity;
+import se.magnus.util.http.InternalIdentityCodec;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static java.util.Collections.singleton;
+import static java.util.Collections.singletonList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static se.magnus.util.http.InternalIdentityCodec.IDENTITY_HEADER;
+
+public class JwtAuthenticationFilterTests {
+
+	private static final String SECRET = "secret";
+
+	private final JwtTokenResolver resolver = mock(JwtTokenResolver.class);
+	private final AtomicReference<HttpHeaders> forwarded = new AtomicReference<>();
+
+	//  the composite, it only keeps the headers the gateway forwards
+	private final GatewayFilterChain composite = exchange -> {
+		forwarded.set(exchange.getRequest().getHeaders());
+		return Mono.empty();
+	};
+
+	@Test
+	public void clientIdentityIsReplaced() {
+
+		GatewayFilter filter = filter(SECRET);
+		String forged = new InternalIdentityCodec("guessed", Clock.systemUTC()).encode("admin", singletonList("WRITE"), Instant.now().plusSeconds(30));
+
+		filter.filter(exchange("Bearer reader", forged), composite).block();
+
+		//  only the identity of the verified token reaches the composite
+		assertEquals(1, forwarded.get().get(IDENTITY_HEADER).size());
+		InternalIdentity identity = new InternalIdentityCodec(SECRET, Clock.systemUTC()).decode(forwarded.get().getFirst(IDENTITY_HEADER));
+		assertNotNull(identity);
+		assertEquals("reader", identity.getSubject());
+		assertEquals(singleton("READ"), identity.getScopes());
+	}
+
+	@Test
+	public void clientIdentityIsDroppedWithoutSecret() {
+
+		filter("").filter(exchange("Bearer reader", "reader-identity"), composite).block();
+
+		assertFalse(forwarded.get().containsKey(IDENTITY_HEADER));
+	}
+
+	@Test
+	public void clientIdentityDoesNotAuthenticate() {
+
+		MockServerWebExchange exchange = exchange(null, new InternalIdentityCodec(SECRET, Clock.systemUTC()).encode("admin", singletonList("WRITE"), Instant.now().plusSeconds(30)));
+
+		filter(SECRET).filter(exchange, composite).block();
+
+		assertEquals(HttpStatus.UNAUTHORIZED, exchange.getResponse().getStatusCode());
+		assertNull(forwarded.get());
+	}
+
+	private GatewayFilter filter(String secret) {
+		Map<String, Object> claims = new HashMap<>();
+		claims.put("sub", "reader");
+		claims.put("scope", "READ");
+		when(resolver.resolve(any())).thenReturn(Mono.empty());
+		when(resolver.resolve("Bearer reader")).thenReturn(Mono.just(new VerifiedToken(claims, Instant.now().plusSeconds(60))));
+		return new JwtAuthenticationFilter(resolver, new InternalIdentityIssuer(secret, 30)).apply(new JwtAuthenticationFilter.Config());
+	}
+
+	private static MockServerWebExchange exchange(String authorization, String identity) {
+		MockServerHttpRequest.BaseBuilder<?> request = MockServerHttpRequest.get("/product-composite/1").header(IDENTITY_HEADER, identity);
+		if (authorization != null) request.header(HttpHeaders.AUTHORIZATION, authorization);
+		return MockServerWebExchange.from(request);
+	}
+}
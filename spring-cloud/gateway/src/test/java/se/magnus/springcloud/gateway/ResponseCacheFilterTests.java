@@ -0,0 +1,179 @@
+package se.magnus.springcloud.gateway;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Test;
+import org.springframework.cloud.gateway.filter.GatewayFilter;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import reactor.core.publisher.Mono;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class ResponseCacheFilterTests {
+
+	private static final Instant NOW = Instant.parse("2021-01-01T00:00:00Z");
+
+	private final MeterRegistry registry = new SimpleMeterRegistry();
+	private final AtomicReference<Clock> clock = new AtomicReference<>(Clock.fixed(NOW, ZoneOffset.UTC));
+	private final AtomicInteger calls = new AtomicInteger();
+	private final AtomicReference<String> ifNoneMatch = new AtomicReference<>();
+	private final AtomicReference<String> body = new AtomicReference<>("{\"productId\":1}");
+	//  runs while the composite is working on a request
+	private final AtomicReference<Runnable> meanwhile = new AtomicReference<>();
+
+	private final GatewayFilter filter = new ResponseCacheFilter(new Clock() {
+		public ZoneOffset getZone() { return ZoneOffset.UTC; }
+		public Clock withZone(java.time.ZoneId zone) { return this; }
+		public Instant instant() { return clock.get().instant(); }
+	}, registry, 1024, 512, Duration.ofSeconds(10), Duration.ofMinutes(5)).apply(new ResponseCacheFilter.Config());
+
+	//  the composite, with the body as its ETag
+	private final GatewayFilterChain composite = exchange -> exchange.getRequest().getBody().doOnNext(DataBufferUtils::release).then(Mono.defer(() -> {
+		calls.incrementAndGet();
+		Runnable task = meanwhile.getAndSet(null);
+		if (task != null) task.run();
+		ifNoneMatch.set(exchange.getRequest().getHeaders().getFirst(HttpHeaders.IF_NONE_MATCH));
+		ServerHttpResponse response = exchange.getResponse();
+		String etag = "\"" + body.get().hashCode() + "\"";
+		response.getHeaders().set(HttpHeaders.ETAG, etag);
+		if (etag.equals(ifNoneMatch.get())) {
+			response.setStatusCode(HttpStatus.NOT_MODIFIED);
+			return response.setComplete();
+		}
+		byte[] bytes = body.get().getBytes(StandardCharsets.UTF_8);
+		response.setStatusCode(HttpStatus.OK);
+		response.getHeaders().setContentType(MediaType.APPLICATION_JSON);
+		response.getHeaders().setContentLength(bytes.length);
+		return response.writeWith(Mono.just(response.bufferFactory().wrap(bytes)));
+	}));
+
+	@Test
+	public void serveCachedResponse() {
+
+		MockServerWebExchange first = get("/product-composite/1");
+		assertEquals("{\"productId\":1}", first.getResponse().getBodyAsString().block());
+		assertNull(first.getResponse().getHeaders().getFirst(ResponseCacheFilter.CACHE_HEADER));
+
+		MockServerWebExchange second = get("/product-composite/1");
+		assertEquals(HttpStatus.OK, second.getResponse().getStatusCode());
+		assertEquals("{\"productId\":1}", second.getResponse().getBodyAsString().block());
+		assertEquals("HIT", second.getResponse().getHeaders().getFirst(ResponseCacheFilter.CACHE_HEADER));
+		assertEquals(MediaType.APPLICATION_JSON, second.getResponse().getHeaders().getContentType());
+		assertEquals(1, calls.get());
+
+		//  other variants and the test parameters are not served from the cache
+		get("/product-composite/1?limit=1");
+		get("/product-composite/1?delay=1");
+		get("/product-composite/1?delay=1");
+		assertEquals(4, calls.get());
+	}
+
+	@Test
+	public void answerNotModifiedToClientWithCachedVersion() {
+
+		MockServerWebExchange first = get("/product-composite/1");
+		String etag = first.getResponse().getHeaders().getETag();
+
+		MockServerWebExchange second = filter(MockServerHttpRequest.get("/product-composite/1").header(HttpHeaders.IF_NONE_MATCH, etag).build());
+		assertEquals(HttpStatus.NOT_MODIFIED, second.getResponse().getStatusCode());
+		assertEquals(1, calls.get());
+	}
+
+	@Test
+	public void revalidateExpiredResponse() {
+
+		get("/product-composite/1");
+		clock.set(Clock.fixed(NOW.plusSeconds(11), ZoneOffset.UTC));
+
+		//  unchanged, the composite answers 304 and the client gets the cached body
+		MockServerWebExchange revalidated = get("/product-composite/1");
+		assertEquals(2, calls.get());
+		assertEquals("\"" + body.get().hashCode() + "\"", ifNoneMatch.get());
+		assertEquals(HttpStatus.OK, revalidated.getResponse().getStatusCode());
+		assertEquals("{\"productId\":1}", revalidated.getResponse().getBodyAsString().block());
+		assertEquals(1.0, registry.get("response-cache.revalidations").tag("outcome", "not-modified").counter().count(), 0.0);
+
+		//  fresh again
+		get("/product-composite/1");
+		assertEquals(2, calls.get());
+
+		//  changed
+		body.set("{\"productId\":1,\"name\":\"changed\"}");
+		clock.set(Clock.fixed(NOW.plusSeconds(22), ZoneOffset.UTC));
+		assertEquals("{\"productId\":1,\"name\":\"changed\"}", get("/product-composite/1").getResponse().getBodyAsString().block());
+		assertEquals("{\"productId\":1,\"name\":\"changed\"}", get("/product-composite/1").getResponse().getBodyAsString().block());
+		assertEquals(3, calls.get());
+	}
+
+	@Test
+	public void purgeOnDelete() {
+
+		get("/product-composite/1");
+		get("/product-composite/2");
+		filter(MockServerHttpRequest.delete("/product-composite/1").build());
+		assertEquals(3, calls.get());
+
+		get("/product-composite/1");
+		get("/product-composite/2");
+		assertEquals(4, calls.get());
+	}
+
+	@Test
+	public void purgeOnWrite() {
+
+		get("/product-composite/1");
+		get("/product-composite/2");
+		get("/product-composite/3");
+
+		//  the productId of the aggregate, not the ones of its recommendations and reviews
+		filter(MockServerHttpRequest.post("/product-composite").body(
+				"{\"recommendations\":[{\"productId\":3}],\"productId\":1,\"reviews\":[{\"productId\":3}]}"));
+		filter(MockServerHttpRequest.put("/product-composite").body("{\"productId\":2,\"name\":\"changed\"}"));
+		assertEquals(5, calls.get());
+
+		get("/product-composite/1");
+		get("/product-composite/2");
+		get("/product-composite/3");
+		assertEquals(7, calls.get());
+	}
+
+	@Test
+	public void skipStoreOfResponseReadBeforePurge() {
+
+		//  the delete passes while the composite is still reading the product
+		meanwhile.set(() -> filter(MockServerHttpRequest.delete("/product-composite/1").build()));
+		get("/product-composite/1");
+		assertEquals(2, calls.get());
+
+		get("/product-composite/1");
+		assertEquals(3, calls.get());
+		get("/product-composite/1");
+		assertEquals(3, calls.get());
+	}
+
+	private MockServerWebExchange get(String uri) {
+		return filter(MockServerHttpRequest.get(uri).build());
+	}
+
+	private MockServerWebExchange filter(MockServerHttpRequest request) {
+		MockServerWebExchange exchange = MockServerWebExchange.from(request);
+		filter.filter(exchange, composite).block();
+		return exchange;
+	}
+}
@@ -0,0 +1,112 @@
+package se.magnus.springcloud.gateway.admission;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class AdmissionControlTests {
+
+	private final MeterRegistry registry = new SimpleMeterRegistry();
+	private final AtomicLong now = new AtomicLong();
+
+	@Test
+	public void rateLimitPerClient() {
+
+		TokenBuckets buckets = new TokenBuckets(now::get, registry, 10, 5, 100);
+
+		//  the burst, then one token every 100 ms
+		for (int i = 0; i < 5; i++) assertEquals(0, buckets.tryAcquire("a"));
+		assertEquals(TimeUnit.MILLISECONDS.toNanos(100), buckets.tryAcquire("a"));
+		assertEquals(0, buckets.tryAcquire("b"));
+
+		now.addAndGet(TimeUnit.MILLISECONDS.toNanos(100));
+		assertEquals(0, buckets.tryAcquire("a"));
+		assertTrue(buckets.tryAcquire("a") > 0);
+
+		assertEquals(7.0, registry.get("rate-limit.requests").tag("outcome", "allowed").counter().count(), 0.0);
+		assertEquals(2.0, registry.get("rate-limit.requests").tag("outcome", "rejected").counter().count(), 0.0);
+	}
+
+	@Test
+	public void dropFullBuckets() {
+
+		TokenBuckets buckets = new TokenBuckets(now::get, registry, 10, 2, 100);
+
+		assertEquals(0, buckets.tryAcquire("a"));
+		assertEquals(0, buckets.tryAcquire("a"));
+		assertTrue(buckets.tryAcquire("a") > 0);
+
+		//  full again after the burst times the interval, the bucket is gone and a new one has the whole burst
+		now.addAndGet(TimeUnit.MILLISECONDS.toNanos(200));
+		buckets.cleanUp();
+		assertEquals(0.0, registry.get("rate-limit.keys").gauge().value(), 0.0);
+		assertEquals(0, buckets.tryAcquire("a"));
+		assertEquals(0, buckets.tryAcquire("a"));
+		assertTrue(buckets.tryAcquire("a") > 0);
+	}
+
+	@Test
+	public void boundNumberOfClients() {
+
+		TokenBuckets buckets = new TokenBuckets(now::get, registry, 10, 1, 10);
+
+		//  every client keeps a bucket of its own, none of them shares the rate of the others
+		for (int i = 0; i < 100; i++) assertEquals(0, buckets.tryAcquire("client-" + i));
+		buckets.cleanUp();
+		assertTrue(registry.get("rate-limit.keys").gauge().value() <= 10);
+	}
+
+	@Test
+	public void shedAtConcurrencyLimit() {
+
+		ConcurrencyLimiter limiter = new ConcurrencyLimiter(registry, 2, 1, 10, 1.5, 1);
+
+		assertTrue(limiter.tryAcquire());
+		assertTrue(limiter.tryAcquire());
+		assertFalse(limiter.tryAcquire());
+
+		limiter.release(TimeUnit.MILLISECONDS.toNanos(10), false);
+		assertTrue(limiter.tryAcquire());
+		assertEquals(1.0, registry.get("concurrency-limit.requests").tag("outcome", "shed").counter().count(), 0.0);
+	}
+
+	@Test
+	public void adaptConcurrencyLimitToLatency() {
+
+		ConcurrencyLimiter limiter = new ConcurrencyLimiter(registry, 10, 5, 100, 1.5, 4);
+
+		//  at the limit with a steady latency the limit grows
+		for (int i = 0; i < 20; i++) {
+			fill(limiter);
+			limiter.release(TimeUnit.MILLISECONDS.toNanos(10), false);
+		}
+		double grown = limiter.getLimit();
+		assertTrue(grown > 10);
+
+		//  the latency rises, the limit shrinks before the backends time out
+		for (int i = 0; i < 20; i++) {
+			fill(limiter);
+			limiter.release(TimeUnit.MILLISECONDS.toNanos(100), false);
+		}
+		assertTrue(limiter.getLimit() < grown);
+
+		//  as it does on failures, but never below the minimum
+		for (int i = 0; i < 100; i++) {
+			limiter.tryAcquire();
+			limiter.release(TimeUnit.MILLISECONDS.toNanos(10), true);
+		}
+		assertEquals(5.0, limiter.getLimit(), 0.0);
+	}
+
+	private static void fill(ConcurrencyLimiter limiter) {
+		while (limiter.tryAcquire()) {
+		}
+	}
+}
@@ -0,0 +1,151 @@
+package se.magnus.springcloud.gateway.jwt;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.Signature;
+import java.security.interfaces.RSAPublicKey;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Map;
+
+import static java.util.Arrays.asList;
+import static java.util.Collections.singletonMap;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class JwtTokenResolverTests {
+
+	private static final Instant NOW = Instant.parse("2021-01-01T00:00:00Z");
+	private static final String ISSUER = "http://auth-server:9999";
+	private static final String AUDIENCE = "product-composite";
+
+	private final ObjectMapper mapper = new ObjectMapper();
+	private final Clock clock = Clock.fixed(NOW, ZoneOffset.UTC);
+	private KeyPair keyPair;
+	private JwkSetCache keys;
+	private MeterRegistry registry;
+	private JwtTokenResolver resolver;
+
+	@Before
+	public void setUp() throws GeneralSecurityException {
+		KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+		generator.initialize(2048);
+		keyPair = generator.generateKeyPair();
+
+		keys = new JwkSetCache(mapper, "", 300, 10);
+		keys.setKeys(singletonMap("key-1", keyPair.getPublic()));
+		registry = new SimpleMeterRegistry();
+		resolver = new JwtTokenResolver(keys, new JwtVerifier(mapper, clock, Duration.ZERO, ISSUER, AUDIENCE), clock, registry, 100, Duration.ofMinutes(5));
+	}
+
+	@Test
+	public void verifyToken() throws Exception {
+
+		String token = sign("key-1", NOW.plusSeconds(60));
+
+		VerifiedToken verified = resolver.resolve("Bearer " + token).block();
+		assertEquals("subject", verified.getSubject());
+		assertEquals(NOW.plusSeconds(60), verified.getExpiresAt());
+
+		//  the second time without the signature check
+		assertNotNull(resolver.resolve("Bearer " + token).block());
+		assertEquals(1.0, count("verified"), 0.0);
+		assertEquals(1.0, count("cached"), 0.0);
+	}
+
+	@Test
+	public void rejectInvalidTokens() throws Exception {
+
+		String token = sign("key-1", NOW.plusSeconds(60));
+		String tampered = token.substring(0, token.lastIndexOf('.')) + "." + Base64.getUrlEncoder().withoutPadding().encodeToString(new byte[256]);
+
+		assertNull(resolver.resolve(null).block());
+		assertNull(resolver.resolve(token).block());
+		assertNull(resolver.resolve("Bearer no-jwt").block());
+		assertNull(resolver.resolve("Bearer " + tampered).block());
+		assertNull(resolver.resolve("Bearer " + sign("key-1", NOW.minusSeconds(1))).block());
+		assertNull(resolver.resolve("Bearer " + sign("key-2", NOW.plusSeconds(60))).block());
+		assertEquals(6.0, count("rejected"), 0.0);
+	}
+
+	@Test
+	public void rejectTokensOfOtherIssuersAndAudiences() throws Exception {
+
+		assertNotNull(resolver.resolve("Bearer " + sign("key-1", NOW.plusSeconds(60), ISSUER, asList("other", AUDIENCE))).block());
+		assertNull(resolver.resolve("Bearer " + sign("key-1", NOW.plusSeconds(60), "http://other:9999", AUDIENCE)).block());
+		assertNull(resolver.resolve("Bearer " + sign("key-1", NOW.plusSeconds(60), null, AUDIENCE)).block());
+		assertNull(resolver.resolve("Bearer " + sign("key-1", NOW.plusSeconds(60), ISSUER, "other")).block());
+		assertNull(resolver.resolve("Bearer " + sign("key-1", NOW.plusSeconds(60), ISSUER, null)).block());
+		assertEquals(4.0, count("rejected"), 0.0);
+	}
+
+	@Test
+	public void cacheIsBounded() throws Exception {
+
+		JwtTokenResolver small = new JwtTokenResolver(keys, new JwtVerifier(mapper, clock, Duration.ZERO, ISSUER, AUDIENCE), clock, registry, 10, Duration.ofMinutes(5));
+		for (int i = 0; i < 100; i++) {
+			assertNotNull(small.resolve("Bearer " + sign("key-1", NOW.plusSeconds(60 + i))).block());
+		}
+		small.cleanUp();
+		assertTrue(registry.get("jwt.cache.size").gauge().value() <= 10);
+	}
+
+	@Test
+	public void parseJwkSet() throws Exception {
+
+		RSAPublicKey publicKey = (RSAPublicKey) keyPair.getPublic();
+		Map<String, Object> jwk = new HashMap<>();
+		jwk.put("kty", "RSA");
+		jwk.put("kid", "key-1");
+		jwk.put("n", encode(publicKey.getModulus().toByteArray()));
+		jwk.put("e", encode(publicKey.getPublicExponent().toByteArray()));
+		String jwkSet = mapper.writeValueAsString(singletonMap("keys", new Object[] {jwk}));
+
+		keys.setKeys(keys.parse(jwkSet));
+
+		assertNotNull(resolver.resolve("Bearer " + sign("key-1", NOW.plusSeconds(60))).block());
+	}
+
+	private String sign(String keyId, Instant expiresAt) throws Exception {
+		return sign(keyId, expiresAt, ISSUER, AUDIENCE);
+	}
+
+	private String sign(String keyId, Instant expiresAt, String issuer, Object audience) throws Exception {
+		Map<String, Object> header = new HashMap<>();
+		header.put("alg", "RS256");
+		header.put("kid", keyId);
+		Map<String, Object> claims = new HashMap<>();
+		claims.put("sub", "subject");
+		claims.put("exp", expiresAt.getEpochSecond());
+		if (issuer != null) claims.put("iss", issuer);
+		if (audience != null) claims.put("aud", audience);
+
+		String content = encode(mapper.writeValueAsBytes(header)) + "." + encode(mapper.writeValueAsBytes(claims));
+		Signature signature = Signature.getInstance("SHA256withRSA");
+		signature.initSign(keyPair.getPrivate());
+		signature.update(content.getBytes(StandardCharsets.US_ASCII));
+		return content + "." + encode(signature.sign());
+	}
+
+	private static String encode(byte[] bytes) {
+		return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+	}
+
+	private double count(String outcome) {
+		return registry.get("jwt.verifications").tag("outcome", outcome).counter().count();
+	}
+}
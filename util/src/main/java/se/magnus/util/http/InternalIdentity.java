@@ -0,0 +1,29 @@
+package se.magnus.util.http;
+
+import java.time.Instant;
+import java.util.Set;
+
+//  the caller of a request as verified by the gateway, see InternalIdentityCodec
+public class InternalIdentity {
+    private final String subject;
+    private final Set<String> scopes;
+    private final Instant expiresAt;
+
+    public InternalIdentity(String subject, Set<String> scopes, Instant expiresAt) {
+        this.subject = subject;
+        this.scopes = scopes;
+        this.expiresAt = expiresAt;
+    }
+
+    public String getSubject() {
+        return subject;
+    }
+
+    public Set<String> getScopes() {
+        return scopes;
+    }
+
+    public Instant getExpiresAt() {
+        return expiresAt;
+    }
+}
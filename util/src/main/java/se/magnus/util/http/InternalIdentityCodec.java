@@ -0,0 +1,80 @@
+package se.magnus.util.http;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.time.Clock;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+//  the identity header the gateway adds once it verified the bearer token, so the services behind it don't verify it again.
+//  "<expiry>|<scopes>|<subject>" in base64url plus an HMAC-SHA256 over it with a secret shared by the gateway and the services.
+//  the gateway drops the header from incoming requests, i.e. it can only be set by a holder of the secret.
+public class InternalIdentityCodec {
+
+    public static final String IDENTITY_HEADER = "X-Internal-Identity";
+    private static final String ALGORITHM = "HmacSHA256";
+
+    private final SecretKeySpec key;
+    private final Clock clock;
+    //  a Mac is stateful, one per thread instead of a lookup per header
+    private final ThreadLocal<Mac> macs;
+
+    public InternalIdentityCodec(String secret, Clock clock) {
+        this.key = new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), ALGORITHM);
+        this.clock = clock;
+        this.macs = ThreadLocal.withInitial(this::createMac);
+    }
+
+    public String encode(String subject, Collection<String> scopes, Instant expiresAt) {
+        String payload = expiresAt.getEpochSecond() + "|" + String.join(" ", scopes) + "|" + subject;
+        Base64.Encoder encoder = Base64.getUrlEncoder().withoutPadding();
+        byte[] content = encoder.encode(payload.getBytes(StandardCharsets.UTF_8));
+        return new String(content, StandardCharsets.US_ASCII) + "." + encoder.encodeToString(sign(content));
+    }
+
+    //  null if the header is malformed, not signed with the shared secret or expired
+    public InternalIdentity decode(String header) {
+        int separator = header.indexOf('.');
+        if (separator < 0) return null;
+        try {
+            byte[] content = header.substring(0, separator).getBytes(StandardCharsets.US_ASCII);
+            byte[] signature = Base64.getUrlDecoder().decode(header.substring(separator + 1));
+            if (!MessageDigest.isEqual(sign(content), signature)) return null;
+
+            String payload = new String(Base64.getUrlDecoder().decode(content), StandardCharsets.UTF_8);
+            int expiryEnd = payload.indexOf('|');
+            int scopesEnd = payload.indexOf('|', expiryEnd + 1);
+            if (expiryEnd < 0 || scopesEnd < 0) return null;
+            Instant expiresAt = Instant.ofEpochSecond(Long.parseLong(payload.substring(0, expiryEnd)));
+            if (!clock.instant().isBefore(expiresAt)) return null;
+            String scopes = payload.substring(expiryEnd + 1, scopesEnd);
+            Set<String> scopeSet = scopes.isEmpty() ? Collections.emptySet() : new LinkedHashSet<>(Arrays.asList(scopes.split(" ")));
+            return new InternalIdentity(payload.substring(scopesEnd + 1), scopeSet, expiresAt);
+        } catch (IllegalArgumentException ex) {
+            return null;
+        }
+    }
+
+    private byte[] sign(byte[] content) {
+        Mac mac = macs.get();
+        return mac.doFinal(content);
+    }
+
+    private Mac createMac() {
+        try {
+            Mac mac = Mac.getInstance(ALGORITHM);
+            mac.init(key);
+            return mac;
+        } catch (GeneralSecurityException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package se.magnus.util.http;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.publisher.Mono;
+
+//  the address of the instance that served a response, for responses whose items don't carry it, e.g. the summary reads
+@Component
+public class ServiceAddressFilter implements WebFilter {
+
+    public static final String SERVICE_ADDRESS_HEADER = "X-Service-Address";
+
+    private final ServiceUtil serviceUtil;
+
+    @Autowired
+    public ServiceAddressFilter(ServiceUtil serviceUtil) {
+        this.serviceUtil = serviceUtil;
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+        exchange.getResponse().getHeaders().set(SERVICE_ADDRESS_HEADER, serviceUtil.getServiceAddress());
+        return chain.filter(exchange);
+    }
+}
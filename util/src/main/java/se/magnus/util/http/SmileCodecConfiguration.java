@@ -0,0 +1,36 @@
+package se.magnus.util.http;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.boot.web.codec.CodecCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.ResolvableType;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.json.Jackson2SmileDecoder;
+import org.springframework.http.codec.json.Jackson2SmileEncoder;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.util.MimeType;
+
+//  Smile (binary JSON with back references to repeated field names) next to JSON, for the calls between the services.
+//  a client gets it by asking for it in the Accept header, JSON stays the default.
+@Configuration
+public class SmileCodecConfiguration {
+
+    public static final MediaType APPLICATION_SMILE = MediaType.valueOf("application/x-jackson-smile");
+
+    //  applied to the server codecs by spring boot, and to the codecs of web clients that ask for the customizers
+    @Bean
+    public CodecCustomizer smileCodecCustomizer() {
+        ObjectMapper mapper = Jackson2ObjectMapperBuilder.smile().build();
+        return configurer -> {
+            //  custom codecs come first, a body without a content type must still be written as JSON
+            configurer.customCodecs().register(new Jackson2SmileEncoder(mapper, APPLICATION_SMILE) {
+                @Override
+                public boolean canEncode(ResolvableType elementType, MimeType mimeType) {
+                    return mimeType != null && super.canEncode(elementType, mimeType);
+                }
+            });
+            configurer.customCodecs().register(new Jackson2SmileDecoder(mapper, APPLICATION_SMILE));
+        };
+    }
+}
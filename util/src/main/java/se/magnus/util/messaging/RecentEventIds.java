@@ -0,0 +1,33 @@
+package se.magnus.util.messaging;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+//  the ids of the most recently processed events, bounded in size. the least recently seen id is dropped first.
+//  redeliveries follow the original closely, so most duplicates are found here without asking the database.
+public class RecentEventIds {
+
+    private final Map<String, Boolean> ids;
+
+    public RecentEventIds(int maxSize) {
+        this.ids = Collections.synchronizedMap(new LinkedHashMap<String, Boolean>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+                return size() > maxSize;
+            }
+        });
+    }
+
+    public boolean contains(String eventId) {
+        return ids.get(eventId) != null;
+    }
+
+    public void add(String eventId) {
+        ids.put(eventId, Boolean.TRUE);
+    }
+
+    public int size() {
+        return ids.size();
+    }
+}
@@ -0,0 +1,44 @@
+package se.magnus.util.http;
+
+import org.junit.Test;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneOffset;
+
+import static java.util.Arrays.asList;
+import static java.util.Collections.emptyList;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class InternalIdentityCodecTests {
+
+    private final Instant now = Instant.parse("2020-01-01T00:00:00Z");
+    private final InternalIdentityCodec codec = new InternalIdentityCodec("secret", Clock.fixed(now, ZoneOffset.UTC));
+
+    @Test
+    public void decodeEncodedIdentity() {
+        InternalIdentity identity = codec.decode(codec.encode("writer|1", asList("READ", "WRITE"), now.plusSeconds(30)));
+
+        assertThat(identity.getSubject()).isEqualTo("writer|1");
+        assertThat(identity.getScopes()).containsExactly("READ", "WRITE");
+        assertThat(identity.getExpiresAt()).isEqualTo(now.plusSeconds(30));
+
+        assertThat(codec.decode(codec.encode("reader", emptyList(), now.plusSeconds(30))).getScopes()).isEmpty();
+    }
+
+    @Test
+    public void rejectExpiredIdentity() {
+        assertThat(codec.decode(codec.encode("writer", asList("WRITE"), now))).isNull();
+    }
+
+    @Test
+    public void rejectForgedIdentity() {
+        String header = codec.encode("reader", asList("READ"), now.plusSeconds(30));
+        String forged = new InternalIdentityCodec("guessed", Clock.systemUTC()).encode("reader", asList("WRITE"), now.plusSeconds(30));
+
+        assertThat(codec.decode(forged)).isNull();
+        assertThat(codec.decode(forged.substring(0, forged.indexOf('.')) + header.substring(header.indexOf('.')))).isNull();
+        assertThat(codec.decode("not-a-header")).isNull();
+        assertThat(codec.decode("a.!")).isNull();
+    }
+}